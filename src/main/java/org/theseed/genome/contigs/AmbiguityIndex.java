@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.util.function.IntPredicate;
+
+/**
+ * This object records the positions of the ambiguity characters in a sequence, so that a sensor factory can tell
+ * in constant time whether a sensor window contains one.  There is one bit per position, and a running count of
+ * the ambiguity characters before each 64-position word, so the number of ambiguity characters in any range is
+ * the difference of two counts, each corrected by a single bit count.  The index costs about 1.5 bits per
+ * position and is built with a single pass through the sequence.
+ *
+ * Which characters are ambiguous is up to the caller, since the sensor factories do not all agree.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AmbiguityIndex {
+
+    // FIELDS
+    /** source sequence */
+    private final CharSequence sequence;
+    /** one bit per position, set if the character there is ambiguous */
+    private final long[] bits;
+    /** number of ambiguous characters before each word of bits */
+    private final int[] prefix;
+
+    /** number of characters to copy out of the sequence at a time */
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Build an ambiguity index for a sequence.
+     *
+     * @param sequence	sequence to index
+     * @param test		predicate that returns TRUE for an ambiguous character
+     */
+    public AmbiguityIndex(CharSequence sequence, IntPredicate test) {
+        this.sequence = sequence;
+        int len = sequence.length();
+        int words = (len + 63) >>> 6;
+        this.bits = new long[words];
+        this.prefix = new int[words + 1];
+        char[] chars = new char[Math.min(len, CHUNK_SIZE)];
+        for (int base = 0; base < len; base += CHUNK_SIZE) {
+            int n = Math.min(CHUNK_SIZE, len - base);
+            if (sequence instanceof String) {
+                ((String) sequence).getChars(base, base + n, chars, 0);
+            } else {
+                for (int i = 0; i < n; i++)
+                    chars[i] = sequence.charAt(base + i);
+            }
+            for (int i = 0; i < n; i++) {
+                if (test.test(chars[i])) {
+                    int p = base + i;
+                    this.bits[p >>> 6] |= 1L << (p & 63);
+                }
+            }
+        }
+        for (int w = 0; w < words; w++)
+            this.prefix[w + 1] = this.prefix[w] + Long.bitCount(this.bits[w]);
+    }
+
+    /**
+     * @return the number of ambiguous characters before a position
+     *
+     * @param pos	0-based position (from 0 to the sequence length)
+     */
+    private int rank(int pos) {
+        int w = pos >>> 6;
+        int retVal = this.prefix[w];
+        int bit = pos & 63;
+        if (bit != 0)
+            retVal += Long.bitCount(this.bits[w] & ((1L << bit) - 1));
+        return retVal;
+    }
+
+    /**
+     * @return the number of ambiguous characters in a range of the sequence; the parts of the range off the edge
+     * 		   of the sequence are ignored
+     *
+     * @param start		0-based offset of the start of the range
+     * @param end		0-based offset past the end of the range
+     */
+    public int count(int start, int end) {
+        int retVal = 0;
+        start = Math.max(start, 0);
+        end = Math.min(end, this.sequence.length());
+        if (start < end)
+            retVal = this.rank(end) - this.rank(start);
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if a range of the sequence has no ambiguous characters
+     *
+     * @param start		0-based offset of the start of the range
+     * @param end		0-based offset past the end of the range
+     */
+    public boolean isClean(int start, int end) {
+        return (this.count(start, end) == 0);
+    }
+
+    /**
+     * @return the offset of the last ambiguous character in a range of the sequence, or -1 if there is none
+     *
+     * @param start		0-based offset of the start of the range
+     * @param end		0-based offset past the end of the range
+     */
+    public int lastAmbiguous(int start, int end) {
+        int retVal = -1;
+        start = Math.max(start, 0);
+        end = Math.min(end, this.sequence.length());
+        if (start < end && this.rank(end) > this.rank(start)) {
+            int w = (end - 1) >>> 6;
+            long word = this.bits[w] & (-1L >>> (63 - ((end - 1) & 63)));
+            while (word == 0)
+                word = this.bits[--w];
+            retVal = (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the total number of ambiguous characters in the sequence
+     */
+    public int total() {
+        return this.prefix[this.prefix.length - 1];
+    }
+
+    /**
+     * @return the indexed sequence
+     */
+    public CharSequence getSequence() {
+        return this.sequence;
+    }
+
+}
@@ -3,60 +3,109 @@
  */
 package org.theseed.genome.contigs;
 
-import java.util.HashMap;
-
 /**
  * In this class, the sensor value is the amino acid at each position before and after the center. The left width
  * must be a multiple of 3 and the right width one less than a multiple of 3.  The amino acids are all converted
  * to upper case.  Anything off the edge of the contig converts to "-" and anything with an ambiguity character
- * converts to "X".  Currently, only genetic code 11 is supported.
+ * converts to "X".  Only DNA is accepted, so a codon containing U is ambiguous.  A codon that runs off the edge
+ * is "-" even if it contains an ambiguity character, so only the whole codons inside the contig can make a sensor
+ * suspicious.  The genetic code is global, like the sensor widths, and defaults to 11.
+ *
+ * The codons are read from a precomputed track of ambiguity-aware codon codes, so each codon of a contig is
+ * only decoded once no matter how many windows contain it.  Since the track has a value for every position,
+ * it covers all three frames (and all six, if the minus strand is also being sensed).
  *
  * @author Bruce Parrello
  *
  */
 public class AminoAcidContigSensorFactory extends ContigSensorFactory {
 
+    /** vocabulary of amino acids, in sparse feature order */
+    private static final String VOCABULARY = "ACDEFGHIKLMNPQRSTVWY*";
+
     /** genetic code translation table */
-    @SuppressWarnings("serial")
-    private static final HashMap<String, String> GENETIC_CODE_11 = new HashMap<String, String>() {{
-        put("AAA","K"); put("AAC","N"); put("AAG","K"); put("AAT","N"); put("ACA","T");
-        put("ACC","T"); put("ACG","T"); put("ACT","T"); put("AGA","R"); put("AGC","S");
-        put("AGG","R"); put("AGT","S"); put("ATA","I"); put("ATC","I"); put("ATG","M");
-        put("ATT","I"); put("CAA","Q"); put("CAC","H"); put("CAG","Q"); put("CAT","H");
-        put("CCA","P"); put("CCC","P"); put("CCG","P"); put("CCT","P"); put("CGA","R");
-        put("CGC","R"); put("CGG","R"); put("CGT","R"); put("CTA","L"); put("CTC","L");
-        put("CTG","L"); put("CTT","L"); put("GAA","E"); put("GAC","D"); put("GAG","E");
-        put("GAT","D"); put("GCA","A"); put("GCC","A"); put("GCG","A"); put("GCT","A");
-        put("GGA","G"); put("GGC","G"); put("GGG","G"); put("GGT","G"); put("GTA","V");
-        put("GTC","V"); put("GTG","V"); put("GTT","V"); put("TAA","*"); put("TAC","Y");
-        put("TAG","*"); put("TAT","Y"); put("TCA","S"); put("TCC","S"); put("TCG","S");
-        put("TCT","S"); put("TGA","*"); put("TGC","C"); put("TGG","W"); put("TGT","C");
-        put("TTA","L"); put("TTC","F"); put("TTG","L"); put("TTT","F");
-    }};
+    private static GeneticCode geneticCode = GeneticCode.get(11);
 
+    /**
+     * Specify a new global genetic code.  This does not affect sensors already constructed.
+     *
+     * @param code	NCBI genetic code number
+     *
+     * @throws IllegalArgumentException if the genetic code is not supported
+     */
+    public static void setGeneticCode(int code) {
+        AminoAcidContigSensorFactory.geneticCode = GeneticCode.get(code);
+    }
+
+    /**
+     * @return the current global genetic code
+     */
+    public static GeneticCode getGeneticCode() {
+        return geneticCode;
+    }
 
     @Override
-    protected void convertSequence(ContigSensor sensor, String sequence, int pos) {
-        boolean suspicion = false;
+    protected void convertSequence(ContigSensor sensor, CharSequence sequence, int pos) {
+        GeneticCode gc = geneticCode;
         int offset = pos - ContigSensorFactory.getLeftWidth() - 1;
         int stride = this.getStride();
         int fullWidth = ContigSensorFactory.getFullWidth();
+        SequenceTrack track = this.getTrack(sequence);
         String[] buffer = new String[fullWidth / stride];
         for (int i = 0; i < buffer.length; i++) {
             String aa = "-";
-            int endOffset = offset + 3;
-            if (offset >= 0 && endOffset <= sequence.length()) {
-                String codon = sequence.substring(offset, endOffset).toUpperCase();
-                aa = GENETIC_CODE_11.get(codon);
-                if (aa == null) {
-                    aa = "X";
-                    suspicion = true;
-                }
-            }
+            if (offset >= 0 && offset + 3 <= sequence.length())
+                aa = gc.translateString5(track.get(offset));
             buffer[i] = aa;
             offset += stride;
         }
-        sensor.storeSensors(buffer, suspicion);
+        sensor.storeSensors(buffer);
+    }
+
+    @Override
+    protected int windowStart(int pos, int len) {
+        // Skip the codons that start off the left edge of the contig.
+        int retVal = super.windowStart(pos, len);
+        if (retVal < 0)
+            retVal += (2 - retVal) / 3 * 3;
+        return retVal;
+    }
+
+    @Override
+    protected int windowEnd(int pos, int len) {
+        // Stop at the last codon that fits in the contig.
+        int start = super.windowStart(pos, len);
+        return start + Math.min(ContigSensorFactory.getFullWidth() / 3, (len - start) / 3) * 3;
+    }
+
+    @Override
+    protected int firstRegular(int len) {
+        return ContigSensorFactory.getLeftWidth() + 1;
+    }
+
+    @Override
+    protected int lastRegular(int len) {
+        return len + ContigSensorFactory.getLeftWidth() + 1 - ContigSensorFactory.getFullWidth() / 3 * 3;
+    }
+
+    @Override
+    protected boolean isAmbiguous(int c) {
+        return (c == 'U' || c == 'u' || super.isAmbiguous(c));
+    }
+
+    @Override
+    protected SequenceTrack.Builder getTrackBuilder() {
+        return GeneticCode.DNA_CODON_TRACK;
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return VOCABULARY.length();
+    }
+
+    @Override
+    public int getVocabularyIndex(String value) {
+        return VOCABULARY.indexOf(value.charAt(0));
     }
 
     /**
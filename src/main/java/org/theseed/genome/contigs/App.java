@@ -7,7 +7,8 @@ import org.theseed.utils.ICommand;
 /**
  * Output contig data for the learning module.  The possible commands are "train" to output
  * a training set, "predict" to output an input set for prediction, and "test" to
- * output a test set for verification.
+ * output a test set for verification.  The "bench" command measures the throughput of the other
+ * three on synthetic genomes.
  */
 public class App
 {
@@ -28,8 +29,11 @@ public class App
         case "test" :
             processor = new GenomeProcessor();
             break;
+        case "bench" :
+            processor = new BenchmarkProcessor();
+            break;
         default :
-            throw new RuntimeException("Invalid command " + command + ": must be \"train\", \"test\", or \"predict\".");
+            throw new RuntimeException("Invalid command " + command + ": must be \"train\", \"test\", \"predict\", or \"bench\".");
         }
         boolean ok = processor.parseCommand(newArgs);
         if (ok) {
@@ -0,0 +1,153 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This is an output stream for text lines that divides its output into files with a fixed number of lines each,
+ * so that each file of a training set holds a whole number of minibatches.  The files are named with a prefix,
+ * a 5-digit sequence number starting at 1, and a suffix (e.g. "train.00001.tbl").  Every file starts with the
+ * same header, which is not counted as a line.  A file is only created when there is a line to put in it, so
+ * only the last file can have fewer lines than the limit.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class BatchOutputStream extends OutputStream {
+
+    // FIELDS
+    /** output directory */
+    private final File outDir;
+    /** file name prefix */
+    private final String prefix;
+    /** file name suffix */
+    private final String suffix;
+    /** number of lines per file */
+    private final long fileLines;
+    /** header for each file, or NULL if there is none */
+    private final byte[] header;
+    /** current output file stream, or NULL if a new file is needed */
+    private OutputStream current;
+    /** number of lines written to the current file */
+    private long lines;
+    /** number of files created */
+    private int files;
+
+    /**
+     * Construct a batch output stream.
+     *
+     * @param outDir		output directory
+     * @param prefix		file name prefix
+     * @param suffix		file name suffix, including the period
+     * @param fileLines		number of lines per file
+     * @param header		header for each file (including the new-line), or NULL if there is none
+     */
+    public BatchOutputStream(File outDir, String prefix, String suffix, long fileLines, byte[] header) {
+        if (fileLines < 1)
+            throw new IllegalArgumentException("Output files must have at least one line.");
+        this.outDir = outDir;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.fileLines = fileLines;
+        this.header = header;
+        this.current = null;
+        this.lines = 0;
+        this.files = 0;
+    }
+
+    /**
+     * @return the name of an output file
+     *
+     * @param prefix	file name prefix
+     * @param idx		sequence number of the file (1-based)
+     * @param suffix	file name suffix
+     */
+    public static String fileName(String prefix, int idx, String suffix) {
+        return String.format("%s.%05d%s", prefix, idx, suffix);
+    }
+
+    /**
+     * Insure there is an open output file with room for another line.
+     *
+     * @throws IOException
+     */
+    private void ready() throws IOException {
+        if (this.current == null) {
+            this.files++;
+            File outFile = new File(this.outDir, fileName(this.prefix, this.files, this.suffix));
+            this.current = new BufferedOutputStream(new FileOutputStream(outFile));
+            if (this.header != null)
+                this.current.write(this.header);
+            this.lines = 0;
+        }
+    }
+
+    /**
+     * Record the end of a line, and close the current file if it is full.
+     *
+     * @throws IOException
+     */
+    private void endLine() throws IOException {
+        this.lines++;
+        if (this.lines >= this.fileLines) {
+            this.current.close();
+            this.current = null;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.ready();
+        this.current.write(b);
+        if (b == '\n')
+            this.endLine();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        while (off < end) {
+            this.ready();
+            // Find the end of the current line.
+            int i = off;
+            while (i < end && b[i] != '\n') i++;
+            if (i < end) {
+                // Write through the new-line.
+                this.current.write(b, off, i + 1 - off);
+                this.endLine();
+                off = i + 1;
+            } else {
+                this.current.write(b, off, end - off);
+                off = end;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.current != null)
+            this.current.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.current != null) {
+            this.current.close();
+            this.current = null;
+        }
+    }
+
+    /**
+     * @return the number of files created
+     */
+    public int getFiles() {
+        return this.files;
+    }
+
+}
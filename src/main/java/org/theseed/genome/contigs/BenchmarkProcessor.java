@@ -0,0 +1,488 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.theseed.utils.ICommand;
+
+/**
+ * This command measures the end-to-end throughput of the other commands.  It generates a set of synthetic
+ * genomes (see {@link SyntheticGenomeGenerator}), writing them as a directory of GTO files and a FASTA file of
+ * their contigs, and then runs "train" and "test" on the GTO files and "predict" on the FASTA file, all in
+ * this process.  Because the commands run exactly as they would from the command line, the measurements
+ * include the file I/O, the genome parsing, and the output balancing, which microbenchmarks leave out.
+ *
+ * The output of each stage is counted and discarded (the "test" stage writes its files to the work
+ * directory), and a tab-delimited report is written to the standard output with one line per stage.  The
+ * columns are the stage name, the wall-clock seconds, the number of output rows, the rows per second, the
+ * megabytes of input, the input megabytes per second, the megabytes of output, and the peak heap usage in
+ * megabytes (the sum of the peak usages of the heap memory pools during the stage).  The output is always in
+ * TEXT format, so that the rows can be counted.
+ *
+ * The error output of each stage is captured and passed through to STDERR when the stage ends.  A stage fails if
+ * it throws an exception, writes an error message, or produces no rows.  A failed stage is reported as a line
+ * containing the stage name and "FAILED", and the reason is written to STDERR; the remaining stages still run.
+ *
+ * The following command-line options are supported.
+ *
+ * -v	write progress messages to STDERR
+ * -o	work directory for the synthetic data and the test output; the default is a temporary directory that
+ * 		is deleted at the end of the run
+ *
+ * --genomes	number of genomes to generate; the default is 5
+ * --contigs	number of contigs per genome; the default is 4
+ * --minLen		minimum contig length; the default is 20000
+ * --maxLen		maximum contig length; the default is 200000
+ * --density	fraction of each contig covered by genes; the default is 0.85
+ * --ambig		fraction of nucleotides that are ambiguous; the default is 0.001
+ * --seed		seed for the random number generator; the default is 42, and the same seed always produces the
+ * 				same genomes
+ * --stages		comma-delimited list of the stages to run; the default is "train,test,predict"
+ * --threads	number of threads for each stage; the default is 1
+ * --sensor		type of DNA sensor to use (see {@link ContigProcessor}); the default is CHANNEL
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class BenchmarkProcessor implements ICommand {
+
+    /**
+     * Enumeration of the benchmark stages.
+     */
+    public static enum Stage {
+        TRAIN, TEST, PREDICT;
+
+        /**
+         * @return the command name for this stage
+         */
+        public String command() {
+            return this.name().toLowerCase();
+        }
+    }
+
+    // FIELDS
+    /** stages to run */
+    private Set<Stage> stageSet;
+    /** TRUE if the work directory is temporary */
+    private boolean tempDir;
+    /** synthetic genome generator */
+    private SyntheticGenomeGenerator generator;
+
+    /** header line for the report */
+    public static final String REPORT_HEADER = "stage\tseconds\trows\trows/sec\tinput_mb\tmb/sec\toutput_mb\tpeak_heap_mb";
+    /** report column for a failed stage */
+    public static final String FAILED = "FAILED";
+    /** prefix of the error messages written by the commands */
+    private static final String ERROR_PREFIX = "Error";
+    /** number of bytes in a megabyte */
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    // COMMAND-LINE OPTIONS
+
+    /** help option */
+    @Option(name="-h", aliases={"--help"}, help=true)
+    private boolean help;
+
+    /** debug switch */
+    @Option(name="-v", aliases={"--verbose", "--debug"}, usage="write progress messages to STDERR")
+    private boolean debug;
+
+    /** work directory */
+    @Option(name="-o", aliases={"--workDir"}, metaVar="benchDir", usage="work directory (default: temporary)")
+    private File workDir;
+
+    /** number of genomes */
+    @Option(name="--genomes", metaVar="20", usage="number of synthetic genomes")
+    private int genomeCount;
+
+    /** number of contigs per genome */
+    @Option(name="--contigs", metaVar="10", usage="number of contigs per genome")
+    private int contigCount;
+
+    /** minimum contig length */
+    @Option(name="--minLen", metaVar="1000", usage="minimum contig length")
+    private int minLen;
+
+    /** maximum contig length */
+    @Option(name="--maxLen", metaVar="500000", usage="maximum contig length")
+    private int maxLen;
+
+    /** gene density */
+    @Option(name="--density", metaVar="0.9", usage="fraction of each contig covered by genes")
+    private double density;
+
+    /** ambiguity rate */
+    @Option(name="--ambig", metaVar="0.01", usage="fraction of nucleotides that are ambiguous")
+    private double ambiguity;
+
+    /** random number seed */
+    @Option(name="--seed", metaVar="1234", usage="random number seed for the synthetic genomes")
+    private long seed;
+
+    /** stages to run */
+    @Option(name="--stages", metaVar="test,predict", usage="comma-delimited list of stages to run")
+    private String stages;
+
+    /** number of threads */
+    @Option(name="--threads", metaVar="8", usage="number of threads for each stage")
+    private int threads;
+
+    /** sensor type */
+    @Option(name="--sensor", metaVar="codon", usage="type of DNA sensor to use (default: CHANNEL)")
+    private ContigSensorFactory.Type sensorType;
+
+    @Override
+    public boolean parseCommand(String[] args) {
+        boolean retVal = false;
+        // Set the defaults.
+        this.help = false;
+        this.debug = false;
+        this.workDir = null;
+        this.genomeCount = 5;
+        this.contigCount = 4;
+        this.minLen = 20000;
+        this.maxLen = 200000;
+        this.density = 0.85;
+        this.ambiguity = 0.001;
+        this.seed = 42;
+        this.stages = "train,test,predict";
+        this.threads = 1;
+        this.sensorType = ContigSensorFactory.Type.CHANNEL;
+        CmdLineParser parser = new CmdLineParser(this);
+        try {
+            parser.parseArgument(args);
+            if (this.help) {
+                parser.printUsage(System.err);
+            } else {
+                if (this.genomeCount < 1) {
+                    throw new IllegalArgumentException("At least one genome is required.");
+                }
+                if (this.threads < 1) {
+                    throw new IllegalArgumentException("Thread count must be at least 1.");
+                }
+                this.stageSet = parseStages(this.stages);
+                // Create the generator.  This validates the genome parameters.
+                this.generator = new SyntheticGenomeGenerator(this.seed).setContigs(this.contigCount)
+                        .setLengths(this.minLen, this.maxLen).setDensity(this.density).setAmbiguity(this.ambiguity);
+                // Set up the work directory.
+                this.tempDir = (this.workDir == null);
+                if (this.tempDir) {
+                    this.workDir = Files.createTempDirectory("contigBench").toFile();
+                } else if (! this.workDir.isDirectory()) {
+                    if (this.workDir.exists())
+                        throw new IOException(this.workDir + " is not a directory.");
+                    if (! this.workDir.mkdirs())
+                        throw new IOException("Could not create work directory " + this.workDir + ".");
+                }
+                retVal = true;
+            }
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+        } catch (IOException e) {
+            System.err.println("Error creating work directory: " + e.getMessage());
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the set of stages in a comma-delimited stage list
+     *
+     * @param stageList		comma-delimited list of stage names
+     *
+     * @throws IllegalArgumentException if a stage name is invalid
+     */
+    protected static Set<Stage> parseStages(String stageList) {
+        Set<Stage> retVal = EnumSet.noneOf(Stage.class);
+        for (String name : stageList.split(",")) {
+            try {
+                retVal.add(Stage.valueOf(name.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid benchmark stage \"" + name + "\".");
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    public void run() {
+        try {
+            File gtoDir = new File(this.workDir, "genomes");
+            File fastaFile = new File(this.workDir, "contigs.fa");
+            // Generate the synthetic data.
+            long start = System.currentTimeMillis();
+            this.generator.generate(this.genomeCount, gtoDir, fastaFile);
+            long gtoBytes = 0;
+            for (File gtoFile : GenomeProcessor.expandInputs(Collections.singletonList(gtoDir)))
+                gtoBytes += gtoFile.length();
+            if (this.debug)
+                System.err.format("%d genomes generated in %s in %.3f seconds.%n", this.genomeCount, this.workDir,
+                        (System.currentTimeMillis() - start) / 1000.0);
+            // Run the stages.
+            System.out.println(REPORT_HEADER);
+            for (Stage stage : this.stageSet) {
+                List<String> args = new ArrayList<String>();
+                args.add("--sensor");
+                args.add(this.sensorType.name());
+                args.add("--threads");
+                args.add(Integer.toString(this.threads));
+                long inputBytes = gtoBytes;
+                File testDir = new File(this.workDir, "test");
+                switch (stage) {
+                case TRAIN :
+                    args.add(gtoDir.getPath());
+                    break;
+                case TEST :
+                    args.add("-o");
+                    args.add(testDir.getPath());
+                    args.add(gtoDir.getPath());
+                    break;
+                case PREDICT :
+                    args.add(fastaFile.getPath());
+                    inputBytes = fastaFile.length();
+                    break;
+                }
+                if (this.debug) System.err.println("Running " + stage.command() + " " + String.join(" ", args) + ".");
+                String line;
+                try {
+                    line = this.runStage(stage, args.toArray(new String[args.size()]), inputBytes, testDir);
+                } catch (IOException e) {
+                    line = failedLine(stage, e.getMessage());
+                }
+                System.out.println(line);
+            }
+        } catch (IOException e) {
+            System.err.println("Error running benchmark: " + e.getMessage());
+        } finally {
+            if (this.tempDir)
+                deleteTree(this.workDir);
+        }
+    }
+
+    /**
+     * Run a single benchmark stage.
+     *
+     * @return the report line for the stage, or a line marking it FAILED
+     *
+     * @param stage			stage to run
+     * @param args			command-line parameters for the stage's command
+     * @param inputBytes	number of bytes of input
+     * @param testDir		output directory for the test stage
+     *
+     * @throws IOException
+     */
+    private String runStage(Stage stage, String[] args, long inputBytes, File testDir) throws IOException {
+        ICommand processor;
+        switch (stage) {
+        case TRAIN :
+            processor = new ContigProcessor();
+            break;
+        case TEST :
+            processor = new GenomeProcessor();
+            break;
+        default :
+            processor = new FastaProcessor();
+        }
+        if (! processor.parseCommand(args))
+            throw new IOException("Invalid parameters for " + stage.command() + " stage.");
+        // Clear the heap so the peak reflects this stage.
+        List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid())
+                pools.add(pool);
+        }
+        System.gc();
+        for (MemoryPoolMXBean pool : pools)
+            pool.resetPeakUsage();
+        // Capture the standard output and error output and run the command.
+        CountingStream counter = new CountingStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        String failure = null;
+        long start = System.nanoTime();
+        try (PrintStream newOut = new PrintStream(counter, false); PrintStream newErr = new PrintStream(errors, true)) {
+            System.setOut(newOut);
+            System.setErr(newErr);
+            processor.run();
+            newOut.flush();
+        } catch (RuntimeException e) {
+            failure = e.toString();
+        } finally {
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+        }
+        String messages = errors.toString();
+        System.err.print(messages);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools)
+            peak += pool.getPeakUsage().getUsed();
+        // Count the output.  For the test stage, the output is in files, and the rows are in the summary.
+        long rows;
+        long outputBytes;
+        if (stage == Stage.TEST) {
+            rows = summaryRows(new File(testDir, GenomeProcessor.SUMMARY_FILE));
+            outputBytes = 0;
+            File[] outFiles = testDir.listFiles();
+            if (outFiles != null) for (File outFile : outFiles)
+                outputBytes += outFile.length();
+        } else {
+            rows = Math.max(0, counter.getLines() - 1);
+            outputBytes = counter.getBytes();
+        }
+        if (failure == null)
+            failure = failureOf(messages, rows);
+        String retVal;
+        if (failure == null) {
+            retVal = reportLine(stage.command(), seconds, rows, inputBytes, outputBytes, peak);
+        } else {
+            retVal = failedLine(stage, failure);
+        }
+        return retVal;
+    }
+
+    /**
+     * Report the reason for a stage failure to STDERR.
+     *
+     * @return the report line for a failed stage
+     *
+     * @param stage		stage that failed
+     * @param reason	reason for the failure
+     */
+    private static String failedLine(Stage stage, String reason) {
+        System.err.println("Stage " + stage.command() + " failed: " + reason);
+        return stage.command() + "\t" + FAILED;
+    }
+
+    /**
+     * @return the reason a stage failed, or NULL if it succeeded
+     *
+     * @param messages	error output of the stage
+     * @param rows		number of output rows from the stage
+     */
+    protected static String failureOf(String messages, long rows) {
+        String retVal = null;
+        for (String line : messages.split("\\R")) {
+            if (retVal == null && line.startsWith(ERROR_PREFIX))
+                retVal = line;
+        }
+        if (retVal == null && rows == 0)
+            retVal = "No output rows were produced.";
+        return retVal;
+    }
+
+    /**
+     * @return a report line for a stage
+     *
+     * @param name			stage name
+     * @param seconds		wall-clock time of the stage
+     * @param rows			number of output rows
+     * @param inputBytes	number of bytes of input
+     * @param outputBytes	number of bytes of output
+     * @param peakHeap		peak heap usage in bytes
+     */
+    protected static String reportLine(String name, double seconds, long rows, long inputBytes, long outputBytes,
+            long peakHeap) {
+        double time = Math.max(seconds, 1e-9);
+        return String.format("%s\t%.3f\t%d\t%.1f\t%.2f\t%.2f\t%.2f\t%.1f", name, seconds, rows, rows / time,
+                inputBytes / MEGABYTE, inputBytes / MEGABYTE / time, outputBytes / MEGABYTE, peakHeap / MEGABYTE);
+    }
+
+    /**
+     * @return the total number of rows listed in a test summary file, or 0 if there is none
+     *
+     * @param summaryFile	summary file from the test command
+     *
+     * @throws IOException
+     */
+    private static long summaryRows(File summaryFile) throws IOException {
+        long retVal = 0;
+        if (summaryFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(summaryFile))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.startsWith("TOTAL\t"))
+                        retVal = Long.parseLong(line.substring(line.lastIndexOf('\t') + 1));
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Delete a directory and everything in it.  This is also used by the tests to clean up their work directories.
+     *
+     * @param dir	directory to delete
+     */
+    static void deleteTree(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) for (File file : files) {
+            if (file.isDirectory())
+                deleteTree(file);
+            else
+                file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * This is an output stream that counts the bytes and lines written to it and discards them.
+     */
+    protected static class CountingStream extends OutputStream {
+
+        /** number of bytes written */
+        private long bytes;
+        /** number of line-feeds written */
+        private long lines;
+
+        @Override
+        public void write(int b) {
+            this.bytes++;
+            if (b == '\n') this.lines++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.bytes += len;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') this.lines++;
+            }
+        }
+
+        /**
+         * @return the number of bytes written
+         */
+        public long getBytes() {
+            return this.bytes;
+        }
+
+        /**
+         * @return the number of lines written
+         */
+        public long getLines() {
+            return this.lines;
+        }
+
+    }
+
+}
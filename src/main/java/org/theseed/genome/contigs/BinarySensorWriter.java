@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This sensor writer produces binary records.  All the numbers are big-endian and all the strings are in the
+ * modified UTF-8 format of java.io.DataOutput (a two-byte length followed by the characters).
+ *
+ * The header consists of the four bytes "CSNS", an integer version number (currently 1), the name of the
+ * sensor value encoding, the number of label columns followed by their names, and the number of sensor
+ * columns followed by their names.
+ *
+ * Each record consists of the label values followed by the sensor values.  The sensor values are encoded
+ * by the sensor factory.  For the "utf" encoding, each value is a string.  For the "bits" encoding, the
+ * values are 0 or 1 and are packed eight to a byte, high-order bit first, with the last byte padded on the
+ * right.  For the "uint8" encoding, each value is a single unsigned byte.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class BinarySensorWriter extends SensorWriter {
+
+    // FIELDS
+    /** underlying output stream */
+    private final OutputStream stream;
+    /** buffered data stream for the output */
+    private final DataOutputStream out;
+    /** in-memory output stream for a forked writer, or NULL for a normal writer */
+    private final ByteArrayOutputStream memory;
+
+    /** file format signature */
+    public static final byte[] MAGIC = new byte[] { 'C', 'S', 'N', 'S' };
+    /** file format version */
+    public static final int VERSION = 1;
+
+    /**
+     * Construct a binary sensor writer.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     */
+    public BinarySensorWriter(OutputStream stream, ContigSensorFactory factory) {
+        this(stream, factory, null);
+    }
+
+    /**
+     * Construct a binary sensor writer, possibly for in-memory output.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     * @param memory	in-memory output stream (same as the target), or NULL for a normal writer
+     */
+    protected BinarySensorWriter(OutputStream stream, ContigSensorFactory factory, ByteArrayOutputStream memory) {
+        super(factory);
+        this.stream = stream;
+        this.out = new DataOutputStream(new BufferedOutputStream(stream));
+        this.memory = memory;
+    }
+
+    @Override
+    public void writeHeader(String... labels) throws IOException {
+        ContigSensorFactory factory = this.getFactory();
+        this.out.write(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeUTF(factory.getBinaryEncoding());
+        this.out.writeInt(labels.length);
+        for (String label : labels)
+            this.out.writeUTF(label);
+        String[] columns = factory.sensor_headers().split("\t");
+        this.out.writeInt(columns.length);
+        for (String column : columns)
+            this.out.writeUTF(column);
+    }
+
+    @Override
+    public void write(ContigSensor sensor, String... labels) throws IOException {
+        for (String label : labels)
+            this.out.writeUTF(label);
+        this.getFactory().writeBinary(sensor, this.out);
+    }
+
+    @Override
+    public SensorWriter fork() {
+        ByteArrayOutputStream memory = memoryStream();
+        return this.inherit(new BinarySensorWriter(memory, this.getFactory(), memory));
+    }
+
+    @Override
+    public byte[] toBytes() throws IOException {
+        if (this.memory == null)
+            throw new IllegalStateException("Only a forked sensor writer can return its output.");
+        this.out.flush();
+        return this.memory.toByteArray();
+    }
+
+    @Override
+    public void writeBytes(byte[] bytes) throws IOException {
+        this.out.flush();
+        this.stream.write(bytes);
+    }
+
+    /**
+     * @return the buffered data stream for the output
+     */
+    protected DataOutputStream getOutput() {
+        return this.out;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+        this.stream.flush();
+    }
+
+}
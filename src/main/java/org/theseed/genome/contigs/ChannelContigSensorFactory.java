@@ -5,7 +5,8 @@ package org.theseed.genome.contigs;
 
 /**
  * This very simple sensor factory simply copies each DNA letter to the output as a column.
- * We have a rather extensive switch statement to insure only valid letters are copied.
+ * We have a table of valid letters to insure only those are copied; anything else is output
+ * as "X" and makes the sensor suspicious.
  *
  * @author Bruce Parrello
  *
@@ -13,8 +14,7 @@ package org.theseed.genome.contigs;
 public class ChannelContigSensorFactory extends ContigSensorFactory {
 
     @Override
-    protected void convertSequence(ContigSensor sensor, String sequence, int pos) {
-        boolean suspicion = false;
+    protected void convertSequence(ContigSensor sensor, CharSequence sequence, int pos) {
         int offset = pos - ContigSensorFactory.getLeftWidth() - 1;
         String[] buffer = new String[ContigSensorFactory.getFullWidth()];
         for (int i = 0; i < buffer.length; i++) {
@@ -23,41 +23,44 @@ public class ChannelContigSensorFactory extends ContigSensorFactory {
                 buffer[i] = "-";
             } else {
                 char nucleon = sequence.charAt(actual);
-                switch (nucleon) {
-                case 'a' :
-                case 'A' :
-                case 'c' :
-                case 'C' :
-                case 'g' :
-                case 'G' :
-                case 't' :
-                case 'T' :
-                case 'u' :
-                case 'U' :
-                case '-' :
-                case 'x' :
-                case 'X' :
-                case 'y' :
-                case 'Y' :
-                case 'r' :
-                case 'R' :
-                case 'w' :
-                case 'W' :
-                case 's' :
-                case 'S' :
-                case 'k' :
-                case 'K' :
-                case 'm' :
-                case 'M' :
-                    buffer[i] = String.valueOf(nucleon);
-                    break;
-                default :
-                    buffer[i] = "X";
-                    suspicion = true;
-                }
+                buffer[i] = (this.isAmbiguous(nucleon) ? "X" : CHAR_STRINGS[nucleon]);
             }
         }
-        sensor.storeSensors(buffer, suspicion);
+        sensor.storeSensors(buffer);
+    }
+
+    @Override
+    protected boolean isAmbiguous(int c) {
+        return (c >= 128 || ! VALID[c]);
+    }
+
+    /** one-character strings for the ASCII characters, so that no strings are built per position */
+    private static final String[] CHAR_STRINGS = new String[128];
+    static {
+        for (char c = 0; c < 128; c++)
+            CHAR_STRINGS[c] = String.valueOf(c);
+    }
+
+    /** TRUE for each ASCII character that is copied to the output */
+    private static final boolean[] VALID = new boolean[128];
+    static {
+        for (char c : "ACGTUXYRWSKM-".toCharArray()) {
+            VALID[c] = true;
+            VALID[Character.toLowerCase(c)] = true;
+        }
+    }
+
+    /** vocabulary of channel letters, in sparse feature order */
+    private static final String VOCABULARY = "ACGTUXYRWSKM";
+
+    @Override
+    public int getVocabularySize() {
+        return VOCABULARY.length();
+    }
+
+    @Override
+    public int getVocabularyIndex(String value) {
+        return VOCABULARY.indexOf(Character.toUpperCase(value.charAt(0)));
     }
 
 }
@@ -8,53 +8,104 @@ package org.theseed.genome.contigs;
  * must be a multiple of 3 and the right width one less than a multiple of 3.  The triples are all converted to lower case,
  * and anything other than the four real ones is converted to "n".
  *
+ * Codons that are entirely inside the contig are read from a precomputed track of ambiguity-aware codon codes,
+ * so each codon of a contig is only decoded once no matter how many windows contain it.  Codons that run off
+ * either edge of the contig are decoded directly.
+ *
  * @author Bruce Parrello
  *
  */
 public class CodonContigSensorFactory extends ContigSensorFactory {
 
+    /** output string for each ambiguity-aware codon code */
+    private static final String[] CODON_STRINGS = new String[GeneticCode.CODON_CODES_5];
+    static {
+        String letters = "acgtn";
+        for (int code5 = 0; code5 < GeneticCode.CODON_CODES_5; code5++) {
+            CODON_STRINGS[code5] = new String(new char[] { letters.charAt(code5 / 25),
+                    letters.charAt((code5 / 5) % 5), letters.charAt(code5 % 5) });
+        }
+    }
+
     @Override
-    protected void convertSequence(ContigSensor sensor, String sequence, int pos) {
-        boolean suspicion = false;
+    protected void convertSequence(ContigSensor sensor, CharSequence sequence, int pos) {
         int offset = pos - ContigSensorFactory.getLeftWidth() - 1;
         int stride = this.getStride();
         int fullWidth = ContigSensorFactory.getFullWidth();
+        int len = sequence.length();
+        SequenceTrack track = this.getTrack(sequence);
         String[] buffer = new String[fullWidth / stride];
         for (int i = 0; i < buffer.length; i++) {
-            StringBuffer v = new StringBuffer(3);
-            for (int j = offset; j <= offset + 2; j++) {
-                if (j < 0 || j >= sequence.length()) {
-                    v.append('-');
-                } else {
-                    switch (sequence.charAt(j)) {
-                    case 'A' :
-                    case 'a' :
-                        v.append('a');
-                        break;
-                    case 'C' :
-                    case 'c' :
-                        v.append('c');
-                        break;
-                    case 'G' :
-                    case 'g' :
-                        v.append('g');
-                        break;
-                    case 'T' :
-                    case 't' :
-                    case 'U' :
-                    case 'u' :
-                        v.append('t');
-                        break;
-                    default :
-                        v.append('n');
-                        suspicion = true;
-                    }
-                }
+            if (offset >= 0 && offset + 3 <= len) {
+                buffer[i] = CODON_STRINGS[track.get(offset)];
+            } else {
+                buffer[i] = edgeCodon(sequence, offset);
             }
-            buffer[i] = v.toString();
             offset += stride;
         }
-        sensor.storeSensors(buffer, suspicion);
+        sensor.storeSensors(buffer);
+    }
+
+    @Override
+    protected int windowEnd(int pos, int len) {
+        return this.windowStart(pos, len) + ContigSensorFactory.getFullWidth() / 3 * 3;
+    }
+
+    /**
+     * @return the string for a codon that runs off the edge of the sequence
+     *
+     * @param sequence	source sequence
+     * @param offset	0-based offset of the codon's first nucleotide
+     */
+    private static String edgeCodon(CharSequence sequence, int offset) {
+        StringBuffer v = new StringBuffer(3);
+        for (int j = offset; j <= offset + 2; j++) {
+            if (j < 0 || j >= sequence.length()) {
+                v.append('-');
+            } else {
+                switch (sequence.charAt(j)) {
+                case 'A' :
+                case 'a' :
+                    v.append('a');
+                    break;
+                case 'C' :
+                case 'c' :
+                    v.append('c');
+                    break;
+                case 'G' :
+                case 'g' :
+                    v.append('g');
+                    break;
+                case 'T' :
+                case 't' :
+                case 'U' :
+                case 'u' :
+                    v.append('t');
+                    break;
+                default :
+                    v.append('n');
+                }
+            }
+        }
+        return v.toString();
+    }
+
+    @Override
+    protected SequenceTrack.Builder getTrackBuilder() {
+        return GeneticCode.CODON_TRACK;
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return 64;
+    }
+
+    @Override
+    public int getVocabularyIndex(String value) {
+        int retVal = -1;
+        if (value.length() == 3)
+            retVal = GeneticCode.codonCode(value, 0);
+        return retVal;
     }
 
     /**
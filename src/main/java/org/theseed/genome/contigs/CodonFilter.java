@@ -5,12 +5,12 @@ package org.theseed.genome.contigs;
 
 import java.util.HashSet;
 
-import org.apache.commons.lang3.StringUtils;
-
 /**
  * This class looks at a position in a contig and accepts or rejects it depending on whether the
  * codon at the current position matches one of several predefined patterns.  The patterns are
- * specified in the constructor.
+ * specified in the constructor.  Codons made entirely of A, C, G, and T are checked with a table
+ * lookup, and the strings for them are shared, so neither the check nor {@link #getCodon} creates
+ * any objects for an ordinary codon.
  *
  * @author Bruce Parrello
  *
@@ -19,6 +19,17 @@ public class CodonFilter {
 
     /** set of codons for which to filter */
     private HashSet<String> codons;
+    /** TRUE for each codon code (see {@link GeneticCode#codonCode}) that is in the set */
+    private boolean[] codonTable;
+
+    /** upper-case string for each codon code */
+    private static final String[] CODON_STRINGS = new String[64];
+    static {
+        String bases = "ACGT";
+        for (int code = 0; code < 64; code++)
+            CODON_STRINGS[code] = new String(new char[] { bases.charAt(code >> 4), bases.charAt(code >> 2 & 3),
+                    bases.charAt(code & 3) });
+    }
 
     /**
      * Construct a new codon filter.
@@ -27,8 +38,14 @@ public class CodonFilter {
      */
     public CodonFilter(String... codon) {
         this.codons = new HashSet<String>(codon.length);
+        this.codonTable = new boolean[64];
         for (String filterCodon : codon) {
-            this.codons.add(filterCodon.toUpperCase());
+            String normal = filterCodon.toUpperCase();
+            this.codons.add(normal);
+            if (normal.length() == 3 && normal.indexOf('U') < 0) {
+                int code = GeneticCode.codonCode(normal, 0);
+                if (code >= 0) this.codonTable[code] = true;
+            }
         }
     }
 
@@ -38,9 +55,42 @@ public class CodonFilter {
      * @param pos		position (1-based) in a sequence
      * @param sequence	DNA sequence to check
      */
-    public boolean matches(int pos, String sequence) {
-        String codon = getCodon(pos, sequence);
-        return this.codons.contains(codon);
+    public boolean matches(int pos, CharSequence sequence) {
+        boolean retVal;
+        int code = codeAt(pos, sequence);
+        if (code >= 0) {
+            // Here we have an ordinary codon, and we can check it without building a string.
+            retVal = this.codonTable[code];
+        } else {
+            retVal = this.codons.contains(getCodon(pos, sequence));
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the codon code of the codon at a position, or a negative number if the codon is not made entirely of
+     * 		   A, C, G, and T or does not fit in the sequence
+     *
+     * @param pos		position (1-based) in a sequence
+     * @param sequence	DNA sequence containing the codon
+     */
+    private static int codeAt(int pos, CharSequence sequence) {
+        int retVal = -1;
+        int offset = pos - 1;
+        if (offset >= 0 && offset + 3 <= sequence.length())
+            retVal = dnaCode(sequence.charAt(offset)) << 4 | dnaCode(sequence.charAt(offset + 1)) << 2 |
+                    dnaCode(sequence.charAt(offset + 2));
+        return retVal;
+    }
+
+    /**
+     * @return the code (0 to 3) for a DNA nucleotide, or -1 for anything else
+     *
+     * @param c		nucleotide character
+     */
+    private static int dnaCode(char c) {
+        // "U" is excluded, since the codon strings would not convert it to "T".
+        return (c == 'U' || c == 'u' ? -1 : GeneticCode.baseCode(c));
     }
 
     /**
@@ -49,8 +99,20 @@ public class CodonFilter {
      * @param pos		relevant position (1-based)
      * @param sequence	sequence containing the codon
      */
-    public static String getCodon(int pos, String sequence) {
-        return StringUtils.substring(sequence, pos-1, pos+2).toUpperCase();
+    public static String getCodon(int pos, CharSequence sequence) {
+        String retVal;
+        int code = codeAt(pos, sequence);
+        if (code >= 0) {
+            retVal = CODON_STRINGS[code];
+        } else {
+            int start = Math.max(pos - 1, 0);
+            int end = Math.min(pos + 2, sequence.length());
+            char[] buffer = new char[Math.max(end - start, 0)];
+            for (int i = 0; i < buffer.length; i++)
+                buffer[i] = Character.toUpperCase(sequence.charAt(start + i));
+            retVal = new String(buffer);
+        }
+        return retVal;
     }
 
 }
@@ -0,0 +1,422 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This object reads a columnar sensor file produced by {@link ColumnarSensorWriter}.  The header and the
+ * row group index are read when the file is opened.  After that, each column chunk is only read when it is
+ * requested, so a client that needs only a few columns reads only those parts of the file.
+ *
+ * A column chunk can be returned in dictionary form (the dictionary values and one code per row), which is
+ * convenient for building one-hot or embedding inputs, or the rows of a set of columns can be scanned as
+ * strings.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ColumnarSensorReader implements Closeable {
+
+    // FIELDS
+    /** input file */
+    private final RandomAccessFile file;
+    /** names of the label columns */
+    private final List<String> labels;
+    /** names of the sensor columns */
+    private final List<String> sensors;
+    /** number of rows in each row group */
+    private final int[] groupRows;
+    /** file offset of each column chunk, indexed by row group and column */
+    private final long[][] offsets;
+    /** length of each column chunk, indexed by row group and column */
+    private final int[][] lengths;
+    /** total number of rows */
+    private final long size;
+
+    /**
+     * This object contains a dictionary-encoded column chunk.
+     */
+    public static class ColumnChunk {
+
+        /** dictionary values, in code order */
+        private final String[] dictionary;
+        /** code for each row */
+        private final int[] codes;
+
+        /**
+         * Construct a column chunk.
+         *
+         * @param dictionary	dictionary values
+         * @param codes			row codes
+         */
+        protected ColumnChunk(String[] dictionary, int[] codes) {
+            this.dictionary = dictionary;
+            this.codes = codes;
+        }
+
+        /**
+         * @return the dictionary values, in code order
+         */
+        public String[] getDictionary() {
+            return this.dictionary;
+        }
+
+        /**
+         * @return the code for each row
+         */
+        public int[] getCodes() {
+            return this.codes;
+        }
+
+        /**
+         * @return the value in a row
+         *
+         * @param row	index of the row in the row group
+         */
+        public String getValue(int row) {
+            return this.dictionary[this.codes[row]];
+        }
+
+        /**
+         * @return the number of rows
+         */
+        public int size() {
+            return this.codes.length;
+        }
+
+    }
+
+    /**
+     * Open a columnar sensor file.
+     *
+     * @param inFile	file to open
+     *
+     * @throws IOException
+     */
+    public ColumnarSensorReader(File inFile) throws IOException {
+        this.file = new RandomAccessFile(inFile, "r");
+        try {
+            // Read the header.
+            byte[] magic = new byte[ColumnarSensorWriter.MAGIC.length];
+            this.file.readFully(magic);
+            if (! Arrays.equals(magic, ColumnarSensorWriter.MAGIC))
+                throw new IOException(inFile + " is not a columnar sensor file.");
+            int version = this.file.readInt();
+            if (version != ColumnarSensorWriter.VERSION)
+                throw new IOException(inFile + " has unsupported version " + version + ".");
+            this.labels = readNames(this.file);
+            this.sensors = readNames(this.file);
+            // Read the trailer to find the footer.
+            long trailer = this.file.length() - 8 - magic.length;
+            if (trailer < 0)
+                throw new IOException(inFile + " is incomplete.");
+            this.file.seek(trailer);
+            long footerOffset = this.file.readLong();
+            this.file.readFully(magic);
+            if (! Arrays.equals(magic, ColumnarSensorWriter.MAGIC))
+                throw new IOException(inFile + " is incomplete.");
+            // Read the row group index.
+            this.file.seek(footerOffset);
+            int groups = this.file.readInt();
+            int width = this.labels.size() + this.sensors.size();
+            this.groupRows = new int[groups];
+            this.offsets = new long[groups][width];
+            this.lengths = new int[groups][width];
+            long total = 0;
+            for (int g = 0; g < groups; g++) {
+                this.groupRows[g] = this.file.readInt();
+                total += this.groupRows[g];
+                for (int i = 0; i < width; i++) {
+                    this.offsets[g][i] = this.file.readLong();
+                    this.lengths[g][i] = this.file.readInt();
+                }
+            }
+            this.size = total;
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a list of names read from the header
+     *
+     * @param in	input file positioned at the name count
+     *
+     * @throws IOException
+     */
+    private static List<String> readNames(RandomAccessFile in) throws IOException {
+        int n = in.readInt();
+        List<String> retVal = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++)
+            retVal.add(in.readUTF());
+        return retVal;
+    }
+
+    /**
+     * @return the names of the label columns
+     */
+    public List<String> getLabelNames() {
+        return this.labels;
+    }
+
+    /**
+     * @return the names of the sensor columns
+     */
+    public List<String> getSensorNames() {
+        return this.sensors;
+    }
+
+    /**
+     * @return the total number of columns (labels plus sensors)
+     */
+    public int getWidth() {
+        return this.labels.size() + this.sensors.size();
+    }
+
+    /**
+     * @return the index of a column, or -1 if there is no column with the specified name
+     *
+     * @param name	name of a label or sensor column
+     */
+    public int getColumnIndex(String name) {
+        int retVal = this.labels.indexOf(name);
+        if (retVal < 0) {
+            retVal = this.sensors.indexOf(name);
+            if (retVal >= 0) retVal += this.labels.size();
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of row groups
+     */
+    public int getGroupCount() {
+        return this.groupRows.length;
+    }
+
+    /**
+     * @return the number of rows in a row group
+     *
+     * @param group		index of the row group
+     */
+    public int getGroupSize(int group) {
+        return this.groupRows[group];
+    }
+
+    /**
+     * @return the total number of rows
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * @return a column chunk from a row group
+     *
+     * @param group		index of the row group
+     * @param column	index of the column
+     *
+     * @throws IOException
+     */
+    public ColumnChunk readColumn(int group, int column) throws IOException {
+        byte[] buffer = new byte[this.lengths[group][column]];
+        synchronized (this.file) {
+            this.file.seek(this.offsets[group][column]);
+            this.file.readFully(buffer);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer));
+        String[] dictionary = new String[in.readInt()];
+        for (int i = 0; i < dictionary.length; i++)
+            dictionary[i] = in.readUTF();
+        int encoding = in.readByte();
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        int n = this.groupRows[group];
+        int[] codes;
+        switch (encoding) {
+        case ColumnarSensorWriter.BIT_PACKED :
+            codes = bitUnpack(data, n, ColumnarSensorWriter.bitWidth(dictionary.length));
+            break;
+        case ColumnarSensorWriter.RUN_LENGTH :
+            codes = runDecode(data, n);
+            break;
+        default :
+            throw new IOException("Invalid column encoding " + encoding + ".");
+        }
+        return new ColumnChunk(dictionary, codes);
+    }
+
+    /**
+     * @return the codes unpacked from bit-packed data
+     *
+     * @param data	bit-packed data
+     * @param n		number of codes
+     * @param bits	number of bits per code
+     */
+    private static int[] bitUnpack(byte[] data, int n, int bits) {
+        int[] retVal = new int[n];
+        long bitPos = 0;
+        for (int i = 0; i < n; i++) {
+            int code = 0;
+            for (int b = 0; b < bits; b++) {
+                code = (code << 1) | (data[(int) (bitPos >>> 3)] >>> (7 - (bitPos & 7)) & 1);
+                bitPos++;
+            }
+            retVal[i] = code;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the codes decoded from run-length data
+     *
+     * @param data	run-length data
+     * @param n		number of codes
+     *
+     * @throws IOException
+     */
+    private static int[] runDecode(byte[] data, int n) throws IOException {
+        int[] retVal = new int[n];
+        int[] pos = new int[] { 0 };
+        int i = 0;
+        while (pos[0] < data.length) {
+            int code = readVarint(data, pos);
+            int len = readVarint(data, pos);
+            if (i + len > n)
+                throw new IOException("Run-length data is longer than its row group.");
+            Arrays.fill(retVal, i, i + len, code);
+            i += len;
+        }
+        if (i != n)
+            throw new IOException("Run-length data is shorter than its row group.");
+        return retVal;
+    }
+
+    /**
+     * @return an unsigned variable-length integer
+     *
+     * @param data	data buffer
+     * @param pos	one-element array containing the current buffer position, updated in place
+     */
+    private static int readVarint(byte[] data, int[] pos) {
+        int retVal = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]++];
+            retVal |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return retVal;
+    }
+
+    /**
+     * @return an iterable over the rows of the file, restricted to the specified columns
+     *
+     * @param columns	indices of the columns to return, in the order desired
+     */
+    public Iterable<String[]> scan(int... columns) {
+        return () -> new RowIterator(columns);
+    }
+
+    /**
+     * @return an iterable over the rows of the file, restricted to the named columns
+     *
+     * @param names		names of the columns to return, in the order desired
+     *
+     * @throws IllegalArgumentException if a column name is not found
+     */
+    public Iterable<String[]> scan(String... names) {
+        int[] columns = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = this.getColumnIndex(names[i]);
+            if (columns[i] < 0)
+                throw new IllegalArgumentException("Column \"" + names[i] + "\" not found.");
+        }
+        return this.scan(columns);
+    }
+
+    /**
+     * This iterator returns the rows of the file one at a time.  Only the requested columns of each row group
+     * are read.
+     */
+    private class RowIterator implements Iterator<String[]> {
+
+        /** indices of the columns to return */
+        private final int[] columns;
+        /** chunks for the current row group */
+        private ColumnChunk[] chunks;
+        /** index of the current row group */
+        private int group;
+        /** index of the next row in the current row group */
+        private int row;
+
+        /**
+         * Construct a row iterator.
+         *
+         * @param columns	indices of the columns to return
+         */
+        protected RowIterator(int[] columns) {
+            this.columns = columns;
+            this.chunks = new ColumnChunk[columns.length];
+            this.group = -1;
+            this.row = 0;
+            this.advance();
+        }
+
+        /**
+         * Insure the current row group has a next row, moving to later row groups if necessary.
+         */
+        private void advance() {
+            while (this.group < getGroupCount() && (this.group < 0 || this.row >= getGroupSize(this.group))) {
+                this.group++;
+                this.row = 0;
+                if (this.group < getGroupCount()) {
+                    try {
+                        for (int i = 0; i < this.columns.length; i++)
+                            this.chunks[i] = readColumn(this.group, this.columns[i]);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error reading columnar sensor file: " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.group < getGroupCount();
+        }
+
+        @Override
+        public String[] next() {
+            if (! this.hasNext())
+                throw new NoSuchElementException();
+            String[] retVal = new String[this.columns.length];
+            for (int i = 0; i < retVal.length; i++)
+                retVal[i] = this.chunks[i].getValue(this.row);
+            this.row++;
+            this.advance();
+            return retVal;
+        }
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.file.close();
+    }
+
+}
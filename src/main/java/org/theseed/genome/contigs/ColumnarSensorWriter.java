@@ -0,0 +1,385 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This sensor writer produces a columnar file.  The rows are collected into row groups, and within each row
+ * group, each column (label or sensor) is stored separately as a column chunk.  Because the sensor values come
+ * from small alphabets, each column chunk is dictionary-encoded:  the distinct values are stored once, and
+ * each row is represented by the small integer code of its value.  The codes are then either bit-packed or
+ * run-length encoded, whichever is smaller.  A footer at the end of the file indexes the row groups and column
+ * chunks, so that a reader (see {@link ColumnarSensorReader}) can read only the columns it needs.
+ *
+ * All the numbers are big-endian and all the strings are in the modified UTF-8 format of java.io.DataOutput.
+ * The file consists of
+ *
+ * 	the header:  the four bytes "CSNC", an integer version number (currently 1), the number of label columns
+ * 		followed by their names, and the number of sensor columns followed by their names
+ *
+ * 	the row groups:  for each row group, one chunk for each column (labels first, then sensors); each chunk
+ * 		consists of the number of dictionary values, the dictionary values in code order, an encoding byte
+ * 		(0 for bit-packed, 1 for run-length), the number of data bytes, and the data bytes
+ *
+ * 	the footer:  the number of row groups, and for each row group the number of rows followed by the file
+ * 		offset (long) and length (int) of each column chunk
+ *
+ * 	the trailer:  the file offset of the footer (long) and the four bytes "CSNC"
+ *
+ * In bit-packed data, each code occupies the minimum number of bits needed for the largest code (zero if
+ * there is only one value), packed high-order bit first, with the last byte padded on the right.  In
+ * run-length data, each run is a code followed by a run length, both as unsigned variable-length integers
+ * (seven bits per byte, low-order first, with the high bit set on all but the last byte).
+ *
+ * Since the file must end with a footer, the output is only complete when the writer is closed.  A forked
+ * writer stores its rows in a simple row-oriented form, and the parent adds them to its row groups when the
+ * bytes are copied back.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ColumnarSensorWriter extends SensorWriter {
+
+    // FIELDS
+    /** underlying output stream */
+    private final OutputStream stream;
+    /** counting stream for tracking file offsets */
+    private final CountingStream counter;
+    /** buffered data stream for the output */
+    private final DataOutputStream out;
+    /** in-memory output stream for a forked writer, or NULL for a normal writer */
+    private final ByteArrayOutputStream memory;
+    /** maximum number of rows in a row group */
+    private final int groupSize;
+    /** number of columns, or 0 if the header has not been written */
+    private int width;
+    /** dictionary for each column in the current row group, mapping values to codes */
+    private List<Map<String, Integer>> dictionaries;
+    /** dictionary values for each column in the current row group, in code order */
+    private List<List<String>> values;
+    /** codes for each column in the current row group */
+    private int[][] codes;
+    /** number of rows in the current row group */
+    private int rows;
+    /** index of each completed row group, in footer format */
+    private ByteArrayOutputStream footer;
+    /** number of completed row groups */
+    private int groups;
+    /** TRUE if the footer has been written */
+    private boolean finished;
+
+    /** file format signature */
+    public static final byte[] MAGIC = new byte[] { 'C', 'S', 'N', 'C' };
+    /** file format version */
+    public static final int VERSION = 1;
+    /** default maximum number of rows in a row group */
+    public static final int ROW_GROUP_SIZE = 65536;
+    /** encoding code for bit-packed data */
+    public static final int BIT_PACKED = 0;
+    /** encoding code for run-length data */
+    public static final int RUN_LENGTH = 1;
+
+    /**
+     * This is a filter stream that counts the bytes passing through it.
+     */
+    private static class CountingStream extends FilterOutputStream {
+
+        /** number of bytes written */
+        private long count;
+
+        /**
+         * Construct a counting stream.
+         *
+         * @param out	target output stream
+         */
+        protected CountingStream(OutputStream out) {
+            super(out);
+            this.count = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+
+        /**
+         * @return the number of bytes written
+         */
+        protected long getCount() {
+            return this.count;
+        }
+
+    }
+
+    /**
+     * Construct a columnar sensor writer.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     */
+    public ColumnarSensorWriter(OutputStream stream, ContigSensorFactory factory) {
+        this(stream, factory, null, ROW_GROUP_SIZE);
+    }
+
+    /**
+     * Construct a columnar sensor writer, possibly for in-memory output.
+     *
+     * @param stream		target output stream
+     * @param factory		sensor factory for the sensors to be written
+     * @param memory		in-memory output stream (same as the target), or NULL for a normal writer
+     * @param groupSize		maximum number of rows in a row group
+     */
+    protected ColumnarSensorWriter(OutputStream stream, ContigSensorFactory factory, ByteArrayOutputStream memory,
+            int groupSize) {
+        super(factory);
+        this.stream = stream;
+        this.counter = new CountingStream(new BufferedOutputStream(stream));
+        this.out = new DataOutputStream(this.counter);
+        this.memory = memory;
+        this.groupSize = groupSize;
+        this.width = 0;
+        this.rows = 0;
+        this.footer = new ByteArrayOutputStream();
+        this.groups = 0;
+        this.finished = false;
+    }
+
+    @Override
+    public void writeHeader(String... labels) throws IOException {
+        String[] columns = this.getFactory().sensor_headers().split("\t");
+        this.out.write(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeInt(labels.length);
+        for (String label : labels)
+            this.out.writeUTF(label);
+        this.out.writeInt(columns.length);
+        for (String column : columns)
+            this.out.writeUTF(column);
+        // Set up the first row group.
+        this.width = labels.length + columns.length;
+        this.codes = new int[this.width][this.groupSize];
+        this.dictionaries = new ArrayList<Map<String, Integer>>(this.width);
+        this.values = new ArrayList<List<String>>(this.width);
+        for (int i = 0; i < this.width; i++) {
+            this.dictionaries.add(new HashMap<String, Integer>());
+            this.values.add(new ArrayList<String>());
+        }
+    }
+
+    @Override
+    public void write(ContigSensor sensor, String... labels) throws IOException {
+        String[] sensors = sensor.getSensors();
+        if (this.memory != null) {
+            // A forked writer saves the row for its parent.
+            this.out.writeInt(labels.length + sensors.length);
+            for (String label : labels)
+                this.out.writeUTF(label);
+            for (String value : sensors)
+                this.out.writeUTF(value);
+        } else {
+            String[] row = new String[labels.length + sensors.length];
+            System.arraycopy(labels, 0, row, 0, labels.length);
+            System.arraycopy(sensors, 0, row, labels.length, sensors.length);
+            this.addRow(row);
+        }
+    }
+
+    /**
+     * Add a row to the current row group, writing the group out if it is full.
+     *
+     * @param row	label and sensor values for the row
+     *
+     * @throws IOException
+     */
+    private void addRow(String[] row) throws IOException {
+        if (row.length != this.width)
+            throw new IllegalStateException("Row has " + row.length + " columns, but " + this.width + " were expected.");
+        for (int i = 0; i < this.width; i++) {
+            Map<String, Integer> dictionary = this.dictionaries.get(i);
+            Integer code = dictionary.get(row[i]);
+            if (code == null) {
+                List<String> dictValues = this.values.get(i);
+                code = dictValues.size();
+                dictionary.put(row[i], code);
+                dictValues.add(row[i]);
+            }
+            this.codes[i][this.rows] = code;
+        }
+        this.rows++;
+        if (this.rows >= this.groupSize)
+            this.writeGroup();
+    }
+
+    /**
+     * Write the current row group and start a new one.
+     *
+     * @throws IOException
+     */
+    private void writeGroup() throws IOException {
+        DataOutputStream index = new DataOutputStream(this.footer);
+        index.writeInt(this.rows);
+        for (int i = 0; i < this.width; i++) {
+            long offset = this.counter.getCount();
+            List<String> dictValues = this.values.get(i);
+            this.out.writeInt(dictValues.size());
+            for (String value : dictValues)
+                this.out.writeUTF(value);
+            byte[] packed = bitPack(this.codes[i], this.rows, dictValues.size());
+            byte[] encoded = runLength(this.codes[i], this.rows, packed.length);
+            if (encoded != null) {
+                this.out.writeByte(RUN_LENGTH);
+                packed = encoded;
+            } else {
+                this.out.writeByte(BIT_PACKED);
+            }
+            this.out.writeInt(packed.length);
+            this.out.write(packed);
+            index.writeLong(offset);
+            index.writeInt((int) (this.counter.getCount() - offset));
+            // Clear the dictionary for the next group.
+            this.dictionaries.get(i).clear();
+            dictValues.clear();
+        }
+        this.groups++;
+        this.rows = 0;
+    }
+
+    /**
+     * @return the number of bits needed to store the codes for a dictionary
+     *
+     * @param dictSize	number of values in the dictionary
+     */
+    public static int bitWidth(int dictSize) {
+        return (dictSize <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(dictSize - 1));
+    }
+
+    /**
+     * @return the bit-packed form of a code array
+     *
+     * @param codes		array of codes
+     * @param n			number of codes to pack
+     * @param dictSize	number of values in the dictionary
+     */
+    protected static byte[] bitPack(int[] codes, int n, int dictSize) {
+        int bits = bitWidth(dictSize);
+        byte[] retVal = new byte[(int) (((long) n * bits + 7) / 8)];
+        long bitPos = 0;
+        for (int i = 0; i < n; i++) {
+            int code = codes[i];
+            for (int b = bits - 1; b >= 0; b--) {
+                if ((code >>> b & 1) != 0)
+                    retVal[(int) (bitPos >>> 3)] |= 0x80 >>> (bitPos & 7);
+                bitPos++;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the run-length form of a code array, or NULL if it would not be smaller than a specified limit
+     *
+     * @param codes		array of codes
+     * @param n			number of codes to encode
+     * @param limit		size of the alternative encoding
+     */
+    protected static byte[] runLength(int[] codes, int n, int limit) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.min(limit, 1024));
+        int i = 0;
+        while (i < n && buffer.size() < limit) {
+            int code = codes[i];
+            int j = i + 1;
+            while (j < n && codes[j] == code) j++;
+            writeVarint(buffer, code);
+            writeVarint(buffer, j - i);
+            i = j;
+        }
+        byte[] retVal = null;
+        if (buffer.size() < limit)
+            retVal = buffer.toByteArray();
+        return retVal;
+    }
+
+    /**
+     * Write an unsigned variable-length integer.
+     *
+     * @param buffer	output buffer
+     * @param value		value to write
+     */
+    private static void writeVarint(ByteArrayOutputStream buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer.write(value);
+    }
+
+    @Override
+    public SensorWriter fork() {
+        ByteArrayOutputStream memory = memoryStream();
+        return this.inherit(new ColumnarSensorWriter(memory, this.getFactory(), memory, this.groupSize));
+    }
+
+    @Override
+    public byte[] toBytes() throws IOException {
+        if (this.memory == null)
+            throw new IllegalStateException("Only a forked sensor writer can return its output.");
+        this.out.flush();
+        return this.memory.toByteArray();
+    }
+
+    @Override
+    public void writeBytes(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        while (in.available() > 0) {
+            String[] row = new String[in.readInt()];
+            for (int i = 0; i < row.length; i++)
+                row[i] = in.readUTF();
+            this.addRow(row);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+        this.stream.flush();
+    }
+
+    /**
+     * Finish the file by writing the last row group and the footer.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.memory == null && this.width > 0 && ! this.finished) {
+            if (this.rows > 0)
+                this.writeGroup();
+            long footerOffset = this.counter.getCount();
+            this.out.writeInt(this.groups);
+            this.footer.writeTo(this.out);
+            this.out.writeLong(footerOffset);
+            this.out.write(MAGIC);
+            this.finished = true;
+        }
+        this.flush();
+    }
+
+}
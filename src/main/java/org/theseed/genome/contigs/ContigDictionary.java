@@ -0,0 +1,210 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This object assigns an index number to each contig ID for compact location metadata.  Instead of repeating
+ * "contigId;position" in every output row, a compact output file uses the contig's index, and the dictionary
+ * is written once to a sidecar file containing one contig ID per line, in index order (so the first contig
+ * has index 0).  The dictionary is read back by {@link LocationDecoder} to restore the full metadata.
+ *
+ * A compact location has the form "index;position" (or "index;position;strand" if the strand is reported).
+ * If a row's location is the one immediately after the previous row's location, the location is written
+ * as {@link #NEXT} instead.  With the strand reported, the location after the plus strand of a position is the
+ * minus strand of the same position, and the location after the minus strand is the plus strand of the next
+ * position.  When every position is output, nearly all the rows are abbreviated.
+ *
+ * Each output stream needs its own {@link Encoder}, since an encoder remembers the previous row.  The
+ * contigs should be added to the dictionary in output order by the thread that owns the output, so that
+ * the index numbers do not depend on the order in which worker threads run.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ContigDictionary {
+
+    // FIELDS
+    /** contig IDs, in index order */
+    private final List<String> contigIds;
+    /** map of contig IDs to indices */
+    private final Map<String, Integer> indexMap;
+
+    /** location string for a row that follows the previous row */
+    public static final String NEXT = ".";
+    /** file name suffix for dictionary sidecar files */
+    public static final String SUFFIX = ".contigs";
+
+    /**
+     * This object produces the compact locations for a single output stream.
+     */
+    public class Encoder {
+
+        /** ID of the current contig, or NULL if there is none */
+        private String contigId;
+        /** index of the current contig */
+        private int contigIdx;
+        /** position of the previous row */
+        private int position;
+        /** strand of the previous row, or 0 if the strand is not reported */
+        private char strand;
+
+        /**
+         * Construct an encoder for a new output stream.
+         */
+        protected Encoder() {
+            this.contigId = null;
+            this.contigIdx = -1;
+            this.position = 0;
+            this.strand = 0;
+        }
+
+        /**
+         * @return the compact location for a sensor
+         *
+         * @param sensor	sensor whose location is to be written
+         */
+        public String encode(ContigSensor sensor) {
+            String retVal;
+            int pos = sensor.getPosition();
+            char newStrand = sensor.getStrand();
+            String newId = sensor.getContigId();
+            if (newId.equals(this.contigId) && newStrand == nextStrand(this.strand)
+                    && pos == nextPosition(this.position, this.strand)) {
+                retVal = NEXT;
+            } else {
+                if (! newId.equals(this.contigId)) {
+                    this.contigId = newId;
+                    this.contigIdx = ContigDictionary.this.add(newId);
+                }
+                retVal = this.contigIdx + ";" + Integer.toString(pos);
+                if (newStrand != 0)
+                    retVal += ";" + newStrand;
+            }
+            this.position = pos;
+            this.strand = newStrand;
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Construct an empty contig dictionary.
+     */
+    public ContigDictionary() {
+        this.contigIds = new ArrayList<String>();
+        this.indexMap = new HashMap<String, Integer>();
+    }
+
+    /**
+     * @return the index of a contig, adding it to the dictionary if it is new
+     *
+     * @param contigId	ID of the contig
+     */
+    public synchronized int add(String contigId) {
+        Integer retVal = this.indexMap.get(contigId);
+        if (retVal == null) {
+            retVal = this.contigIds.size();
+            this.contigIds.add(contigId);
+            this.indexMap.put(contigId, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the ID of the contig with the specified index
+     *
+     * @param idx	index of the contig
+     *
+     * @throws IllegalArgumentException if the index is not in the dictionary
+     */
+    public synchronized String getContigId(int idx) {
+        if (idx < 0 || idx >= this.contigIds.size())
+            throw new IllegalArgumentException("Contig index " + idx + " is not in the dictionary.");
+        return this.contigIds.get(idx);
+    }
+
+    /**
+     * @return the number of contigs in the dictionary
+     */
+    public synchronized int size() {
+        return this.contigIds.size();
+    }
+
+    /**
+     * @return a new encoder for an output stream
+     */
+    public Encoder encoder() {
+        return new Encoder();
+    }
+
+    /**
+     * @return the strand of the location after a location on the specified strand
+     *
+     * @param strand	'+' or '-' for a location with a reported strand, or 0 if the strand is not reported
+     */
+    protected static char nextStrand(char strand) {
+        char retVal = 0;
+        if (strand == '+')
+            retVal = '-';
+        else if (strand == '-')
+            retVal = '+';
+        return retVal;
+    }
+
+    /**
+     * @return the position of the location after a location with the specified position and strand
+     *
+     * @param pos		position of the location
+     * @param strand	'+' or '-' for a location with a reported strand, or 0 if the strand is not reported
+     */
+    protected static int nextPosition(int pos, char strand) {
+        return (strand == '+' ? pos : pos + 1);
+    }
+
+    /**
+     * Write this dictionary to a sidecar file.
+     *
+     * @param outFile	output file
+     *
+     * @throws IOException
+     */
+    public synchronized void save(File outFile) throws IOException {
+        try (PrintWriter writer = new PrintWriter(outFile)) {
+            for (String contigId : this.contigIds)
+                writer.println(contigId);
+        }
+    }
+
+    /**
+     * @return a dictionary read from a sidecar file
+     *
+     * @param inFile	sidecar file to read
+     *
+     * @throws IOException
+     */
+    public static ContigDictionary load(File inFile) throws IOException {
+        ContigDictionary retVal = new ContigDictionary();
+        try (BufferedReader reader = new BufferedReader(new FileReader(inFile))) {
+            String line = reader.readLine();
+            while (line != null) {
+                if (retVal.indexMap.containsKey(line))
+                    throw new IOException("Duplicate contig ID " + line + " in dictionary " + inFile + ".");
+                retVal.add(line);
+                line = reader.readLine();
+            }
+        }
+        return retVal;
+    }
+
+}
@@ -5,10 +5,23 @@ package org.theseed.genome.contigs;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -45,6 +58,52 @@ import org.theseed.utils.ICommand;
  * -u	the number of positions to examine to the left (upstream) of the target position
  * -d	the number of positions to examine to the right (downstream) of the target position
  *
+ * --gc			genetic code to use for amino acid sensors; the default is 11
+ * --kmer		k-mer size for k-mer sensors; the default is 6
+ * --vocab		number of distinct tokens for k-mer sensors; the default is 4096
+ * --nchannel	add a fifth channel for ambiguity characters to one-hot sensors
+ * --format		output format, TEXT (the default) or LIBSVM; in LIBSVM format, there is no header, the class is
+ * 				converted to a class index, and the sensors are converted to sparse features (the class
+ * 				index is separated from the features by a tab, which LIBSVM readers treat as white space)
+ * --progress	number of seconds between progress reports on STDERR; the default is 0 (no reports)
+ * --threads	number of threads to use; the default is 1; with more than one thread, the genomes are processed
+ * 				in parallel by a {@link WorkScheduler}, in input order, and the contigs are divided into chunks at
+ * 				fixed multiples of the chunk size, with a run taken from each chunk in parallel; a run that
+ * 				extends into the next chunk is trimmed from that chunk's run, so no position is output twice;
+ * 				the rows are output in genome order, with only a few finished genomes held waiting to be
+ * 				written, and duplicate rows are not counted against the run length
+ * 				until they are removed, so a run can come up short
+ * --quota		target number of rows per class for each genome, specified as a comma-delimited list of
+ * 				class:count pairs (e.g. "start:20,stop:20,other:40"), or a single number to use for every
+ * 				class; if this is specified, instead of runs of positions, the positions are sampled
+ * 				uniformly from each class of each genome, so that only the rows actually wanted are
+ * 				generated; classes not in the list are not output, and a genome with too few positions
+ * 				of a class contributes all of them
+ * --dedup		number of megabytes of memory to use for removing duplicate rows (rows with the same class and
+ * 				the same sensor data, usually from closely-related genomes); the default is 0 (no deduplication)
+ * --split		divide the genomes into named splits, specified as a comma-delimited list of name:fraction
+ * 				pairs (e.g. "train:0.8,valid:0.1,test:0.1"); each genome is assigned to a split by a hash of its
+ * 				ID (see {@link GenomeSplitter}), so the assignment is the same in every run and no genome
+ * 				contributes to more than one split; each split is written to its own file in the output
+ * 				directory, with its own balancing and class counts; if "--dedup" is also specified, a row is
+ * 				only output to the first split in which it occurs
+ * --count-only	instead of producing a training set, write a table of the number of positions of each class in each
+ * 				genome (and the genome's split, if "--split" is specified), followed by a total line, to the
+ * 				standard output; the positions counted are the ones from which rows can be chosen, that is,
+ * 				positions with a class whose sensors would not be ambiguous and which pass the codon filter;
+ * 				no sensors are generated, so this takes a small fraction of the time of a full run, and can be
+ * 				used to choose the balancing, run length, and quota options; the output options are ignored
+ * --shuffle	number of rows to hold in a shuffle buffer (see {@link ShuffleBuffer}); the rows are written in
+ * 				random order from the buffer, which breaks up the runs of consecutive positions without an
+ * 				external sort; the default is 0 (no shuffling); this cannot be combined with "-b"
+ * --batch		number of rows in each output file; if this is specified, the output (or each split's output)
+ * 				is divided into files of exactly this many rows (except the last), each with its own header
+ * 				(see {@link BatchOutputStream}); the files are named with the split name (or "batch" if there
+ * 				are no splits) and a 5-digit sequence number (e.g. "train.00001.tbl"); the default is 0 (one
+ * 				file)
+ * -o			output directory for the split files, which are named after the splits with an extension of
+ * 				".tbl" (or ".svm" for LIBSVM format); this is required if "--split" or "--batch" is specified,
+ * 				and is created if it does not exist
  * --type		type of classification to do; the values are
  *    	coding	outputs a class of "coding" for a frame in a coding region and
  * 				"space" for a frame not in a coding region; the default is to
@@ -65,6 +124,8 @@ import org.theseed.utils.ICommand;
  * 		channel	each base pair is converted to a string indicating the base pair
  * 		aminoacid
  * 				each trio of base pairs is converted to its amino acid
+ * 		kmer	each base pair is converted to a hashed token for the k-mer starting there
+ * 		onehot	each base pair is converted to four channels (five with --nchannel), one per nucleotide
  *
  * The positional parameters are the names of the input directories.
  *
@@ -77,12 +138,33 @@ public class ContigProcessor implements ICommand {
     // FIELDS
     /** random number generator */
     private static Random rand = new Random();
-    /** tracker for the number of examples generated per frame */
+    /** tracker for the number of examples generated per frame in the current genome's split */
     private CountMap<String> classCounter;
+    /** list of classes for the classification scheme, in class-index order */
+    private List<String> classList;
+    /** duplicate-row filter, or NULL if duplicates are kept */
+    private DedupFilter dedup;
+    /** map of class names to target counts per genome, or NULL to output random runs */
+    private Map<String, Integer> quotas;
     /** factory object for creating contig sensors */
     private ContigSensorFactory factory;
-    /** data output stream */
+    /** data output stream for the current genome */
     private BalancedOutputStream outStream;
+    /** genome splitter, or NULL if all the genomes go to the standard output */
+    private GenomeSplitter splitter;
+    /** output stream for each split */
+    private List<BalancedOutputStream> splitStreams;
+    /** shuffle buffer for the current genome, or NULL if there is no shuffling */
+    private ShuffleBuffer shuffler;
+    /** shuffle buffer for each split (empty if there is no shuffling) */
+    private List<ShuffleBuffer> splitShufflers;
+    /** class counts for each split */
+    private List<CountMap<String>> splitCounters;
+    /** progress tracker */
+    private ProgressReporter progress;
+
+    /** file name prefix for batch output without splits */
+    public static final String BATCH_NAME = "batch";
 
     // COMMAND-LINE OPTIONS
 
@@ -131,6 +213,62 @@ public class ContigProcessor implements ICommand {
     @Option(name="--type", usage="type of classification")
     private LocationClass.Type classType;
 
+    /** genetic code for amino acid sensors */
+    @Option(name="--gc", aliases={"--geneticCode"}, metaVar="4", usage="genetic code for amino acid sensors")
+    private int geneticCode;
+
+    /** k-mer size for k-mer sensors */
+    @Option(name="--kmer", metaVar="8", usage="k-mer size for k-mer sensors")
+    private int kmerSize;
+
+    /** vocabulary size for k-mer sensors */
+    @Option(name="--vocab", metaVar="65536", usage="number of distinct tokens for k-mer sensors")
+    private int vocabSize;
+
+    /** TRUE to add an ambiguity channel to one-hot sensors */
+    @Option(name="--nchannel", usage="add an ambiguity channel to one-hot sensors")
+    private boolean ambiguityChannel;
+
+    /** output format */
+    @Option(name="--format", metaVar="LIBSVM", usage="output format")
+    private SensorWriter.Format outFormat;
+
+    /** per-genome class quotas */
+    @Option(name="--quota", metaVar="start:20,stop:20,other:40", usage="target number of rows per class for each genome")
+    private String quotaSpec;
+
+    /** memory for the duplicate-row filter, in megabytes */
+    @Option(name="--dedup", metaVar="256", usage="megabytes of memory for removing duplicate rows (0 for none)")
+    private int dedupMemory;
+
+    /** genome split specification */
+    @Option(name="--split", metaVar="train:0.8,valid:0.1,test:0.1", usage="fractions of genomes for each output split")
+    private String splitSpec;
+
+    /** TRUE to count the classes without generating sensors */
+    @Option(name="--count-only", aliases={"--countOnly"}, usage="only count the positions of each class")
+    private boolean countOnly;
+
+    /** number of rows in the shuffle buffer */
+    @Option(name="--shuffle", metaVar="1000000", usage="number of rows to hold in the shuffle buffer (0 for none)")
+    private int shuffleSize;
+
+    /** number of rows per output file */
+    @Option(name="--batch", metaVar="65536", usage="number of rows in each output file (0 for one file)")
+    private int batchSize;
+
+    /** output directory for split files */
+    @Option(name="-o", aliases={"--outDir"}, metaVar="outDir", usage="output directory for split files")
+    private File outDir;
+
+    /** progress report interval */
+    @Option(name="--progress", metaVar="60", usage="seconds between progress reports (0 for none)")
+    private int progressInterval;
+
+    /** number of worker threads */
+    @Option(name="--threads", metaVar="8", usage="number of threads to use")
+    private int threads;
+
     /** sensor type */
     @Option(name="--sensor", metaVar="codon", usage="type of DNA sensor to use (default: CHANNEL)")
     private void setFactory(ContigSensorFactory.Type type) {
@@ -160,6 +298,22 @@ public class ContigProcessor implements ICommand {
         this.classType = LocationClass.Type.EDGE;
         this.edgeFilter = false;
         this.fuzzFactor = 0;
+        this.progressInterval = 0;
+        this.threads = 1;
+        this.dedupMemory = 0;
+        this.quotaSpec = null;
+        this.quotas = null;
+        this.splitSpec = null;
+        this.splitter = null;
+        this.outDir = null;
+        this.countOnly = false;
+        this.shuffleSize = 0;
+        this.batchSize = 0;
+        this.geneticCode = 11;
+        this.kmerSize = 6;
+        this.vocabSize = 4096;
+        this.ambiguityChannel = false;
+        this.outFormat = SensorWriter.Format.TEXT;
         this.factory = ContigSensorFactory.create(ContigSensorFactory.Type.CHANNEL);
         CmdLineParser parser = new CmdLineParser(this);
         try {
@@ -177,6 +331,60 @@ public class ContigProcessor implements ICommand {
                 if (this.fuzzFactor != 0 && (this.fuzzFactor < 1.0 || this.fuzzFactor > 2.0)) {
                     throw new IllegalArgumentException("Balance factor must be 0 (off) or between 1.0 and 2.0 inclusive.");
                 }
+                // Validate the thread count.
+                if (this.threads < 1) {
+                    throw new IllegalArgumentException("Thread count must be at least 1.");
+                }
+                // Validate the chunk size.
+                if (this.chunkSize < 1) {
+                    throw new IllegalArgumentException("Chunk size must be at least 1.");
+                }
+                // Validate the deduplication memory.
+                if (this.dedupMemory < 0) {
+                    throw new IllegalArgumentException("Deduplication memory cannot be negative.");
+                }
+                // Parse the class quotas.
+                if (this.quotaSpec != null) {
+                    this.quotas = parseQuotas(this.quotaSpec,
+                            LocationClass.scheme(this.classType, this.negative).getClasses());
+                }
+                // Validate the shuffling and batching.
+                if (this.shuffleSize < 0) {
+                    throw new IllegalArgumentException("Shuffle buffer size cannot be negative.");
+                } else if (this.shuffleSize > 0 && this.fuzzFactor != 0) {
+                    throw new IllegalArgumentException("Shuffling cannot be combined with balanced output.");
+                }
+                if (this.batchSize < 0) {
+                    throw new IllegalArgumentException("Rows per output file cannot be negative.");
+                }
+                // Set up the genome splits.
+                if (this.splitSpec != null)
+                    this.splitter = new GenomeSplitter(this.splitSpec);
+                if (this.countOnly) {
+                    // A count-only run has no output files.
+                    this.outDir = null;
+                } else if (this.splitter != null || this.batchSize > 0) {
+                    if (this.outDir == null) {
+                        throw new IllegalArgumentException("An output directory is required for split or batch output.");
+                    } else if (! this.outDir.isDirectory()) {
+                        if (this.outDir.exists())
+                            throw new FileNotFoundException(this.outDir + " is not a directory.");
+                        if (! this.outDir.mkdirs())
+                            throw new IOException("Could not create output directory " + this.outDir + ".");
+                    }
+                } else if (this.outDir != null) {
+                    throw new IllegalArgumentException("An output directory is only used for split or batch output.");
+                }
+                // Validate the output format.  The balanced output stream only handles text lines.
+                if (this.outFormat != SensorWriter.Format.TEXT && this.outFormat != SensorWriter.Format.LIBSVM) {
+                    throw new IllegalArgumentException("Output format must be TEXT or LIBSVM for training sets.");
+                }
+                // Install the genetic code.
+                AminoAcidContigSensorFactory.setGeneticCode(this.geneticCode);
+                // Install the k-mer settings.
+                KmerContigSensorFactory.setKmerParms(this.kmerSize, this.vocabSize);
+                // Install the one-hot settings.
+                OneHotContigSensorFactory.setAmbiguityChannel(this.ambiguityChannel);
                 retVal = true;
             }
         } catch (CmdLineException e) {
@@ -194,45 +402,309 @@ public class ContigProcessor implements ICommand {
      */
     public void run() {
         // Initialize the private data.
-        this.classCounter = new CountMap<String>();
         LocationClass lsensor = LocationClass.scheme(this.classType, this.negative);
-        // Create the output stream.
-        this.outStream = new BalancedOutputStream(this.fuzzFactor, System.out);
+        this.classList = lsensor.getClasses();
+        this.dedup = null;
+        if (this.dedupMemory > 0)
+            this.dedup = new DedupFilter(this.dedupMemory * 1024L * 1024L);
         // Set up the edge filter.
-        CodonFilter filter = null;
-        if (this.edgeFilter)
-            filter = LocationClass.filter(this.classType);
-        // The first job is to create the output header.  The first column is the
-        // frame and the remaining columns are sensors.
-        this.outStream.writeImmediate("frame", this.factory.sensor_headers());
+        CodonFilter filter = (this.edgeFilter ? LocationClass.filter(this.classType) : null);
+        // Set up progress tracking.  We know the number of genomes from the GTO file count.
+        this.progress = new ProgressReporter(this.progressInterval);
+        List<File> gtoFiles = new ArrayList<File>();
+        for (File genomeDir : this.genomeDirs) {
+            File[] members = genomeDir.listFiles((d, name) -> name.endsWith(".gto"));
+            if (members != null) {
+                Arrays.sort(members);
+                gtoFiles.addAll(Arrays.asList(members));
+            }
+        }
+        this.progress.setTotals(gtoFiles.size(), 0);
         try {
-            // Loop through the genome directories.
-            for (File genomeDir : this.genomeDirs) {
-                if (debug) System.err.println("Processing " + genomeDir + ".");
-                GenomeDirectory genomes = new GenomeDirectory(genomeDir.getPath());
-                // Loop through the genomes.
-                for (Genome genome : genomes) {
-                    if (debug) System.err.println("Processing " + genome + ".");
-                    // Create this genome's coding map.
-                    Map<String, DiscreteLocationList> codingMap = DiscreteLocationList.createGenomeCodingMap(genome);
-                    for (Contig contig : genome.getContigs()) {
-                        processContig(contig, codingMap.get(contig.getId()), lsensor, filter);
+            if (this.countOnly)
+                this.countClasses(gtoFiles, filter);
+            else
+                this.buildTrainingSet(gtoFiles, lsensor, filter);
+        } finally {
+            this.progress.close();
+        }
+    }
+
+    /**
+     * Produce the training set from the genomes.
+     *
+     * @param gtoFiles	list of GTO files for the genomes
+     * @param lsensor 	classification scheme for locations
+     * @param filter	optional codon filter
+     */
+    private void buildTrainingSet(List<File> gtoFiles, LocationClass lsensor, CodonFilter filter) {
+        try {
+            // Create the output streams.  Without splits or batches, there is one stream, on the standard output.
+            this.splitStreams = new ArrayList<BalancedOutputStream>();
+            this.splitCounters = new ArrayList<CountMap<String>>();
+            this.splitShufflers = new ArrayList<ShuffleBuffer>();
+            // The output header has the frame in the first column and the sensors in the remaining columns.
+            // LIBSVM format has no header.
+            boolean headers = (this.outFormat == SensorWriter.Format.TEXT);
+            if (this.splitter == null && this.batchSize == 0) {
+                this.splitStreams.add(new BalancedOutputStream(this.fuzzFactor, System.out));
+            } else {
+                String suffix = (this.outFormat == SensorWriter.Format.LIBSVM ? ".svm" : ".tbl");
+                List<String> names = (this.splitter == null ? Collections.singletonList(BATCH_NAME) :
+                        this.splitter.getNames());
+                for (String name : names) {
+                    OutputStream target;
+                    if (this.batchSize > 0) {
+                        // Each batch file gets its own copy of the header.
+                        byte[] header = (! headers ? null : ("frame\t" + this.factory.sensor_headers() + "\n")
+                                .getBytes(StandardCharsets.UTF_8));
+                        target = new BatchOutputStream(this.outDir, name, suffix, this.batchSize, header);
+                    } else {
+                        target = new FileOutputStream(new File(this.outDir, name + suffix));
                     }
+                    this.splitStreams.add(new BalancedOutputStream(this.fuzzFactor, target));
                 }
+                if (this.batchSize > 0) headers = false;
+            }
+            for (BalancedOutputStream stream : this.splitStreams) {
+                this.splitCounters.add(new CountMap<String>());
+                if (this.shuffleSize > 0)
+                    this.splitShufflers.add(new ShuffleBuffer(this.shuffleSize, rand, stream));
+                if (headers)
+                    stream.writeImmediate("frame", this.factory.sensor_headers());
+            }
+            if (this.threads > 1)
+                this.processParallel(gtoFiles, filter);
+            else
+                this.processSerial(lsensor, filter);
+            this.closeStreams();
+            if (this.dedup != null) {
+                System.err.format("%d duplicate rows removed, %d distinct rows remembered.%n",
+                        this.dedup.getDuplicates(), this.dedup.size());
+                if (this.dedup.getUnchecked() > 0)
+                    System.err.format("Deduplication memory was full:  %d rows could not be remembered.%n",
+                            this.dedup.getUnchecked());
             }
-            this.outStream.close();
             if (debug) {
                 // Display counts for each frame, so we can see if we have well-distributed
                 // results.
-                for (String cl : this.classCounter.keys()) {
-                    System.err.format("%s has %8d results.%n", cl,
-                            this.classCounter.getCount(cl));
+                for (int i = 0; i < this.splitCounters.size(); i++) {
+                    if (this.splitter != null)
+                        System.err.println("Split " + this.splitter.getNames().get(i) + ":");
+                    CountMap<String> counter = this.splitCounters.get(i);
+                    for (String cl : counter.keys()) {
+                        System.err.format("%s has %8d results.%n", cl,
+                                counter.getCount(cl));
+                    }
                 }
             }
-        } catch (IOException e) {
+        } catch (IOException | InterruptedException e) {
             System.err.println("Error processing genome directory: " + e.getMessage());
+        } catch (ExecutionException e) {
+            System.err.println("Error writing output: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Write a table of the number of positions of each class in each genome.  The genomes are processed in
+     * parallel, largest first, but the table is in input order.
+     *
+     * @param gtoFiles	list of GTO files for the genomes
+     * @param filter	optional codon filter
+     */
+    private void countClasses(List<File> gtoFiles, CodonFilter filter) {
+        try (WorkScheduler scheduler = new WorkScheduler(this.threads)) {
+            int n = gtoFiles.size();
+            List<Callable<Census>> work = new ArrayList<Callable<Census>>(n);
+            long[] sizes = new long[n];
+            for (int i = 0; i < n; i++) {
+                File gtoFile = gtoFiles.get(i);
+                sizes[i] = gtoFile.length();
+                work.add(() -> this.countGenome(gtoFile, filter));
+            }
+            List<WorkScheduler.Task<Census>> pending = scheduler.submitAll(work, sizes);
+            // With splits, there is a total line for each split, since each split is balanced separately.
+            List<String> splitNames = (this.splitter == null ? Collections.emptyList() : this.splitter.getNames());
+            long[][] splitTotals = new long[splitNames.size()][this.classList.size()];
+            long[] totals = new long[this.classList.size()];
+            System.out.println("genome" + (this.splitter == null ? "" : "\tsplit") + "\t" +
+                    String.join("\t", this.classList) + "\ttotal");
+            for (int i = 0; i < n; i++) {
+                try {
+                    Census census = pending.get(i).result();
+                    String name = census.genomeId;
+                    if (this.splitter != null) {
+                        name += "\t" + splitNames.get(census.split);
+                        GenomeProcessor.summaryLine(name, this.classList, census.counts, splitTotals[census.split]);
+                    }
+                    System.out.println(GenomeProcessor.summaryLine(name, this.classList, census.counts, totals));
+                } catch (ExecutionException e) {
+                    System.err.println("Error processing " + gtoFiles.get(i) + ": " + e.getCause().getMessage());
+                }
+            }
+            for (int i = 0; i < splitNames.size(); i++)
+                System.out.println(GenomeProcessor.totalLine("TOTAL\t" + splitNames.get(i), splitTotals[i]));
+            System.out.println(GenomeProcessor.totalLine(this.splitter == null ? "TOTAL" : "TOTAL\tall", totals));
+        }
+    }
+
+    /**
+     * This object holds the class counts for a genome.
+     */
+    private static class Census {
+
+        /** genome ID */
+        private final String genomeId;
+        /** index of the genome's split */
+        private final int split;
+        /** number of positions of each class */
+        private final CountMap<String> counts;
+
+        /**
+         * Create a genome census.
+         *
+         * @param genomeId	genome ID
+         * @param split		index of the genome's split
+         * @param counts	number of positions of each class
+         */
+        private Census(String genomeId, int split, CountMap<String> counts) {
+            this.genomeId = genomeId;
+            this.split = split;
+            this.counts = counts;
+        }
+
+    }
+
+    /**
+     * Count the positions of each class in a genome from which training rows can be chosen.  This uses the same
+     * test as the class sampling in {@link #sampleGenome}, but no sensors are generated.
+     *
+     * @param gtoFile	GTO file containing the genome
+     * @param filter	optional codon filter
+     *
+     * @return the genome's ID, split, and class counts
+     *
+     * @throws IOException
+     */
+    private Census countGenome(File gtoFile, CodonFilter filter) throws IOException {
+        Genome genome = new Genome(gtoFile);
+        CountMap<String> counts = new CountMap<String>();
+        LocationClass lsensor = LocationClass.scheme(this.classType, this.negative);
+        Map<String, DiscreteLocationList> codingMap = DiscreteLocationList.createGenomeCodingMap(genome);
+        for (Contig contig : genome.getContigs()) {
+            lsensor.setLocs(codingMap.get(contig.getId()));
+            String sequence = contig.getSequence();
+            int limit = contig.length();
+            for (int pos = this.factory.nextClean(sequence, 1); pos <= limit;
+                    pos = this.factory.nextClean(sequence, pos + 1)) {
+                if (filter == null || filter.matches(pos, sequence)) {
+                    String frame = lsensor.classOf(pos);
+                    if (frame != null)
+                        counts.count(frame);
+                }
+            }
+            this.progress.addContig(limit);
+        }
+        // The genome's cached tracks are no longer needed.
+        this.factory.releaseCaches();
+        this.progress.addGenome();
+        return new Census(genome.getId(), this.splitOf(genome), counts);
+    }
+
+    /**
+     * Process the genomes one at a time.
+     *
+     * @param lsensor 	classification scheme for locations
+     * @param filter	optional codon filter
+     *
+     * @throws IOException
+     */
+    private void processSerial(LocationClass lsensor, CodonFilter filter) throws IOException {
+        // Loop through the genome directories.
+        for (File genomeDir : this.genomeDirs) {
+            if (debug) System.err.println("Processing " + genomeDir + ".");
+            GenomeDirectory genomes = new GenomeDirectory(genomeDir.getPath());
+            // Loop through the genomes.
+            for (Genome genome : genomes) {
+                int split = this.selectSplit(genome);
+                if (debug) System.err.println("Processing " + genome + (this.splitter == null ? "" :
+                        " for " + this.splitter.getNames().get(split)) + ".");
+                // Create this genome's coding map.
+                Map<String, DiscreteLocationList> codingMap = DiscreteLocationList.createGenomeCodingMap(genome);
+                if (this.quotas != null) {
+                    sampleGenome(genome, codingMap, lsensor, filter, this::writeRow);
+                } else {
+                    for (Contig contig : genome.getContigs()) {
+                        processContig(contig, codingMap.get(contig.getId()), lsensor, filter);
+                        this.progress.addContig(contig.length());
+                    }
+                }
+                // The genome's cached tracks are no longer needed.
+                this.factory.releaseCaches();
+                this.progress.addGenome();
+            }
+        }
+    }
+
+    /**
+     * Choose the output split for a genome and make its output stream and class counter current.
+     *
+     * @param genome	genome about to be processed
+     *
+     * @return the index of the genome's split
+     */
+    private int selectSplit(Genome genome) {
+        int retVal = this.splitOf(genome);
+        this.useSplit(retVal);
+        return retVal;
+    }
+
+    /**
+     * @return the index of the output split for a genome
+     *
+     * @param genome	genome of interest
+     */
+    private int splitOf(Genome genome) {
+        return (this.splitter == null ? 0 : this.splitter.choose(genome.getId()));
+    }
+
+    /**
+     * Make a split's output stream and class counter current.
+     *
+     * @param split		index of the split
+     */
+    private void useSplit(int split) {
+        this.outStream = this.splitStreams.get(split);
+        this.shuffler = (this.splitShufflers.isEmpty() ? null : this.splitShufflers.get(split));
+        this.classCounter = this.splitCounters.get(split);
+    }
+
+    /**
+     * Close the output streams.  This is where the IO happens for balanced output, so the streams are
+     * closed in parallel.  Any rows left in the shuffle buffers are written first.
+     *
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    private void closeStreams() throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(this.splitStreams.size());
+        try {
+            List<Future<Object>> pending = new ArrayList<Future<Object>>(this.splitStreams.size());
+            for (int i = 0; i < this.splitStreams.size(); i++) {
+                BalancedOutputStream stream = this.splitStreams.get(i);
+                ShuffleBuffer buffer = (this.splitShufflers.isEmpty() ? null : this.splitShufflers.get(i));
+                pending.add(pool.submit(() -> {
+                    if (buffer != null)
+                        buffer.close();
+                    stream.close();
+                    return null;
+                }));
+            }
+            for (Future<Object> result : pending)
+                result.get();
+        } finally {
+            pool.shutdownNow();
         }
-        // Close the output stream.  This is where the IO happens.
     }
 
     /**
@@ -255,32 +727,449 @@ public class ContigProcessor implements ICommand {
             if (end > limit) end = limit + 1;
             // Choose a random number >= the position and < end.
             int start = rand.nextInt(end - pos) + pos;
-            // This will count the number of valid positions output.
-            int count = 0;
-            // Extract the contig sequence.
-            String sequence = contig.getSequence();
-            // Loop through the contig locations.
-            while (start <= limit && count < this.runLength) {
+            start = this.takeRun(contig, start, lsensor, filter, this::writeRow);
+            pos = (start >= end ? start + 1 : end);
+            end = pos + this.chunkSize;
+        }
+    }
+
+    /**
+     * Output a run of positions from a contig.
+     *
+     * @param contig	contig of interest
+     * @param start		first position (1-based) of the run
+     * @param lsensor	classification scheme, with the contig's location list active
+     * @param filter	optional codon filter
+     * @param output	consumer for the output rows; it returns TRUE if the row counts toward the run length
+     *
+     * @return the position after the last one examined
+     */
+    private int takeRun(Contig contig, int start, LocationClass lsensor, CodonFilter filter, Predicate<Row> output) {
+        int limit = contig.length();
+        // This will count the number of valid positions output.
+        int count = 0;
+        // Extract the contig sequence.
+        String sequence = contig.getSequence();
+        // Loop through the contig locations.
+        while (start <= limit && count < this.runLength) {
+            if (this.factory.isSuspicious(sequence, start)) {
+                // Skip past the ambiguity characters without building any sensors.
+                start = this.factory.nextClean(sequence, start);
+            } else {
                 if (filter == null || filter.matches(start, sequence)) {
-                    ContigSensor proposal = this.factory.create(contig.getId(), start, sequence);
-                    if (! proposal.isSuspicious()) {
-                        // Compute the frame string.
-                        String frame = lsensor.classOf(start);
-                        if (frame != null) {
-                            // Write the frame followed by the sensor data.
-                            this.outStream.write(frame, proposal.toString());
+                    // Compute the frame string.
+                    String frame = lsensor.classOf(start);
+                    if (frame != null) {
+                        ContigSensor proposal = this.factory.create(contig.getId(), start, sequence);
+                        if (output.test(this.encode(proposal, frame, start))) {
                             // Record the output.
                             count++;
-                            this.classCounter.count(frame);
                         }
                     }
                 }
                 // Move to the next position.
                 start++;
             }
-            pos = (start >= end ? start + 1 : end);
-            end = pos + this.chunkSize;
         }
+        return start;
+    }
+
+    /**
+     * This object holds an encoded output row.
+     */
+    private static class Row {
+
+        /** class label, as written */
+        private final String label;
+        /** encoded sensor data */
+        private final String data;
+        /** class of the row */
+        private final String frame;
+        /** position of the row in its contig */
+        private final int pos;
+
+        /**
+         * Create an output row.
+         *
+         * @param label		class label, as written
+         * @param data		encoded sensor data
+         * @param frame		class of the row
+         * @param pos		position of the row in its contig
+         */
+        private Row(String label, String data, String frame, int pos) {
+            this.label = label;
+            this.data = data;
+            this.frame = frame;
+            this.pos = pos;
+        }
+
+    }
+
+    /**
+     * @return the output row for a sensor
+     *
+     * @param proposal	sensor to encode
+     * @param frame		class of the sensor
+     * @param pos		position of the sensor in its contig
+     */
+    private Row encode(ContigSensor proposal, String frame, int pos) {
+        // Compute the class label and the sensor data.
+        String label = frame;
+        String data;
+        if (this.outFormat == SensorWriter.Format.LIBSVM) {
+            label = Integer.toString(this.classList.indexOf(frame));
+            data = LibsvmSensorWriter.features(this.factory, proposal);
+        } else {
+            data = proposal.toString();
+        }
+        return new Row(label, data, frame, pos);
+    }
+
+    /**
+     * Write a row to the output, unless it is a duplicate.
+     *
+     * @param row	row to write
+     *
+     * @return TRUE if the row was written, FALSE if it was a duplicate
+     */
+    private boolean writeRow(Row row) {
+        // Write the frame followed by the sensor data, unless it is a duplicate.
+        boolean retVal = (this.dedup == null || this.dedup.add(row.label, row.data));
+        if (retVal) {
+            if (this.shuffler != null)
+                this.shuffler.write(row.label, row.data);
+            else
+                this.outStream.write(row.label, row.data);
+            this.classCounter.count(row.frame);
+        }
+        return retVal;
+    }
+
+    /**
+     * Process the genomes in parallel.  The chunks of each genome's contigs are processed in parallel, and the
+     * genomes are run through a task sequence so the rows are output in genome order.  The sequence shares the
+     * scheduler's result permits, so only a few finished genomes are held in memory waiting to be written.
+     *
+     * @param gtoFiles	list of GTO files for the genomes
+     * @param filter	optional codon filter
+     *
+     * @throws IOException
+     */
+    private void processParallel(List<File> gtoFiles, CodonFilter filter) throws IOException {
+        try (WorkScheduler scheduler = new WorkScheduler(this.threads);
+                WorkScheduler.Sequence<Sample> genomes = scheduler.sequence(sample -> this.writeSample(sample))) {
+            for (File gtoFile : gtoFiles) {
+                // Most of a GTO file is the DNA, so its size is a good estimate of the work.
+                genomes.submit(() -> {
+                    try {
+                        return this.collectGenome(gtoFile, filter, scheduler);
+                    } catch (Exception e) {
+                        throw new IOException("Error processing " + gtoFile + ": " + e.getMessage(), e);
+                    }
+                }, gtoFile.length());
+            }
+            genomes.finish();
+        } finally {
+            // The worker threads are done, so none of them needs its cached tracks.
+            this.factory.releaseAllCaches();
+        }
+    }
+
+    /**
+     * Write the rows of a genome's sample.
+     *
+     * @param sample	sample to write
+     *
+     * @throws IOException
+     */
+    private void writeSample(Sample sample) throws IOException {
+        this.useSplit(sample.split);
+        for (Row row : sample.rows)
+            this.writeRow(row);
+    }
+
+    /**
+     * This object holds the output rows for a genome or a chunk of a contig.
+     */
+    private static class Sample {
+
+        /** index of the genome's output split */
+        private final int split;
+        /** first position of the chunk */
+        private final int start;
+        /** position after the last one examined */
+        private final int next;
+        /** output rows */
+        private final List<Row> rows;
+
+        /**
+         * Create an empty sample.
+         *
+         * @param split		index of the genome's output split
+         * @param start		first position of the chunk (1 for a whole genome)
+         */
+        private Sample(int split, int start) {
+            this.split = split;
+            this.start = start;
+            this.next = start;
+            this.rows = new ArrayList<Row>();
+        }
+
+        /**
+         * Create a sample for a run taken from a contig chunk.
+         *
+         * @param start		first position of the chunk
+         * @param next		position after the last one examined
+         * @param rows		output rows
+         */
+        private Sample(int start, int next, List<Row> rows) {
+            this.split = 0;
+            this.start = start;
+            this.next = next;
+            this.rows = rows;
+        }
+
+    }
+
+    /**
+     * Compute the training rows for a genome.  This is run by a worker thread in parallel mode.
+     *
+     * @param gtoFile		GTO file containing the genome
+     * @param filter		optional codon filter
+     * @param scheduler		scheduler for the chunk tasks
+     *
+     * @return the genome's output split and rows
+     *
+     * @throws IOException
+     */
+    private Sample collectGenome(File gtoFile, CodonFilter filter, WorkScheduler scheduler) throws IOException {
+        Genome genome = new Genome(gtoFile);
+        Sample retVal = new Sample(this.splitOf(genome), 1);
+        if (debug) System.err.println("Processing " + genome + (this.splitter == null ? "" :
+                " for " + this.splitter.getNames().get(retVal.split)) + ".");
+        Map<String, DiscreteLocationList> codingMap = DiscreteLocationList.createGenomeCodingMap(genome);
+        if (this.quotas != null) {
+            LocationClass lsensor = LocationClass.scheme(this.classType, this.negative);
+            this.sampleGenome(genome, codingMap, lsensor, filter, retVal.rows::add);
+        } else {
+            // Divide the contigs into chunks and take a run from each one in parallel.
+            List<Callable<Sample>> work = new ArrayList<Callable<Sample>>();
+            List<RegionIndex.Interval> chunks = new ArrayList<RegionIndex.Interval>();
+            for (Contig contig : genome.getContigs()) {
+                DiscreteLocationList framer = codingMap.get(contig.getId());
+                for (RegionIndex.Interval chunk : WorkScheduler.split(1, contig.length(), this.chunkSize)) {
+                    work.add(() -> this.sampleChunk(contig, framer, chunk, filter));
+                    chunks.add(chunk);
+                }
+            }
+            long[] sizes = new long[chunks.size()];
+            for (int i = 0; i < sizes.length; i++)
+                sizes[i] = chunks.get(i).getLength();
+            List<WorkScheduler.Task<Sample>> pending = scheduler.submitAll(work, sizes);
+            // A run can extend into the next chunk, so we trim the next chunk's run to avoid outputting a position
+            // twice.
+            int covered = 0;
+            for (WorkScheduler.Task<Sample> task : pending) {
+                Sample run;
+                try {
+                    run = task.result();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause().getMessage(), e.getCause());
+                }
+                if (run.start == 1) covered = 0;
+                for (Row row : run.rows) {
+                    if (row.pos > covered)
+                        retVal.rows.add(row);
+                }
+                covered = Math.max(covered, run.next - 1);
+            }
+            for (Contig contig : genome.getContigs())
+                this.progress.addContig(contig.length());
+        }
+        // The genome's cached tracks are no longer needed.
+        this.factory.releaseCaches();
+        this.progress.addGenome();
+        return retVal;
+    }
+
+    /**
+     * Take a run of positions from a random place in a contig chunk.  This is run by a worker thread in
+     * parallel mode.
+     *
+     * @param contig	contig of interest
+     * @param framer	location list used to compute frames
+     * @param chunk		chunk from which the run should start
+     * @param filter	optional codon filter
+     *
+     * @return the rows of the run
+     */
+    private Sample sampleChunk(Contig contig, DiscreteLocationList framer, RegionIndex.Interval chunk,
+            CodonFilter filter) {
+        // Each chunk needs its own classifier, since the classifier holds the contig's location list.
+        LocationClass lsensor = LocationClass.scheme(this.classType, this.negative);
+        lsensor.setLocs(framer);
+        List<Row> rows = new ArrayList<Row>(this.runLength);
+        int start = chunk.getStart() + rand.nextInt(chunk.getLength());
+        int next = this.takeRun(contig, start, lsensor, filter, rows::add);
+        return new Sample(chunk.getStart(), next, rows);
+    }
+
+    /**
+     * Output training data sampled by class from the specified genome.  Every position of every contig whose
+     * sensor would not be ambiguous is classified, and a reservoir sample of each class's positions is kept.
+     * Then sensors are generated for the chosen positions only.  Runs of ambiguity characters are skipped
+     * without being classified, so every chosen position produces a row.
+     *
+     * @param genome	genome of interest
+     * @param codingMap	map of contig IDs to location lists used to compute frames
+     * @param lsensor 	classification scheme for locations
+     * @param filter	optional codon filter
+     * @param output	consumer for the output rows
+     */
+    private void sampleGenome(Genome genome, Map<String, DiscreteLocationList> codingMap, LocationClass lsensor,
+            CodonFilter filter, Predicate<Row> output) {
+        List<Contig> contigs = new ArrayList<Contig>(genome.getContigs());
+        Map<String, Reservoir> reservoirs = new HashMap<String, Reservoir>(this.quotas.size() * 2);
+        for (Map.Entry<String, Integer> quota : this.quotas.entrySet())
+            reservoirs.put(quota.getKey(), new Reservoir(quota.getValue()));
+        // Classify all the positions.  Each one is identified by its contig index and position.
+        for (int i = 0; i < contigs.size(); i++) {
+            Contig contig = contigs.get(i);
+            lsensor.setLocs(codingMap.get(contig.getId()));
+            String sequence = contig.getSequence();
+            int limit = contig.length();
+            for (int pos = this.factory.nextClean(sequence, 1); pos <= limit;
+                    pos = this.factory.nextClean(sequence, pos + 1)) {
+                if (filter == null || filter.matches(pos, sequence)) {
+                    String frame = lsensor.classOf(pos);
+                    if (frame != null) {
+                        Reservoir reservoir = reservoirs.get(frame);
+                        if (reservoir != null)
+                            reservoir.offer(((long) i << 32) | pos);
+                    }
+                }
+            }
+            this.progress.addContig(limit);
+        }
+        // Gather the chosen positions and sort them by contig and position.
+        int total = 0;
+        for (Reservoir reservoir : reservoirs.values())
+            total += reservoir.size();
+        long[] chosen = new long[total];
+        int n = 0;
+        for (Reservoir reservoir : reservoirs.values())
+            n = reservoir.copyTo(chosen, n);
+        Arrays.sort(chosen);
+        // Generate the sensors.
+        int current = -1;
+        String sequence = null;
+        for (long key : chosen) {
+            int i = (int) (key >>> 32);
+            int pos = (int) key;
+            Contig contig = contigs.get(i);
+            if (i != current) {
+                lsensor.setLocs(codingMap.get(contig.getId()));
+                sequence = contig.getSequence();
+                current = i;
+            }
+            ContigSensor proposal = this.factory.create(contig.getId(), pos, sequence);
+            output.test(this.encode(proposal, lsensor.classOf(pos), pos));
+        }
+    }
+
+    /**
+     * @return a map of class names to target counts parsed from a quota specification
+     *
+     * @param spec		quota specification (a comma-delimited list of class:count pairs, or a single count)
+     * @param classes	list of valid class names
+     *
+     * @throws IllegalArgumentException if the specification is invalid
+     */
+    protected static Map<String, Integer> parseQuotas(String spec, List<String> classes) {
+        Map<String, Integer> retVal = new HashMap<String, Integer>();
+        try {
+            if (spec.indexOf(':') < 0) {
+                int count = Integer.parseInt(spec.trim());
+                for (String name : classes)
+                    retVal.put(name, count);
+            } else {
+                for (String pair : spec.split(",")) {
+                    String[] parts = pair.split(":");
+                    if (parts.length != 2)
+                        throw new IllegalArgumentException("Invalid class quota \"" + pair + "\".");
+                    String name = parts[0].trim();
+                    if (! classes.contains(name))
+                        throw new IllegalArgumentException("Class \"" + name + "\" is not valid for this classification type.");
+                    retVal.put(name, Integer.parseInt(parts[1].trim()));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid count in class quota \"" + spec + "\".");
+        }
+        for (int count : retVal.values()) {
+            if (count < 1)
+                throw new IllegalArgumentException("Class quotas must be positive.");
+        }
+        return retVal;
+    }
+
+    /**
+     * This object keeps a uniform random sample of a fixed size from a stream of positions.
+     */
+    private static class Reservoir {
+
+        /** sampled position keys */
+        private final long[] keys;
+        /** number of positions offered so far */
+        private long seen;
+
+        /**
+         * Construct an empty reservoir.
+         *
+         * @param capacity	number of positions to keep
+         */
+        protected Reservoir(int capacity) {
+            this.keys = new long[capacity];
+            this.seen = 0;
+        }
+
+        /**
+         * Offer a position to the sample.
+         *
+         * @param key	key identifying the position
+         */
+        protected void offer(long key) {
+            if (this.seen < this.keys.length) {
+                this.keys[(int) this.seen] = key;
+            } else {
+                long idx = (long) (rand.nextDouble() * (this.seen + 1));
+                if (idx < this.keys.length)
+                    this.keys[(int) idx] = key;
+            }
+            this.seen++;
+        }
+
+        /**
+         * @return the number of positions in the sample
+         */
+        protected int size() {
+            return (int) Math.min(this.seen, this.keys.length);
+        }
+
+        /**
+         * Copy the sampled keys into an array.
+         *
+         * @param target	target array
+         * @param start		index of the first array element to fill
+         *
+         * @return the index after the last array element filled
+         */
+        protected int copyTo(long[] target, int start) {
+            int n = this.size();
+            System.arraycopy(this.keys, 0, target, start, n);
+            return start + n;
+        }
+
     }
 
 }
@@ -32,6 +32,8 @@ public class ContigSensor {
     boolean suspicious;
     /** codon at this sensor position */
     private String codon;
+    /** strand of this sensor ('+' or '-'), or 0 if the strand is not reported */
+    private char strand;
 
     /**
      * Construct a contig sensor for a specified position on a contig.
@@ -41,10 +43,24 @@ public class ContigSensor {
      * @oaran codon	codon at the current position
      */
     public ContigSensor(String id, int pos, String codon) {
+        this(id, pos, codon, (char) 0);
+    }
+
+    /**
+     * Construct a contig sensor for a specified position on a specified strand of a contig.
+     * The strand is included in the metadata.
+     *
+     * @param id		ID of the contig
+     * @param pos		position of the sensor (always a plus-strand position)
+     * @param codon		codon at the current position, read in the direction of the strand
+     * @param strand	'+' for the plus strand, '-' for the minus strand, or 0 to omit the strand
+     */
+    public ContigSensor(String id, int pos, String codon, char strand) {
         this.contigId = id;
         this.position = pos;
         this.suspicious = false;
         this.codon = codon;
+        this.strand = strand;
     }
 
     /**
@@ -69,10 +85,20 @@ public class ContigSensor {
     }
 
     /**
-     * @return a string representation of contig and position
+     * @return a string representation of contig and position (and strand, if it is reported)
      */
     public String getMeta() {
-        return this.contigId + ";" + Integer.toString(this.position);
+        String retVal = this.contigId + ";" + Integer.toString(this.position);
+        if (this.strand != 0)
+            retVal += ";" + this.strand;
+        return retVal;
+    }
+
+    /**
+     * @return the strand of this sensor ('+' or '-'), or 0 if the strand is not reported
+     */
+    public char getStrand() {
+        return this.strand;
     }
 
     /**
@@ -86,10 +112,17 @@ public class ContigSensor {
      * Store the sensor values in this object.
      *
      * @param newSensors	new sensors to store
-     * @param suspicious	TRUE if there were ambiguity characters found
      */
-    protected void storeSensors(String[] newSensors, boolean suspicious) {
+    protected void storeSensors(String[] newSensors) {
         this.sensors = newSensors;
+    }
+
+    /**
+     * Specify whether this sensor includes ambiguity characters.
+     *
+     * @param suspicious	TRUE if there were ambiguity characters found
+     */
+    protected void setSuspicious(boolean suspicious) {
         this.suspicious = suspicious;
     }
 
@@ -3,8 +3,14 @@
  */
 package org.theseed.genome.contigs;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.theseed.genome.Contig;
@@ -20,19 +26,257 @@ public abstract class ContigSensorFactory {
      * types of sensors currently supported
      */
     public static enum Type {
-        DIRECT, CHANNEL, CODON, AMINOACID
+        DIRECT, CHANNEL, CODON, AMINOACID, KMER, ONEHOT
+    }
+
+    /**
+     * strands for which sensors can be produced
+     */
+    public static enum Strands {
+        /** plus strand only (the strand is not reported in the metadata) */
+        PLUS,
+        /** plus and minus strands (the strand is reported in the metadata) */
+        BOTH
     }
 
     /** global sensor width, to either side of the target position */
     protected static int leftWidth = 21;
     protected static int rightWidth = 45;
 
+    /** per-thread caches, keyed weakly by thread so the caches of finished threads can be collected */
+    private final Map<Thread, Cache> caches = Collections.synchronizedMap(new WeakHashMap<Thread, Cache>());
+    /** cache for the current thread */
+    private final ThreadLocal<Cache> cache = ThreadLocal.withInitial(() -> {
+        Cache retVal = new Cache();
+        this.caches.put(Thread.currentThread(), retVal);
+        return retVal;
+    });
+
+    /**
+     * This object holds one thread's cache of the tracks and ambiguity indexes for the two most recently used
+     * sequences (normally the two strands of a contig).
+     */
+    private static class Cache {
+
+        /** cached tracks, most recent first */
+        private final SequenceTrack[] tracks = new SequenceTrack[2];
+        /** cached ambiguity indexes, most recent first */
+        private final AmbiguityIndex[] indexes = new AmbiguityIndex[2];
+
+        /**
+         * Empty the cache.
+         */
+        private void clear() {
+            Arrays.fill(this.tracks, null);
+            Arrays.fill(this.indexes, null);
+        }
+
+    }
+
     /**
      * Construct a blank, empty sensor factory.
      */
     public ContigSensorFactory() {
     }
 
+    /**
+     * @return the precomputed track for a sequence
+     *
+     * The track is cached, so that consecutive sensors on the same sequence share it.  Sequences are
+     * matched by identity, so a track is only reused if the caller passes the same sequence object, and
+     * only if the factory's track builder has not changed since the track was built.
+     *
+     * @param sequence	sequence whose track is desired
+     *
+     * @throws IllegalStateException if this factory does not use tracks
+     */
+    protected SequenceTrack getTrack(CharSequence sequence) {
+        SequenceTrack[] cache = this.cache.get().tracks;
+        SequenceTrack.Builder builder = this.getTrackBuilder();
+        if (builder == null)
+            throw new IllegalStateException("Sensor factory " + this.getClass().getSimpleName() + " does not use tracks.");
+        SequenceTrack retVal = cache[0];
+        if (! isTrackFor(retVal, sequence, builder)) {
+            retVal = cache[1];
+            if (! isTrackFor(retVal, sequence, builder))
+                retVal = new SequenceTrack(sequence, builder);
+            cache[1] = cache[0];
+            cache[0] = retVal;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if the specified cached track was built for the specified sequence by the specified builder
+     *
+     * @param track		cached track to check (may be NULL)
+     * @param sequence	sequence of interest
+     * @param builder	current track builder
+     */
+    private static boolean isTrackFor(SequenceTrack track, CharSequence sequence, SequenceTrack.Builder builder) {
+        return (track != null && track.getSequence() == sequence && track.getBuilder() == builder);
+    }
+
+    /**
+     * @return the ambiguity index for a sequence
+     *
+     * The index is cached in the same way as the tracks (see {@link #getTrack}).
+     *
+     * @param sequence	sequence whose index is desired
+     */
+    protected AmbiguityIndex getAmbiguityIndex(CharSequence sequence) {
+        AmbiguityIndex[] cache = this.cache.get().indexes;
+        AmbiguityIndex retVal = cache[0];
+        if (retVal == null || retVal.getSequence() != sequence) {
+            retVal = cache[1];
+            if (retVal == null || retVal.getSequence() != sequence)
+                retVal = new AmbiguityIndex(sequence, this::isAmbiguous);
+            cache[1] = cache[0];
+            cache[0] = retVal;
+        }
+        return retVal;
+    }
+
+    /**
+     * Release the cached tracks and ambiguity indexes of the current thread.  A cache holds whole-sequence
+     * structures, so this should be called when a genome or file is finished.  Only the caller's cache is
+     * released, since other threads may still be working on their own sequences; the caches of worker threads
+     * are released by {@link #releaseAllCaches} when the workers are done.
+     */
+    public void releaseCaches() {
+        this.cache.get().clear();
+    }
+
+    /**
+     * Release the cached tracks and ambiguity indexes of all threads.  This should only be called when no other
+     * thread is using the factory, normally after the worker threads are shut down, so that the idle workers do
+     * not hold on to the last sequences they processed.
+     */
+    public void releaseAllCaches() {
+        synchronized (this.caches) {
+            for (Cache threadCache : this.caches.values())
+                threadCache.clear();
+        }
+    }
+
+    /**
+     * @return TRUE if a character is ambiguous for this factory's sensors
+     *
+     * The default is anything other than A, C, G, T, or U.  Factories that treat other characters as valid
+     * (or these as ambiguous) should override this method.
+     *
+     * @param c		character to check
+     */
+    protected boolean isAmbiguous(int c) {
+        return (GeneticCode.baseCode((char) c) < 0);
+    }
+
+    /**
+     * @return the 0-based offset of the first character that can make the sensor at a position suspicious
+     *
+     * @param pos	1-based position of the sensor in the sequence
+     * @param len	length of the sequence
+     */
+    protected int windowStart(int pos, int len) {
+        return pos - leftWidth - 1;
+    }
+
+    /**
+     * @return the 0-based offset past the last character that can make the sensor at a position suspicious
+     *
+     * The default is the end of the sensor window.  Factories whose sensor values depend on characters past the
+     * window should override this method.  As the position increases, the start and end must never decrease,
+     * and the start must increase by no more than one per position, except at positions outside the range given
+     * by {@link #firstRegular} and {@link #lastRegular}.
+     *
+     * @param pos	1-based position of the sensor in the sequence
+     * @param len	length of the sequence
+     */
+    protected int windowEnd(int pos, int len) {
+        return this.windowStart(pos, len) + getFullWidth();
+    }
+
+    /**
+     * @return the first position whose suspicion window follows the ordering rules of {@link #windowEnd}
+     *
+     * The default is the first position of the sequence.  Factories whose windows are trimmed at the left edge
+     * of the sequence in a way that breaks the rules should override this method.
+     *
+     * @param len	length of the sequence
+     */
+    protected int firstRegular(int len) {
+        return 1;
+    }
+
+    /**
+     * @return the last position whose suspicion window follows the ordering rules of {@link #windowEnd}
+     *
+     * The default is the last position of the sequence.  Factories whose windows are trimmed at the right edge
+     * of the sequence in a way that breaks the rules should override this method.
+     *
+     * @param len	length of the sequence
+     */
+    protected int lastRegular(int len) {
+        return len;
+    }
+
+    /**
+     * @return TRUE if the sensor at a position would be suspicious (contain ambiguity characters)
+     *
+     * This is a constant-time check, so callers that discard suspicious sensors should use it to avoid
+     * building them.
+     *
+     * @param sequence	sequence containing the position
+     * @param pos		1-based position of the sensor in the sequence
+     */
+    public boolean isSuspicious(CharSequence sequence, int pos) {
+        int len = sequence.length();
+        return ! this.getAmbiguityIndex(sequence).isClean(this.windowStart(pos, len), this.windowEnd(pos, len));
+    }
+
+    /**
+     * @return the first position at or after the specified one whose sensor would not be suspicious, or a
+     * 		   position past the end of the sequence if there is none
+     *
+     * This skips a run of ambiguity characters (such as a gap in a draft assembly) in a few steps instead of
+     * one position at a time.  Positions outside the regular range (see {@link #firstRegular}) are checked one
+     * at a time.
+     *
+     * @param sequence	sequence containing the position
+     * @param pos		1-based starting position
+     */
+    public int nextClean(CharSequence sequence, int pos) {
+        AmbiguityIndex index = this.getAmbiguityIndex(sequence);
+        int len = sequence.length();
+        int first = this.firstRegular(len);
+        int limit = this.lastRegular(len);
+        int retVal = pos;
+        boolean found = false;
+        while (! found && retVal <= len) {
+            if (retVal < first || retVal > limit) {
+                found = index.isClean(this.windowStart(retVal, len), this.windowEnd(retVal, len));
+                if (! found) retVal++;
+            } else {
+                int start = Math.max(this.windowStart(retVal, len), 0);
+                int last = index.lastAmbiguous(start, this.windowEnd(retVal, len));
+                if (last < 0)
+                    found = true;
+                else
+                    retVal = Math.min(retVal + last - start + 1, limit + 1);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the builder for this factory's sequence tracks, or NULL if the factory does not use tracks
+     *
+     * Factories that use tracks must override this method.
+     */
+    protected SequenceTrack.Builder getTrackBuilder() {
+        return null;
+    }
+
     /**
      * @return the number of sensors on the left side of the target position
      */
@@ -91,13 +335,14 @@ public abstract class ContigSensorFactory {
      * @param start		starting position
      * @param len		number of positions to process
      */
-    private List<ContigSensor> processContig(String contigId, String sequence, int start, int len) {
+    private List<ContigSensor> processContig(String contigId, CharSequence sequence, int start, int len) {
         ArrayList<ContigSensor> retVal = new ArrayList<ContigSensor>(sequence.length());
         int end = start + len - 1;
         if (end > sequence.length()) end = sequence.length();
-        for (int i = start; i <= end; i++) {
-            ContigSensor snapshot = this.create(contigId, i, sequence);
-            if (! snapshot.suspicious) retVal.add(snapshot);
+        int i = this.nextClean(sequence, start);
+        while (i <= end) {
+            retVal.add(this.create(contigId, i, sequence));
+            i = this.nextClean(sequence, i + 1);
         }
         return retVal;
     }
@@ -116,21 +361,43 @@ public abstract class ContigSensorFactory {
      * @param pos		position in the sequence for the sensor
      * @param sequence	DNA sequence from which the sensor is derived
      */
-    public ContigSensor create(String id, int pos, String sequence) {
+    public ContigSensor create(String id, int pos, CharSequence sequence) {
         String codon = CodonFilter.getCodon(pos, sequence);
         ContigSensor retVal = new ContigSensor(id, pos, codon);
         this.convertSequence(retVal, sequence, pos);
+        retVal.setSuspicious(this.isSuspicious(sequence, pos));
         return retVal;
     }
 
     /**
-     * Fill the specified sensor with the DNA information at the current position.
+     * Create a contig sensor of the appropriate type at the specified position on a specified strand of
+     * a DNA sequence.  For the minus strand, the sequence should be a reverse-complement view, but the
+     * position is still the plus-strand position.  The sensor window is centered on the same base
+     * pair as the plus-strand window would be, but it reads in the opposite direction.
+     *
+     * @param id		ID of the DNA sequence
+     * @param pos		plus-strand position in the sequence for the sensor
+     * @param sequence	DNA sequence from which the sensor is derived (reverse-complemented for the minus strand)
+     * @param strand	'+' for the plus strand or '-' for the minus strand
+     */
+    public ContigSensor create(String id, int pos, CharSequence sequence, char strand) {
+        int seqPos = (strand == '-' ? sequence.length() - pos + 1 : pos);
+        String codon = CodonFilter.getCodon(seqPos, sequence);
+        ContigSensor retVal = new ContigSensor(id, pos, codon, strand);
+        this.convertSequence(retVal, sequence, seqPos);
+        retVal.setSuspicious(this.isSuspicious(sequence, seqPos));
+        return retVal;
+    }
+
+    /**
+     * Fill the specified sensor with the DNA information at the current position.  The sensor's suspicion flag
+     * is computed separately, from the ambiguity index (see {@link #isSuspicious(CharSequence, int)}).
      *
      * @param sensor	target contig sensor
      * @param sequence	source sequence being sensed
      * @param pos		position of the sensor
      */
-    protected abstract void convertSequence(ContigSensor sensor, String sequence, int pos);
+    protected abstract void convertSequence(ContigSensor sensor, CharSequence sequence, int pos);
 
     /**
      * @return a list of the non-suspicious sensors for the specified contig region
@@ -163,6 +430,12 @@ public abstract class ContigSensorFactory {
         case AMINOACID :
             retVal = new AminoAcidContigSensorFactory();
             break;
+        case KMER :
+            retVal = new KmerContigSensorFactory();
+            break;
+        case ONEHOT :
+            retVal = new OneHotContigSensorFactory();
+            break;
         default :
             throw new IllegalArgumentException("Unknown contig factory type " + type + ".");
         }
@@ -170,15 +443,110 @@ public abstract class ContigSensorFactory {
     }
 
     /**
-     * @return the sensor column headers for this sensor type
+     * @return the sensor column headers for this sensor type, one per sensor value (even if the widths
+     * 			are not multiples of the stride)
      */
     public String sensor_headers() {
-        ArrayList<String> headers = new ArrayList<String>(getFullWidth());
         int stride = this.getStride();
-        for (int i = -getLeftWidth(); i <= getRightWidth(); i += stride) {
-            headers.add("pos." + i);
+        int n = getFullWidth() / stride;
+        ArrayList<String> headers = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++) {
+            headers.add("pos." + (i * stride - getLeftWidth()));
         }
         return StringUtils.join(headers, '\t');
     }
 
+    /**
+     * @return the name of the encoding used by {@link #writeBinary}, for the binary output header
+     */
+    public String getBinaryEncoding() {
+        return "utf";
+    }
+
+    /**
+     * Write the sensor values of a contig sensor in binary form.  The default is to write each value as
+     * a modified UTF-8 string.  Factories with a more compact representation should override this method
+     * along with {@link #getBinaryEncoding}.
+     *
+     * @param sensor	contig sensor to write
+     * @param out		binary output stream
+     *
+     * @throws IOException
+     */
+    public void writeBinary(ContigSensor sensor, DataOutput out) throws IOException {
+        for (String value : sensor.getSensors())
+            out.writeUTF(value);
+    }
+
+    /**
+     * @return the number of distinct categorical values a sensor column can have, or 0 if the sensor values
+     * 		   are numeric
+     *
+     * Categorical factories should override this method along with {@link #getVocabularyIndex}.
+     */
+    public int getVocabularySize() {
+        return 0;
+    }
+
+    /**
+     * @return the vocabulary index of a categorical sensor value, or -1 if the value has no feature (for example,
+     * 		   a position off the edge of the contig)
+     *
+     * @param value		sensor value to convert
+     */
+    public int getVocabularyIndex(String value) {
+        return -1;
+    }
+
+    /**
+     * @return the number of sparse features for a sensor
+     *
+     * For a categorical factory, there is one feature for each vocabulary value in each sensor column.  For
+     * a numeric factory, there is one feature for each sensor column.
+     */
+    public int getFeatureCount() {
+        int retVal = this.sensor_headers().split("\t").length;
+        int vocabSize = this.getVocabularySize();
+        if (vocabSize > 0)
+            retVal *= vocabSize;
+        return retVal;
+    }
+
+    /**
+     * Compute the sparse features for a sensor.  The feature index for a categorical value is the column index
+     * times the vocabulary size plus the vocabulary index, and the feature value is 1.  The feature index for a
+     * numeric value is the column index, and the feature value is the sensor value.  Zero features are omitted.
+     *
+     * @param sensor	sensor to convert
+     * @param indices	array to receive the 0-based feature indices, in ascending order; it must be at least as
+     * 					long as the number of sensor columns
+     * @param values	array to receive the feature values; it must be at least as long as the number of sensor
+     * 					columns
+     *
+     * @return the number of features stored
+     */
+    public int sparseFeatures(ContigSensor sensor, int[] indices, float[] values) {
+        String[] sensors = sensor.getSensors();
+        int vocabSize = this.getVocabularySize();
+        int retVal = 0;
+        for (int i = 0; i < sensors.length; i++) {
+            if (vocabSize > 0) {
+                int idx = this.getVocabularyIndex(sensors[i]);
+                if (idx >= 0) {
+                    indices[retVal] = i * vocabSize + idx;
+                    values[retVal] = 1.0f;
+                    retVal++;
+                }
+            } else {
+                float value = Float.parseFloat(sensors[i]);
+                if (value != 0.0f) {
+                    indices[retVal] = i;
+                    values[retVal] = value;
+                    retVal++;
+                }
+            }
+        }
+        return retVal;
+    }
+
 }
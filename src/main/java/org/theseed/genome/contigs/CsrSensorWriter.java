@@ -0,0 +1,107 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This sensor writer produces binary records that hold the rows of a sparse matrix.  Concatenating the index and
+ * value arrays of the records and accumulating the counts gives the three arrays of the compressed-sparse-row
+ * form.  All the numbers are big-endian and all the strings are in the modified UTF-8 format of java.io.DataOutput.
+ *
+ * The header consists of the four bytes "CSNS", an integer version number (currently 1), the encoding name "csr",
+ * the number of label columns followed by their names, the number of classes followed by their names (0 if
+ * there is no class column), and the number of features.  The class column is not included in the label
+ * columns.
+ *
+ * Each record consists of the class index (0 if there is no class column, -1 for an unknown class), the
+ * label values, the number of non-zero features, the 0-based feature indices as integers, and the feature
+ * values as floats.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class CsrSensorWriter extends BinarySensorWriter {
+
+    // FIELDS
+    /** buffer for feature indices */
+    private final int[] indices;
+    /** buffer for feature values */
+    private final float[] values;
+
+    /**
+     * Construct a CSR sensor writer.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     */
+    public CsrSensorWriter(OutputStream stream, ContigSensorFactory factory) {
+        this(stream, factory, null);
+    }
+
+    /**
+     * Construct a CSR sensor writer, possibly for in-memory output.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     * @param memory	in-memory output stream (same as the target), or NULL for a normal writer
+     */
+    protected CsrSensorWriter(OutputStream stream, ContigSensorFactory factory, ByteArrayOutputStream memory) {
+        super(stream, factory, memory);
+        int width = factory.sensor_headers().split("\t").length;
+        this.indices = new int[width];
+        this.values = new float[width];
+    }
+
+    @Override
+    public void writeHeader(String... labels) throws IOException {
+        DataOutputStream out = this.getOutput();
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF("csr");
+        int metaCount = (this.hasClasses() ? labels.length - 1 : labels.length);
+        out.writeInt(metaCount);
+        for (int i = 0; i < metaCount; i++)
+            out.writeUTF(labels[i]);
+        if (this.hasClasses()) {
+            String[] classes = this.classNames();
+            out.writeInt(classes.length);
+            for (String name : classes)
+                out.writeUTF(name);
+        } else {
+            out.writeInt(0);
+        }
+        out.writeInt(this.getFactory().getFeatureCount());
+    }
+
+    @Override
+    public void write(ContigSensor sensor, String... labels) throws IOException {
+        DataOutputStream out = this.getOutput();
+        int metaCount = labels.length;
+        int label = 0;
+        if (this.hasClasses()) {
+            metaCount--;
+            label = this.classIndex(labels[metaCount]);
+        }
+        out.writeInt(label);
+        for (int i = 0; i < metaCount; i++)
+            out.writeUTF(labels[i]);
+        int n = this.getFactory().sparseFeatures(sensor, this.indices, this.values);
+        out.writeInt(n);
+        for (int i = 0; i < n; i++)
+            out.writeInt(this.indices[i]);
+        for (int i = 0; i < n; i++)
+            out.writeFloat(this.values[i]);
+    }
+
+    @Override
+    public SensorWriter fork() {
+        ByteArrayOutputStream memory = memoryStream();
+        return this.inherit(new CsrSensorWriter(memory, this.getFactory(), memory));
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+/**
+ * This object removes duplicate output rows.  Each row is identified by a 64-bit hash of its class and its
+ * encoded sensor data.  The hashes are kept in an open-addressing set of longs, with a Bloom filter in front of
+ * it, so that most new rows can be recognized from a few bit checks without probing the set.
+ *
+ * The memory used is fixed when the filter is constructed.  If the set fills up, additional new rows are
+ * still accepted but are no longer remembered, so a row is never rejected unless an identical row was accepted
+ * before it.  (The only exception would be a 64-bit hash collision between two different rows.)
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class DedupFilter {
+
+    // FIELDS
+    /** Bloom filter bits */
+    private final long[] bloom;
+    /** mask for a Bloom filter bit index */
+    private final long bloomMask;
+    /** hash set slots (0 means empty) */
+    private final long[] slots;
+    /** mask for a slot index */
+    private final int slotMask;
+    /** maximum number of hashes to store in the set */
+    private final int maxSize;
+    /** number of hashes in the set */
+    private int size;
+    /** number of duplicate rows rejected */
+    private long duplicates;
+    /** number of new rows accepted without being remembered because the set was full */
+    private long unchecked;
+
+    /** number of Bloom filter probes per hash */
+    private static final int BLOOM_PROBES = 3;
+    /** maximum load factor for the hash set */
+    private static final double MAX_LOAD = 0.75;
+    /** fraction of the memory given to the Bloom filter */
+    private static final double BLOOM_FRACTION = 0.125;
+
+    /**
+     * Construct a duplicate filter with a specified memory limit.
+     *
+     * @param memory	number of bytes to use for the filter (at least 1024)
+     */
+    public DedupFilter(long memory) {
+        if (memory < 1024)
+            throw new IllegalArgumentException("Duplicate filter memory must be at least 1024 bytes.");
+        long bloomWords = Long.highestOneBit(Math.max(1, (long) (memory * BLOOM_FRACTION) / 8));
+        this.bloom = new long[(int) Math.min(bloomWords, 1 << 30)];
+        this.bloomMask = this.bloom.length * 64L - 1;
+        long slotCount = Long.highestOneBit((memory - this.bloom.length * 8L) / 8);
+        this.slots = new long[(int) Math.min(slotCount, 1 << 30)];
+        this.slotMask = this.slots.length - 1;
+        this.maxSize = (int) (this.slots.length * MAX_LOAD);
+        this.size = 0;
+        this.duplicates = 0;
+        this.unchecked = 0;
+    }
+
+    /**
+     * Check a row and remember it.
+     *
+     * @param label		class of the row
+     * @param data		encoded sensor data of the row
+     *
+     * @return TRUE if the row is new (and should be output), FALSE if it is a duplicate
+     */
+    public boolean add(String label, String data) {
+        return this.add(hash(label, data));
+    }
+
+    /**
+     * Check a row hash and remember it.
+     *
+     * @param hash		64-bit hash of the row
+     *
+     * @return TRUE if the hash is new, FALSE if it is a duplicate
+     */
+    public boolean add(long hash) {
+        // Zero marks an empty slot, so it cannot be a hash value.
+        if (hash == 0) hash = 1;
+        // Check the Bloom filter.  If any of the bits is off, the hash is definitely new.
+        long h2 = (hash >>> 32) | 1;
+        boolean maybe = true;
+        for (int i = 0; i < BLOOM_PROBES; i++) {
+            long bit = (hash + i * h2) & this.bloomMask;
+            int word = (int) (bit >>> 6);
+            long flag = 1L << bit;
+            if ((this.bloom[word] & flag) == 0) {
+                maybe = false;
+                this.bloom[word] |= flag;
+            }
+        }
+        boolean retVal = true;
+        int idx = (int) mix(hash) & this.slotMask;
+        if (maybe) {
+            // Probe the set to see if this hash was really seen before.
+            while (this.slots[idx] != 0 && retVal) {
+                if (this.slots[idx] == hash)
+                    retVal = false;
+                else
+                    idx = (idx + 1) & this.slotMask;
+            }
+        } else {
+            // Find an empty slot for the new hash.
+            while (this.slots[idx] != 0)
+                idx = (idx + 1) & this.slotMask;
+        }
+        if (! retVal) {
+            this.duplicates++;
+        } else if (this.size < this.maxSize) {
+            this.slots[idx] = hash;
+            this.size++;
+        } else {
+            this.unchecked++;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return a 64-bit hash of a row's class and data
+     *
+     * @param label		class of the row
+     * @param data		encoded sensor data of the row
+     */
+    public static long hash(String label, String data) {
+        long retVal = 0x9E3779B97F4A7C15L;
+        retVal = hashString(retVal, label);
+        // Separate the class from the data, so that moving characters between them changes the hash.
+        retVal = (retVal ^ '\t') * 0x100000001B3L;
+        retVal = hashString(retVal, data);
+        return mix(retVal);
+    }
+
+    /**
+     * @return a hash updated with the characters of a string
+     *
+     * @param h		starting hash value
+     * @param s		string to add to the hash
+     */
+    private static long hashString(long h, String s) {
+        int n = s.length();
+        for (int i = 0; i < n; i++)
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+        return h;
+    }
+
+    /**
+     * @return a well-mixed version of a 64-bit value (the MurmurHash3 finalizer)
+     *
+     * @param h		value to mix
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return the number of duplicate rows rejected
+     */
+    public long getDuplicates() {
+        return this.duplicates;
+    }
+
+    /**
+     * @return the number of new rows accepted without being remembered because the filter was full
+     */
+    public long getUnchecked() {
+        return this.unchecked;
+    }
+
+    /**
+     * @return the number of distinct rows remembered
+     */
+    public int size() {
+        return this.size;
+    }
+
+}
@@ -6,43 +6,40 @@ package org.theseed.genome.contigs;
 /**
  * This factory assigns a floating-point number to each DNA letter and presents each letter as a single
  * input column.  The coding is A = -0.3, C = -0.6, G = 0.6, and T = 0.3.  Ambiguity characters are 0.
+ * The letters are converted in bulk to nucleotide codes (see {@link NucleotideEncoder}) and kept in a
+ * sequence track, so each position is converted once rather than once per sensor window.
  * @author Bruce Parrello
  *
  */
 public class DirectContigSensorFactory extends ContigSensorFactory {
 
+    /** sensor value for each nucleotide code */
+    private static final String[] VALUES = new String[] { "-0.3", "-0.6", "0.6", "0.3", "0.0" };
+
     @Override
-    protected void convertSequence(ContigSensor sensor, String sequence, int pos) {
-        boolean suspicion = false;
+    protected void convertSequence(ContigSensor sensor, CharSequence sequence, int pos) {
         int offset = pos - ContigSensorFactory.getLeftWidth() - 1;
+        SequenceTrack track = this.getTrack(sequence);
         String[] buffer = new String[ContigSensorFactory.getFullWidth()];
         for (int i = 0; i < buffer.length; i++) {
             int actual = offset + i;
             if (actual < 0 || actual >= sequence.length()) {
                 buffer[i] = "0.0";
-            } else switch (sequence.charAt(actual)) {
-                case 'A' :
-                case 'a' :
-                    buffer[i] = "-0.3";
-                    break;
-                case 'C' :
-                case 'c' :
-                    buffer[i] = "-0.6";
-                    break;
-                case 'G' :
-                case 'g' :
-                    buffer[i] = "0.6";
-                    break;
-                case 'T' :
-                case 't' :
-                    buffer[i] = "0.3";
-                    break;
-                default :
-                    buffer[i] = "0.0";
-                    suspicion = true;
+            } else {
+                buffer[i] = VALUES[track.get(actual)];
             }
         }
-        sensor.storeSensors(buffer, suspicion);
+        sensor.storeSensors(buffer);
+    }
+
+    @Override
+    protected boolean isAmbiguous(int c) {
+        return (NucleotideEncoder.code((char) c) == NucleotideEncoder.AMBIGUOUS);
+    }
+
+    @Override
+    protected SequenceTrack.Builder getTrackBuilder() {
+        return NucleotideEncoder.TRACK;
     }
 
 }
@@ -0,0 +1,227 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This object represents a samtools-style FASTA index (".fai" file).  Each line of the index describes one
+ * record of the FASTA file and contains (0) the record name, (1) the number of bases, (2) the file offset of
+ * the first base, (3) the number of bases in each full line, and (4) the number of bytes in each full line,
+ * including the terminator.  With this information, a record can be located and mapped without scanning
+ * the file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class FastaIndex implements Iterable<FastaIndex.Entry> {
+
+    // FIELDS
+    /** list of index entries, in file order */
+    private final List<Entry> entries;
+
+    /**
+     * This object describes a single FASTA record.
+     */
+    public static class Entry {
+
+        /** record name */
+        private final String name;
+        /** number of bases */
+        private final int length;
+        /** file offset of the first base */
+        private final long offset;
+        /** number of bases in a full line */
+        private final int lineBases;
+        /** number of bytes in a full line */
+        private final int lineWidth;
+
+        /**
+         * Construct an index entry.
+         *
+         * @param name			record name
+         * @param length		number of bases
+         * @param offset		file offset of the first base
+         * @param lineBases		number of bases in a full line
+         * @param lineWidth		number of bytes in a full line
+         */
+        public Entry(String name, int length, long offset, int lineBases, int lineWidth) {
+            this.name = name;
+            this.length = length;
+            this.offset = offset;
+            this.lineBases = lineBases;
+            this.lineWidth = lineWidth;
+        }
+
+        /**
+         * @return the record name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return the number of bases
+         */
+        public int getLength() {
+            return this.length;
+        }
+
+        /**
+         * @return the file offset of the first base
+         */
+        public long getOffset() {
+            return this.offset;
+        }
+
+        /**
+         * @return the number of bases in a full line
+         */
+        public int getLineBases() {
+            return this.lineBases;
+        }
+
+        /**
+         * @return the number of bytes in a full line
+         */
+        public int getLineWidth() {
+            return this.lineWidth;
+        }
+
+        @Override
+        public String toString() {
+            return this.name + "\t" + this.length + "\t" + this.offset + "\t" + this.lineBases + "\t" + this.lineWidth;
+        }
+
+    }
+
+    /**
+     * Construct an empty FASTA index.
+     */
+    public FastaIndex() {
+        this.entries = new ArrayList<Entry>();
+    }
+
+    /**
+     * @return the conventional index file name for a FASTA file
+     *
+     * @param fastaFile		FASTA file to be indexed
+     */
+    public static File indexFile(File fastaFile) {
+        return new File(fastaFile.getPath() + ".fai");
+    }
+
+    /**
+     * @return TRUE if the FASTA file has an index file that is at least as new as the FASTA file
+     *
+     * @param fastaFile		FASTA file to check
+     */
+    public static boolean isCurrent(File fastaFile) {
+        File faiFile = indexFile(fastaFile);
+        return (faiFile.canRead() && faiFile.lastModified() >= fastaFile.lastModified());
+    }
+
+    /**
+     * @return an index loaded from a ".fai" file
+     *
+     * @param faiFile	index file to read
+     *
+     * @throws IOException
+     */
+    public static FastaIndex load(File faiFile) throws IOException {
+        FastaIndex retVal = new FastaIndex();
+        try (BufferedReader reader = new BufferedReader(new FileReader(faiFile))) {
+            String line = reader.readLine();
+            while (line != null) {
+                if (! line.isEmpty()) {
+                    String[] fields = line.split("\t");
+                    if (fields.length < 5)
+                        throw new IOException("Invalid line in FASTA index " + faiFile + ": " + line);
+                    try {
+                        retVal.entries.add(new Entry(fields[0], Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                                Integer.parseInt(fields[3]), Integer.parseInt(fields[4])));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid number in FASTA index " + faiFile + ": " + line);
+                    }
+                }
+                line = reader.readLine();
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return an index built from the records of a scanned FASTA file
+     *
+     * @param reader	mapped FASTA reader containing the records
+     *
+     * @throws IOException if the file has irregular line lengths
+     */
+    public static FastaIndex build(MappedFastaReader reader) throws IOException {
+        FastaIndex retVal = new FastaIndex();
+        for (MappedSequence record : reader) {
+            if (record.isPacked())
+                throw new IOException("FASTA record " + record.getLabel() + " has irregular line lengths and cannot be indexed.");
+            retVal.entries.add(new Entry(record.getLabel(), record.length(), record.getOffset(),
+                    record.getLineBases(), record.getLineWidth()));
+        }
+        return retVal;
+    }
+
+    /**
+     * Write this index to a file.
+     *
+     * @param faiFile	output file
+     *
+     * @throws IOException
+     */
+    public void save(File faiFile) throws IOException {
+        try (PrintWriter writer = new PrintWriter(faiFile)) {
+            for (Entry entry : this.entries)
+                writer.println(entry.toString());
+        }
+    }
+
+    /**
+     * @return the entries for the specified record names, in file order
+     *
+     * @param names		names of the desired records
+     */
+    public List<Entry> select(Collection<String> names) {
+        List<Entry> retVal = new ArrayList<Entry>(names.size());
+        for (Entry entry : this.entries) {
+            if (names.contains(entry.name))
+                retVal.add(entry);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return all the entries in this index
+     */
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * @return the number of records indexed
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        return this.entries.iterator();
+    }
+
+}
@@ -6,19 +6,34 @@ package org.theseed.genome.contigs;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
-import org.theseed.sequence.FastaInputStream;
-import org.theseed.sequence.Sequence;
 import org.theseed.utils.ICommand;
 
 /**
  * This command reads in a FASTA file and produces an input file to request coding information from
  * a model.  The output file is tab-delimited, with the metadata in the first column and the
- * sensors in the remaining columns.
+ * sensors in the remaining columns.  Alternatively, the output can be in binary form (see
+ * {@link BinarySensorWriter}) or in a sparse form (see {@link LibsvmSensorWriter} and {@link CsrSensorWriter}).
+ * If a model file is specified, the sensors are scored in-process and the output contains the scores instead
+ * of the sensors (see {@link ScoreSensorWriter}).
+ *
+ * The FASTA files are memory-mapped rather than read into strings, so the sensors are computed directly
+ * from the file bytes.
  *
  * The positional parameters are the names of the FASTA files.
  *
@@ -29,12 +44,47 @@ import org.theseed.utils.ICommand;
  * -v	write progress messages to STDERR
  * -f	filter for known stop codons (the default is to include starts and stops)
  *
+ * --gc			genetic code to use for amino acid sensors; the default is 11
+ * --kmer		k-mer size for k-mer sensors; the default is 6
+ * --vocab		number of distinct tokens for k-mer sensors; the default is 4096
+ * --nchannel	add a fifth channel for ambiguity characters to one-hot sensors
+ * --format		output format: TEXT (the default), BINARY, LIBSVM (sparse text), CSR (sparse binary), or COLUMNAR
+ * 				(dictionary-encoded columns, see {@link ColumnarSensorWriter})
+ * --packing	binary representation of one-hot sensors, BITS (packed eight to a byte, the default) or
+ * 				UINT8 (one byte per channel)
+ * --progress	number of seconds between progress reports on STDERR; the default is 0 (no reports)
+ * --threads	number of threads to use; the records are processed in parallel, but the output is
+ * 				always in input order; the default is 1
+ * --index		use a samtools-style FASTA index (".fai" file) for each input file; if the index is missing or
+ * 				out of date, it will be built
+ * --minOrf	minimum open reading frame length for a candidate start or stop (see {@link SitePrefilter}); the
+ * 				default is 0 (no minimum)
+ * --pwm		name of a file containing a position weight matrix (see {@link PositionWeightMatrix}) for
+ * 				scoring the context of candidate starts; starts scoring below the "--pwmMin" threshold are
+ * 				discarded
+ * --pwmMin		minimum position weight matrix score for a candidate start; the default is 0
+ * --model		name of a model file (see {@link SensorScorer}) for scoring the sensors; if this is specified, the
+ * 				output contains the model's scores in place of the sensors, and the format must be TEXT
+ * --names		name of a file containing the names of the records to process, one per line; the default is
+ * 				to process all records
+ * --strands	PLUS to produce sensors for the plus strand only (the default), or BOTH to produce them for both
+ * 				strands; in the latter case, the minus-strand sensors are read from the reverse complement of
+ * 				the sequence, and the strand is added to the location metadata
+ * --regions	name of a BED-style file (contig ID, 0-based start, exclusive end) listing the regions in which to
+ * 				generate sensors; the sensor windows may extend outside the regions, but only positions
+ * 				inside them are output; the default is to process every position
+ * --contigs	name of a file to receive a contig dictionary; if this is specified, the location metadata is
+ * 				written in compact form, with a contig index in place of the contig ID and an abbreviation for
+ * 				a location that follows the previous one (see {@link ContigDictionary}); the full metadata can
+ * 				be restored using {@link LocationDecoder}
  * --sensor		type of DNA sensor to use
  * 		direct	each base pair converts to a single number
  * 		codon	each trio of base pairs is converted to a string
  * 		channel	each base pair is converted to a string indicating the base pair
  * 		aminoacid
  * 				each trio of base pairs is converted to its amino acid
+ * 		kmer	each base pair is converted to a hashed token for the k-mer starting there
+ * 		onehot	each base pair is converted to four channels (five with --nchannel), one per nucleotide
  *
  * @author Bruce Parrello
  *
@@ -44,6 +94,21 @@ public class FastaProcessor implements ICommand {
     // FIELDS
     /** factory object for creating contig sensors */
     private ContigSensorFactory factory;
+    /** set of record names to process, or NULL to process all of them */
+    private Set<String> names;
+    /** target regions, or NULL to process every position */
+    private RegionIndex regions;
+    /** progress tracker */
+    private ProgressReporter progress;
+    /** scoring model, or NULL to output the sensors */
+    private SensorScorer scorer;
+    /** candidate site prefilter, or NULL to keep all the candidates */
+    private SitePrefilter prefilter;
+    /** contig dictionary for compact location metadata, or NULL to write the full metadata */
+    private ContigDictionary contigs;
+
+    /** number of positions to process in each parallel task */
+    private static final int TASK_SIZE = 100000;
 
 
     // COMMAND-LINE OPTIONS
@@ -73,6 +138,74 @@ public class FastaProcessor implements ICommand {
     @Option(name="-f", aliases={"--stopFilter"}, usage="filter for known stop codons")
     private boolean edgeFilter;
 
+    /** genetic code for amino acid sensors */
+    @Option(name="--gc", aliases={"--geneticCode"}, metaVar="4", usage="genetic code for amino acid sensors")
+    private int geneticCode;
+
+    /** k-mer size for k-mer sensors */
+    @Option(name="--kmer", metaVar="8", usage="k-mer size for k-mer sensors")
+    private int kmerSize;
+
+    /** vocabulary size for k-mer sensors */
+    @Option(name="--vocab", metaVar="65536", usage="number of distinct tokens for k-mer sensors")
+    private int vocabSize;
+
+    /** TRUE to add an ambiguity channel to one-hot sensors */
+    @Option(name="--nchannel", usage="add an ambiguity channel to one-hot sensors")
+    private boolean ambiguityChannel;
+
+    /** output format */
+    @Option(name="--format", metaVar="BINARY", usage="output format")
+    private SensorWriter.Format outFormat;
+
+    /** binary representation of one-hot sensors */
+    @Option(name="--packing", metaVar="UINT8", usage="binary representation of one-hot sensors")
+    private OneHotContigSensorFactory.Packing packing;
+
+    /** progress report interval */
+    @Option(name="--progress", metaVar="60", usage="seconds between progress reports (0 for none)")
+    private int progressInterval;
+
+    /** number of worker threads */
+    @Option(name="--threads", metaVar="8", usage="number of worker threads")
+    private int threads;
+
+    /** use FASTA indexes */
+    @Option(name="--index", usage="build or reuse a FASTA index for each input file")
+    private boolean useIndex;
+
+    /** minimum ORF length for candidates */
+    @Option(name="--minOrf", metaVar="300", usage="minimum ORF length for a candidate start or stop")
+    private int minOrf;
+
+    /** position weight matrix file for start contexts */
+    @Option(name="--pwm", metaVar="sd.pwm", usage="position weight matrix for candidate start contexts")
+    private File pwmFile;
+
+    /** minimum position weight matrix score */
+    @Option(name="--pwmMin", metaVar="3.5", usage="minimum position weight matrix score for a candidate start")
+    private double pwmMin;
+
+    /** model file for scoring */
+    @Option(name="--model", metaVar="model.tbl", usage="model file for scoring the sensors in-process")
+    private File modelFile;
+
+    /** file of record names to process */
+    @Option(name="--names", metaVar="names.txt", usage="file containing names of the records to process")
+    private File namesFile;
+
+    /** strands to process */
+    @Option(name="--strands", metaVar="BOTH", usage="strands for which to produce sensors")
+    private ContigSensorFactory.Strands strands;
+
+    /** file of target regions */
+    @Option(name="--regions", metaVar="regions.bed", usage="BED file of regions to process")
+    private File regionFile;
+
+    /** contig dictionary output file */
+    @Option(name="--contigs", metaVar="contigs.txt", usage="write compact location metadata with a contig dictionary in this file")
+    private File contigFile;
+
     /** sensor type */
     @Option(name="--sensor", metaVar="channel", usage="type of DNA sensor to use")
     private void setFactory(ContigSensorFactory.Type type) {
@@ -94,6 +227,26 @@ public class FastaProcessor implements ICommand {
         // Set the defaults.
         this.help = false;
         this.debug = false;
+        this.progressInterval = 0;
+        this.geneticCode = 11;
+        this.kmerSize = 6;
+        this.vocabSize = 4096;
+        this.ambiguityChannel = false;
+        this.outFormat = SensorWriter.Format.TEXT;
+        this.packing = OneHotContigSensorFactory.Packing.BITS;
+        this.threads = 1;
+        this.useIndex = false;
+        this.namesFile = null;
+        this.modelFile = null;
+        this.scorer = null;
+        this.minOrf = 0;
+        this.pwmFile = null;
+        this.pwmMin = 0.0;
+        this.prefilter = null;
+        this.regionFile = null;
+        this.contigFile = null;
+        this.contigs = null;
+        this.strands = ContigSensorFactory.Strands.PLUS;
         this.factory = ContigSensorFactory.create(ContigSensorFactory.Type.CHANNEL);
         CmdLineParser parser = new CmdLineParser(this);
         try {
@@ -107,6 +260,50 @@ public class FastaProcessor implements ICommand {
                         throw new FileNotFoundException(inFile + " does not exist.");
                     }
                 }
+                // Validate the thread count.
+                if (this.threads < 1) {
+                    throw new IllegalArgumentException("Thread count must be at least 1.");
+                }
+                // Read in the record names.
+                if (this.namesFile != null) {
+                    this.names = new HashSet<String>();
+                    for (String line : Files.readAllLines(this.namesFile.toPath())) {
+                        String name = line.trim();
+                        if (! name.isEmpty()) this.names.add(name);
+                    }
+                }
+                // Read in the regions.  Only records with regions need to be processed.
+                if (this.regionFile != null) {
+                    this.regions = RegionIndex.load(this.regionFile);
+                    if (this.names == null)
+                        this.names = new HashSet<String>(this.regions.getContigIds());
+                    else
+                        this.names.retainAll(this.regions.getContigIds());
+                }
+                // Install the genetic code.
+                AminoAcidContigSensorFactory.setGeneticCode(this.geneticCode);
+                // Install the k-mer settings.
+                KmerContigSensorFactory.setKmerParms(this.kmerSize, this.vocabSize);
+                // Install the one-hot settings.
+                OneHotContigSensorFactory.setAmbiguityChannel(this.ambiguityChannel);
+                OneHotContigSensorFactory.setPacking(this.packing);
+                // Set up the candidate prefilter.  This must be done after the genetic code is installed.
+                if (this.minOrf < 0) {
+                    throw new IllegalArgumentException("Minimum ORF length cannot be negative.");
+                }
+                if (this.minOrf > 0 || this.pwmFile != null) {
+                    PositionWeightMatrix matrix = null;
+                    if (this.pwmFile != null)
+                        matrix = PositionWeightMatrix.load(this.pwmFile);
+                    this.prefilter = new SitePrefilter(this.minOrf, matrix, this.pwmMin,
+                            AminoAcidContigSensorFactory.getGeneticCode());
+                }
+                // Load the scoring model.  This must be done after the sensor settings are installed.
+                if (this.modelFile != null) {
+                    if (this.outFormat != SensorWriter.Format.TEXT)
+                        throw new IllegalArgumentException("Scored output must be in TEXT format.");
+                    this.scorer = SensorScorer.load(this.modelFile, this.factory);
+                }
                 retVal = true;
             }
         } catch (CmdLineException e) {
@@ -120,36 +317,266 @@ public class FastaProcessor implements ICommand {
 
     @Override
     public void run() {
-        try {
+        try (SensorWriter output = this.createWriter()) {
             // Create the output header.  The first column is the metadata location, the second
-            // is the codon itself (also metadata) and the remaining columns are sensors.
-            System.out.println("Location\tCodon\t" + this.factory.sensor_headers());
+            // is the codon itself (also metadata) and the remaining columns are sensors (or scores).
+            output.writeHeader("Location", "Codon");
             // Set up the codon filter.
             CodonFilter filter = new CodonFilter("ATG", "GTG", "TTG", "TAA", "TAG", "TGA");
             if (this.edgeFilter)
                 filter = new CodonFilter("TAA", "TAG", "TGA");
-            // Now we loop through the sequences, producing output.
-            for (File inFile : this.inFiles) {
-                if (debug) System.err.println("Processing file " + inFile + ".");
-                FastaInputStream inStream = new FastaInputStream(inFile);
-                for (Sequence inSeq : inStream) {
-                    int limit = inSeq.length();
-                    String sequence = inSeq.getSequence();
-                    // For this sequence, output all the sensors.
-                    for (int pos = 1; pos <= limit; pos++) {
-                        if (filter == null || filter.matches(pos, sequence)) {
-                            ContigSensor sensor = this.factory.create(inSeq.getLabel(), pos, sequence);
-                            System.out.format("%s\t%s\t%s%n", sensor.getMeta(), sensor.getCodon(),
-                                    sensor.toString());
+            // Set up progress tracking.  The total is the size of the FASTA files in bytes.
+            this.progress = new ProgressReporter(this.progressInterval);
+            long byteTotal = 0;
+            if (this.regions != null) {
+                byteTotal = this.regions.totalLength();
+            } else {
+                for (File inFile : this.inFiles)
+                    byteTotal += inFile.length();
+            }
+            this.progress.setTotals(0, byteTotal);
+            // Set up the contig dictionary for compact metadata.
+            if (this.contigFile != null)
+                this.contigs = new ContigDictionary();
+            // Create the worker pool.
+            ExecutorService pool = null;
+            if (this.threads > 1)
+                pool = Executors.newFixedThreadPool(this.threads);
+            try {
+                // Now we loop through the sequences, producing output.
+                for (File inFile : this.inFiles) {
+                    if (debug) System.err.println("Processing file " + inFile + ".");
+                    MappedFastaReader inStream = this.openFasta(inFile);
+                    if (pool == null) {
+                        ContigDictionary.Encoder locations = this.newEncoder();
+                        for (MappedSequence sequence : inStream) {
+                            if (this.contigs != null) this.contigs.add(sequence.getLabel());
+                            ReverseComplement minus = this.minusOf(sequence);
+                            for (RegionIndex.Interval range : this.getRanges(sequence)) {
+                                SitePrefilter.Prepared plusSites = this.prepare(sequence, null, range);
+                                SitePrefilter.Prepared minusSites = this.prepare(minus, minus, range);
+                                this.processRegion(sequence, minus, range.getStart(), range.getEnd(), filter,
+                                        plusSites, minusSites, locations, output);
+                                this.progress.addBases(range.getLength());
+                            }
+                            this.progress.addContig(0);
                         }
+                    } else {
+                        this.processParallel(inStream, filter, pool, output);
                     }
+                    inStream.close();
+                    // The file's cached tracks are no longer needed.
+                    this.factory.releaseCaches();
                 }
-                inStream.close();
+            } finally {
+                if (pool != null) {
+                    pool.shutdownNow();
+                    this.factory.releaseAllCaches();
+                }
+                this.progress.close();
             }
-        } catch (IOException e) {
+            if (this.contigs != null)
+                this.contigs.save(this.contigFile);
+            if (this.prefilter != null)
+                System.err.format("%d of %d candidates pruned by the prefilter.%n", this.prefilter.getPruned(),
+                        this.prefilter.getTested());
+        } catch (IOException | InterruptedException e) {
             System.err.println(e.getMessage());
+        } catch (ExecutionException e) {
+            System.err.println("Error in worker thread: " + e.getCause().getMessage());
+        }
+
+    }
+
+    /**
+     * Open a FASTA file for processing.  If indexing is on, the index is used to map only the records of
+     * interest.  Otherwise, the file is scanned and the records of interest are selected from it.
+     *
+     * @param inFile	FASTA file to open
+     *
+     * @return a mapped FASTA reader for the file
+     *
+     * @throws IOException
+     */
+    private MappedFastaReader openFasta(File inFile) throws IOException {
+        MappedFastaReader retVal;
+        File faiFile = FastaIndex.indexFile(inFile);
+        if (this.useIndex && FastaIndex.isCurrent(inFile)) {
+            // Here we can use the existing index.
+            if (debug) System.err.println("Using index " + faiFile + ".");
+            FastaIndex index = FastaIndex.load(faiFile);
+            List<FastaIndex.Entry> entries = (this.names == null ? index.getEntries() : index.select(this.names));
+            retVal = new MappedFastaReader(inFile, entries);
+        } else {
+            retVal = new MappedFastaReader(inFile);
+            if (this.useIndex) {
+                if (! retVal.isRegular()) {
+                    System.err.println("Cannot index " + inFile + " because its line lengths are irregular.");
+                } else {
+                    if (debug) System.err.println("Writing index " + faiFile + ".");
+                    FastaIndex.build(retVal).save(faiFile);
+                }
+            }
+            if (this.names != null)
+                retVal.getRecords().removeIf(x -> ! this.names.contains(x.getLabel()));
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the writer for the output, which scores the sensors if there is a model
+     */
+    private SensorWriter createWriter() {
+        SensorWriter retVal;
+        if (this.scorer == null)
+            retVal = SensorWriter.create(this.outFormat, System.out, this.factory);
+        else
+            retVal = new ScoreSensorWriter(System.out, this.factory, this.scorer);
+        return retVal;
+    }
+
+    /**
+     * Process the records of a FASTA file in parallel.  Each record is divided into tasks, and the
+     * output of the tasks is written in order.  Only a limited number of tasks is queued at any one time,
+     * so the output held in memory is bounded.
+     *
+     * @param inStream	mapped FASTA file to process
+     * @param filter	codon filter for choosing positions
+     * @param pool		worker thread pool
+     * @param output	sensor output writer
+     *
+     * @throws ExecutionException
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    private void processParallel(MappedFastaReader inStream, CodonFilter filter, ExecutorService pool,
+            SensorWriter output) throws InterruptedException, ExecutionException, IOException {
+        Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+        int maxPending = this.threads * 4;
+        for (MappedSequence sequence : inStream) {
+            // The contig is added to the dictionary here, so the contig indices are in input order.
+            if (this.contigs != null) this.contigs.add(sequence.getLabel());
+            ReverseComplement minus = this.minusOf(sequence);
+            for (RegionIndex.Interval range : this.getRanges(sequence)) {
+                SitePrefilter.Prepared plusSites = this.prepare(sequence, null, range);
+                SitePrefilter.Prepared minusSites = this.prepare(minus, minus, range);
+                int limit = range.getEnd();
+                for (int start = range.getStart(); start <= limit; start += TASK_SIZE) {
+                    final int begin = start;
+                    final int end = Math.min(start + TASK_SIZE - 1, limit);
+                    pending.add(pool.submit(() -> {
+                        SensorWriter buffer = output.fork();
+                        this.processRegion(sequence, minus, begin, end, filter, plusSites, minusSites,
+                                this.newEncoder(), buffer);
+                        this.progress.addBases(end - begin + 1);
+                        return buffer.toBytes();
+                    }));
+                    while (pending.size() >= maxPending)
+                        output.writeBytes(pending.remove().get());
+                }
+            }
+            this.progress.addContig(0);
         }
+        while (! pending.isEmpty())
+            output.writeBytes(pending.remove().get());
+    }
 
+    /**
+     * @return the ranges of positions to process in a sequence
+     *
+     * @param sequence	sequence of interest
+     */
+    private List<RegionIndex.Interval> getRanges(MappedSequence sequence) {
+        List<RegionIndex.Interval> retVal;
+        if (this.regions == null)
+            retVal = Collections.singletonList(new RegionIndex.Interval(1, sequence.length()));
+        else
+            retVal = this.regions.getIntervals(sequence.getLabel(), sequence.length());
+        return retVal;
+    }
+
+    /**
+     * @return a new location encoder for an output stream, or NULL if the full metadata is being written
+     */
+    private ContigDictionary.Encoder newEncoder() {
+        return (this.contigs == null ? null : this.contigs.encoder());
+    }
+
+    /**
+     * @return the minus-strand view of a sequence, or NULL if only the plus strand is being processed
+     *
+     * @param sequence	sequence of interest
+     */
+    private ReverseComplement minusOf(MappedSequence sequence) {
+        return (this.strands == ContigSensorFactory.Strands.BOTH ? new ReverseComplement(sequence) : null);
+    }
+
+    /**
+     * Output the sensors for a region of a sequence.  If a minus-strand view is specified, the minus-strand
+     * sensor for each position follows the plus-strand sensor.
+     *
+     * @param sequence	sequence to process
+     * @param minus		minus-strand view of the sequence, or NULL if only the plus strand is wanted
+     * @param start		first position (1-based) to process
+     * @param end		last position to process
+     * @param filter		codon filter for choosing positions
+     * @param plusSites		prepared plus strand for the candidate prefilter, or NULL if there is no prefilter
+     * @param minusSites	prepared minus strand for the candidate prefilter, or NULL if there is no prefilter
+     * @param locations		location encoder for the output, or NULL to write the full metadata
+     * @param output		sensor output writer
+     *
+     * @throws IOException
+     */
+    private void processRegion(MappedSequence sequence, ReverseComplement minus, int start, int end, CodonFilter filter,
+            SitePrefilter.Prepared plusSites, SitePrefilter.Prepared minusSites, ContigDictionary.Encoder locations,
+            SensorWriter output) throws IOException {
+        String label = sequence.getLabel();
+        for (int pos = start; pos <= end; pos++) {
+            if (minus == null) {
+                if ((filter == null || filter.matches(pos, sequence)) && (plusSites == null || plusSites.accept(pos)))
+                    this.writeSensor(this.factory.create(label, pos, sequence), locations, output);
+            } else {
+                if ((filter == null || filter.matches(pos, sequence)) && (plusSites == null || plusSites.accept(pos)))
+                    this.writeSensor(this.factory.create(label, pos, sequence, '+'), locations, output);
+                int flipped = minus.flip(pos);
+                if ((filter == null || filter.matches(flipped, minus)) && (minusSites == null || minusSites.accept(flipped)))
+                    this.writeSensor(this.factory.create(label, pos, minus, '-'), locations, output);
+            }
+        }
+    }
+
+    /**
+     * @return a sequence prepared for the candidate prefilter over a region, or NULL if there is no prefilter
+     * 		   or no sequence
+     *
+     * @param sequence	sequence (or minus-strand view) to prepare, or NULL
+     * @param minus		minus-strand view whose positions are flipped from the region's, or NULL for the plus strand
+     * @param range		plus-strand region whose candidates will be tested
+     */
+    private SitePrefilter.Prepared prepare(CharSequence sequence, ReverseComplement minus, RegionIndex.Interval range) {
+        SitePrefilter.Prepared retVal = null;
+        if (this.prefilter != null && sequence != null) {
+            if (minus == null)
+                retVal = this.prefilter.prepare(sequence, range.getStart(), range.getEnd());
+            else
+                retVal = this.prefilter.prepare(sequence, minus.flip(range.getEnd()), minus.flip(range.getStart()));
+        }
+        return retVal;
+    }
+
+    /**
+     * Write a sensor to the output.
+     *
+     * @param sensor		sensor to write
+     * @param locations	location encoder for the output, or NULL to write the full metadata
+     * @param output		sensor output writer
+     *
+     * @throws IOException
+     */
+    private void writeSensor(ContigSensor sensor, ContigDictionary.Encoder locations, SensorWriter output)
+            throws IOException {
+        String meta = (locations == null ? sensor.getMeta() : locations.encode(sensor));
+        output.write(sensor, meta, sensor.getCodon());
     }
 
 }
@@ -0,0 +1,255 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This object represents an NCBI genetic code translation table.  Codons are translated by converting them to
+ * an integer code from 0 to 63 (two bits per nucleotide, with A = 0, C = 1, G = 2, and T/U = 3) and using the
+ * code as an index into a 64-entry array of amino acids.  Codons containing ambiguity characters have no
+ * integer code.
+ *
+ * The tables are built from the NCBI amino-acid strings, which list the codons in TCAG order.
+ *
+ * For sequence tracks, there is also an ambiguity-aware codon code from 0 to 124, which uses five symbols per
+ * nucleotide (A = 0, C = 1, G = 2, T/U = 3, and anything else = 4).  This allows a track to remember which
+ * nucleotides of a codon were ambiguous.  The amino-acid sensors have always treated U as an ambiguity character,
+ * so there is a second track builder that codes it as 4.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GeneticCode {
+
+    // FIELDS
+    /** NCBI genetic code number */
+    private final int code;
+    /** amino acid for each codon code */
+    private final char[] aminoAcids;
+    /** amino acid string for each codon code */
+    private final String[] aminoAcidStrings;
+    /** amino acid string for each ambiguity-aware codon code */
+    private final String[] aminoAcidStrings5;
+
+    /** number of ambiguity-aware codon codes */
+    public static final int CODON_CODES_5 = 125;
+
+    /** builder for a track of ambiguity-aware codon codes; the value at each position is the code for the
+     *  codon starting there, or -1 if the codon runs off the end of the sequence */
+    public static final SequenceTrack.Builder CODON_TRACK = codonTrack(false);
+
+    /** builder for a track of ambiguity-aware codon codes in which U is an ambiguity character, for sensors
+     *  that only accept DNA */
+    public static final SequenceTrack.Builder DNA_CODON_TRACK = codonTrack(true);
+
+    /** nucleotide code for each ASCII character, or -1 for ambiguity characters */
+    private static final byte[] BASE_CODE = new byte[128];
+    static {
+        for (int i = 0; i < 128; i++)
+            BASE_CODE[i] = -1;
+        BASE_CODE['A'] = 0; BASE_CODE['a'] = 0;
+        BASE_CODE['C'] = 1; BASE_CODE['c'] = 1;
+        BASE_CODE['G'] = 2; BASE_CODE['g'] = 2;
+        BASE_CODE['T'] = 3; BASE_CODE['t'] = 3;
+        BASE_CODE['U'] = 3; BASE_CODE['u'] = 3;
+    }
+
+    /** nucleotide code for each position in the NCBI (TCAG) ordering */
+    private static final int[] NCBI_ORDER = new int[] { 3, 1, 0, 2 };
+
+    /** NCBI amino acid strings for the supported genetic codes */
+    private static final Map<Integer, String> NCBI_TABLES = new HashMap<Integer, String>();
+    static {
+        NCBI_TABLES.put(1,  "FFLLSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(2,  "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIMMTTTTNNKKSS**VVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(3,  "FFLLSSSSYY**CCWWTTTTPPPPHHQQRRRRIIMMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(4,  "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(5,  "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIMMTTTTNNKKSSSSVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(6,  "FFLLSSSSYYQQCC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(9,  "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIIMTTTTNNNKSSSSVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(10, "FFLLSSSSYY**CCCWLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(11, "FFLLSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(12, "FFLLSSSSYY**CC*WLLLSPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(13, "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIMMTTTTNNKKSSGGVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(14, "FFLLSSSSYYY*CCWWLLLLPPPPHHQQRRRRIIIMTTTTNNNKSSSSVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(16, "FFLLSSSSYY*LCC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(21, "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIMMTTTTNNNKSSSSVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(22, "FFLLSS*SYY*LCC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(23, "FF*LSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(24, "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSSKVVVVAAAADDEEGGGG");
+        NCBI_TABLES.put(25, "FFLLSSSSYY**CCGWLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG");
+    }
+
+    /** cache of genetic codes already built */
+    private static final Map<Integer, GeneticCode> CODES = new HashMap<Integer, GeneticCode>();
+
+    /**
+     * Construct a genetic code from an NCBI amino acid string.
+     *
+     * @param code		genetic code number
+     * @param ncbi		NCBI amino acid string, in TCAG codon order
+     */
+    private GeneticCode(int code, String ncbi) {
+        this.code = code;
+        this.aminoAcids = new char[64];
+        this.aminoAcidStrings = new String[64];
+        int i = 0;
+        for (int b1 : NCBI_ORDER) {
+            for (int b2 : NCBI_ORDER) {
+                for (int b3 : NCBI_ORDER) {
+                    int codon = (b1 << 4) | (b2 << 2) | b3;
+                    this.aminoAcids[codon] = ncbi.charAt(i);
+                    this.aminoAcidStrings[codon] = String.valueOf(ncbi.charAt(i));
+                    i++;
+                }
+            }
+        }
+        this.aminoAcidStrings5 = new String[CODON_CODES_5];
+        for (int code5 = 0; code5 < CODON_CODES_5; code5++) {
+            int codon = toCodon(code5);
+            this.aminoAcidStrings5[code5] = (codon < 0 ? "X" : this.aminoAcidStrings[codon]);
+        }
+    }
+
+    /**
+     * @return the genetic code with the specified number
+     *
+     * @param code	NCBI genetic code number
+     *
+     * @throws IllegalArgumentException if the genetic code is not supported
+     */
+    public static synchronized GeneticCode get(int code) {
+        GeneticCode retVal = CODES.get(code);
+        if (retVal == null) {
+            String ncbi = NCBI_TABLES.get(code);
+            if (ncbi == null)
+                throw new IllegalArgumentException("Unsupported genetic code " + code + ".");
+            retVal = new GeneticCode(code, ncbi);
+            CODES.put(code, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the nucleotide code for a character (0 to 3), or -1 for an ambiguity character
+     *
+     * @param c		character to convert
+     */
+    public static int baseCode(char c) {
+        return (c < 128 ? BASE_CODE[c] : -1);
+    }
+
+    /**
+     * @return the integer code (0 to 63) for the codon at the specified offset, or -1 if it contains an ambiguity character
+     *
+     * @param sequence	sequence containing the codon
+     * @param offset	0-based offset of the codon's first nucleotide
+     */
+    public static int codonCode(CharSequence sequence, int offset) {
+        int b1 = baseCode(sequence.charAt(offset));
+        int b2 = baseCode(sequence.charAt(offset + 1));
+        int b3 = baseCode(sequence.charAt(offset + 2));
+        int retVal = -1;
+        if ((b1 | b2 | b3) >= 0)
+            retVal = (b1 << 4) | (b2 << 2) | b3;
+        return retVal;
+    }
+
+    /**
+     * @return the ambiguity-aware nucleotide code for a character (0 to 3, or 4 for an ambiguity character)
+     *
+     * @param c		character to convert
+     */
+    public static int base5(char c) {
+        int retVal = baseCode(c);
+        return (retVal < 0 ? 4 : retVal);
+    }
+
+    /**
+     * @return the ambiguity-aware nucleotide code for a character, optionally treating U as an ambiguity character
+     *
+     * @param c			character to convert
+     * @param dnaOnly	TRUE if U is an ambiguity character
+     */
+    private static int base5(char c, boolean dnaOnly) {
+        return (dnaOnly && (c == 'U' || c == 'u') ? 4 : base5(c));
+    }
+
+    /**
+     * @return a builder for a track of ambiguity-aware codon codes
+     *
+     * @param dnaOnly	TRUE if U is an ambiguity character
+     */
+    private static SequenceTrack.Builder codonTrack(boolean dnaOnly) {
+        return (sequence, start, values) -> {
+            int len = sequence.length();
+            int code = -1;
+            for (int k = 0; k < values.length; k++) {
+                int i = start + k;
+                if (i + 2 >= len) {
+                    values[k] = -1;
+                } else {
+                    if (code < 0)
+                        code = base5(sequence.charAt(i), dnaOnly) * 25 + base5(sequence.charAt(i + 1), dnaOnly) * 5;
+                    else
+                        code = (code % 25) * 5;
+                    code += base5(sequence.charAt(i + 2), dnaOnly);
+                    values[k] = code;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the integer codon code (0 to 63) for an ambiguity-aware codon code, or -1 if the codon is ambiguous
+     *
+     * @param code5		ambiguity-aware codon code (0 to 124)
+     */
+    public static int toCodon(int code5) {
+        int b1 = code5 / 25;
+        int b2 = (code5 / 5) % 5;
+        int b3 = code5 % 5;
+        int retVal = -1;
+        if (b1 < 4 && b2 < 4 && b3 < 4)
+            retVal = (b1 << 4) | (b2 << 2) | b3;
+        return retVal;
+    }
+
+    /**
+     * @return the amino acid string for an ambiguity-aware codon code ("X" if the codon is ambiguous)
+     *
+     * @param code5		ambiguity-aware codon code (0 to 124)
+     */
+    public String translateString5(int code5) {
+        return this.aminoAcidStrings5[code5];
+    }
+
+    /**
+     * @return the amino acid for a codon code
+     *
+     * @param codon		integer codon code (0 to 63)
+     */
+    public char translate(int codon) {
+        return this.aminoAcids[codon];
+    }
+
+    /**
+     * @return the amino acid for a codon code, as a string
+     *
+     * @param codon		integer codon code (0 to 63)
+     */
+    public String translateString(int codon) {
+        return this.aminoAcidStrings[codon];
+    }
+
+    /**
+     * @return the NCBI number of this genetic code
+     */
+    public int getCode() {
+        return this.code;
+    }
+
+}
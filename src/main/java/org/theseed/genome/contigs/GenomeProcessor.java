@@ -5,8 +5,19 @@ package org.theseed.genome.contigs;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
@@ -19,12 +30,37 @@ import org.theseed.locations.DiscreteLocationList;
 import org.theseed.utils.ICommand;
 
 /**
- * This procedure reads a single genome GTO file and generates a verification
+ * This procedure reads genome GTO files and generates a verification
  * file for the deep learning engine.  Every base pair is converted into a
  * row of the output file, along with metadata indicating its location and
  * the expected value.  When the file is input to the model, its predictions
  * can be compared to the expected value in the metadata.
  *
+ * If a single genome is specified without an output directory, the verification file is written to the
+ * standard output.  Otherwise, each genome's verification file is written to the output directory, with the same base name as the GTO file and an extension indicating
+ * the output format (".tbl" for TEXT, ".bin" for BINARY, ".svm" for LIBSVM, ".csr" for CSR, and ".col" for
+ * COLUMNAR).  The
+ * directory also gets a file "summary.tbl" containing the number of rows of each class written for each
+ * genome, plus a total line.  A genome that cannot be processed is reported on STDERR, its partial output is
+ * deleted, and it is left out of the summary, but it does not stop the run.  Since the output files are named
+ * after the GTO files, two input files with the same name (in different directories) are not allowed, and
+ * neither is an input file whose output would be named "summary.tbl".
+ *
+ * If "--count-only" is specified, no sensors are generated.  Instead, each position is classified (and
+ * filtered, if "-f" is specified) exactly as it would be for the verification file, and a table with the number
+ * of rows of each class for each genome, in the same format as the summary file, is written to the standard
+ * output.  This takes a small fraction of the time of a full run.  The output directory is not used.
+ *
+ * If more than one thread is requested, or there is an output directory, the work is done by a
+ * {@link WorkScheduler}.  The genomes are started largest first (using the GTO file size as the estimate), and
+ * the contigs of each genome are divided into chunks that are processed in parallel, so a single large genome
+ * does not end up on one thread.  The output of each genome is still written in order.
+ *
+ * If "--compact" is specified, the location metadata is written in compact form, with a contig index in place of
+ * the contig ID and an abbreviation for a location that follows the previous one (see {@link ContigDictionary}).
+ * The contig dictionary for each verification file is written to the output directory with the same base name
+ * and an extension of ".contigs", and the full metadata can be restored using {@link LocationDecoder}.
+ *
  * -u	the number of positions to examine to the left (upstream) of the target position
  * -d	the number of positions to examine to the right (downstream) of the target position
  * -v	write progress messages to STDERR
@@ -32,6 +68,31 @@ import org.theseed.utils.ICommand;
  * 		specified, minus-strand locations are included as well
  * -f	filter for edge codons
  *
+ * --strands	PLUS to produce sensors for the plus strand only (the default), or BOTH to produce them for both
+ * 				strands; in the latter case, the minus-strand sensors are read from the reverse complement of
+ * 				the contig, the strand is added to the location metadata, and the expected value for each
+ * 				strand is computed from the proteins on that strand (with minus-strand proteins only
+ * 				counting as coding if "-n" is specified)
+ * --regions	name of a BED-style file (contig ID, 0-based start, exclusive end) listing the regions in which to
+ * 				generate sensors; the sensor windows may extend outside the regions, but only positions
+ * 				inside them are output; the default is to process every position
+ * --gc			genetic code to use for amino acid sensors; the default is 11
+ * --kmer		k-mer size for k-mer sensors; the default is 6
+ * --vocab		number of distinct tokens for k-mer sensors; the default is 4096
+ * --nchannel	add a fifth channel for ambiguity characters to one-hot sensors
+ * --format		output format: TEXT (the default), BINARY (see {@link BinarySensorWriter}), LIBSVM (sparse
+ * 				text, see {@link LibsvmSensorWriter}), CSR (sparse binary, see {@link CsrSensorWriter}), or
+ * 				COLUMNAR (dictionary-encoded columns, see {@link ColumnarSensorWriter}); in the sparse formats,
+ * 				the expected class is converted to a class index
+ * --packing	binary representation of one-hot sensors, BITS (packed eight to a byte, the default) or
+ * 				UINT8 (one byte per channel)
+ * --progress	number of seconds between progress reports on STDERR; the default is 0 (no reports)
+ * --threads	number of threads to use; the default is 1
+ * --count-only	count the rows of each class instead of writing the verification files
+ * --compact	write compact location metadata, with a contig dictionary for each verification file; this
+ * 				requires an output directory
+ * --chunk		number of positions in each parallel task; contigs are divided into chunks at multiples of this
+ * 				size; the default is 90000
  * --type		type of classification to do; the values are
  *    	coding	outputs a class of "coding" for a frame in a coding region and
  * 				"space" for a frame not in a coding region; the default is to
@@ -52,8 +113,14 @@ import org.theseed.utils.ICommand;
  * 		channel	each base pair is converted to a string indicating the base pair
  * 		aminoacid
  * 				each trio of base pairs is converted to its amino acid
+ * 		kmer	each base pair is converted to a hashed token for the k-mer starting there
+ * 		onehot	each base pair is converted to four channels (five with --nchannel), one per nucleotide
  *
- * This positional parameter is the name of the GTO file containing the genome.
+ * -o	output directory for the verification files; this is required if there is more than one genome,
+ * 		and is created if it does not exist
+ *
+ * The positional parameters are the names of the GTO files containing the genomes.  If a directory is
+ * specified, all the GTO files in it are processed.
  *
  * @author Bruce Parrello
  *
@@ -63,6 +130,17 @@ public class GenomeProcessor implements ICommand {
     // FIELDS
     /** factory object for creating contig sensors */
     private ContigSensorFactory factory;
+    /** target regions, or NULL to process every position */
+    private RegionIndex regions;
+    /** GTO files to process */
+    private List<File> gtoFiles;
+    /** progress reporter */
+    private ProgressReporter progress;
+    /** scheduler for parallel work, or NULL if the work is done serially */
+    private WorkScheduler scheduler;
+
+    /** name of the summary file in the output directory */
+    public static final String SUMMARY_FILE = "summary.tbl";
 
     // COMMAND-LINE OPTIONS
 
@@ -99,15 +177,69 @@ public class GenomeProcessor implements ICommand {
     @Option(name="--type", usage="type of classification")
     private LocationClass.Type classType;
 
+    /** strands to process */
+    @Option(name="--strands", metaVar="BOTH", usage="strands for which to produce sensors")
+    private ContigSensorFactory.Strands strands;
+
+    /** file of target regions */
+    @Option(name="--regions", metaVar="regions.bed", usage="BED file of regions to process")
+    private File regionFile;
+
+    /** genetic code for amino acid sensors */
+    @Option(name="--gc", aliases={"--geneticCode"}, metaVar="4", usage="genetic code for amino acid sensors")
+    private int geneticCode;
+
+    /** k-mer size for k-mer sensors */
+    @Option(name="--kmer", metaVar="8", usage="k-mer size for k-mer sensors")
+    private int kmerSize;
+
+    /** vocabulary size for k-mer sensors */
+    @Option(name="--vocab", metaVar="65536", usage="number of distinct tokens for k-mer sensors")
+    private int vocabSize;
+
+    /** TRUE to add an ambiguity channel to one-hot sensors */
+    @Option(name="--nchannel", usage="add an ambiguity channel to one-hot sensors")
+    private boolean ambiguityChannel;
+
+    /** output format */
+    @Option(name="--format", metaVar="BINARY", usage="output format")
+    private SensorWriter.Format outFormat;
+
+    /** binary representation of one-hot sensors */
+    @Option(name="--packing", metaVar="UINT8", usage="binary representation of one-hot sensors")
+    private OneHotContigSensorFactory.Packing packing;
+
+    /** progress report interval */
+    @Option(name="--progress", metaVar="60", usage="seconds between progress reports (0 for none)")
+    private int progressInterval;
+
+    /** number of worker threads */
+    @Option(name="--threads", metaVar="8", usage="number of threads to use")
+    private int threads;
+    /** TRUE to count the classes without generating sensors */
+    @Option(name="--count-only", aliases={"--countOnly"}, usage="only count the rows of each class")
+    private boolean countOnly;
+    /** TRUE to write compact location metadata */
+    @Option(name="--compact", usage="write compact location metadata with a contig dictionary file")
+    private boolean compact;
+    /** number of positions in each parallel task */
+    @Option(name="--chunk", metaVar="50000", usage="number of positions in each parallel task")
+    private int chunkSize;
+
+    /** output directory */
+    @Option(name="-o", aliases={"--outDir"}, metaVar="outDir", usage="output directory for verification files")
+    private File outDir;
+
     /** sensor type */
     @Option(name="--sensor", metaVar="codon", usage="type of DNA sensor to use (default: CHANNEL)")
     private void setFactory(ContigSensorFactory.Type type) {
         this.factory = ContigSensorFactory.create(type);
     }
 
-    /** input file */
-    @Argument(index=0, metaVar="genomeFile", usage="file containing the genome object")
-    private File genomeFile;
+    /** input files */
+    @Argument(index=0, metaVar="genomeFile1 genomeFile2 ...", usage="files (or directories) containing the genome objects",
+            required=true, multiValued=true)
+    private List<File> genomeFiles;
 
     @Override
     public boolean parseCommand(String[] args) {
@@ -118,6 +250,21 @@ public class GenomeProcessor implements ICommand {
         this.negative = false;
         this.classType = LocationClass.Type.EDGE;
         this.edgeFilter = false;
+        this.progressInterval = 0;
+        this.threads = 1;
+        this.chunkSize = 90000;
+        this.countOnly = false;
+        this.compact = false;
+        this.outDir = null;
+        this.geneticCode = 11;
+        this.kmerSize = 6;
+        this.vocabSize = 4096;
+        this.ambiguityChannel = false;
+        this.outFormat = SensorWriter.Format.TEXT;
+        this.packing = OneHotContigSensorFactory.Packing.BITS;
+        this.regionFile = null;
+        this.regions = null;
+        this.strands = ContigSensorFactory.Strands.PLUS;
         this.factory = ContigSensorFactory.create(ContigSensorFactory.Type.CHANNEL);
         CmdLineParser parser = new CmdLineParser(this);
         try {
@@ -125,10 +272,59 @@ public class GenomeProcessor implements ICommand {
             if (this.help) {
                 parser.printUsage(System.err);
             } else {
-                // Insure the genome file is valid.
-                if (! this.genomeFile.exists()) {
-                    throw new FileNotFoundException(genomeFile + " does not exist.");
+                // Insure the genome files are valid.
+                this.gtoFiles = expandInputs(this.genomeFiles);
+                if (this.gtoFiles.isEmpty()) {
+                    throw new FileNotFoundException("No GTO files found.");
+                }
+                // The output files are named after the GTO files, so the names must be unique.
+                Set<String> names = new HashSet<String>();
+                for (File gtoFile : this.gtoFiles) {
+                    if (! names.add(baseName(gtoFile)))
+                        throw new IllegalArgumentException("More than one input file is named " + gtoFile.getName() + ".");
+                }
+                // Validate the thread count.
+                if (this.threads < 1) {
+                    throw new IllegalArgumentException("Thread count must be at least 1.");
+                }
+                // Validate the chunk size.
+                if (this.chunkSize < 1) {
+                    throw new IllegalArgumentException("Chunk size must be at least 1.");
+                }
+                // Insure we have an output directory if we need one.  A count-only run does not use it.
+                if (this.countOnly) {
+                    this.outDir = null;
+                } else if (this.outDir == null) {
+                    if (this.gtoFiles.size() > 1)
+                        throw new IllegalArgumentException("An output directory is required for multiple genomes.");
+                } else if (! this.outDir.isDirectory()) {
+                    if (this.outDir.exists())
+                        throw new FileNotFoundException(this.outDir + " is not a directory.");
+                    if (! this.outDir.mkdirs())
+                        throw new IOException("Could not create output directory " + this.outDir + ".");
                 }
+                // The contig dictionaries for compact metadata go in the output directory.
+                if (this.compact && this.outDir == null && ! this.countOnly) {
+                    throw new IllegalArgumentException("Compact metadata requires an output directory.");
+                }
+                // A genome's output file must not overwrite the summary file.
+                if (this.outDir != null) {
+                    for (File gtoFile : this.gtoFiles) {
+                        if (outputName(gtoFile, this.outFormat).equals(SUMMARY_FILE))
+                            throw new IllegalArgumentException("The output for " + gtoFile + " would overwrite the " +
+                                    SUMMARY_FILE + " file.");
+                    }
+                }
+                // Read in the regions.
+                if (this.regionFile != null)
+                    this.regions = RegionIndex.load(this.regionFile);
+                // Install the genetic code.
+                AminoAcidContigSensorFactory.setGeneticCode(this.geneticCode);
+                // Install the k-mer settings.
+                KmerContigSensorFactory.setKmerParms(this.kmerSize, this.vocabSize);
+                // Install the one-hot settings.
+                OneHotContigSensorFactory.setAmbiguityChannel(this.ambiguityChannel);
+                OneHotContigSensorFactory.setPacking(this.packing);
                 retVal = true;
             }
         } catch (CmdLineException e) {
@@ -142,52 +338,496 @@ public class GenomeProcessor implements ICommand {
 
     @Override
     public void run() {
-        // Create the location sensor.
+        this.progress = new ProgressReporter(this.progressInterval);
+        this.scheduler = null;
+        if (this.threads > 1 || this.outDir != null || this.countOnly)
+            this.scheduler = new WorkScheduler(this.threads);
+        try {
+            if (this.outDir == null && ! this.countOnly) {
+                // Here we have a single genome going to the standard output.
+                File genomeFile = this.gtoFiles.get(0);
+                try {
+                    CountMap<String> classCounts = this.processGenome(genomeFile, System.out, true, null);
+                    if (this.debug) for (CountMap<String>.Count count : classCounts.sortedCounts()) {
+                        System.err.format("%20d written of type %s%n", count.getCount(), count.getKey());
+                    }
+                } catch (NumberFormatException | IOException e) {
+                    System.err.println("Error processing " + genomeFile + ": " +
+                            e.getMessage());
+                }
+            } else {
+                this.progress.setTotals(this.gtoFiles.size(), 0);
+                try {
+                    this.processBatch();
+                } catch (IOException e) {
+                    System.err.println("Error processing batch: " + e.getMessage());
+                }
+            }
+        } finally {
+            if (this.scheduler != null) {
+                this.scheduler.close();
+                this.factory.releaseAllCaches();
+            }
+            this.progress.close();
+        }
+    }
+
+    /**
+     * Process all the genomes in parallel, writing each one's verification file to the output directory,
+     * and then write the summary file.  The genomes are started largest first, but the summary lines are
+     * in input order.  For a count-only run, the genomes are only counted, and the summary is written to
+     * the standard output.
+     *
+     * @throws IOException
+     */
+    private void processBatch() throws IOException {
+        int n = this.gtoFiles.size();
+        List<Callable<CountMap<String>>> work = new ArrayList<Callable<CountMap<String>>>(n);
+        long[] sizes = new long[n];
+        for (int i = 0; i < n; i++) {
+            File gtoFile = this.gtoFiles.get(i);
+            // Most of a GTO file is the DNA, so its size is a good estimate of the work.
+            sizes[i] = gtoFile.length();
+            if (this.countOnly) {
+                work.add(() -> this.countGenome(gtoFile));
+            } else {
+                work.add(() -> this.writeGenome(gtoFile));
+            }
+        }
+        List<WorkScheduler.Task<CountMap<String>>> pending = this.scheduler.submitAll(work, sizes);
+        int errors;
+        if (this.countOnly) {
+            PrintWriter summary = new PrintWriter(System.out);
+            errors = this.writeSummary(summary, pending);
+            summary.flush();
+        } else {
+            try (PrintWriter summary = new PrintWriter(new File(this.outDir, SUMMARY_FILE))) {
+                errors = this.writeSummary(summary, pending);
+            }
+        }
+        if (this.debug)
+            System.err.format("%d genomes processed, %d failed.%n", pending.size() - errors, errors);
+    }
+
+    /**
+     * Write a genome's verification file (and contig dictionary, if the metadata is compact) to the output
+     * directory.  If the genome fails, the partial output is deleted.
+     *
+     * @param gtoFile	GTO file containing the genome
+     *
+     * @return the number of rows written for each class
+     *
+     * @throws IOException
+     */
+    private CountMap<String> writeGenome(File gtoFile) throws IOException {
+        File outFile = new File(this.outDir, outputName(gtoFile, this.outFormat));
+        File dictFile = (this.compact ? new File(this.outDir, baseName(gtoFile) + ContigDictionary.SUFFIX) : null);
+        CountMap<String> retVal = null;
+        try {
+            try (OutputStream outStream = new FileOutputStream(outFile)) {
+                retVal = this.processGenome(gtoFile, outStream, false, dictFile);
+            }
+        } finally {
+            if (retVal == null) {
+                outFile.delete();
+                if (dictFile != null) dictFile.delete();
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Write the summary table.  There is a line for each genome, in input order, with the number of rows of
+     * each class, followed by a total line.  A genome that failed is reported on STDERR and left out.
+     *
+     * @param summary	output writer for the table
+     * @param pending	class-count tasks for the genomes, in input order
+     *
+     * @return the number of genomes that failed
+     */
+    private int writeSummary(PrintWriter summary, List<WorkScheduler.Task<CountMap<String>>> pending) {
+        // The summary columns are the classes of the location scheme plus the invalid-location class.
+        List<String> classes = new ArrayList<String>(LocationClass.scheme(this.classType, this.negative).getClasses());
+        classes.add("?");
+        long[] totals = new long[classes.size()];
+        int retVal = 0;
+        summary.println("genome\t" + String.join("\t", classes) + "\ttotal");
+        for (int i = 0; i < pending.size(); i++) {
+            File gtoFile = this.gtoFiles.get(i);
+            try {
+                CountMap<String> classCounts = pending.get(i).result();
+                summary.println(summaryLine(baseName(gtoFile), classes, classCounts, totals));
+            } catch (ExecutionException e) {
+                System.err.println("Error processing " + gtoFile + ": " + e.getCause().toString());
+                retVal++;
+            }
+        }
+        summary.println(totalLine("TOTAL", totals));
+        return retVal;
+    }
+
+    /**
+     * Count the rows of each class that would be written to a genome's verification file, without
+     * generating any sensors.
+     *
+     * @param genomeFile	GTO file containing the genome
+     *
+     * @return the number of rows for each class
+     *
+     * @throws IOException
+     */
+    private CountMap<String> countGenome(File genomeFile) throws IOException {
         LocationClass lsensor = LocationClass.scheme(this.classType, this.negative);
+        CountMap<String> retVal = new CountMap<String>();
+        Genome genome = new Genome(genomeFile);
+        CodonFilter filter = (this.edgeFilter ? LocationClass.filter(this.classType) : null);
+        Map<String, DiscreteLocationList> codingMap = DiscreteLocationList.createGenomeCodingMap(genome);
+        Map<String, DiscreteLocationList> minusMap = this.minusCodingMap(genome);
+        for (Contig contig : genome.getContigs()) {
+            lsensor.setLocs(codingMap.get(contig.getId()), minusMap.get(contig.getId()));
+            String sequence = contig.getSequence();
+            ReverseComplement minus = (this.strands == ContigSensorFactory.Strands.BOTH ?
+                    new ReverseComplement(sequence) : null);
+            for (RegionIndex.Interval range : this.getRanges(contig)) {
+                this.processRange(contig.getId(), sequence, minus, range.getStart(), range.getEnd(), lsensor,
+                        filter, null, null, retVal);
+                this.progress.addBases(range.getLength());
+            }
+            this.progress.addContig(0);
+        }
+        this.progress.addGenome();
+        return retVal;
+    }
+
+    /**
+     * Produce the verification file for a single genome.
+     *
+     * @param genomeFile	GTO file containing the genome
+     * @param outStream		output stream for the verification file
+     * @param single		TRUE if this is the only genome in the run, so the progress can be tracked by
+     * 						base pair
+     * @param dictFile		output file for the contig dictionary, or NULL to write the full location metadata
+     *
+     * @return the number of rows written for each class
+     *
+     * @throws IOException
+     */
+    private CountMap<String> processGenome(File genomeFile, OutputStream outStream, boolean single, File dictFile)
+            throws IOException {
+        // Create the location sensor.  Each genome gets its own, since it holds the current contig's
+        // locations.
+        LocationClass lsensor = LocationClass.scheme(this.classType, this.negative);
+        // We use this to count the output classes.
+        CountMap<String> classCounts = new CountMap<String>();
         // Read in the genome.
-        try {
+        try (SensorWriter output = SensorWriter.create(this.outFormat, outStream, this.factory)) {
             Genome genome = new Genome(genomeFile);
+            if (single) {
+                // Set up progress tracking.  The base-pair total is the number of positions to process.
+                long baseTotal = 0;
+                for (Contig contig : genome.getContigs()) {
+                    for (RegionIndex.Interval range : this.getRanges(contig))
+                        baseTotal += range.getLength();
+                }
+                this.progress.setTotals(1, baseTotal);
+            }
             // Set up the optional codon filter.
-            CodonFilter filter = null;
-            if (this.edgeFilter)
-                filter = LocationClass.filter(this.classType);
+            CodonFilter filter = (this.edgeFilter ? LocationClass.filter(this.classType) : null);
             // Create the output header.  The first column is the
             // location, then the expection,  and finally the sensors.
-            System.out.println("location\tcodon\texpect\t" + this.factory.sensor_headers());
-            // We use this to count the output classes.
-            CountMap<String> classCounts = new CountMap<String>();
+            output.setClasses(lsensor.getClasses());
+            output.writeHeader("location", "codon", "expect");
+            // For compact metadata, the contig dictionary is the genome's contig list.
+            ContigDictionary contigs = (dictFile == null ? null : new ContigDictionary());
+            if (contigs != null) {
+                for (Contig contig : genome.getContigs())
+                    contigs.add(contig.getId());
+                contigs.save(dictFile);
+            }
+            ContigDictionary.Encoder locations = (contigs == null ? null : contigs.encoder());
             // Get the genome's contig map.
             Map<String, DiscreteLocationList> codingMap = DiscreteLocationList.createGenomeCodingMap(genome);
-            for (Contig contig : genome.getContigs()) {
-                if (debug) System.err.println("Processing contig " + contig.getId());
-                // Activate this contig's location list.
-                lsensor.setLocs(codingMap.get(contig.getId()));
-                // Get the contig sequence.
-                String sequence = contig.getSequence();
-                // Loop through the base pairs, generating data.
-                int limit = contig.length();
-                // Loop through the contig.
-                for (int pos = 1; pos <= limit; pos++) {
-                    if (filter == null || filter.matches(pos, sequence)) {
-                        // Compute this location's expected value. Invalid values are converted to question marks.
-                        String expect = lsensor.classOf(pos);
-                        if (expect == null) expect = "?";
-                        classCounts.count(expect);
-                        // Compute this location's sensor values.
-                        ContigSensor proposal = this.factory.create(contig.getId(), pos, sequence);
-                        // Write it all out.
-                        System.out.format("%s\t%s\t%s\t%s%n", proposal.getMeta(), proposal.getCodon(),
-                                expect, proposal.toString());
+            Map<String, DiscreteLocationList> minusMap = this.minusCodingMap(genome);
+            // If we are running in parallel, the chunk outputs are copied to the output in order.
+            try (WorkScheduler.Sequence<Chunk> chunks = (this.scheduler == null ? null :
+                    this.scheduler.sequence(chunk -> chunk.copyTo(output, classCounts)))) {
+                for (Contig contig : genome.getContigs()) {
+                    if (debug) System.err.println("Processing contig " + contig.getId());
+                    // Get the contig sequence.
+                    String contigId = contig.getId();
+                    DiscreteLocationList contigLocs = codingMap.get(contigId);
+                    DiscreteLocationList minusLocs = minusMap.get(contigId);
+                    String sequence = contig.getSequence();
+                    ReverseComplement minus = (this.strands == ContigSensorFactory.Strands.BOTH ?
+                            new ReverseComplement(sequence) : null);
+                    // Loop through the regions of the contig, generating data.
+                    for (RegionIndex.Interval range : this.getRanges(contig)) {
+                        if (chunks == null) {
+                            lsensor.setLocs(contigLocs, minusLocs);
+                            this.processRange(contigId, sequence, minus, range.getStart(), range.getEnd(), lsensor,
+                                    filter, locations, output, classCounts);
+                            this.progress.addBases(range.getLength());
+                        } else {
+                            for (RegionIndex.Interval chunk : WorkScheduler.split(range.getStart(), range.getEnd(),
+                                    this.chunkSize)) {
+                                chunks.submit(() -> {
+                                    // Each chunk needs its own classifier, since the classifier holds the contig's
+                                    // location list.
+                                    LocationClass chunkClass = LocationClass.scheme(this.classType, this.negative);
+                                    chunkClass.setLocs(contigLocs, minusLocs);
+                                    Chunk retVal = new Chunk(output.fork());
+                                    this.processRange(contigId, sequence, minus, chunk.getStart(), chunk.getEnd(),
+                                            chunkClass, filter, (contigs == null ? null : contigs.encoder()),
+                                            retVal.buffer, retVal.counts);
+                                    this.progress.addBases(chunk.getLength());
+                                    return retVal;
+                                }, chunk.getLength());
+                            }
+                        }
                     }
+                    this.progress.addContig(0);
                 }
+                if (chunks != null)
+                    chunks.finish();
             }
-            if (this.debug) for (CountMap<String>.Count count : classCounts.sortedCounts()) {
-                System.err.format("%20d written of type %s%n", count.getCount(), count.getKey());
+            // The genome's cached tracks are no longer needed.
+            this.factory.releaseCaches();
+            this.progress.addGenome();
+        }
+        return classCounts;
+    }
+
+    /**
+     * @return a map of contig IDs to the minus-strand protein locations of a genome, or an empty map if minus-strand
+     * 		   edges are not needed (they are only needed if both strands are output and minus-strand proteins
+     * 		   are coding regions)
+     *
+     * @param genome	genome of interest
+     */
+    private Map<String, DiscreteLocationList> minusCodingMap(Genome genome) {
+        Map<String, DiscreteLocationList> retVal;
+        if (this.strands == ContigSensorFactory.Strands.BOTH && this.negative)
+            retVal = LocationClass.createMinusCodingMap(genome);
+        else
+            retVal = Collections.emptyMap();
+        return retVal;
+    }
+
+    /**
+     * This object holds the output of a chunk of a contig processed in parallel.
+     */
+    private static class Chunk {
+
+        /** forked writer holding the chunk's output */
+        private final SensorWriter buffer;
+        /** number of rows written for each class */
+        private final CountMap<String> counts;
+
+        /**
+         * Create a chunk output holder.
+         *
+         * @param buffer	forked writer to receive the output
+         */
+        private Chunk(SensorWriter buffer) {
+            this.buffer = buffer;
+            this.counts = new CountMap<String>();
+        }
+
+        /**
+         * Copy the chunk's output to the main writer and add its counts to the genome's counts.
+         *
+         * @param output		main output writer
+         * @param classCounts	counter for the genome's output classes
+         *
+         * @throws IOException
+         */
+        private void copyTo(SensorWriter output, CountMap<String> classCounts) throws IOException {
+            output.writeBytes(this.buffer.toBytes());
+            for (CountMap<String>.Count count : this.counts.sortedCounts())
+                classCounts.count(count.getKey(), count.getCount());
+        }
+
+    }
+
+    /**
+     * Write the sensors for a range of positions in a contig.
+     *
+     * @param contigId		ID of the contig
+     * @param sequence		contig sequence
+     * @param minus			reverse complement of the contig, or NULL if only the plus strand is wanted
+     * @param start			first position (1-based) to process
+     * @param end			last position to process
+     * @param lsensor		classification scheme, with the contig's location list active
+     * @param filter		codon filter, or NULL to process every position
+     * @param locations		location encoder for the output, or NULL to write the full metadata
+     * @param output		sensor output writer, or NULL to only count the classes
+     * @param classCounts	counter for the output classes
+     *
+     * @throws IOException
+     */
+    private void processRange(String contigId, String sequence, ReverseComplement minus, int start, int end,
+            LocationClass lsensor, CodonFilter filter, ContigDictionary.Encoder locations, SensorWriter output,
+            CountMap<String> classCounts) throws IOException {
+        for (int pos = start; pos <= end; pos++) {
+            if (minus == null) {
+                if (filter == null || filter.matches(pos, sequence)) {
+                    // Compute this location's expected value.
+                    String expect = lsensor.classOf(pos);
+                    // Compute this location's sensor values and write them out.
+                    ContigSensor proposal = (output == null ? null : this.factory.create(contigId, pos, sequence));
+                    writeSensor(output, locations, proposal, expect, classCounts);
+                }
+            } else {
+                // Here we are doing both strands.  Each strand is classified separately.
+                if (filter == null || filter.matches(pos, sequence)) {
+                    ContigSensor proposal = (output == null ? null : this.factory.create(contigId, pos, sequence, '+'));
+                    writeSensor(output, locations, proposal, lsensor.classOf(pos, false), classCounts);
+                }
+                if (filter == null || filter.matches(minus.flip(pos), minus)) {
+                    ContigSensor proposal = (output == null ? null : this.factory.create(contigId, pos, minus, '-'));
+                    writeSensor(output, locations, proposal, lsensor.classOf(pos, true), classCounts);
+                }
             }
-   } catch (NumberFormatException | IOException e) {
-            System.err.println("Error processing " + genomeFile + ": " +
-                    e.getMessage());
         }
     }
 
+    /**
+     * Count a sensor's class and write the sensor to the output.
+     *
+     * @param output		sensor output writer, or NULL to only count the class
+     * @param locations		location encoder for the output, or NULL to write the full metadata
+     * @param proposal		sensor to write (ignored if there is no writer)
+     * @param expect		expected class of the sensor, or NULL if the location is invalid
+     * @param classCounts	counter for the output classes
+     *
+     * @throws IOException
+     */
+    private static void writeSensor(SensorWriter output, ContigDictionary.Encoder locations, ContigSensor proposal,
+            String expect, CountMap<String> classCounts) throws IOException {
+        // Invalid values are converted to question marks.
+        if (expect == null) expect = "?";
+        classCounts.count(expect);
+        if (output != null) {
+            String meta = (locations == null ? proposal.getMeta() : locations.encode(proposal));
+            output.write(proposal, meta, proposal.getCodon(), expect);
+        }
+    }
+
+    /**
+     * @return the list of GTO files to process, with each directory replaced by the GTO files inside it
+     *
+     * @param inputs	list of input files and directories
+     *
+     * @throws FileNotFoundException if an input does not exist
+     */
+    protected static List<File> expandInputs(List<File> inputs) throws FileNotFoundException {
+        List<File> retVal = new ArrayList<File>();
+        for (File input : inputs) {
+            if (! input.exists()) {
+                throw new FileNotFoundException(input + " does not exist.");
+            } else if (input.isDirectory()) {
+                File[] members = input.listFiles((dir, name) -> name.endsWith(".gto"));
+                Arrays.sort(members);
+                for (File member : members) {
+                    if (member.isFile()) retVal.add(member);
+                }
+            } else {
+                retVal.add(input);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the base name of a GTO file, without the directory or the ".gto" extension
+     *
+     * @param gtoFile	GTO file of interest
+     */
+    protected static String baseName(File gtoFile) {
+        String retVal = gtoFile.getName();
+        if (retVal.endsWith(".gto"))
+            retVal = retVal.substring(0, retVal.length() - 4);
+        return retVal;
+    }
+
+    /**
+     * @return the name of the verification file for a GTO file
+     *
+     * @param gtoFile	GTO file of interest
+     * @param format	output format of the verification file
+     */
+    protected static String outputName(File gtoFile, SensorWriter.Format format) {
+        String suffix;
+        switch (format) {
+        case BINARY :
+            suffix = ".bin";
+            break;
+        case LIBSVM :
+            suffix = ".svm";
+            break;
+        case CSR :
+            suffix = ".csr";
+            break;
+        case COLUMNAR :
+            suffix = ".col";
+            break;
+        default :
+            suffix = ".tbl";
+        }
+        return baseName(gtoFile) + suffix;
+    }
+
+    /**
+     * @return a line of the summary file, and add the genome's counts to the totals
+     *
+     * @param name			genome name for the line
+     * @param classes		list of classes for the count columns
+     * @param classCounts	number of rows written for each class
+     * @param totals		array of totals for the count columns, updated in place
+     */
+    protected static String summaryLine(String name, List<String> classes, CountMap<String> classCounts,
+            long[] totals) {
+        StringBuilder retVal = new StringBuilder(name);
+        long genomeTotal = 0;
+        for (int i = 0; i < totals.length; i++) {
+            int count = classCounts.getCount(classes.get(i));
+            retVal.append('\t').append(count);
+            totals[i] += count;
+            genomeTotal += count;
+        }
+        retVal.append('\t').append(genomeTotal);
+        return retVal.toString();
+    }
+
+    /**
+     * @return a total line of a summary table
+     *
+     * @param name		label for the line
+     * @param totals	array of totals for the count columns
+     */
+    protected static String totalLine(String name, long[] totals) {
+        StringBuilder retVal = new StringBuilder(name);
+        long grandTotal = 0;
+        for (long total : totals) {
+            retVal.append('\t').append(total);
+            grandTotal += total;
+        }
+        retVal.append('\t').append(grandTotal);
+        return retVal.toString();
+    }
+
+    /**
+     * @return the ranges of positions to process in a contig
+     *
+     * @param contig	contig of interest
+     */
+    private List<RegionIndex.Interval> getRanges(Contig contig) {
+        List<RegionIndex.Interval> retVal;
+        if (this.regions == null)
+            retVal = Collections.singletonList(new RegionIndex.Interval(1, contig.length()));
+        else
+            retVal = this.regions.getIntervals(contig.getId(), contig.length());
+        return retVal;
+    }
+
 }
@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This object assigns genomes to named splits (e.g. training, validation, and testing) in fixed proportions.
+ * The assignment is computed from a hash of the genome ID, so it does not depend on the order in which the
+ * genomes are processed or on which other genomes are present, and a genome is always in the same split from
+ * one run to the next.  This means all the data from a genome goes into a single split, so closely-related
+ * positions in the same genome cannot leak from the training set into the testing set.
+ *
+ * The split specification is a comma-delimited list of name:fraction pairs, such as
+ * "train:0.8,valid:0.1,test:0.1".  The fractions are scaled so that they add up to 1.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GenomeSplitter {
+
+    // FIELDS
+    /** names of the splits */
+    private final List<String> names;
+    /** cumulative fraction of genomes at the end of each split */
+    private final double[] limits;
+
+    /**
+     * Construct a genome splitter from a split specification.
+     *
+     * @param spec	comma-delimited list of name:fraction pairs
+     *
+     * @throws IllegalArgumentException if the specification is invalid
+     */
+    public GenomeSplitter(String spec) {
+        this.names = new ArrayList<String>();
+        List<Double> fractions = new ArrayList<Double>();
+        double total = 0;
+        for (String pair : spec.split(",")) {
+            String[] parts = pair.split(":");
+            if (parts.length != 2)
+                throw new IllegalArgumentException("Invalid split \"" + pair + "\".");
+            String name = parts[0].trim();
+            if (name.isEmpty() || this.names.contains(name))
+                throw new IllegalArgumentException("Split names must be nonblank and unique.");
+            double fraction;
+            try {
+                fraction = Double.parseDouble(parts[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid fraction in split \"" + pair + "\".");
+            }
+            if (! (fraction > 0))
+                throw new IllegalArgumentException("Split fractions must be positive.");
+            this.names.add(name);
+            fractions.add(fraction);
+            total += fraction;
+        }
+        // Convert the fractions to cumulative limits.  The last limit is forced to 1 so that rounding
+        // error cannot leave a genome without a split.
+        this.limits = new double[fractions.size()];
+        double sum = 0;
+        for (int i = 0; i < this.limits.length; i++) {
+            sum += fractions.get(i);
+            this.limits[i] = sum / total;
+        }
+        this.limits[this.limits.length - 1] = 1.0;
+    }
+
+    /**
+     * @return the index of the split for a genome
+     *
+     * @param genomeId	ID of the genome to assign
+     */
+    public int choose(String genomeId) {
+        double point = position(genomeId);
+        int retVal = 0;
+        while (point >= this.limits[retVal])
+            retVal++;
+        return retVal;
+    }
+
+    /**
+     * @return a value uniformly distributed between 0 (inclusive) and 1 (exclusive) computed from a genome ID
+     *
+     * @param genomeId	ID of the genome
+     */
+    protected static double position(String genomeId) {
+        // This is FNV-1a followed by the MurmurHash3 finalizer, so that similar IDs are well separated.
+        long h = 0xCBF29CE484222325L;
+        int n = genomeId.length();
+        for (int i = 0; i < n; i++)
+            h = (h ^ genomeId.charAt(i)) * 0x100000001B3L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        // Use the high 53 bits, which is all a double can hold.
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return the names of the splits, in index order
+     */
+    public List<String> getNames() {
+        return this.names;
+    }
+
+    /**
+     * @return the number of splits
+     */
+    public int size() {
+        return this.names.size();
+    }
+
+}
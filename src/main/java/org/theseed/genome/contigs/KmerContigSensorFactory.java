@@ -0,0 +1,221 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+/**
+ * In this class, the sensor value at each position is a token for the k-mer starting at that position.  The
+ * k-mer is encoded two bits per nucleotide, and the code is hashed into a fixed vocabulary of tokens numbered
+ * from 0 to one less than the vocabulary size.  If the vocabulary is big enough to hold every possible k-mer,
+ * the token is the k-mer code itself, so there are no collisions.  A k-mer that runs off the edge of the contig
+ * converts to "-" and a k-mer containing an ambiguity character converts to "X".
+ *
+ * The k-mer codes are computed with a rolling hash, so moving from one position to the next costs the same no
+ * matter how big the k-mers are, and they are stored in a precomputed track, so each k-mer of a contig is only
+ * encoded once.  The token strings are cached as well, so a sensor row does not build a string for each
+ * position.  The k-mer size and vocabulary size are global, like the sensor widths.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class KmerContigSensorFactory extends ContigSensorFactory {
+
+    /** track value for a k-mer that runs off the edge of the sequence */
+    private static final int OFF_EDGE = -1;
+    /** track value for a k-mer containing an ambiguity character */
+    private static final int AMBIGUOUS = -2;
+    /** multiplier for hashing k-mer codes into the vocabulary */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    /** maximum number of token strings to cache */
+    private static final int MAX_CACHED_TOKENS = 1 << 20;
+
+    /** builder for the k-mer token tracks at the current settings */
+    private static TokenBuilder tokenBuilder = new TokenBuilder(6, 4096);
+
+    /**
+     * This object computes the token track for a sequence.  It is immutable, so that a change in the settings
+     * produces a new builder and the tracks built under the old settings are not reused.
+     */
+    private static class TokenBuilder implements SequenceTrack.Builder {
+
+        /** k-mer size */
+        private final int k;
+        /** vocabulary size */
+        private final int vocabSize;
+        /** mask for the bits of a k-mer code */
+        private final long mask;
+        /** TRUE if every k-mer code fits in the vocabulary */
+        private final boolean exact;
+        /** cached strings for the lower-numbered tokens, filled in as they are first used */
+        private final String[] tokenStrings;
+
+        /**
+         * Construct a token builder.
+         *
+         * @param k				k-mer size
+         * @param vocabSize		vocabulary size
+         */
+        protected TokenBuilder(int k, int vocabSize) {
+            this.k = k;
+            this.vocabSize = vocabSize;
+            this.mask = (1L << (2 * k)) - 1;
+            this.exact = (this.mask < vocabSize);
+            this.tokenStrings = new String[Math.min(vocabSize, MAX_CACHED_TOKENS)];
+        }
+
+        /**
+         * @return the sensor string for a token
+         *
+         * Strings are immutable, so if two threads fill in the same cache entry at once, either string can be used.
+         *
+         * @param token		token whose string is desired
+         */
+        private String tokenString(int token) {
+            String retVal;
+            if (token >= this.tokenStrings.length) {
+                retVal = Integer.toString(token);
+            } else {
+                retVal = this.tokenStrings[token];
+                if (retVal == null) {
+                    retVal = Integer.toString(token);
+                    this.tokenStrings[token] = retVal;
+                }
+            }
+            return retVal;
+        }
+
+        @Override
+        public void build(CharSequence sequence, int start, int[] values) {
+            int len = sequence.length();
+            int n = values.length;
+            // The k-mer for each position ends k - 1 positions later, so we roll through the sequence
+            // starting at the first position and ending at the last k-mer's last nucleotide.
+            int end = Math.min(start + n + this.k - 1, len);
+            long code = 0;
+            int valid = 0;
+            for (int j = start; j < end; j++) {
+                int b = GeneticCode.baseCode(sequence.charAt(j));
+                if (b < 0) {
+                    valid = 0;
+                } else {
+                    code = ((code << 2) | b) & this.mask;
+                    valid++;
+                }
+                int i = j - this.k + 1;
+                if (i >= start)
+                    values[i - start] = (valid >= this.k ? this.token(code) : AMBIGUOUS);
+            }
+            // Fill in the positions whose k-mers run off the end.
+            for (int i = Math.max(start, len - this.k + 1); i < start + n; i++)
+                values[i - start] = OFF_EDGE;
+        }
+
+        /**
+         * @return the vocabulary token for a k-mer code
+         *
+         * @param code	two-bit-per-nucleotide k-mer code
+         */
+        private int token(long code) {
+            int retVal;
+            if (this.exact)
+                retVal = (int) code;
+            else
+                retVal = (int) Long.remainderUnsigned(code * HASH_MULTIPLIER, this.vocabSize);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Specify new global k-mer settings.  This does not affect sensors already constructed.
+     *
+     * @param k				k-mer size (1 to 31)
+     * @param vocabSize		number of tokens in the vocabulary (at least 1)
+     *
+     * @throws IllegalArgumentException if either setting is out of range
+     */
+    public static void setKmerParms(int k, int vocabSize) {
+        if (k < 1 || k > 31)
+            throw new IllegalArgumentException("K-mer size must be between 1 and 31.");
+        if (vocabSize < 1)
+            throw new IllegalArgumentException("K-mer vocabulary size must be positive.");
+        KmerContigSensorFactory.tokenBuilder = new TokenBuilder(k, vocabSize);
+    }
+
+    /**
+     * @return the current global k-mer size
+     */
+    public static int getKmerSize() {
+        return tokenBuilder.k;
+    }
+
+    /**
+     * @return the current global vocabulary size
+     */
+    public static int getVocabSize() {
+        return tokenBuilder.vocabSize;
+    }
+
+    @Override
+    protected void convertSequence(ContigSensor sensor, CharSequence sequence, int pos) {
+        int offset = pos - ContigSensorFactory.getLeftWidth() - 1;
+        int len = sequence.length();
+        SequenceTrack track = this.getTrack(sequence);
+        TokenBuilder builder = (TokenBuilder) track.getBuilder();
+        String[] buffer = new String[ContigSensorFactory.getFullWidth()];
+        for (int i = 0; i < buffer.length; i++) {
+            int actual = offset + i;
+            int token = (actual < 0 || actual >= len ? OFF_EDGE : track.get(actual));
+            switch (token) {
+            case OFF_EDGE :
+                buffer[i] = "-";
+                break;
+            case AMBIGUOUS :
+                buffer[i] = "X";
+                break;
+            default :
+                buffer[i] = builder.tokenString(token);
+            }
+        }
+        sensor.storeSensors(buffer);
+    }
+
+    @Override
+    protected int windowEnd(int pos, int len) {
+        // Only the k-mers that fit in the sequence can be ambiguous, and each one extends k - 1 positions past
+        // its own position.
+        int k = tokenBuilder.k;
+        int start = Math.max(this.windowStart(pos, len), 0);
+        int retVal = Math.min(super.windowEnd(pos, len), len - k + 1);
+        if (retVal > start)
+            retVal += k - 1;
+        return retVal;
+    }
+
+    @Override
+    protected SequenceTrack.Builder getTrackBuilder() {
+        return tokenBuilder;
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return tokenBuilder.vocabSize;
+    }
+
+    @Override
+    public int getVocabularyIndex(String value) {
+        int retVal = -1;
+        char c = value.charAt(0);
+        if (c >= '0' && c <= '9')
+            retVal = Integer.parseInt(value);
+        return retVal;
+    }
+
+    /**
+     * @return the stride between positions to be sensed (1 for this type)
+     */
+    protected int getStride() {
+        return 1;
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This sensor writer produces LIBSVM-style sparse text.  Each line consists of a numeric label followed by
+ * "index:value" pairs for the non-zero sensor features (see {@link ContigSensorFactory#sparseFeatures}).  The
+ * feature indices are 1-based, as is conventional for this format.  The label is the class index if there is
+ * a class column, and 0 otherwise; an unknown class has a label of -1.  The remaining label columns are put
+ * in a trailing comment, which is accepted by most LIBSVM-format readers.
+ *
+ * There is no header, since the format does not allow one.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class LibsvmSensorWriter extends TextSensorWriter {
+
+    // FIELDS
+    /** buffer for feature indices */
+    private final int[] indices;
+    /** buffer for feature values */
+    private final float[] values;
+
+    /**
+     * Construct a LIBSVM sensor writer.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     */
+    public LibsvmSensorWriter(OutputStream stream, ContigSensorFactory factory) {
+        this(stream, factory, null);
+    }
+
+    /**
+     * Construct a LIBSVM sensor writer, possibly for in-memory output.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     * @param memory	in-memory output stream (same as the target), or NULL for a normal writer
+     */
+    protected LibsvmSensorWriter(OutputStream stream, ContigSensorFactory factory, ByteArrayOutputStream memory) {
+        super(stream, factory, memory);
+        int width = factory.sensor_headers().split("\t").length;
+        this.indices = new int[width];
+        this.values = new float[width];
+    }
+
+    @Override
+    public void writeHeader(String... labels) throws IOException {
+    }
+
+    @Override
+    public void write(ContigSensor sensor, String... labels) throws IOException {
+        int metaCount = labels.length;
+        int label = 0;
+        if (this.hasClasses()) {
+            metaCount--;
+            label = this.classIndex(labels[metaCount]);
+        }
+        StringBuilder line = new StringBuilder(256);
+        line.append(label);
+        int n = this.getFactory().sparseFeatures(sensor, this.indices, this.values);
+        appendFeatures(line, this.indices, this.values, n);
+        if (metaCount > 0) {
+            line.append(" #");
+            for (int i = 0; i < metaCount; i++)
+                line.append(' ').append(labels[i]);
+        }
+        line.append(System.lineSeparator());
+        this.getWriter().append(line);
+    }
+
+    /**
+     * @return the LIBSVM feature string for a sensor (without a label)
+     *
+     * @param factory	sensor factory that created the sensor
+     * @param sensor	sensor to convert
+     */
+    public static String features(ContigSensorFactory factory, ContigSensor sensor) {
+        int width = sensor.getSensors().length;
+        int[] indices = new int[width];
+        float[] values = new float[width];
+        int n = factory.sparseFeatures(sensor, indices, values);
+        StringBuilder retVal = new StringBuilder(n * 8);
+        appendFeatures(retVal, indices, values, n);
+        // Remove the leading space.
+        return (retVal.length() > 0 ? retVal.substring(1) : "");
+    }
+
+    /**
+     * Append "index:value" pairs to a string buffer.  Each pair is preceded by a space.
+     *
+     * @param output	output buffer
+     * @param indices	0-based feature indices
+     * @param values	feature values
+     * @param n			number of features
+     */
+    private static void appendFeatures(StringBuilder output, int[] indices, float[] values, int n) {
+        for (int i = 0; i < n; i++) {
+            output.append(' ').append(indices[i] + 1).append(':');
+            float value = values[i];
+            if (value == 1.0f)
+                output.append('1');
+            else
+                output.append(value);
+        }
+    }
+
+    @Override
+    public SensorWriter fork() {
+        ByteArrayOutputStream memory = memoryStream();
+        return this.inherit(new LibsvmSensorWriter(memory, this.getFactory(), memory));
+    }
+
+}
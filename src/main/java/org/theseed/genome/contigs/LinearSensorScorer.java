@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.util.List;
+
+/**
+ * This scorer computes a weighted sum of the sparse features of each sensor (see
+ * {@link ContigSensorFactory#sparseFeatures}), optionally followed by a logistic link.  For one-hot sensors,
+ * and for categorical sensors (whose sparse features are one-hot encodings of the values), this is a linear or
+ * logistic model over the one-hot inputs.
+ *
+ * In the model file, each line after the header contains a feature name followed by one weight per score
+ * column.  For a categorical sensor type, the feature name is a sensor column header and a value, separated by
+ * an equal sign (e.g. "pos.-3=A").  For a numeric sensor type, it is just the column header (e.g. "pos.-3.A"
+ * for a one-hot sensor).  The special feature name "bias" specifies the intercepts.  Features not in the file
+ * have a weight of 0.
+ *
+ * The weights are stored feature-major in a single array, so that the scores for a feature are accumulated in
+ * a tight loop over adjacent elements.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class LinearSensorScorer extends SensorScorer {
+
+    // FIELDS
+    /** number of score columns */
+    private final int width;
+    /** weights, indexed by feature index times the width plus the score column index */
+    private final double[] weights;
+    /** intercept for each score column */
+    private final double[] bias;
+    /** TRUE to apply a logistic link to the weighted sums */
+    private final boolean logistic;
+    /** number of sensor columns */
+    private final int columns;
+
+    /**
+     * Construct a linear scorer from the data lines of a model file.
+     *
+     * @param classes	names of the score columns
+     * @param factory	sensor factory for the sensors to be scored
+     * @param lines		data lines of the model file, split into fields
+     * @param logistic	TRUE to apply a logistic link
+     *
+     * @throws IllegalArgumentException if the model is invalid
+     */
+    public LinearSensorScorer(List<String> classes, ContigSensorFactory factory, List<String[]> lines,
+            boolean logistic) {
+        super(classes, factory);
+        this.width = classes.size();
+        this.logistic = logistic;
+        this.weights = new double[factory.getFeatureCount() * this.width];
+        this.bias = new double[this.width];
+        String[] headers = factory.sensor_headers().split("\t");
+        this.columns = headers.length;
+        int vocabSize = factory.getVocabularySize();
+        for (String[] line : lines) {
+            if (line.length != this.width + 1)
+                throw new IllegalArgumentException("Model line for \"" + line[0] + "\" should have " + this.width +
+                        " weights.");
+            int base;
+            if (line[0].equals("bias")) {
+                base = -1;
+            } else if (vocabSize == 0) {
+                base = columnIndex(headers, line[0]);
+                if (base < 0) base = -2;
+            } else {
+                base = -2;
+                int eq = line[0].lastIndexOf('=');
+                if (eq > 0) {
+                    int col = columnIndex(headers, line[0].substring(0, eq));
+                    int idx = factory.getVocabularyIndex(line[0].substring(eq + 1));
+                    if (col >= 0 && idx >= 0)
+                        base = col * vocabSize + idx;
+                }
+            }
+            if (base < -1)
+                throw new IllegalArgumentException("Model feature \"" + line[0] + "\" is not valid for these sensors.");
+            double[] target = (base < 0 ? this.bias : this.weights);
+            int offset = (base < 0 ? 0 : base * this.width);
+            for (int c = 0; c < this.width; c++)
+                target[offset + c] = parseWeight(line[c + 1]);
+        }
+    }
+
+    @Override
+    public void score(ContigSensor[] sensors, int n, double[][] scores) {
+        ContigSensorFactory factory = this.getFactory();
+        int[] indices = new int[this.columns];
+        float[] values = new float[this.columns];
+        for (int r = 0; r < n; r++) {
+            double[] score = scores[r];
+            System.arraycopy(this.bias, 0, score, 0, this.width);
+            int nnz = factory.sparseFeatures(sensors[r], indices, values);
+            for (int k = 0; k < nnz; k++) {
+                int base = indices[k] * this.width;
+                double value = values[k];
+                for (int c = 0; c < this.width; c++)
+                    score[c] += this.weights[base + c] * value;
+            }
+            if (this.logistic)
+                link(score, this.width);
+        }
+    }
+
+    /**
+     * Apply the logistic link to a set of scores.  A single score is converted by the logistic function, and
+     * multiple scores by the softmax function.
+     *
+     * @param score		array of scores to convert
+     * @param width		number of scores
+     */
+    private static void link(double[] score, int width) {
+        if (width == 1) {
+            score[0] = 1.0 / (1.0 + Math.exp(-score[0]));
+        } else {
+            // Subtract the maximum to avoid overflow.
+            double max = score[0];
+            for (int c = 1; c < width; c++)
+                max = Math.max(max, score[c]);
+            double total = 0;
+            for (int c = 0; c < width; c++) {
+                score[c] = Math.exp(score[c] - max);
+                total += score[c];
+            }
+            for (int c = 0; c < width; c++)
+                score[c] /= total;
+        }
+    }
+
+}
@@ -3,8 +3,20 @@
  */
 package org.theseed.genome.contigs;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.theseed.genome.Contig;
+import org.theseed.genome.Feature;
+import org.theseed.genome.Genome;
 import org.theseed.locations.Frame;
 import org.theseed.locations.DiscreteLocationList;
+import org.theseed.locations.Location;
 
 /**
  * This is the base class for location classifiers.  It computes the class of a location
@@ -23,6 +35,8 @@ public abstract class LocationClass {
     boolean	negative;
     /** controlling location list */
     DiscreteLocationList contigLocs;
+    /** location list containing only the minus-strand proteins, or NULL if there is none */
+    DiscreteLocationList minusLocs;
 
 
     /**
@@ -33,6 +47,7 @@ public abstract class LocationClass {
     public LocationClass(boolean negativeFlag) {
         this.negative = negativeFlag;
         this.contigLocs = null;
+        this.minusLocs = null;
     }
 
     /**
@@ -43,6 +58,64 @@ public abstract class LocationClass {
      */
     public abstract String classOf(int pos);
 
+    /**
+     * Return the location class for one strand.  This is used when sensors are produced for both strands.
+     * For the plus strand, only plus-strand proteins are considered.  For the minus strand, only minus-strand
+     * proteins are considered, and only if minus-strand proteins are considered coding regions.  The
+     * position is always a plus-strand position.  A return of NULL means the current location is invalid.
+     *
+     * @param pos		position of the location whose class is desired
+     * @param minus		TRUE for the minus strand, FALSE for the plus strand
+     */
+    public abstract String classOf(int pos, boolean minus);
+
+    /**
+     * @return the list of classes this scheme can return, in a fixed order; the position of a class in the list
+     * 		   is its class index in numeric output formats
+     */
+    public abstract List<String> getClasses();
+
+    /**
+     * @return the frame of a location on a single strand; frames for proteins on the other strand (or on the
+     * 		   minus strand, if those are not coding regions) are converted to Frame.F0
+     *
+     * @param pos		position of the location whose frame is desired
+     * @param minus		TRUE for the minus strand, FALSE for the plus strand
+     */
+    protected Frame strandFrame(int pos, boolean minus) {
+        Frame retVal = this.contigLocs.computeRegionFrame(pos, pos);
+        if (retVal != Frame.XX && retVal != Frame.F0) {
+            if (retVal.negative() != minus || minus && ! this.negative)
+                retVal = Frame.F0;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the edge type of a location on a single strand, or NULL if it is not an edge on that strand
+     *
+     * The plus-strand edges come from the main location list, ignoring the minus-strand proteins.  The
+     * minus-strand edges come from the minus-strand location list (see {@link #setLocs(DiscreteLocationList,
+     * DiscreteLocationList)}), so a location that is an edge on both strands is reported for both.  If minus-strand
+     * proteins are not coding regions, there are no minus-strand edges.
+     *
+     * @param pos		position of the location whose edge type is desired
+     * @param minus		TRUE for the minus strand, FALSE for the plus strand
+     *
+     * @throws IllegalStateException if a minus-strand edge is needed and there is no minus-strand location list
+     */
+    protected DiscreteLocationList.Edge strandEdge(int pos, boolean minus) {
+        DiscreteLocationList.Edge retVal = null;
+        if (! minus) {
+            retVal = this.contigLocs.isEdge(pos, false);
+        } else if (this.negative) {
+            if (this.minusLocs == null)
+                throw new IllegalStateException("Minus-strand edges require a minus-strand location list.");
+            retVal = this.minusLocs.isEdge(pos, true);
+        }
+        return retVal;
+    }
+
     /**
      * Convert a frame according to the policy on the minus strand.  This
      * will either return the original frame or Frame.F0.
@@ -120,7 +193,37 @@ public abstract class LocationClass {
 
     /** Store the controlling location list */
     public void setLocs(DiscreteLocationList contigLocs) {
+        this.setLocs(contigLocs, null);
+    }
+
+    /**
+     * Store the controlling location list along with a list of the minus-strand proteins only.  The second list
+     * is needed to compute minus-strand edges when sensors are produced for both strands.
+     *
+     * @param contigLocs	location list for all the proteins in the contig
+     * @param minusLocs		location list for the minus-strand proteins in the contig, or NULL if there is none
+     */
+    public void setLocs(DiscreteLocationList contigLocs, DiscreteLocationList minusLocs) {
         this.contigLocs = contigLocs;
+        this.minusLocs = minusLocs;
+    }
+
+    /**
+     * @return a map of contig IDs to location lists containing only the minus-strand proteins of a genome
+     *
+     * @param genome	genome of interest
+     */
+    public static Map<String, DiscreteLocationList> createMinusCodingMap(Genome genome) {
+        Map<String, DiscreteLocationList> retVal = new HashMap<String, DiscreteLocationList>();
+        for (Contig contig : genome.getContigs())
+            retVal.put(contig.getId(), new DiscreteLocationList(contig.getId()));
+        for (Feature peg : genome.getPegs()) {
+            Location loc = peg.getLocation();
+            DiscreteLocationList contigLocs = retVal.get(loc.getContigId());
+            if (loc.getDir() == '-' && contigLocs != null)
+                contigLocs.addLocation(loc);
+        }
+        return retVal;
     }
 
     // SUBCLASSES
@@ -143,6 +246,25 @@ public abstract class LocationClass {
             return retVal;
         }
 
+        @Override
+        public String classOf(int pos, boolean minus) {
+            String retVal = null;
+            Frame frm = this.strandFrame(pos, minus);
+            if (frm != Frame.XX)
+                retVal = frm.toString();
+            return retVal;
+        }
+
+        @Override
+        public List<String> getClasses() {
+            List<String> retVal = new ArrayList<String>();
+            for (Frame frm : Frame.values()) {
+                if (frm != Frame.XX)
+                    retVal.add(frm.toString());
+            }
+            return retVal;
+        }
+
     }
 
     /**
@@ -160,6 +282,21 @@ public abstract class LocationClass {
             return type.toString();
         }
 
+        @Override
+        public String classOf(int pos, boolean minus) {
+            DiscreteLocationList.Edge type = this.strandEdge(pos, minus);
+            return (type == null ? "other" : type.toString());
+        }
+
+        @Override
+        public List<String> getClasses() {
+            Set<String> retVal = new LinkedHashSet<String>();
+            for (DiscreteLocationList.Edge type : DiscreteLocationList.Edge.values())
+                retVal.add(type.toString());
+            retVal.add("other");
+            return new ArrayList<String>(retVal);
+        }
+
 
     }
 
@@ -175,7 +312,25 @@ public abstract class LocationClass {
         @Override
         public String classOf(int pos) {
             Frame frm = this.contigLocs.computeRegionFrame(pos, pos);
-            frm = this.normalize(frm);
+            return codingClass(this.normalize(frm));
+        }
+
+        @Override
+        public String classOf(int pos, boolean minus) {
+            return codingClass(this.strandFrame(pos, minus));
+        }
+
+        @Override
+        public List<String> getClasses() {
+            return Arrays.asList("space", "coding");
+        }
+
+        /**
+         * @return the coding class for a frame
+         *
+         * @param frm	frame to classify
+         */
+        private static String codingClass(Frame frm) {
             String retVal;
             switch (frm) {
             case XX :
@@ -207,6 +362,17 @@ public abstract class LocationClass {
             return (type == DiscreteLocationList.Edge.STOP ? "stop" : "other");
         }
 
+        @Override
+        public String classOf(int pos, boolean minus) {
+            DiscreteLocationList.Edge type = this.strandEdge(pos, minus);
+            return (type == DiscreteLocationList.Edge.STOP ? "stop" : "other");
+        }
+
+        @Override
+        public List<String> getClasses() {
+            return Arrays.asList("other", "stop");
+        }
+
     }
 
     /**
@@ -224,6 +390,17 @@ public abstract class LocationClass {
             return (type == DiscreteLocationList.Edge.START ? "start" : "other");
         }
 
+        @Override
+        public String classOf(int pos, boolean minus) {
+            DiscreteLocationList.Edge type = this.strandEdge(pos, minus);
+            return (type == DiscreteLocationList.Edge.START ? "start" : "other");
+        }
+
+        @Override
+        public List<String> getClasses() {
+            return Arrays.asList("other", "start");
+        }
+
     }
 
 }
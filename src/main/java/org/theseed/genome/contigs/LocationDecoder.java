@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * This object restores the full location metadata from the compact locations described in
+ * {@link ContigDictionary}.  The locations must be decoded in the order of the rows in the output file, since
+ * an abbreviated location is computed from the location before it.
+ *
+ * For a TEXT output file, {@link #restore} copies the file with the location column restored, so that it
+ * looks exactly as it would have without the compact encoding.  For the other formats, the client should call
+ * {@link #decode} on the location label of each row as the rows are read.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class LocationDecoder {
+
+    // FIELDS
+    /** contig dictionary */
+    private final ContigDictionary contigs;
+    /** ID of the previous row's contig, or NULL if no rows have been decoded */
+    private String contigId;
+    /** position of the previous row */
+    private int position;
+    /** strand of the previous row, or 0 if the strand is not reported */
+    private char strand;
+
+    /**
+     * Construct a location decoder for a contig dictionary.
+     *
+     * @param contigs	contig dictionary of the output file
+     */
+    public LocationDecoder(ContigDictionary contigs) {
+        this.contigs = contigs;
+        this.contigId = null;
+        this.position = 0;
+        this.strand = 0;
+    }
+
+    /**
+     * Construct a location decoder for a contig dictionary sidecar file.
+     *
+     * @param dictFile	sidecar file containing the contig dictionary
+     *
+     * @throws IOException
+     */
+    public LocationDecoder(File dictFile) throws IOException {
+        this(ContigDictionary.load(dictFile));
+    }
+
+    /**
+     * @return the full location metadata ("contigId;position", plus the strand if it is reported) for the
+     * 		   next row
+     *
+     * @param location	compact location of the row
+     *
+     * @throws IllegalArgumentException if the location is invalid
+     */
+    public String decode(String location) {
+        if (location.equals(ContigDictionary.NEXT)) {
+            if (this.contigId == null)
+                throw new IllegalArgumentException("Abbreviated location found before the first full location.");
+            this.position = ContigDictionary.nextPosition(this.position, this.strand);
+            this.strand = ContigDictionary.nextStrand(this.strand);
+        } else {
+            String[] parts = location.split(";");
+            if (parts.length < 2 || parts.length > 3 || parts.length == 3 && ! parts[2].matches("[+-]"))
+                throw new IllegalArgumentException("Invalid compact location \"" + location + "\".");
+            try {
+                this.contigId = this.contigs.getContigId(Integer.parseInt(parts[0]));
+                this.position = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number in compact location \"" + location + "\".");
+            }
+            this.strand = (parts.length == 3 ? parts[2].charAt(0) : 0);
+        }
+        String retVal = this.contigId + ";" + Integer.toString(this.position);
+        if (this.strand != 0)
+            retVal += ";" + this.strand;
+        return retVal;
+    }
+
+    /**
+     * Copy a compact TEXT output file, restoring the full location metadata in the first column.  The header
+     * line is copied unchanged.
+     *
+     * @param reader	reader for the compact file
+     * @param writer	writer for the restored file
+     *
+     * @throws IOException
+     */
+    public void restore(BufferedReader reader, PrintWriter writer) throws IOException {
+        String line = reader.readLine();
+        if (line != null) {
+            writer.println(line);
+            line = reader.readLine();
+        }
+        while (line != null) {
+            int tab = line.indexOf('\t');
+            if (tab < 0)
+                throw new IOException("Missing columns in compact output line: " + line);
+            writer.print(this.decode(line.substring(0, tab)));
+            writer.println(line.substring(tab));
+            line = reader.readLine();
+        }
+    }
+
+}
@@ -0,0 +1,321 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This object reads a FASTA file by mapping it into memory.  The file is scanned once to locate the record
+ * boundaries and compute the line geometry of each record, and then each record is presented as a
+ * {@link MappedSequence}, which reads the bases directly out of the mapped bytes.  Unlike a normal FASTA
+ * stream, this never builds a string for the sequence, so a multi-gigabyte assembly does not have to fit
+ * in the heap twice.
+ *
+ * A single mapping is limited to 2 gigabytes, so the file is mapped in segments.  Each segment holds one
+ * or more whole records.  The mappings are released by the garbage collector when the sequences are no
+ * longer referenced.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class MappedFastaReader implements Iterable<MappedSequence>, Closeable {
+
+    // FIELDS
+    /** file channel for the FASTA file */
+    private final FileChannel channel;
+    /** list of records found */
+    private final List<MappedSequence> records;
+    /** byte offsets past the last base of each record */
+    private final List<Long> ends;
+    /** TRUE for each record whose bases must be packed into memory */
+    private final List<Boolean> irregulars;
+
+    /** maximum size of a window used when scanning the file */
+    private static final long SCAN_WINDOW = 1 << 30;
+    /** maximum size of a mapped segment */
+    private static final long MAX_SEGMENT = Integer.MAX_VALUE;
+
+    /**
+     * Open a FASTA file and locate all of its records.
+     *
+     * @param inFile	FASTA file to read
+     *
+     * @throws IOException
+     */
+    public MappedFastaReader(File inFile) throws IOException {
+        this.channel = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+        this.records = new ArrayList<MappedSequence>();
+        this.ends = new ArrayList<Long>();
+        this.irregulars = new ArrayList<Boolean>();
+        this.scan();
+        this.mapSegments();
+    }
+
+    /**
+     * Open a FASTA file using a FASTA index.  Only the specified records are mapped, and the file is not
+     * scanned.
+     *
+     * @param inFile	FASTA file to read
+     * @param entries	index entries for the records to map, in file order
+     *
+     * @throws IOException
+     */
+    public MappedFastaReader(File inFile, List<FastaIndex.Entry> entries) throws IOException {
+        this.channel = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+        this.records = new ArrayList<MappedSequence>(entries.size());
+        this.ends = new ArrayList<Long>(entries.size());
+        this.irregulars = new ArrayList<Boolean>(entries.size());
+        for (FastaIndex.Entry entry : entries) {
+            MappedSequence record = new MappedSequence(entry.getName(), "", entry.getLength(), entry.getOffset(),
+                    entry.getLineBases(), entry.getLineWidth());
+            this.records.add(record);
+            this.ends.add(entry.getOffset() + record.getByteSpan());
+            this.irregulars.add(false);
+        }
+        this.mapSegments();
+    }
+
+    /**
+     * This object tracks the geometry of a record during the scan.
+     */
+    private static class RecordScanner {
+        /** sequence label */
+        private String label;
+        /** sequence comment */
+        private String comment;
+        /** file offset of the first base */
+        private long offset;
+        /** file offset past the last base */
+        private long end;
+        /** number of bases found */
+        private long length;
+        /** number of bases in a full line */
+        private int lineBases;
+        /** number of bytes in a full line */
+        private int lineWidth;
+        /** TRUE if a short line has been found */
+        private boolean shortLine;
+        /** TRUE if the line geometry is irregular */
+        private boolean irregular;
+
+        /**
+         * Start a record.
+         *
+         * @param header	header line (without the leading ">")
+         * @param offset	file offset of the first base
+         */
+        private RecordScanner(String header, long offset) {
+            String[] parts = header.trim().split("\\s+", 2);
+            this.label = parts[0];
+            this.comment = (parts.length > 1 ? parts[1] : "");
+            this.offset = offset;
+            this.end = offset;
+            this.length = 0;
+            this.lineBases = -1;
+            this.lineWidth = -1;
+            this.shortLine = false;
+            this.irregular = false;
+        }
+
+        /**
+         * Record the end of a line.
+         *
+         * @param bases		number of bases in the line
+         * @param width		number of bytes in the line, including the terminator
+         */
+        private void endLine(int bases, int width) {
+            if (bases > 0 && this.shortLine) {
+                // Bases after a short line mean we cannot compute positions from the geometry.
+                this.irregular = true;
+            } else if (this.lineBases < 0) {
+                this.lineBases = bases;
+                this.lineWidth = width;
+                if (bases == 0) this.shortLine = true;
+            } else if (bases != this.lineBases || width != this.lineWidth) {
+                if (bases > this.lineBases) this.irregular = true;
+                this.shortLine = true;
+            }
+            this.length += bases;
+        }
+
+        /**
+         * @return a sequence view for this record
+         */
+        private MappedSequence create() throws IOException {
+            if (this.length > Integer.MAX_VALUE)
+                throw new IOException("Sequence " + this.label + " is too long to process.");
+            int len = (int) this.length;
+            int bases = this.lineBases;
+            int width = this.lineWidth;
+            if (this.irregular || bases <= 0) {
+                bases = len;
+                width = len + 1;
+            }
+            return new MappedSequence(this.label, this.comment, len, this.offset, bases, width);
+        }
+
+    }
+
+    /**
+     * Scan the file to find the records and their line geometry.
+     *
+     * @throws IOException
+     */
+    private void scan() throws IOException {
+        long fileLen = this.channel.size();
+        RecordScanner current = null;
+        ByteArrayOutputStream header = new ByteArrayOutputStream(200);
+        boolean inHeader = false;
+        boolean lineStart = true;
+        long lineOffset = 0;
+        int lineBases = 0;
+        long pos = 0;
+        while (pos < fileLen) {
+            long winLen = Math.min(SCAN_WINDOW, fileLen - pos);
+            MappedByteBuffer window = this.channel.map(FileChannel.MapMode.READ_ONLY, pos, winLen);
+            int n = (int) winLen;
+            for (int i = 0; i < n; i++) {
+                byte b = window.get(i);
+                long off = pos + i;
+                if (inHeader) {
+                    if (b == '\n') {
+                        // Header is complete.  The sequence starts on the next line.
+                        current = new RecordScanner(new String(header.toByteArray(), StandardCharsets.UTF_8), off + 1);
+                        inHeader = false;
+                        lineStart = true;
+                        lineOffset = off + 1;
+                        lineBases = 0;
+                    } else if (b != '\r') {
+                        header.write(b);
+                    }
+                } else if (lineStart && b == '>') {
+                    // Here we have a new record.
+                    if (current != null) {
+                        this.finishRecord(current);
+                    }
+                    current = null;
+                    header.reset();
+                    inHeader = true;
+                } else if (b == '\n') {
+                    if (current != null)
+                        current.endLine(lineBases, (int) (off + 1 - lineOffset));
+                    lineStart = true;
+                    lineOffset = off + 1;
+                    lineBases = 0;
+                } else {
+                    lineStart = false;
+                    if (b != '\r') {
+                        lineBases++;
+                        if (current != null) current.end = off + 1;
+                    }
+                }
+            }
+            pos += winLen;
+        }
+        // Finish the last record.  A header with no line terminator is an empty record.
+        if (inHeader)
+            current = new RecordScanner(new String(header.toByteArray(), StandardCharsets.UTF_8), fileLen);
+        if (current != null) {
+            if (lineBases > 0)
+                current.endLine(lineBases, (int) (fileLen - lineOffset));
+            this.finishRecord(current);
+        }
+    }
+
+    /**
+     * Store a completed record.
+     *
+     * @param current		scanner for the record
+     *
+     * @throws IOException
+     */
+    private void finishRecord(RecordScanner current) throws IOException {
+        this.records.add(current.create());
+        this.ends.add(current.end);
+        this.irregulars.add(current.irregular);
+    }
+
+    /**
+     * Map the file in segments and attach each record to its segment.
+     *
+     * @throws IOException
+     */
+    private void mapSegments() throws IOException {
+        int n = this.records.size();
+        int i = 0;
+        while (i < n) {
+            // Gather as many records as will fit into one segment.
+            long segStart = this.records.get(i).getOffset();
+            int j = i + 1;
+            while (j < n && this.ends.get(j) - segStart <= MAX_SEGMENT) j++;
+            long segEnd = this.ends.get(j - 1);
+            if (segEnd - segStart > MAX_SEGMENT)
+                throw new IOException("Sequence " + this.records.get(i).getLabel() + " is too big to map.");
+            MappedByteBuffer segment = this.channel.map(FileChannel.MapMode.READ_ONLY, segStart, segEnd - segStart);
+            for (int k = i; k < j; k++) {
+                MappedSequence record = this.records.get(k);
+                int base = (int) (record.getOffset() - segStart);
+                if (! this.irregulars.get(k)) {
+                    record.attach(segment, base);
+                } else {
+                    // Irregular lines, so we pack the bases into memory.
+                    byte[] bases = new byte[record.length()];
+                    int limit = (int) (this.ends.get(k) - segStart);
+                    int p = 0;
+                    for (int idx = base; idx < limit; idx++) {
+                        byte b = segment.get(idx);
+                        if (b != '\n' && b != '\r') bases[p++] = b;
+                    }
+                    record.attach(bases);
+                }
+            }
+            i = j;
+        }
+    }
+
+    /**
+     * @return the list of records in the file
+     */
+    public List<MappedSequence> getRecords() {
+        return this.records;
+    }
+
+    /**
+     * @return TRUE if every record has regular line lengths (and so the file can be indexed)
+     */
+    public boolean isRegular() {
+        return ! this.irregulars.contains(true);
+    }
+
+    /**
+     * @return the number of records in the file
+     */
+    public int size() {
+        return this.records.size();
+    }
+
+    @Override
+    public Iterator<MappedSequence> iterator() {
+        return this.records.iterator();
+    }
+
+    /**
+     * Close the file.  The mapped sequences remain readable.
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+}
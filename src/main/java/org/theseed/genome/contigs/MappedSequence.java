@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This object is a read-only view of the bases in a single FASTA record.  The bases are not copied out of
+ * the file.  Instead, the view computes the location of each base in the memory-mapped file from the
+ * record's line geometry, skipping over the line breaks.  A record whose lines are not all the same length
+ * cannot be viewed this way, and is instead packed into a byte array when the file is scanned.
+ *
+ * The line geometry is the same as the one used by samtools FASTA indexes:  the offset of the first base,
+ * the number of bases in each full line, and the number of bytes in each full line (including the line
+ * terminator).
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class MappedSequence implements CharSequence {
+
+    // FIELDS
+    /** sequence label (ID) */
+    private final String label;
+    /** sequence comment */
+    private final String comment;
+    /** number of bases in the sequence */
+    private final int length;
+    /** file offset of the first base */
+    private final long offset;
+    /** number of bases in each full line */
+    private final int lineBases;
+    /** number of bytes in each full line */
+    private final int lineWidth;
+    /** buffer containing the bases */
+    private ByteBuffer buffer;
+    /** index in the buffer of the first base */
+    private int base;
+    /** TRUE if the bases are packed with no line breaks */
+    private boolean packed;
+
+    /**
+     * Construct a sequence view.  The view cannot be read until a buffer is attached.
+     *
+     * @param label			sequence label
+     * @param comment		sequence comment
+     * @param length		number of bases in the sequence
+     * @param offset		file offset of the first base
+     * @param lineBases		number of bases in a full line
+     * @param lineWidth		number of bytes in a full line, including the terminator
+     */
+    public MappedSequence(String label, String comment, int length, long offset, int lineBases, int lineWidth) {
+        this.label = label;
+        this.comment = comment;
+        this.length = length;
+        this.offset = offset;
+        this.lineBases = (lineBases <= 0 ? 1 : lineBases);
+        this.lineWidth = (lineBases <= 0 ? 1 : lineWidth);
+        this.buffer = null;
+        this.base = 0;
+        this.packed = false;
+    }
+
+    /**
+     * Attach a buffer to this view.
+     *
+     * @param buffer	buffer containing the bases laid out according to the line geometry
+     * @param base		index in the buffer of the first base
+     */
+    protected void attach(ByteBuffer buffer, int base) {
+        this.buffer = buffer;
+        this.base = base;
+    }
+
+    /**
+     * Attach a packed copy of the bases to this view.  This is used for records with irregular lines.
+     *
+     * @param bases		array of bases with no line breaks
+     */
+    protected void attach(byte[] bases) {
+        this.buffer = ByteBuffer.wrap(bases);
+        this.base = 0;
+        this.packed = true;
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        int idx = (this.packed ? index : index + (index / this.lineBases) * (this.lineWidth - this.lineBases));
+        return (char) (this.buffer.get(this.base + idx) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] buf = new char[end - start];
+        for (int i = start; i < end; i++)
+            buf[i - start] = this.charAt(i);
+        return new String(buf);
+    }
+
+    /**
+     * @return the bases as a string (this makes a copy, and should be avoided for big sequences)
+     */
+    @Override
+    public String toString() {
+        return this.subSequence(0, this.length).toString();
+    }
+
+    /**
+     * @return the sequence label
+     */
+    public String getLabel() {
+        return this.label;
+    }
+
+    /**
+     * @return the sequence comment
+     */
+    public String getComment() {
+        return this.comment;
+    }
+
+    /**
+     * @return the file offset of the first base
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * @return the number of bases in a full line
+     */
+    public int getLineBases() {
+        return this.lineBases;
+    }
+
+    /**
+     * @return the number of bytes in a full line, including the terminator
+     */
+    public int getLineWidth() {
+        return this.lineWidth;
+    }
+
+    /**
+     * @return TRUE if the record had irregular lines and its bases were packed into memory
+     */
+    public boolean isPacked() {
+        return this.packed;
+    }
+
+    /**
+     * @return the number of bytes occupied by the bases in the file, including interior line breaks
+     */
+    public long getByteSpan() {
+        long retVal = 0;
+        if (this.length > 0) {
+            long fullLines = (this.length - 1) / this.lineBases;
+            retVal = fullLines * this.lineWidth + (this.length - fullLines * this.lineBases);
+        }
+        return retVal;
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+/**
+ * This object converts blocks of a DNA sequence to nucleotide codes.  The codes are 0 for A, 1 for C, 2 for G,
+ * and 3 for T, in either case.  Every other character (including U) is an ambiguity character, with a code of
+ * {@link #AMBIGUOUS}.
+ *
+ * This class is the scalar implementation, which converts one character at a time through a lookup table.  On a
+ * JDK with the incubating Vector API, {@link #get()} returns a subclass that converts whole vectors of characters
+ * at once (see VectorNucleotideEncoder in the "java17" source directory, which is only compiled when the build
+ * selects the "vector" profile with "-Pvector").  The vector encoder is loaded by name, so if it was not compiled
+ * or the JVM was not started with "--add-modules jdk.incubator.vector", the scalar encoder is used instead.  The
+ * two always produce identical results.  Setting the system property "contigs.vector" to "false" forces the scalar encoder.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class NucleotideEncoder {
+
+    /** code for an ambiguity character */
+    public static final int AMBIGUOUS = 4;
+
+    /** nucleotide code for each ASCII character */
+    private static final byte[] CODES = new byte[128];
+    static {
+        for (int i = 0; i < 128; i++)
+            CODES[i] = AMBIGUOUS;
+        CODES['A'] = 0; CODES['a'] = 0;
+        CODES['C'] = 1; CODES['c'] = 1;
+        CODES['G'] = 2; CODES['g'] = 2;
+        CODES['T'] = 3; CODES['t'] = 3;
+    }
+
+    /** name of the vector encoder class */
+    private static final String VECTOR_CLASS = "org.theseed.genome.contigs.VectorNucleotideEncoder";
+
+    /** best available encoder */
+    private static final NucleotideEncoder INSTANCE = create();
+
+    /** builder for a track of nucleotide codes */
+    public static final SequenceTrack.Builder TRACK = (sequence, start, values) ->
+            INSTANCE.encode(sequence, start, values);
+
+    /**
+     * @return the best available encoder
+     */
+    private static NucleotideEncoder create() {
+        NucleotideEncoder retVal = null;
+        if (! "false".equalsIgnoreCase(System.getProperty("contigs.vector"))) {
+            try {
+                Class<?> vectorClass = Class.forName(VECTOR_CLASS);
+                retVal = (NucleotideEncoder) vectorClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // The vector API is not available, so we fall back to the scalar encoder.
+                retVal = null;
+            }
+        }
+        if (retVal == null)
+            retVal = new NucleotideEncoder();
+        return retVal;
+    }
+
+    /**
+     * @return the best available encoder
+     */
+    public static NucleotideEncoder get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the nucleotide code for a character
+     *
+     * @param c		character to convert
+     */
+    public static int code(char c) {
+        return (c < 128 ? CODES[c] : AMBIGUOUS);
+    }
+
+    /**
+     * Convert a block of a sequence to nucleotide codes.
+     *
+     * @param sequence	source sequence
+     * @param start		0-based offset of the first character to convert
+     * @param codes		array to receive the codes; the number of characters converted is the smaller of
+     * 					the array length and the number of characters left in the sequence
+     *
+     * @return the number of ambiguity characters found
+     */
+    public int encode(CharSequence sequence, int start, int[] codes) {
+        int n = Math.min(codes.length, sequence.length() - start);
+        char[] chars = new char[n];
+        if (sequence instanceof String) {
+            ((String) sequence).getChars(start, start + n, chars, 0);
+        } else {
+            for (int i = 0; i < n; i++)
+                chars[i] = sequence.charAt(start + i);
+        }
+        return this.encode(chars, n, codes);
+    }
+
+    /**
+     * Convert an array of characters to nucleotide codes.
+     *
+     * @param chars		characters to convert
+     * @param n			number of characters to convert
+     * @param codes		array to receive the codes
+     *
+     * @return the number of ambiguity characters found
+     */
+    public int encode(char[] chars, int n, int[] codes) {
+        int retVal = 0;
+        for (int i = 0; i < n; i++) {
+            int code = code(chars[i]);
+            codes[i] = code;
+            if (code == AMBIGUOUS) retVal++;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if this encoder uses vector instructions
+     */
+    public boolean isVector() {
+        return false;
+    }
+
+}
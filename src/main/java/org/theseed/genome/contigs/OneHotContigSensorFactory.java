@@ -0,0 +1,147 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * In this class, each position before and after the center is converted to four channels, one each for A, C, G,
+ * and T (or U).  The channel for the nucleotide at the position is "1" and the others are "0".  Optionally, there
+ * is a fifth channel that is set for ambiguity characters.  Without it, an ambiguity character has all channels
+ * set to "0", the same as a position off the edge of the contig.  Either way, an ambiguity character makes the
+ * sensor suspicious.
+ *
+ * In text output, this makes the sensor rows four or five times as wide.  In binary output, the channels are
+ * either packed eight to a byte or written one byte each, depending on the global packing setting.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class OneHotContigSensorFactory extends ContigSensorFactory {
+
+    /**
+     * binary representations of the channels
+     */
+    public static enum Packing {
+        /** the channel values are packed eight to a byte, high-order bit first; each sensor is padded to a whole byte */
+        BITS,
+        /** each channel value is written as a single unsigned byte */
+        UINT8
+    }
+
+    /** channel names */
+    private static final String CHANNEL_NAMES = "ACGTN";
+    /** channel value when the channel is set */
+    private static final String ON = "1";
+    /** channel value when the channel is not set */
+    private static final String OFF = "0";
+
+    /** TRUE if there is a fifth channel for ambiguity characters */
+    private static boolean ambiguityChannel = false;
+    /** binary representation of the channels */
+    private static Packing packing = Packing.BITS;
+
+    /**
+     * Specify whether there should be a fifth channel for ambiguity characters.  This does not affect sensors
+     * already constructed.
+     *
+     * @param flag	TRUE to include the ambiguity channel, else FALSE
+     */
+    public static void setAmbiguityChannel(boolean flag) {
+        OneHotContigSensorFactory.ambiguityChannel = flag;
+    }
+
+    /**
+     * Specify the binary representation of the channels.
+     *
+     * @param newPacking	new packing mode
+     */
+    public static void setPacking(Packing newPacking) {
+        OneHotContigSensorFactory.packing = newPacking;
+    }
+
+    /**
+     * @return the number of channels per position
+     */
+    public static int getChannels() {
+        return (ambiguityChannel ? 5 : 4);
+    }
+
+    @Override
+    protected void convertSequence(ContigSensor sensor, CharSequence sequence, int pos) {
+        int channels = getChannels();
+        int offset = pos - ContigSensorFactory.getLeftWidth() - 1;
+        int fullWidth = ContigSensorFactory.getFullWidth();
+        String[] buffer = new String[fullWidth * channels];
+        for (int i = 0; i < buffer.length; i++)
+            buffer[i] = OFF;
+        for (int i = 0; i < fullWidth; i++) {
+            int actual = offset + i;
+            if (actual >= 0 && actual < sequence.length()) {
+                int channel = GeneticCode.baseCode(sequence.charAt(actual));
+                if (channel < 0) {
+                    if (channels > 4)
+                        buffer[i * channels + 4] = ON;
+                } else {
+                    buffer[i * channels + channel] = ON;
+                }
+            }
+        }
+        sensor.storeSensors(buffer);
+    }
+
+    /**
+     * @return the sensor column headers for this sensor type
+     */
+    @Override
+    public String sensor_headers() {
+        int channels = getChannels();
+        ArrayList<String> headers = new ArrayList<String>(getFullWidth() * channels);
+        for (int i = -getLeftWidth(); i <= getRightWidth(); i++) {
+            for (int c = 0; c < channels; c++)
+                headers.add("pos." + i + "." + CHANNEL_NAMES.charAt(c));
+        }
+        return StringUtils.join(headers, '\t');
+    }
+
+    @Override
+    public String getBinaryEncoding() {
+        return (packing == Packing.BITS ? "bits" : "uint8");
+    }
+
+    @Override
+    public void writeBinary(ContigSensor sensor, DataOutput out) throws IOException {
+        String[] values = sensor.getSensors();
+        if (packing == Packing.UINT8) {
+            for (String value : values)
+                out.write(ON.equals(value) ? 1 : 0);
+        } else {
+            int acc = 0;
+            int bits = 0;
+            for (String value : values) {
+                acc = (acc << 1) | (ON.equals(value) ? 1 : 0);
+                bits++;
+                if (bits == 8) {
+                    out.write(acc);
+                    acc = 0;
+                    bits = 0;
+                }
+            }
+            if (bits > 0)
+                out.write(acc << (8 - bits));
+        }
+    }
+
+    /**
+     * @return the stride between positions to be sensed (1 for this type)
+     */
+    protected int getStride() {
+        return 1;
+    }
+
+}
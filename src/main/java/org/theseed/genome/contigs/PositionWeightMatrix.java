@@ -0,0 +1,155 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This object is a position weight matrix over nucleotides.  It is built from a position frequency matrix, in
+ * which each line contains a position offset followed by the counts (or frequencies) of A, C, G, and T at that
+ * offset.  The offset is relative to the target position, and can be specified either as a number or as a
+ * sensor column header (e.g. "pos.-12").  The counts are converted to log-odds weights against a uniform
+ * background, with a pseudocount to avoid infinite weights for unobserved nucleotides.  The score at a target
+ * position is the sum of the weights of the nucleotides at the offsets, in bits.  Offsets not in the matrix,
+ * offsets off the edge of the sequence, and ambiguous nucleotides contribute nothing.
+ *
+ * In a model file (see {@link SensorScorer}), the matrix has a header line of "pwm" followed by the name of
+ * the score.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PositionWeightMatrix {
+
+    // FIELDS
+    /** smallest offset in the matrix */
+    private final int minOffset;
+    /** number of offsets covered by the matrix */
+    private final int span;
+    /** weights, indexed by offset minus the minimum offset, times 4, plus the nucleotide code */
+    private final double[] weights;
+
+    /** pseudocount added to each nucleotide count */
+    public static final double PSEUDOCOUNT = 0.25;
+
+    /**
+     * Construct a position weight matrix from the lines of a position frequency matrix.
+     *
+     * @param lines		data lines of the matrix, split into fields
+     *
+     * @throws IllegalArgumentException if the matrix is invalid
+     */
+    public PositionWeightMatrix(List<String[]> lines) {
+        if (lines.isEmpty())
+            throw new IllegalArgumentException("A position weight matrix must have at least one position.");
+        int[] offsets = new int[lines.size()];
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < offsets.length; i++) {
+            String[] line = lines.get(i);
+            if (line.length != 5)
+                throw new IllegalArgumentException("Matrix line for \"" + line[0] + "\" should have four counts.");
+            offsets[i] = parseOffset(line[0]);
+            min = Math.min(min, offsets[i]);
+            max = Math.max(max, offsets[i]);
+        }
+        this.minOffset = min;
+        this.span = max - min + 1;
+        this.weights = new double[this.span * 4];
+        for (int i = 0; i < offsets.length; i++) {
+            String[] line = lines.get(i);
+            double[] counts = new double[4];
+            double total = 4 * PSEUDOCOUNT;
+            for (int b = 0; b < 4; b++) {
+                counts[b] = SensorScorer.parseWeight(line[b + 1]);
+                if (counts[b] < 0)
+                    throw new IllegalArgumentException("Matrix counts cannot be negative.");
+                total += counts[b];
+            }
+            int base = (offsets[i] - min) * 4;
+            for (int b = 0; b < 4; b++) {
+                double freq = (counts[b] + PSEUDOCOUNT) / total;
+                this.weights[base + b] = Math.log(freq * 4) / Math.log(2);
+            }
+        }
+    }
+
+    /**
+     * @return a position weight matrix loaded from a model file
+     *
+     * @param matrixFile	file containing the matrix
+     *
+     * @throws IOException
+     */
+    public static PositionWeightMatrix load(File matrixFile) throws IOException {
+        List<String[]> lines = SensorScorer.readModel(matrixFile);
+        String[] header = lines.remove(0);
+        if (! header[0].equalsIgnoreCase("pwm"))
+            throw new IOException(matrixFile + " does not contain a position weight matrix.");
+        return new PositionWeightMatrix(lines);
+    }
+
+    /**
+     * @return the offset specified by a matrix line label
+     *
+     * @param label		a number or a sensor column header
+     *
+     * @throws IllegalArgumentException if the label is invalid
+     */
+    private static int parseOffset(String label) {
+        String number = (label.startsWith("pos.") ? label.substring(4) : label);
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid matrix position \"" + label + "\".");
+        }
+    }
+
+    /**
+     * @return the weight of a nucleotide at an offset
+     *
+     * @param offset	offset from the target position
+     * @param code		nucleotide code (see {@link GeneticCode#baseCode})
+     */
+    public double getWeight(int offset, int code) {
+        int idx = offset - this.minOffset;
+        return (idx < 0 || idx >= this.span ? 0.0 : this.weights[idx * 4 + code]);
+    }
+
+    /**
+     * @return the matrix score at a position in a sequence
+     *
+     * @param sequence	sequence to score
+     * @param pos		1-based target position
+     */
+    public double score(CharSequence sequence, int pos) {
+        double retVal = 0;
+        int first = pos - 1 + this.minOffset;
+        int start = Math.max(first, 0);
+        int end = Math.min(first + this.span, sequence.length());
+        for (int i = start; i < end; i++) {
+            int code = GeneticCode.baseCode(sequence.charAt(i));
+            if (code >= 0)
+                retVal += this.weights[(i - first) * 4 + code];
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the smallest offset in the matrix
+     */
+    public int getMinOffset() {
+        return this.minOffset;
+    }
+
+    /**
+     * @return the largest offset in the matrix
+     */
+    public int getMaxOffset() {
+        return this.minOffset + this.span - 1;
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This object tracks the progress of a long run and periodically writes the processing rate and
+ * estimated time remaining to STDERR.  The counters are striped (LongAdder), so they can be updated
+ * from many worker threads without contention, and the report itself is produced by a background
+ * daemon thread, so the processing loops never wait on it.
+ *
+ * The callers should update the counters once per genome and once per contig (or contig chunk), never
+ * once per position.  The totals are optional.  If a base-pair total is known, the estimate is based on
+ * base pairs; otherwise, if a genome total is known, it is based on genomes; otherwise no estimate is
+ * made.  Note that for FASTA input the base-pair total is the file size, which includes headers and
+ * line breaks, so the estimate will be slightly pessimistic.
+ *
+ * The reporter must be closed when the run ends, even if it fails, or the timer thread is left running.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ProgressReporter implements Closeable {
+
+    // FIELDS
+    /** number of genomes processed */
+    private final LongAdder genomes;
+    /** number of contigs processed */
+    private final LongAdder contigs;
+    /** number of base pairs processed */
+    private final LongAdder bases;
+    /** expected number of genomes, or 0 if unknown */
+    private volatile long genomeTotal;
+    /** expected number of base pairs, or 0 if unknown */
+    private volatile long baseTotal;
+    /** start time of the run, in milliseconds */
+    private final long startTime;
+    /** timer thread for the reports, or NULL if reporting is turned off */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Construct a progress reporter.
+     *
+     * @param interval	number of seconds between reports; 0 turns reporting off
+     */
+    public ProgressReporter(int interval) {
+        this.genomes = new LongAdder();
+        this.contigs = new LongAdder();
+        this.bases = new LongAdder();
+        this.genomeTotal = 0;
+        this.baseTotal = 0;
+        this.startTime = System.currentTimeMillis();
+        if (interval <= 0) {
+            this.timer = null;
+        } else {
+            this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread retVal = new Thread(r, "progress-reporter");
+                retVal.setDaemon(true);
+                return retVal;
+            });
+            this.timer.scheduleAtFixedRate(() -> System.err.println(this.report()),
+                    interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Specify the expected totals for the run.
+     *
+     * @param genomeTotal	expected number of genomes, or 0 if unknown
+     * @param baseTotal		expected number of base pairs, or 0 if unknown
+     */
+    public void setTotals(long genomeTotal, long baseTotal) {
+        this.genomeTotal = genomeTotal;
+        this.baseTotal = baseTotal;
+    }
+
+    /**
+     * Record the completion of a genome.
+     */
+    public void addGenome() {
+        this.genomes.increment();
+    }
+
+    /**
+     * Record the completion of a contig.
+     *
+     * @param len	number of base pairs in the contig
+     */
+    public void addContig(long len) {
+        this.contigs.increment();
+        this.bases.add(len);
+    }
+
+    /**
+     * Record the completion of part of a contig.  This does not count as a contig.
+     *
+     * @param len	number of base pairs processed
+     */
+    public void addBases(long len) {
+        this.bases.add(len);
+    }
+
+    /**
+     * @return the number of genomes processed
+     */
+    public long getGenomes() {
+        return this.genomes.sum();
+    }
+
+    /**
+     * @return the number of contigs processed
+     */
+    public long getContigs() {
+        return this.contigs.sum();
+    }
+
+    /**
+     * @return the number of base pairs processed
+     */
+    public long getBases() {
+        return this.bases.sum();
+    }
+
+    /**
+     * @return the fraction of the run completed, or 0 if it cannot be estimated
+     */
+    public double fractionDone() {
+        double retVal = 0.0;
+        long bTotal = this.baseTotal;
+        long gTotal = this.genomeTotal;
+        if (bTotal > 0) {
+            retVal = (double) this.bases.sum() / bTotal;
+        } else if (gTotal > 0) {
+            retVal = (double) this.genomes.sum() / gTotal;
+        }
+        return Math.min(retVal, 1.0);
+    }
+
+    /**
+     * @return a one-line progress report
+     */
+    public String report() {
+        long elapsed = System.currentTimeMillis() - this.startTime;
+        double seconds = elapsed / 1000.0;
+        long bp = this.bases.sum();
+        StringBuilder retVal = new StringBuilder(120);
+        retVal.append("Progress: ").append(this.genomes.sum());
+        if (this.genomeTotal > 0)
+            retVal.append('/').append(this.genomeTotal);
+        retVal.append(" genomes, ").append(this.contigs.sum()).append(" contigs, ");
+        retVal.append(String.format("%.2f Mbp", bp / 1e6));
+        if (seconds > 0)
+            retVal.append(String.format(" (%.3f Mbp/sec)", bp / 1e6 / seconds));
+        double done = this.fractionDone();
+        if (done > 0) {
+            long remaining = Math.round(seconds * (1.0 - done) / done);
+            retVal.append(String.format(", %4.1f%% done, ETA %s", done * 100, formatTime(remaining)));
+        }
+        retVal.append('.');
+        return retVal.toString();
+    }
+
+    /**
+     * @return a time interval formatted as hours, minutes, and seconds
+     *
+     * @param seconds	number of seconds in the interval
+     */
+    public static String formatTime(long seconds) {
+        return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    /**
+     * Stop the background reports.  If reporting was on, a final report is written.
+     */
+    @Override
+    public void close() {
+        if (this.timer != null) {
+            this.timer.shutdownNow();
+            System.err.println(this.report());
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.util.List;
+
+/**
+ * This scorer applies a position weight matrix (see {@link PositionWeightMatrix}) to channel sensors.  The
+ * matrix positions are specified by sensor column headers (e.g. "pos.-12"), and the score of a sensor is the
+ * sum of the weights of its nucleotides, in bits.
+ *
+ * There is one score column.  The scorer only works with channel sensors, since it reads the nucleotides
+ * directly from the sensor values.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PwmSensorScorer extends SensorScorer {
+
+    // FIELDS
+    /** weights, indexed by sensor column times 4 plus nucleotide code */
+    private final double[] weights;
+
+    /**
+     * Construct a position weight matrix scorer from the data lines of a model file.
+     *
+     * @param classes	names of the score columns (there must be only one)
+     * @param factory	sensor factory for the sensors to be scored
+     * @param lines		data lines of the model file, split into fields
+     *
+     * @throws IllegalArgumentException if the model is invalid
+     */
+    public PwmSensorScorer(List<String> classes, ContigSensorFactory factory, List<String[]> lines) {
+        super(classes, factory);
+        if (! (factory instanceof ChannelContigSensorFactory))
+            throw new IllegalArgumentException("Position weight matrices require channel sensors.");
+        if (classes.size() != 1)
+            throw new IllegalArgumentException("A position weight matrix has exactly one score column.");
+        PositionWeightMatrix matrix = new PositionWeightMatrix(lines);
+        int left = ContigSensorFactory.getLeftWidth();
+        if (matrix.getMinOffset() < -left || matrix.getMaxOffset() > ContigSensorFactory.getRightWidth())
+            throw new IllegalArgumentException("Position weight matrix extends outside the sensor window.");
+        // Copy the weights into column order.  Column i is at offset i minus the left width.
+        int width = ContigSensorFactory.getFullWidth();
+        this.weights = new double[width * 4];
+        for (int i = 0; i < width; i++) {
+            for (int b = 0; b < 4; b++)
+                this.weights[i * 4 + b] = matrix.getWeight(i - left, b);
+        }
+    }
+
+    @Override
+    public void score(ContigSensor[] sensors, int n, double[][] scores) {
+        for (int r = 0; r < n; r++) {
+            String[] values = sensors[r].getSensors();
+            double score = 0;
+            for (int i = 0; i < values.length; i++) {
+                int code = GeneticCode.baseCode(values[i].charAt(0));
+                if (code >= 0)
+                    score += this.weights[i * 4 + code];
+            }
+            scores[r][0] = score;
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This object holds a list of target regions organized by contig.  The regions are read from a BED-style
+ * file:  each line contains a contig ID, a 0-based start position, and an exclusive end position, separated
+ * by tabs.  Additional columns are ignored, as are blank lines, comment lines (beginning with "#"), and the
+ * "track" and "browser" header lines.
+ *
+ * Internally, the regions are converted to 1-based inclusive intervals, which is the coordinate system of the
+ * sensor factories.  The intervals for each contig are sorted and overlapping or adjacent intervals are
+ * merged, so they can be swept in order.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class RegionIndex {
+
+    // FIELDS
+    /** map of contig IDs to sorted interval lists */
+    private final Map<String, Interval[]> intervalMap;
+
+    /** empty interval list */
+    private static final Interval[] NO_INTERVALS = new Interval[0];
+
+    /**
+     * This represents a single interval of a contig.
+     */
+    public static class Interval implements Comparable<Interval> {
+
+        /** first position (1-based) */
+        private int start;
+        /** last position (1-based) */
+        private int end;
+
+        /**
+         * Construct an interval.
+         *
+         * @param start		first position (1-based)
+         * @param end		last position (1-based)
+         */
+        public Interval(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return the first position of the interval
+         */
+        public int getStart() {
+            return this.start;
+        }
+
+        /**
+         * @return the last position of the interval
+         */
+        public int getEnd() {
+            return this.end;
+        }
+
+        /**
+         * @return the number of positions in the interval
+         */
+        public int getLength() {
+            return this.end - this.start + 1;
+        }
+
+        @Override
+        public int compareTo(Interval o) {
+            int retVal = Integer.compare(this.start, o.start);
+            if (retVal == 0)
+                retVal = Integer.compare(this.end, o.end);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Construct an empty region index.
+     */
+    public RegionIndex() {
+        this.intervalMap = new HashMap<String, Interval[]>();
+    }
+
+    /**
+     * @return a region index loaded from a BED-style file
+     *
+     * @param bedFile	file containing the regions
+     *
+     * @throws IOException
+     */
+    public static RegionIndex load(File bedFile) throws IOException {
+        Map<String, List<Interval>> regions = new HashMap<String, List<Interval>>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(bedFile))) {
+            String line = reader.readLine();
+            while (line != null) {
+                if (! line.isEmpty() && ! line.startsWith("#") && ! line.startsWith("track") &&
+                        ! line.startsWith("browser")) {
+                    String[] fields = line.split("\t");
+                    if (fields.length < 3)
+                        throw new IOException("Invalid region line in " + bedFile + ": " + line);
+                    try {
+                        int start = Integer.parseInt(fields[1]) + 1;
+                        int end = Integer.parseInt(fields[2]);
+                        if (start < 1 || end < start)
+                            throw new IOException("Invalid region limits in " + bedFile + ": " + line);
+                        regions.computeIfAbsent(fields[0], k -> new ArrayList<Interval>()).add(new Interval(start, end));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid region position in " + bedFile + ": " + line);
+                    }
+                }
+                line = reader.readLine();
+            }
+        }
+        RegionIndex retVal = new RegionIndex();
+        for (Map.Entry<String, List<Interval>> entry : regions.entrySet())
+            retVal.intervalMap.put(entry.getKey(), merge(entry.getValue()));
+        return retVal;
+    }
+
+    /**
+     * @return a sorted array of intervals with the overlapping and adjacent ones merged
+     *
+     * @param intervals		list of intervals to merge
+     */
+    private static Interval[] merge(List<Interval> intervals) {
+        Interval[] sorted = intervals.toArray(new Interval[intervals.size()]);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (Interval interval : sorted) {
+            if (n > 0 && interval.start <= sorted[n-1].end + 1) {
+                if (interval.end > sorted[n-1].end)
+                    sorted[n-1] = new Interval(sorted[n-1].start, interval.end);
+            } else {
+                sorted[n++] = interval;
+            }
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+
+    /**
+     * @return the intervals for a contig, clipped to the contig length
+     *
+     * @param contigId	ID of the contig of interest
+     * @param length	length of the contig
+     */
+    public List<Interval> getIntervals(String contigId, int length) {
+        Interval[] intervals = this.intervalMap.getOrDefault(contigId, NO_INTERVALS);
+        List<Interval> retVal = new ArrayList<Interval>(intervals.length);
+        for (Interval interval : intervals) {
+            if (interval.start <= length) {
+                if (interval.end <= length)
+                    retVal.add(interval);
+                else
+                    retVal.add(new Interval(interval.start, length));
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if the specified position is inside one of the intervals for a contig
+     *
+     * @param contigId	ID of the contig of interest
+     * @param pos		position (1-based) to check
+     */
+    public boolean contains(String contigId, int pos) {
+        Interval[] intervals = this.intervalMap.getOrDefault(contigId, NO_INTERVALS);
+        // Binary search for the last interval starting at or before the position.
+        int lo = 0;
+        int hi = intervals.length - 1;
+        boolean retVal = false;
+        while (lo <= hi && ! retVal) {
+            int mid = (lo + hi) >>> 1;
+            Interval interval = intervals[mid];
+            if (pos < interval.start)
+                hi = mid - 1;
+            else if (pos > interval.end)
+                lo = mid + 1;
+            else
+                retVal = true;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the set of contig IDs with regions
+     */
+    public Set<String> getContigIds() {
+        return this.intervalMap.keySet();
+    }
+
+    /**
+     * @return the total number of positions in all the regions
+     */
+    public long totalLength() {
+        long retVal = 0;
+        for (Interval[] intervals : this.intervalMap.values()) {
+            for (Interval interval : intervals)
+                retVal += interval.getLength();
+        }
+        return retVal;
+    }
+
+}
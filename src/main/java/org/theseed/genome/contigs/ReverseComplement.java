@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+/**
+ * This object presents the minus strand of a DNA sequence.  It does not build the reverse complement;
+ * instead, it reads the underlying plus-strand sequence backwards and complements each letter as it is
+ * requested.  The case of each letter is preserved, as are the IUPAC ambiguity codes.  Anything that is not
+ * a nucleotide code is passed through unchanged.
+ *
+ * Position P on the minus strand (1-based) corresponds to position L - P + 1 on the plus strand, where L
+ * is the sequence length.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ReverseComplement implements CharSequence {
+
+    // FIELDS
+    /** underlying plus-strand sequence */
+    private final CharSequence plus;
+    /** index of the last character in the plus-strand sequence */
+    private final int last;
+
+    /** complement table for ASCII characters */
+    private static final char[] COMPLEMENT = new char[128];
+    static {
+        for (char c = 0; c < 128; c++)
+            COMPLEMENT[c] = c;
+        String from = "ACGTUMRWSYKVHDBNacgtumrwsykvhdbn";
+        String to   = "TGCAAKYWSRMBDHVNtgcaakywsrmbdhvn";
+        for (int i = 0; i < from.length(); i++)
+            COMPLEMENT[from.charAt(i)] = to.charAt(i);
+    }
+
+    /**
+     * Construct a minus-strand view of a sequence.
+     *
+     * @param plus	plus-strand sequence
+     */
+    public ReverseComplement(CharSequence plus) {
+        this.plus = plus;
+        this.last = plus.length() - 1;
+    }
+
+    /**
+     * @return the complement of a nucleotide character
+     *
+     * @param c		character to complement
+     */
+    public static char complement(char c) {
+        return (c < 128 ? COMPLEMENT[c] : c);
+    }
+
+    @Override
+    public int length() {
+        return this.last + 1;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return complement(this.plus.charAt(this.last - index));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] buffer = new char[end - start];
+        for (int i = start; i < end; i++)
+            buffer[i - start] = this.charAt(i);
+        return new String(buffer);
+    }
+
+    @Override
+    public String toString() {
+        return this.subSequence(0, this.length()).toString();
+    }
+
+    /**
+     * @return the minus-strand position corresponding to a plus-strand position, or vice versa
+     *
+     * @param pos	position (1-based) to convert
+     */
+    public int flip(int pos) {
+        return this.last + 2 - pos;
+    }
+
+    /**
+     * @return the underlying plus-strand sequence
+     */
+    public CharSequence getPlus() {
+        return this.plus;
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * This sensor writer scores the sensors with a {@link SensorScorer} instead of writing them.  The output is
+ * tab-delimited text.  The header line contains the label column names followed by the score column names,
+ * and each data line contains the label values followed by the scores.
+ *
+ * The sensors are collected into batches and each batch is scored at once, so that the scorer can process
+ * the sensors in a tight loop.  A batch is also scored whenever the output is flushed or copied from a fork.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ScoreSensorWriter extends SensorWriter {
+
+    // FIELDS
+    /** underlying output stream */
+    private final OutputStream stream;
+    /** buffered text writer for the output stream */
+    private final Writer writer;
+    /** in-memory output stream for a forked writer, or NULL for a normal writer */
+    private final ByteArrayOutputStream memory;
+    /** scoring model */
+    private final SensorScorer scorer;
+    /** sensors in the current batch */
+    private final ContigSensor[] sensors;
+    /** label values for the sensors in the current batch */
+    private final String[][] labels;
+    /** score buffers for the current batch */
+    private final double[][] scores;
+    /** number of sensors in the current batch */
+    private int count;
+    /** formatter for scores */
+    private final DecimalFormat formatter;
+
+    /** number of sensors in a scoring batch */
+    public static final int BATCH_SIZE = 256;
+
+    /**
+     * Construct a scoring sensor writer.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     * @param scorer	scoring model for the sensors
+     */
+    public ScoreSensorWriter(OutputStream stream, ContigSensorFactory factory, SensorScorer scorer) {
+        this(stream, factory, scorer, null);
+    }
+
+    /**
+     * Construct a scoring sensor writer, possibly for in-memory output.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     * @param scorer	scoring model for the sensors
+     * @param memory	in-memory output stream (same as the target), or NULL for a normal writer
+     */
+    protected ScoreSensorWriter(OutputStream stream, ContigSensorFactory factory, SensorScorer scorer,
+            ByteArrayOutputStream memory) {
+        super(factory);
+        this.stream = stream;
+        this.writer = new BufferedWriter(new OutputStreamWriter(stream));
+        this.memory = memory;
+        this.scorer = scorer;
+        this.sensors = new ContigSensor[BATCH_SIZE];
+        this.labels = new String[BATCH_SIZE][];
+        this.scores = new double[BATCH_SIZE][scorer.getClasses().size()];
+        this.count = 0;
+        this.formatter = new DecimalFormat("0.######", DecimalFormatSymbols.getInstance(Locale.ROOT));
+    }
+
+    @Override
+    public void writeHeader(String... labels) throws IOException {
+        for (String label : labels)
+            this.writer.append(label).append('\t');
+        this.writer.append(String.join("\t", this.scorer.getClasses())).append(System.lineSeparator());
+    }
+
+    @Override
+    public void write(ContigSensor sensor, String... labels) throws IOException {
+        this.sensors[this.count] = sensor;
+        this.labels[this.count] = labels;
+        this.count++;
+        if (this.count >= BATCH_SIZE)
+            this.scoreBatch();
+    }
+
+    /**
+     * Score the current batch and write the results.
+     *
+     * @throws IOException
+     */
+    private void scoreBatch() throws IOException {
+        if (this.count > 0) {
+            this.scorer.score(this.sensors, this.count, this.scores);
+            for (int r = 0; r < this.count; r++) {
+                for (String label : this.labels[r])
+                    this.writer.append(label).append('\t');
+                double[] score = this.scores[r];
+                for (int c = 0; c < score.length; c++) {
+                    if (c > 0) this.writer.append('\t');
+                    this.writer.append(this.formatter.format(score[c]));
+                }
+                this.writer.append(System.lineSeparator());
+                this.sensors[r] = null;
+                this.labels[r] = null;
+            }
+            this.count = 0;
+        }
+    }
+
+    @Override
+    public SensorWriter fork() {
+        ByteArrayOutputStream memory = memoryStream();
+        return this.inherit(new ScoreSensorWriter(memory, this.getFactory(), this.scorer, memory));
+    }
+
+    @Override
+    public byte[] toBytes() throws IOException {
+        if (this.memory == null)
+            throw new IllegalStateException("Only a forked sensor writer can return its output.");
+        this.scoreBatch();
+        this.writer.flush();
+        return this.memory.toByteArray();
+    }
+
+    @Override
+    public void writeBytes(byte[] bytes) throws IOException {
+        this.scoreBatch();
+        this.writer.flush();
+        this.stream.write(bytes);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.scoreBatch();
+        this.writer.flush();
+        this.stream.flush();
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is the base class for models that score contig sensors in-process.  A scorer takes a batch of sensors
+ * and computes a score for each of its classes, so that the prediction command can output scores instead of
+ * sensors.  Scorers must be thread-safe, since the same scorer is used by all the worker threads.
+ *
+ * A scorer is loaded from a tab-delimited model file.  The first line contains the model type followed by the
+ * names of the score columns, and the remaining lines depend on the type.  Blank lines and lines beginning
+ * with "#" are ignored.  The types are
+ *
+ * 	linear		a linear model (see {@link LinearSensorScorer}); the score is a weighted sum of the sparse
+ * 				features of the sensor
+ * 	logistic	a linear model with a logistic link; if there is one class, the score is the logistic of the
+ * 				weighted sum, and if there are several, the scores are the softmax of the weighted sums
+ * 	pwm			a position weight matrix over nucleotides (see {@link PwmSensorScorer})
+ *
+ * @author Bruce Parrello
+ *
+ */
+public abstract class SensorScorer {
+
+    // FIELDS
+    /** names of the score columns */
+    private final List<String> classes;
+    /** sensor factory for the sensors to be scored */
+    private final ContigSensorFactory factory;
+
+    /**
+     * Construct a sensor scorer.
+     *
+     * @param classes	names of the score columns
+     * @param factory	sensor factory for the sensors to be scored
+     */
+    protected SensorScorer(List<String> classes, ContigSensorFactory factory) {
+        this.classes = classes;
+        this.factory = factory;
+    }
+
+    /**
+     * @return a sensor scorer loaded from a model file
+     *
+     * @param modelFile		file containing the model
+     * @param factory		sensor factory for the sensors to be scored
+     *
+     * @throws IOException
+     */
+    public static SensorScorer load(File modelFile, ContigSensorFactory factory) throws IOException {
+        SensorScorer retVal = null;
+        List<String[]> lines = readModel(modelFile);
+        String[] header = lines.remove(0);
+        List<String> classes = Arrays.asList(Arrays.copyOfRange(header, 1, header.length));
+        switch (header[0].toLowerCase()) {
+        case "linear" :
+            retVal = new LinearSensorScorer(classes, factory, lines, false);
+            break;
+        case "logistic" :
+            retVal = new LinearSensorScorer(classes, factory, lines, true);
+            break;
+        case "pwm" :
+            retVal = new PwmSensorScorer(classes, factory, lines);
+            break;
+        default :
+            throw new IOException("Unknown model type \"" + header[0] + "\" in " + modelFile + ".");
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the data lines of a model file, split into fields; the first line is the header
+     *
+     * @param modelFile		file containing the model
+     *
+     * @throws IOException
+     */
+    protected static List<String[]> readModel(File modelFile) throws IOException {
+        List<String[]> retVal = new ArrayList<String[]>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(modelFile))) {
+            for (String[] line = nextLine(reader); line != null; line = nextLine(reader))
+                retVal.add(line);
+        }
+        if (retVal.isEmpty())
+            throw new IOException("Model file " + modelFile + " is empty.");
+        if (retVal.get(0).length < 2)
+            throw new IOException("Model file " + modelFile + " has no score columns.");
+        return retVal;
+    }
+
+    /**
+     * @return the fields of the next data line of a model file, or NULL at end-of-file
+     *
+     * @param reader	model file reader
+     *
+     * @throws IOException
+     */
+    private static String[] nextLine(BufferedReader reader) throws IOException {
+        String[] retVal = null;
+        String line = reader.readLine();
+        while (line != null && retVal == null) {
+            if (line.trim().isEmpty() || line.startsWith("#"))
+                line = reader.readLine();
+            else
+                retVal = line.split("\t");
+        }
+        return retVal;
+    }
+
+    /**
+     * Score a batch of sensors.
+     *
+     * @param sensors	array of sensors to score
+     * @param n			number of sensors in the batch (from the beginning of the array)
+     * @param scores	array to receive the scores; for each sensor there must be an array of doubles at least as
+     * 					long as the number of score columns
+     */
+    public abstract void score(ContigSensor[] sensors, int n, double[][] scores);
+
+    /**
+     * @return the names of the score columns
+     */
+    public List<String> getClasses() {
+        return this.classes;
+    }
+
+    /**
+     * @return the sensor factory for the sensors to be scored
+     */
+    protected ContigSensorFactory getFactory() {
+        return this.factory;
+    }
+
+    /**
+     * @return the index of a sensor column, or -1 if there is no column with the specified header
+     *
+     * @param headers	array of sensor column headers
+     * @param name		header of the desired column
+     */
+    protected static int columnIndex(String[] headers, String name) {
+        int retVal = headers.length - 1;
+        while (retVal >= 0 && ! headers[retVal].equals(name)) retVal--;
+        return retVal;
+    }
+
+    /**
+     * @return a floating-point number from a model file
+     *
+     * @param value		string to parse
+     *
+     * @throws IllegalArgumentException if the string is not a valid number
+     */
+    protected static double parseWeight(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid model weight \"" + value + "\".");
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the base class for objects that write contig sensors to an output stream.  Each output row
+ * consists of label columns (the location metadata, the codon, and sometimes an expected class) followed
+ * by the sensor values.
+ *
+ * If a class list is specified, the last label column of each row is the expected class, and formats that
+ * need a numeric label convert it to its index in the class list.
+ *
+ * A writer can be forked to produce output in memory for a worker thread.  The forked writer has the same
+ * format but no header, and its bytes can be copied to the parent in the proper order.
+ *
+ * The writer never closes its underlying output stream, since this is normally the standard output.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public abstract class SensorWriter implements Closeable {
+
+    /**
+     * output formats currently supported
+     */
+    public static enum Format {
+        /** tab-delimited text with a header line */
+        TEXT,
+        /** binary records, with the sensor values encoded by the sensor factory */
+        BINARY,
+        /** LIBSVM-style sparse text, with the labels in a trailing comment */
+        LIBSVM,
+        /** binary records containing the rows of a sparse matrix in compressed-sparse-row form */
+        CSR,
+        /** dictionary-encoded columns in row groups, with an index footer */
+        COLUMNAR
+    }
+
+    // FIELDS
+    /** sensor factory, for encoding the sensor values */
+    private final ContigSensorFactory factory;
+    /** map of class names to class indices, or NULL if there is no class column */
+    private Map<String, Integer> classMap;
+
+    /**
+     * Construct a sensor writer.
+     *
+     * @param factory	sensor factory for the sensors to be written
+     */
+    protected SensorWriter(ContigSensorFactory factory) {
+        this.factory = factory;
+        this.classMap = null;
+    }
+
+    /**
+     * @return a sensor writer of the specified format
+     *
+     * @param format	output format
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     */
+    public static SensorWriter create(Format format, OutputStream stream, ContigSensorFactory factory) {
+        SensorWriter retVal = null;
+        switch (format) {
+        case TEXT :
+            retVal = new TextSensorWriter(stream, factory);
+            break;
+        case BINARY :
+            retVal = new BinarySensorWriter(stream, factory);
+            break;
+        case LIBSVM :
+            retVal = new LibsvmSensorWriter(stream, factory);
+            break;
+        case CSR :
+            retVal = new CsrSensorWriter(stream, factory);
+            break;
+        case COLUMNAR :
+            retVal = new ColumnarSensorWriter(stream, factory);
+            break;
+        default :
+            throw new IllegalArgumentException("Unknown sensor output format " + format + ".");
+        }
+        return retVal;
+    }
+
+    /**
+     * Specify the list of classes for the class column.  This must be called before the header is written.
+     *
+     * @param classes	list of class names, in class-index order
+     */
+    public void setClasses(List<String> classes) {
+        this.classMap = new HashMap<String, Integer>(classes.size() * 2);
+        for (int i = 0; i < classes.size(); i++)
+            this.classMap.put(classes.get(i), i);
+    }
+
+    /**
+     * @return TRUE if the last label column is a class column
+     */
+    protected boolean hasClasses() {
+        return this.classMap != null;
+    }
+
+    /**
+     * @return the index of a class, or -1 if the class is not in the class list
+     *
+     * @param name	class name
+     */
+    protected int classIndex(String name) {
+        return this.classMap.getOrDefault(name, -1);
+    }
+
+    /**
+     * @return the class names, in class-index order
+     */
+    protected String[] classNames() {
+        String[] retVal = new String[this.classMap.size()];
+        for (Map.Entry<String, Integer> entry : this.classMap.entrySet())
+            retVal[entry.getValue()] = entry.getKey();
+        return retVal;
+    }
+
+    /**
+     * Give a forked writer the same class list as this one.
+     *
+     * @param forked	forked writer
+     *
+     * @return the forked writer
+     */
+    protected SensorWriter inherit(SensorWriter forked) {
+        forked.classMap = this.classMap;
+        return forked;
+    }
+
+    /**
+     * Write the output header.
+     *
+     * @param labels	names of the label columns
+     *
+     * @throws IOException
+     */
+    public abstract void writeHeader(String... labels) throws IOException;
+
+    /**
+     * Write a contig sensor.
+     *
+     * @param sensor	sensor to write
+     * @param labels	values of the label columns
+     *
+     * @throws IOException
+     */
+    public abstract void write(ContigSensor sensor, String... labels) throws IOException;
+
+    /**
+     * @return a writer of the same format that writes to memory
+     */
+    public abstract SensorWriter fork();
+
+    /**
+     * @return the bytes written by a forked writer
+     *
+     * @throws IOException
+     */
+    public abstract byte[] toBytes() throws IOException;
+
+    /**
+     * Copy the output of a forked writer to this writer.
+     *
+     * @param bytes		bytes produced by the forked writer
+     *
+     * @throws IOException
+     */
+    public abstract void writeBytes(byte[] bytes) throws IOException;
+
+    /**
+     * Flush any buffered output.
+     *
+     * @throws IOException
+     */
+    public abstract void flush() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        this.flush();
+    }
+
+    /**
+     * @return the sensor factory for this writer
+     */
+    protected ContigSensorFactory getFactory() {
+        return this.factory;
+    }
+
+    /**
+     * @return a new in-memory output stream for a forked writer
+     */
+    protected static ByteArrayOutputStream memoryStream() {
+        return new ByteArrayOutputStream(1 << 16);
+    }
+
+}
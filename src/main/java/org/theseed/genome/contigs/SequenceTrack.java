@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+/**
+ * This object holds a precomputed integer value for each position of a sequence (for example, the code of
+ * the codon starting at that position).  Sensor factories use tracks so that each position of a contig is
+ * converted only once, rather than once for every sensor window that contains it.
+ *
+ * The values are computed lazily in fixed-size blocks.  This way, a command that only samples a few runs from
+ * each contig does not pay to convert the whole contig, while a command that sweeps the whole contig converts
+ * each block exactly once.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SequenceTrack {
+
+    /**
+     * This interface is implemented by the objects that compute the track values.
+     */
+    public interface Builder {
+
+        /**
+         * Compute the track values for a block of positions.
+         *
+         * @param sequence	source sequence
+         * @param start		0-based offset of the first position in the block
+         * @param values	array to receive the values; the number of values to compute is the
+         * 					smaller of the array length and the number of positions left in the sequence
+         */
+        public void build(CharSequence sequence, int start, int[] values);
+
+    }
+
+    // FIELDS
+    /** source sequence */
+    private final CharSequence sequence;
+    /** builder for computing values */
+    private final Builder builder;
+    /** blocks of values, or NULL for blocks not yet computed */
+    private final int[][] blocks;
+
+    /** number of bits in a block offset */
+    private static final int BLOCK_BITS = 12;
+    /** number of positions in a block */
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    /** mask for a block offset */
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    /**
+     * Construct a track for a sequence.
+     *
+     * @param sequence	source sequence
+     * @param builder	builder to compute the values
+     */
+    public SequenceTrack(CharSequence sequence, Builder builder) {
+        this.sequence = sequence;
+        this.builder = builder;
+        this.blocks = new int[(sequence.length() + BLOCK_SIZE - 1) >> BLOCK_BITS][];
+    }
+
+    /**
+     * @return the value for the specified position
+     *
+     * @param offset	0-based offset of the position in the sequence
+     */
+    public int get(int offset) {
+        int[] block = this.blocks[offset >> BLOCK_BITS];
+        if (block == null)
+            block = this.buildBlock(offset >> BLOCK_BITS);
+        return block[offset & BLOCK_MASK];
+    }
+
+    /**
+     * Compute a block of values.
+     *
+     * @param idx	index of the block to compute
+     *
+     * @return the new block of values
+     */
+    private int[] buildBlock(int idx) {
+        int start = idx << BLOCK_BITS;
+        int[] retVal = new int[Math.min(BLOCK_SIZE, this.sequence.length() - start)];
+        this.builder.build(this.sequence, start, retVal);
+        this.blocks[idx] = retVal;
+        return retVal;
+    }
+
+    /**
+     * @return the source sequence
+     */
+    public CharSequence getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * @return the builder that computes the values
+     */
+    public Builder getBuilder() {
+        return this.builder;
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.util.Random;
+
+import org.theseed.io.BalancedOutputStream;
+
+/**
+ * This object shuffles training rows through a fixed-size buffer.  The rows are held until the buffer is full.
+ * After that, each new row replaces a randomly-chosen row in the buffer, and the row it replaces is written to the
+ * output.  When the buffer is closed, the rows left in it are written in random order.
+ *
+ * The result is not a full shuffle, since a row can only move forward by about the size of the buffer, but a
+ * buffer much larger than a contig run breaks up the runs of consecutive positions and mixes rows from many
+ * contigs and genomes, without an external sort.  The memory used is fixed by the buffer size.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ShuffleBuffer implements AutoCloseable {
+
+    // FIELDS
+    /** class labels of the buffered rows */
+    private final String[] labels;
+    /** sensor data of the buffered rows */
+    private final String[] data;
+    /** number of rows in the buffer */
+    private int size;
+    /** random number generator */
+    private final Random rand;
+    /** output stream for the shuffled rows */
+    private final BalancedOutputStream output;
+
+    /**
+     * Construct a shuffle buffer.
+     *
+     * @param capacity	number of rows to hold in the buffer
+     * @param rand		random number generator for choosing rows
+     * @param output	output stream for the shuffled rows
+     */
+    public ShuffleBuffer(int capacity, Random rand, BalancedOutputStream output) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Shuffle buffer must hold at least one row.");
+        this.labels = new String[capacity];
+        this.data = new String[capacity];
+        this.size = 0;
+        this.rand = rand;
+        this.output = output;
+    }
+
+    /**
+     * Add a row to the buffer.  If the buffer is full, a randomly-chosen row is written to make room.
+     *
+     * @param label		class label of the row
+     * @param data		sensor data of the row
+     */
+    public void write(String label, String data) {
+        if (this.size < this.labels.length) {
+            this.labels[this.size] = label;
+            this.data[this.size] = data;
+            this.size++;
+        } else {
+            int i = this.rand.nextInt(this.size);
+            this.output.write(this.labels[i], this.data[i]);
+            this.labels[i] = label;
+            this.data[i] = data;
+        }
+    }
+
+    /**
+     * @return the number of rows in the buffer
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Write the remaining rows in random order and empty the buffer.  The output stream is not closed.
+     */
+    @Override
+    public void close() {
+        while (this.size > 0) {
+            int i = this.rand.nextInt(this.size);
+            this.output.write(this.labels[i], this.data[i]);
+            // Move the last row into the vacated slot.
+            this.size--;
+            this.labels[i] = this.labels[this.size];
+            this.data[i] = this.data[this.size];
+            this.labels[this.size] = null;
+            this.data[this.size] = null;
+        }
+    }
+
+}
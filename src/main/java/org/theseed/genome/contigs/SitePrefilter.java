@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This object discards candidate start and stop sites that the model is very unlikely to accept, so that fewer
+ * rows need to be output.  There are two tests, either or both of which can be turned on.
+ *
+ * The open-reading-frame test requires a minimum ORF length.  For a stop codon, the ORF runs from just after the
+ * previous in-frame stop to the end of the stop codon.  For a start codon, it runs from the start codon to the
+ * end of the next in-frame stop.  If there is no such stop, the ORF runs to the edge of the sequence, since
+ * the gene may extend past it.  Every other codon is assumed to be a start.  The stops are determined by the
+ * genetic code for amino acid sensors.
+ *
+ * The matrix test requires a minimum position weight matrix score around the codon (for example, a
+ * Shine-Dalgarno context upstream of a start).  The matrix is only applied to start codons.
+ *
+ * Each sequence (or minus-strand view) is prepared once, with a single scan to find the in-frame stops, and
+ * the prepared sequence can then be used to test candidates from any number of threads.  If only a range of
+ * positions will be tested, the sequence can be prepared for that range alone.  The scan then covers only the
+ * range plus the minimum ORF length on either side, since a stop any farther away cannot prune a candidate in
+ * the range.  The number of candidates tested and pruned is tracked for the final report.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SitePrefilter {
+
+    // FIELDS
+    /** minimum open reading frame length, or 0 to skip the ORF test */
+    private final int minOrf;
+    /** position weight matrix for start contexts, or NULL to skip the matrix test */
+    private final PositionWeightMatrix matrix;
+    /** minimum matrix score */
+    private final double minScore;
+    /** genetic code for recognizing stops */
+    private final GeneticCode geneticCode;
+    /** number of candidates tested */
+    private final LongAdder tested;
+    /** number of candidates pruned */
+    private final LongAdder pruned;
+
+    /**
+     * Construct a site prefilter.
+     *
+     * @param minOrf		minimum ORF length, or 0 to skip the ORF test
+     * @param matrix		position weight matrix for start contexts, or NULL to skip the matrix test
+     * @param minScore		minimum matrix score for a start
+     * @param geneticCode	genetic code for recognizing stops
+     */
+    public SitePrefilter(int minOrf, PositionWeightMatrix matrix, double minScore, GeneticCode geneticCode) {
+        this.minOrf = minOrf;
+        this.matrix = matrix;
+        this.minScore = minScore;
+        this.geneticCode = geneticCode;
+        this.tested = new LongAdder();
+        this.pruned = new LongAdder();
+    }
+
+    /**
+     * This object contains a sequence prepared for testing candidates.
+     */
+    public class Prepared {
+
+        /** sequence being tested */
+        private final CharSequence sequence;
+        /** sorted 1-based positions of the stop codons in each frame, or NULL if there is no ORF test */
+        private final int[][] stops;
+        /** 0-based offset of the first codon scanned for stops */
+        private final int scanStart;
+        /** 0-based offset past the last base scanned for stops */
+        private final int scanEnd;
+
+        /**
+         * Prepare a range of a sequence by finding the stop codons that can affect it.
+         *
+         * @param sequence	sequence to prepare
+         * @param start		first 1-based position that will be tested
+         * @param end		last 1-based position that will be tested
+         */
+        protected Prepared(CharSequence sequence, int start, int end) {
+            this.sequence = sequence;
+            int len = sequence.length();
+            int margin = SitePrefilter.this.minOrf;
+            this.scanStart = Math.max(0, start - 1 - margin);
+            this.scanEnd = (int) Math.min(len, (long) end + 2 + margin);
+            if (margin <= 0) {
+                this.stops = null;
+            } else {
+                this.stops = new int[3][];
+                int[] counts = new int[3];
+                int scanLen = Math.max(0, this.scanEnd - this.scanStart);
+                for (int f = 0; f < 3; f++)
+                    this.stops[f] = new int[scanLen / 64 + 16];
+                for (int i = this.scanStart; i + 3 <= this.scanEnd; i++) {
+                    if (isStop(sequence, i)) {
+                        int f = i % 3;
+                        if (counts[f] >= this.stops[f].length)
+                            this.stops[f] = Arrays.copyOf(this.stops[f], this.stops[f].length * 2);
+                        this.stops[f][counts[f]++] = i + 1;
+                    }
+                }
+                for (int f = 0; f < 3; f++)
+                    this.stops[f] = Arrays.copyOf(this.stops[f], counts[f]);
+            }
+        }
+
+        /**
+         * @return TRUE if a candidate should be kept, FALSE if it should be pruned
+         *
+         * If there is no stop within the scanned part of the sequence, the ORF is assumed to run to the end of
+         * the scanned part.  For a position in the prepared range, this is either the edge of the sequence or
+         * far enough away to pass the ORF test.
+         *
+         * @param pos	1-based position of the candidate codon in the prepared sequence
+         */
+        public boolean accept(int pos) {
+            boolean retVal = true;
+            int offset = pos - 1;
+            if (offset + 3 <= this.sequence.length()) {
+                boolean stop = isStop(this.sequence, offset);
+                if (this.stops != null) {
+                    int[] frameStops = this.stops[offset % 3];
+                    int idx = Arrays.binarySearch(frameStops, pos);
+                    int orfLen;
+                    if (stop) {
+                        // Find the previous stop in the frame.
+                        int prev = (idx < 0 ? -idx - 2 : idx - 1);
+                        orfLen = (prev < 0 ? pos + 2 - this.scanStart : pos - frameStops[prev]);
+                    } else {
+                        // Find the next stop in the frame.
+                        int next = (idx < 0 ? -idx - 1 : idx);
+                        orfLen = (next >= frameStops.length ? this.scanEnd - pos + 1 :
+                                frameStops[next] - pos + 3);
+                    }
+                    retVal = (orfLen >= SitePrefilter.this.minOrf);
+                }
+                if (retVal && ! stop && SitePrefilter.this.matrix != null)
+                    retVal = (SitePrefilter.this.matrix.score(this.sequence, pos) >= SitePrefilter.this.minScore);
+            }
+            SitePrefilter.this.tested.increment();
+            if (! retVal)
+                SitePrefilter.this.pruned.increment();
+            return retVal;
+        }
+
+    }
+
+    /**
+     * @return a sequence prepared for testing candidates
+     *
+     * @param sequence	sequence (or minus-strand view) to prepare
+     */
+    public Prepared prepare(CharSequence sequence) {
+        return new Prepared(sequence, 1, sequence.length());
+    }
+
+    /**
+     * @return a sequence prepared for testing candidates in a range of positions; candidates outside the range
+     * 		   may not be tested correctly
+     *
+     * @param sequence	sequence (or minus-strand view) to prepare
+     * @param start		first 1-based position to be tested
+     * @param end		last 1-based position to be tested
+     */
+    public Prepared prepare(CharSequence sequence, int start, int end) {
+        return new Prepared(sequence, start, end);
+    }
+
+    /**
+     * @return TRUE if the codon at the specified offset is a stop
+     *
+     * @param sequence	sequence containing the codon
+     * @param offset	0-based offset of the codon
+     */
+    private boolean isStop(CharSequence sequence, int offset) {
+        int codon = GeneticCode.codonCode(sequence, offset);
+        return (codon >= 0 && this.geneticCode.translate(codon) == '*');
+    }
+
+    /**
+     * @return the number of candidates tested
+     */
+    public long getTested() {
+        return this.tested.sum();
+    }
+
+    /**
+     * @return the number of candidates pruned
+     */
+    public long getPruned() {
+        return this.pruned.sum();
+    }
+
+}
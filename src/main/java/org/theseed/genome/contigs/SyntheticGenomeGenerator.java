@@ -0,0 +1,265 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * This object generates synthetic genomes for benchmarking.  Each genome is written as a GTO file, and its
+ * contigs are also written to a FASTA file, so the same data can be fed to all three commands.  Nothing is
+ * needed from the network or from real genomes, and the output depends only on the parameters and the random
+ * seed, so runs on different machines or releases process identical data.
+ *
+ * Each contig has a random length between the minimum and the maximum.  Genes are laid down along the contig
+ * on random strands, separated by random intergenic gaps chosen so that the requested fraction of the contig
+ * is coding.  A gene is an ATG start, a run of random non-stop codons, and a stop codon, and is recorded as a
+ * protein-encoding feature in the GTO.  Finally, each nucleotide is replaced by an "n" with the specified
+ * ambiguity rate.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SyntheticGenomeGenerator {
+
+    // FIELDS
+    /** random number generator */
+    private final Random rand;
+    /** number of contigs per genome */
+    private int contigs;
+    /** minimum contig length */
+    private int minLen;
+    /** maximum contig length */
+    private int maxLen;
+    /** fraction of each contig covered by genes */
+    private double density;
+    /** fraction of nucleotides that are ambiguous */
+    private double ambiguity;
+
+    /** taxonomic ID used for synthetic genomes */
+    public static final String TAXON_ID = "6666666";
+    /** minimum gene length in codons, including the start and stop */
+    public static final int MIN_GENE_CODONS = 100;
+    /** maximum gene length in codons, including the start and stop */
+    public static final int MAX_GENE_CODONS = 1000;
+    /** nucleotides */
+    private static final char[] NUCLEOTIDES = new char[] { 'a', 'c', 'g', 't' };
+    /** stop codons */
+    private static final String[] STOPS = new String[] { "taa", "tag", "tga" };
+
+    /**
+     * Construct a synthetic genome generator with the default parameters.
+     *
+     * @param seed	seed for the random number generator
+     */
+    public SyntheticGenomeGenerator(long seed) {
+        this.rand = new Random(seed);
+        this.contigs = 4;
+        this.minLen = 20000;
+        this.maxLen = 200000;
+        this.density = 0.85;
+        this.ambiguity = 0.001;
+    }
+
+    /**
+     * Specify the number of contigs per genome.
+     *
+     * @param contigs	number of contigs per genome
+     */
+    public SyntheticGenomeGenerator setContigs(int contigs) {
+        if (contigs < 1)
+            throw new IllegalArgumentException("A genome must have at least one contig.");
+        this.contigs = contigs;
+        return this;
+    }
+
+    /**
+     * Specify the contig lengths.
+     *
+     * @param minLen	minimum contig length
+     * @param maxLen	maximum contig length
+     */
+    public SyntheticGenomeGenerator setLengths(int minLen, int maxLen) {
+        if (minLen < 1 || maxLen < minLen)
+            throw new IllegalArgumentException("Contig lengths must be positive, with the minimum no greater than the maximum.");
+        this.minLen = minLen;
+        this.maxLen = maxLen;
+        return this;
+    }
+
+    /**
+     * Specify the gene density.
+     *
+     * @param density	fraction of each contig covered by genes, from 0 to 1
+     */
+    public SyntheticGenomeGenerator setDensity(double density) {
+        if (density < 0.0 || density >= 1.0)
+            throw new IllegalArgumentException("Gene density must be at least 0 and less than 1.");
+        this.density = density;
+        return this;
+    }
+
+    /**
+     * Specify the ambiguity rate.
+     *
+     * @param ambiguity		fraction of nucleotides that are ambiguous, from 0 to 1
+     */
+    public SyntheticGenomeGenerator setAmbiguity(double ambiguity) {
+        if (ambiguity < 0.0 || ambiguity > 1.0)
+            throw new IllegalArgumentException("Ambiguity rate must be between 0 and 1.");
+        this.ambiguity = ambiguity;
+        return this;
+    }
+
+    /**
+     * @return the ID of a synthetic genome
+     *
+     * @param idx	index of the genome (1-based)
+     */
+    public static String genomeId(int idx) {
+        return TAXON_ID + "." + idx;
+    }
+
+    /**
+     * Generate a synthetic genome, writing it to a GTO file and its contigs to a FASTA file.
+     *
+     * @param idx			index of the genome (1-based)
+     * @param gtoFile		output file for the genome object
+     * @param fastaWriter	output writer for the contig FASTA records
+     *
+     * @throws IOException
+     */
+    public void generate(int idx, File gtoFile, Writer fastaWriter) throws IOException {
+        String genomeId = genomeId(idx);
+        StringBuilder features = new StringBuilder(1 << 16);
+        StringBuilder contigList = new StringBuilder(this.contigs * this.maxLen + 1000);
+        int pegs = 0;
+        for (int c = 1; c <= this.contigs; c++) {
+            String contigId = genomeId + ".con." + String.format("%04d", c);
+            int len = this.minLen + this.rand.nextInt(this.maxLen - this.minLen + 1);
+            char[] dna = new char[len];
+            int pos = Math.min(this.gap(), len);
+            for (int i = 0; i < pos; i++) dna[i] = this.nucleotide();
+            while (pos < len) {
+                int geneLen = 3 * (MIN_GENE_CODONS + this.rand.nextInt(MAX_GENE_CODONS - MIN_GENE_CODONS + 1));
+                if (pos + geneLen > len) {
+                    // Not enough room for the gene, so fill in the rest of the contig.
+                    for (int i = pos; i < len; i++) dna[i] = this.nucleotide();
+                    pos = len;
+                } else {
+                    boolean plus = this.rand.nextBoolean();
+                    this.gene(dna, pos, geneLen, plus);
+                    pegs++;
+                    // GTO locations are the contig, the start position, the strand, and the length.
+                    int begin = (plus ? pos + 1 : pos + geneLen);
+                    if (pegs > 1) features.append(",");
+                    features.append("{\"id\":\"fig|").append(genomeId).append(".peg.").append(pegs)
+                            .append("\",\"type\":\"CDS\",\"function\":\"hypothetical protein\",\"location\":[[\"")
+                            .append(contigId).append("\",").append(begin).append(",\"").append(plus ? '+' : '-')
+                            .append("\",").append(geneLen).append("]]}");
+                    pos += geneLen;
+                    int gap = Math.min(this.gap(), len - pos);
+                    for (int i = 0; i < gap; i++) dna[pos + i] = this.nucleotide();
+                    pos += gap;
+                }
+            }
+            for (int i = 0; i < len; i++) {
+                if (this.ambiguity > 0 && this.rand.nextDouble() < this.ambiguity)
+                    dna[i] = 'n';
+            }
+            if (c > 1) contigList.append(",");
+            contigList.append("{\"id\":\"").append(contigId).append("\",\"genetic_code\":11,\"dna\":\"")
+                    .append(dna).append("\"}");
+            fastaWriter.write(">" + contigId + " " + genomeId + "\n");
+            for (int i = 0; i < len; i += 60) {
+                fastaWriter.write(dna, i, Math.min(60, len - i));
+                fastaWriter.write("\n");
+            }
+        }
+        try (Writer gtoWriter = new BufferedWriter(new FileWriter(gtoFile))) {
+            gtoWriter.write("{\"id\":\"" + genomeId + "\",\"scientific_name\":\"Synthetic genome " + idx +
+                    "\",\"domain\":\"Bacteria\",\"genetic_code\":11,\"ncbi_taxonomy_id\":" + TAXON_ID +
+                    ",\"contigs\":[");
+            gtoWriter.append(contigList);
+            gtoWriter.write("],\"features\":[");
+            gtoWriter.append(features);
+            gtoWriter.write("]}\n");
+        }
+    }
+
+    /**
+     * @return the length of a random intergenic gap
+     */
+    private int gap() {
+        int retVal = 0;
+        // The mean gene length is the midpoint of the codon range.  A uniform gap from 0 to twice the mean
+        // gap length gives the desired density on average.
+        double meanGene = 1.5 * (MIN_GENE_CODONS + MAX_GENE_CODONS);
+        int maxGap = (int) Math.round(2.0 * meanGene * (1.0 - this.density) / Math.max(this.density, 0.001));
+        if (maxGap > 0)
+            retVal = this.rand.nextInt(maxGap + 1);
+        return retVal;
+    }
+
+    /**
+     * @return a random nucleotide
+     */
+    private char nucleotide() {
+        return NUCLEOTIDES[this.rand.nextInt(4)];
+    }
+
+    /**
+     * Write a random gene into a sequence.
+     *
+     * @param dna		sequence buffer
+     * @param pos		0-based offset of the gene's leftmost nucleotide
+     * @param geneLen	length of the gene (a multiple of 3)
+     * @param plus		TRUE for a plus-strand gene, FALSE for a minus-strand gene
+     */
+    private void gene(char[] dna, int pos, int geneLen, boolean plus) {
+        char[] gene = new char[geneLen];
+        gene[0] = 'a'; gene[1] = 't'; gene[2] = 'g';
+        GeneticCode code = GeneticCode.get(11);
+        for (int i = 3; i < geneLen - 3; i += 3) {
+            int codon;
+            do {
+                codon = this.rand.nextInt(64);
+            } while (code.translate(codon) == '*');
+            gene[i] = NUCLEOTIDES[codon >> 4];
+            gene[i + 1] = NUCLEOTIDES[(codon >> 2) & 3];
+            gene[i + 2] = NUCLEOTIDES[codon & 3];
+        }
+        STOPS[this.rand.nextInt(STOPS.length)].getChars(0, 3, gene, geneLen - 3);
+        if (plus) {
+            System.arraycopy(gene, 0, dna, pos, geneLen);
+        } else {
+            for (int i = 0; i < geneLen; i++)
+                dna[pos + geneLen - 1 - i] = ReverseComplement.complement(gene[i]);
+        }
+    }
+
+    /**
+     * Generate a set of synthetic genomes.  The GTO files are put in a directory, and the contigs of all the
+     * genomes are written to a single FASTA file.
+     *
+     * @param count		number of genomes to generate
+     * @param gtoDir	output directory for the GTO files (created if necessary)
+     * @param fastaFile	output FASTA file
+     *
+     * @throws IOException
+     */
+    public void generate(int count, File gtoDir, File fastaFile) throws IOException {
+        if (! gtoDir.isDirectory() && ! gtoDir.mkdirs())
+            throw new IOException("Could not create genome directory " + gtoDir + ".");
+        try (Writer fastaWriter = new BufferedWriter(new FileWriter(fastaFile))) {
+            for (int i = 1; i <= count; i++)
+                this.generate(i, new File(gtoDir, genomeId(i) + ".gto"), fastaWriter);
+        }
+    }
+
+}
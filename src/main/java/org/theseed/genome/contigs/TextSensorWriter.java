@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * This sensor writer produces tab-delimited text.  The header line contains the label column names followed
+ * by the sensor column headers, and each data line contains the label values followed by the sensor values.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TextSensorWriter extends SensorWriter {
+
+    // FIELDS
+    /** underlying output stream */
+    private final OutputStream stream;
+    /** buffered text writer for the output stream */
+    private final Writer writer;
+    /** in-memory output stream for a forked writer, or NULL for a normal writer */
+    private final ByteArrayOutputStream memory;
+
+    /**
+     * Construct a text sensor writer.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     */
+    public TextSensorWriter(OutputStream stream, ContigSensorFactory factory) {
+        this(stream, factory, null);
+    }
+
+    /**
+     * Construct a text sensor writer, possibly for in-memory output.
+     *
+     * @param stream	target output stream
+     * @param factory	sensor factory for the sensors to be written
+     * @param memory	in-memory output stream (same as the target), or NULL for a normal writer
+     */
+    protected TextSensorWriter(OutputStream stream, ContigSensorFactory factory, ByteArrayOutputStream memory) {
+        super(factory);
+        this.stream = stream;
+        this.writer = new BufferedWriter(new OutputStreamWriter(stream));
+        this.memory = memory;
+    }
+
+    @Override
+    public void writeHeader(String... labels) throws IOException {
+        for (String label : labels)
+            this.writer.append(label).append('\t');
+        this.writer.append(this.getFactory().sensor_headers()).append(System.lineSeparator());
+    }
+
+    @Override
+    public void write(ContigSensor sensor, String... labels) throws IOException {
+        for (String label : labels)
+            this.writer.append(label).append('\t');
+        this.writer.append(sensor.toString()).append(System.lineSeparator());
+    }
+
+    @Override
+    public SensorWriter fork() {
+        ByteArrayOutputStream memory = memoryStream();
+        return this.inherit(new TextSensorWriter(memory, this.getFactory(), memory));
+    }
+
+    @Override
+    public byte[] toBytes() throws IOException {
+        if (this.memory == null)
+            throw new IllegalStateException("Only a forked sensor writer can return its output.");
+        this.writer.flush();
+        return this.memory.toByteArray();
+    }
+
+    @Override
+    public void writeBytes(byte[] bytes) throws IOException {
+        this.writer.flush();
+        this.stream.write(bytes);
+    }
+
+    /**
+     * @return the buffered text writer for the output
+     */
+    protected Writer getWriter() {
+        return this.writer;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.writer.flush();
+        this.stream.flush();
+    }
+
+}
@@ -0,0 +1,298 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * This object runs tasks of uneven size on a work-stealing thread pool.  Genome sizes vary by more than an order
+ * of magnitude, so if each genome is a single task, a run can end with one large genome on one core while the
+ * others sit idle.  The scheduler avoids this in two ways.  First, a batch of tasks is dispatched largest first,
+ * so the big genomes start early instead of late.  Second, a task can divide its contigs into chunk tasks (see
+ * {@link #split}) and run them on the same pool, so the positions of a single large genome are spread over all
+ * the cores.  A task that waits for its chunks helps to run queued tasks in the meantime, so tasks can be nested
+ * without tying up threads.
+ *
+ * Chunk tasks whose output must be written in order are run through a {@link Sequence}, which writes each result
+ * as soon as the results before it are written.  The number of chunk results waiting to be written is bounded by
+ * a set of permits shared by all the sequences of the scheduler, so the output held in memory is bounded no
+ * matter how many genomes are in progress.  A sequence that cannot get a permit writes its oldest result before
+ * dispatching another chunk, and is always allowed one chunk in progress, so it can never block waiting for the
+ * others.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class WorkScheduler implements AutoCloseable {
+
+    // FIELDS
+    /** work-stealing thread pool */
+    private final ForkJoinPool pool;
+    /** permits for chunk results waiting to be written */
+    private final Semaphore permits;
+
+    /** number of chunk-result permits per thread */
+    private static final int PERMITS_PER_THREAD = 4;
+
+    /**
+     * This interface describes an object that consumes the results of a sequence of tasks in order.
+     */
+    public interface Sink<T> {
+
+        /**
+         * Consume the result of the next task.
+         *
+         * @param result	result of the task
+         *
+         * @throws IOException
+         */
+        public void accept(T result) throws IOException;
+
+    }
+
+    /**
+     * This is a task of known size.  Any exception thrown by the work is saved and rethrown when the result is
+     * requested, so the caller sees the original exception as the cause.
+     */
+    public static class Task<T> extends RecursiveTask<T> {
+
+        /** serialization version */
+        private static final long serialVersionUID = 5327118040123764412L;
+        /** work to do */
+        private final Callable<T> work;
+        /** estimated size of the work */
+        private final long size;
+        /** TRUE if the task holds a result permit */
+        private final boolean permitted;
+        /** exception thrown by the work, or NULL if it succeeded */
+        private Exception error;
+
+        /**
+         * Construct a task.
+         *
+         * @param work			work to do
+         * @param size			estimated size of the work
+         * @param permitted		TRUE if the task holds a result permit
+         */
+        protected Task(Callable<T> work, long size, boolean permitted) {
+            this.work = work;
+            this.size = size;
+            this.permitted = permitted;
+            this.error = null;
+        }
+
+        @Override
+        protected T compute() {
+            T retVal = null;
+            try {
+                retVal = this.work.call();
+            } catch (Exception e) {
+                this.error = e;
+            }
+            return retVal;
+        }
+
+        /**
+         * @return the result of the task, waiting for it to finish if necessary
+         *
+         * @throws ExecutionException if the task failed
+         */
+        public T result() throws ExecutionException {
+            T retVal = this.join();
+            if (this.error != null)
+                throw new ExecutionException(this.error);
+            return retVal;
+        }
+
+        /**
+         * @return the estimated size of the work
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+    }
+
+    /**
+     * This object runs a sequence of tasks and passes their results to a sink in the order the tasks were
+     * submitted.  It is meant to be used by a single thread, normally the task that owns the output.
+     */
+    public class Sequence<T> implements AutoCloseable {
+
+        /** tasks whose results have not been written */
+        private final Deque<Task<T>> pending;
+        /** consumer for the results */
+        private final Sink<T> sink;
+
+        /**
+         * Construct a task sequence.
+         *
+         * @param sink	consumer for the task results
+         */
+        protected Sequence(Sink<T> sink) {
+            this.pending = new ArrayDeque<Task<T>>();
+            this.sink = sink;
+        }
+
+        /**
+         * Submit the next task in the sequence.  If too many results are waiting to be written, the oldest
+         * results are written first.
+         *
+         * @param work	work to do
+         * @param size	estimated size of the work
+         *
+         * @throws IOException
+         */
+        public void submit(Callable<T> work, long size) throws IOException {
+            boolean permitted = WorkScheduler.this.permits.tryAcquire();
+            while (! permitted && ! this.pending.isEmpty()) {
+                this.writeNext();
+                permitted = WorkScheduler.this.permits.tryAcquire();
+            }
+            Task<T> task = new Task<T>(work, size, permitted);
+            this.pending.add(task);
+            WorkScheduler.this.pool.execute(task);
+        }
+
+        /**
+         * Wait for the oldest task and write its result.  If the task failed, its exception is rethrown.
+         *
+         * @throws IOException
+         */
+        private void writeNext() throws IOException {
+            Task<T> task = this.pending.remove();
+            try {
+                T result;
+                try {
+                    result = task.result();
+                } catch (ExecutionException e) {
+                    throw failure(e.getCause());
+                }
+                this.sink.accept(result);
+            } finally {
+                if (task.permitted)
+                    WorkScheduler.this.permits.release();
+            }
+        }
+
+        /**
+         * Wait for all the tasks and write their results.
+         *
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            while (! this.pending.isEmpty())
+                this.writeNext();
+        }
+
+        /**
+         * Abandon any tasks whose results have not been written.  This only does anything if the sequence
+         * failed before it finished.
+         */
+        @Override
+        public void close() {
+            for (Task<T> task : this.pending) {
+                task.cancel(false);
+                if (task.permitted)
+                    WorkScheduler.this.permits.release();
+            }
+            this.pending.clear();
+        }
+
+    }
+
+    /**
+     * Construct a work scheduler.
+     *
+     * @param threads	number of worker threads
+     */
+    public WorkScheduler(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Thread count must be at least 1.");
+        this.pool = new ForkJoinPool(threads);
+        this.permits = new Semaphore(threads * PERMITS_PER_THREAD);
+    }
+
+    /**
+     * Run a batch of tasks, largest first.  This can be called from inside another task.
+     *
+     * @param work		list of work items
+     * @param sizes		estimated size of each work item
+     *
+     * @return the tasks, in the same order as the work items
+     */
+    public <T> List<Task<T>> submitAll(List<? extends Callable<T>> work, long[] sizes) {
+        List<Task<T>> retVal = new ArrayList<Task<T>>(work.size());
+        for (int i = 0; i < work.size(); i++)
+            retVal.add(new Task<T>(work.get(i), sizes[i], false));
+        List<Task<T>> order = new ArrayList<Task<T>>(retVal);
+        // The sort is stable, so tasks of the same size stay in their original order.
+        Collections.sort(order, Comparator.comparingLong((Task<T> t) -> t.getSize()).reversed());
+        for (Task<T> task : order)
+            this.pool.execute(task);
+        return retVal;
+    }
+
+    /**
+     * @return a new task sequence
+     *
+     * @param sink	consumer for the task results, called in the order the tasks are submitted
+     */
+    public <T> Sequence<T> sequence(Sink<T> sink) {
+        return new Sequence<T>(sink);
+    }
+
+    /**
+     * @return an IO exception describing a task failure; an unchecked exception is rethrown as it is
+     *
+     * @param cause		exception thrown by the task
+     */
+    private static IOException failure(Throwable cause) {
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        return (cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause));
+    }
+
+    /**
+     * @return the chunks of a range of positions in a contig; the chunk boundaries are at fixed multiples of the
+     * 		   chunk size from the start of the contig, so the chunks of a full contig are the ones used by the
+     * 		   training command
+     *
+     * @param start			first position (1-based) of the range
+     * @param end			last position of the range
+     * @param chunkSize		number of positions per chunk
+     */
+    public static List<RegionIndex.Interval> split(int start, int end, int chunkSize) {
+        List<RegionIndex.Interval> retVal = new ArrayList<RegionIndex.Interval>();
+        int pos = start;
+        while (pos <= end) {
+            // Compute the last position of the chunk containing this position.
+            long limit = ((long) (pos - 1) / chunkSize + 1) * chunkSize;
+            int chunkEnd = (int) Math.min(limit, end);
+            retVal.add(new RegionIndex.Interval(pos, chunkEnd));
+            pos = chunkEnd + 1;
+        }
+        return retVal;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    @Override
+    public void close() {
+        this.pool.shutdownNow();
+    }
+
+}
@@ -0,0 +1,63 @@
+/**
+ *
+ */
+package org.theseed.genome.contigs;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This is a nucleotide encoder that uses the Vector API to convert a whole vector of characters at once.  Each
+ * character is folded to lower case by setting the 0x20 bit (only "A" and "a" fold to "a", and so on), compared
+ * against the four nucleotides, and blended into a vector of codes, which is widened to integers and stored.
+ * The characters left over at the end of a block are converted by the scalar code.
+ *
+ * This class requires JDK 17 or later, and is only compiled when the build selects the "vector" profile with
+ * "-Pvector".  The JVM must be started with "--add-modules jdk.incubator.vector" for it to be used (see
+ * {@link NucleotideEncoder#get()}).
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class VectorNucleotideEncoder extends NucleotideEncoder {
+
+    /** species for the integer codes */
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    /** species for the characters, with the same number of lanes as the integers */
+    private static final VectorSpecies<Short> SHORTS = VectorSpecies.of(short.class,
+            VectorShape.forBitSize(INTS.length() * Short.SIZE));
+
+    @Override
+    public int encode(char[] chars, int n, int[] codes) {
+        int retVal = 0;
+        int lanes = SHORTS.length();
+        int limit = SHORTS.loopBound(n);
+        int i = 0;
+        for (; i < limit; i += lanes) {
+            ShortVector folded = ShortVector.fromCharArray(SHORTS, chars, i).or((short) 0x20);
+            ShortVector code = ShortVector.broadcast(SHORTS, (short) AMBIGUOUS);
+            code = code.blend((short) 0, folded.eq((short) 'a'));
+            code = code.blend((short) 1, folded.eq((short) 'c'));
+            code = code.blend((short) 2, folded.eq((short) 'g'));
+            code = code.blend((short) 3, folded.eq((short) 't'));
+            VectorMask<Short> ambiguous = code.eq((short) AMBIGUOUS);
+            retVal += ambiguous.trueCount();
+            ((IntVector) code.castShape(INTS, 0)).intoArray(codes, i);
+        }
+        for (; i < n; i++) {
+            int code = code(chars[i]);
+            codes[i] = code;
+            if (code == AMBIGUOUS) retVal++;
+        }
+        return retVal;
+    }
+
+    @Override
+    public boolean isVector() {
+        return true;
+    }
+
+}
@@ -0,0 +1,212 @@
+package org.theseed.genome.contigs;
+
+import junit.framework.Test;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import org.theseed.locations.DiscreteLocationList;
+import org.theseed.locations.Location;
+
+/**
+ * Allocation-budget tests for the per-position loops.  Each test measures the bytes allocated by the current
+ * thread per call, after a warm-up, and fails if the result exceeds the budget for that operation.  If the JVM
+ * cannot count thread allocations, the tests pass without measuring.
+ *
+ * Object sizes differ from one JVM to another (header size, compressed references), so the budgets are not
+ * fixed byte counts.  Instead, each operation is compared with a baseline measured the same way in the same run.
+ * For a sensor row, the baseline is the allocation of an empty sensor and a value array of the same width, which
+ * every row needs.  For a location classification, the baseline is the cost of the location-list calls that
+ * the classification schemes make, which belong to the locations library rather than to this project.  The
+ * codon filter should not allocate at all, so its baseline is 0.  An operation may exceed its baseline by
+ * {@link #NEAR_ZERO} bytes per call, which is less than the smallest object, so a loop that builds even one
+ * object per position fails, but the occasional string built for a codon with an ambiguity character does not.
+ */
+public class AllocationBudgetTest
+    extends TestCase
+{
+    /** number of calls per measurement round */
+    private static final int ROUND_SIZE = 20000;
+    /** number of warm-up rounds */
+    private static final int WARM_UP = 10;
+    /** number of measurement rounds (the smallest result is used) */
+    private static final int ROUNDS = 3;
+    /** bytes per call by which an operation may exceed its baseline */
+    private static final double NEAR_ZERO = 4.0;
+
+    /** target for objects that must not be optimized away */
+    private static Object sink;
+
+    /** saved left sensor width */
+    private int oldLeft;
+    /** saved right sensor width */
+    private int oldRight;
+
+    /** thread allocation counter, or NULL if it is not supported */
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    /** test sequence */
+    private static final String SEQUENCE = randomSequence(10000);
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public AllocationBudgetTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( AllocationBudgetTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.oldLeft = ContigSensorFactory.getLeftWidth();
+        this.oldRight = ContigSensorFactory.getRightWidth();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ContigSensorFactory.setLeftWidth(this.oldLeft);
+        ContigSensorFactory.setRightWidth(this.oldRight);
+        super.tearDown();
+    }
+
+    /**
+     * @return the thread bean if it can count allocations, else NULL
+     */
+    private static com.sun.management.ThreadMXBean threadBean() {
+        com.sun.management.ThreadMXBean retVal = null;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            retVal = (com.sun.management.ThreadMXBean) bean;
+            if (! retVal.isThreadAllocatedMemorySupported())
+                retVal = null;
+            else if (! retVal.isThreadAllocatedMemoryEnabled())
+                retVal.setThreadAllocatedMemoryEnabled(true);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return a random DNA sequence with an occasional ambiguity character
+     *
+     * @param len	length of the sequence
+     */
+    private static String randomSequence(int len) {
+        Random rand = new Random(42);
+        char[] buffer = new char[len];
+        for (int i = 0; i < len; i++)
+            buffer[i] = (rand.nextInt(500) == 0 ? 'n' : "acgt".charAt(rand.nextInt(4)));
+        return new String(buffer);
+    }
+
+    /**
+     * @return the bytes allocated per call of an operation, or 0 if allocations cannot be counted
+     *
+     * @param op	operation to measure; it receives the 1-based position and returns a result that
+     * 				is accumulated so the call cannot be optimized away
+     */
+    private static double bytesPerCall(IntPredicate op) {
+        double retVal = 0;
+        if (THREADS != null) {
+            long threadId = Thread.currentThread().getId();
+            int len = SEQUENCE.length();
+            int hits = 0;
+            retVal = Double.MAX_VALUE;
+            for (int round = 0; round < WARM_UP + ROUNDS; round++) {
+                long before = THREADS.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < ROUND_SIZE; i++) {
+                    if (op.test(i % len + 1)) hits++;
+                }
+                long used = THREADS.getThreadAllocatedBytes(threadId) - before;
+                if (round >= WARM_UP)
+                    retVal = Math.min(retVal, (double) used / ROUND_SIZE);
+            }
+            // This keeps the result live.
+            assertThat(hits, greaterThanOrEqualTo(0));
+        }
+        return retVal;
+    }
+
+    /**
+     * test the sensor factories
+     */
+    public void testSensorAllocation() {
+        ContigSensorFactory.setLeftWidth(12);
+        ContigSensorFactory.setRightWidth(14);
+        for (ContigSensorFactory.Type type : ContigSensorFactory.Type.values()) {
+            ContigSensorFactory factory = ContigSensorFactory.create(type);
+            int width = factory.create("c1", 5000, SEQUENCE).getSensors().length;
+            double baseline = bytesPerCall(pos -> {
+                ContigSensor sensor = new ContigSensor("c1", pos, "ATG");
+                sensor.storeSensors(new String[width]);
+                sink = sensor;
+                return sensor.isSuspicious();
+            });
+            double used = bytesPerCall(pos -> {
+                ContigSensor sensor = factory.create("c1", pos, SEQUENCE);
+                sink = sensor;
+                return sensor.isSuspicious();
+            });
+            assertThat(type + " sensor allocation", used, lessThanOrEqualTo(baseline + NEAR_ZERO));
+        }
+    }
+
+    /**
+     * test the codon filter
+     */
+    public void testFilterAllocation() {
+        CodonFilter filter = new CodonFilter("ATG", "GTG", "TTG", "TAA", "TAG", "TGA");
+        double used = bytesPerCall(pos -> filter.matches(pos, SEQUENCE));
+        assertThat("Codon filter allocation", used, lessThanOrEqualTo(NEAR_ZERO));
+    }
+
+    /**
+     * test the location classification schemes
+     */
+    public void testClassAllocation() {
+        DiscreteLocationList locs = new DiscreteLocationList("c1");
+        locs.addLocation(Location.create("c1", "+", 100, 999));
+        locs.addLocation(Location.create("c1", "-", 2000, 2899));
+        locs.addLocation(Location.create("c1", "+", 4000, 4299, 4301, 5001));
+        locs.addLocation(Location.create("c1", "-", 7000, 9998));
+        DiscreteLocationList minusLocs = new DiscreteLocationList("c1");
+        minusLocs.addLocation(Location.create("c1", "-", 2000, 2899));
+        minusLocs.addLocation(Location.create("c1", "-", 7000, 9998));
+        // Every location-list call any scheme makes for a position, so the baseline covers the most expensive one.
+        double baseline = bytesPerCall(pos -> {
+            sink = locs.computeRegionFrame(pos, pos).toString();
+            sink = locs.isEdge(pos, false).toString();
+            sink = locs.isEdge(pos, true).toString();
+            sink = minusLocs.isEdge(pos, true).toString();
+            return sink != null;
+        });
+        for (LocationClass.Type type : LocationClass.Type.values()) {
+            for (boolean negative : new boolean[] { false, true }) {
+                LocationClass lsensor = LocationClass.scheme(type, negative);
+                lsensor.setLocs(locs, minusLocs);
+                double used = bytesPerCall(pos -> (sink = lsensor.classOf(pos)) != null);
+                assertThat(type + " classification allocation", used, lessThanOrEqualTo(baseline + NEAR_ZERO));
+                used = bytesPerCall(pos -> (sink = lsensor.classOf(pos, true)) != null);
+                assertThat(type + " minus classification allocation", used, lessThanOrEqualTo(baseline + NEAR_ZERO));
+            }
+        }
+    }
+
+}
@@ -8,13 +8,36 @@ import junit.framework.TestSuite;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
+import org.theseed.counters.CountMap;
 import org.theseed.genome.Contig;
+import org.theseed.io.BalancedOutputStream;
 import org.theseed.locations.Frame;
 import org.theseed.locations.Location;
 import org.theseed.locations.DiscreteLocationList;
 import org.theseed.sequence.Sequence;
+import org.theseed.utils.ICommand;
 
 
 
@@ -235,6 +258,81 @@ public class AppTest
         assertThat(lsensor.classOf(8000), equalTo("other"));
         assertThat(lsensor.classOf(8597), equalTo("stop"));
         assertThat(lsensor.classOf(9502), equalTo("stop"));
+        // Test the single-strand classifications.  The minus-strand edges need a list of the minus-strand proteins.
+        DiscreteLocationList minusList = new DiscreteLocationList("myContig");
+        for (Location loc : locs) {
+            if (loc.getDir() == '-') minusList.addLocation(loc);
+        }
+        lsensor = LocationClass.scheme(LocationClass.Type.EDGE, true);
+        lsensor.setLocs(newList, minusList);
+        assertThat(lsensor.classOf(9999, false), equalTo("other"));
+        assertThat(lsensor.classOf(9999, true), equalTo("start"));
+        assertThat(lsensor.classOf(8000, false), equalTo("start"));
+        assertThat(lsensor.classOf(8000, true), equalTo("other"));
+        assertThat(lsensor.classOf(9502, true), equalTo("stop"));
+        assertThat(lsensor.classOf(8597, true), equalTo("other"));
+        lsensor = LocationClass.scheme(LocationClass.Type.EDGE, false);
+        lsensor.setLocs(newList);
+        assertThat(lsensor.classOf(9999, true), equalTo("other"));
+        assertThat(lsensor.classOf(8000, false), equalTo("start"));
+        lsensor = LocationClass.scheme(LocationClass.Type.CODING, true);
+        lsensor.setLocs(newList);
+        assertThat(lsensor.classOf(9999, true), equalTo("coding"));
+        assertThat(lsensor.classOf(9999, false), equalTo("space"));
+        assertThat(lsensor.classOf(4102, true), equalTo("space"));
+        assertThat(lsensor.classOf(4102, false), equalTo("coding"));
+        assertNull(lsensor.classOf(150, true));
+        lsensor = LocationClass.scheme(LocationClass.Type.PHASE, true);
+        lsensor.setLocs(newList);
+        assertThat(lsensor.classOf(6050, true), equalTo("-3"));
+        assertThat(lsensor.classOf(6050, false), equalTo("0"));
+        assertThat(lsensor.classOf(4102, false), equalTo("+1"));
+        assertThat(lsensor.classOf(4102, true), equalTo("0"));
+    }
+
+    /**
+     * test edges of the same type on both strands
+     */
+    public void testStrandEdges() {
+        // Both proteins start at 100, and both stop codons start at 497.
+        Location[] locs = { Location.create("c1", "+", 100, 399), Location.create("c1", "-", 10, 100),
+                            Location.create("c1", "+", 200, 499), Location.create("c1", "-", 495, 700) };
+        DiscreteLocationList allList = new DiscreteLocationList("c1");
+        DiscreteLocationList minusList = new DiscreteLocationList("c1");
+        for (Location loc : locs) {
+            allList.addLocation(loc);
+            if (loc.getDir() == '-') minusList.addLocation(loc);
+        }
+        LocationClass lsensor = LocationClass.scheme(LocationClass.Type.EDGE, true);
+        lsensor.setLocs(allList, minusList);
+        assertThat(lsensor.classOf(100, false), equalTo("start"));
+        assertThat(lsensor.classOf(100, true), equalTo("start"));
+        assertThat(lsensor.classOf(497, false), equalTo("stop"));
+        assertThat(lsensor.classOf(497, true), equalTo("stop"));
+        assertThat(lsensor.classOf(700, false), equalTo("other"));
+        assertThat(lsensor.classOf(700, true), equalTo("start"));
+        assertThat(lsensor.classOf(200, true), equalTo("other"));
+        lsensor = LocationClass.scheme(LocationClass.Type.START, true);
+        lsensor.setLocs(allList, minusList);
+        assertThat(lsensor.classOf(100, true), equalTo("start"));
+        assertThat(lsensor.classOf(497, true), equalTo("other"));
+        lsensor = LocationClass.scheme(LocationClass.Type.STOP, true);
+        lsensor.setLocs(allList, minusList);
+        assertThat(lsensor.classOf(497, true), equalTo("stop"));
+        assertThat(lsensor.classOf(100, true), equalTo("other"));
+        // Without minus-strand coding regions, there are no minus-strand edges.
+        lsensor = LocationClass.scheme(LocationClass.Type.EDGE, false);
+        lsensor.setLocs(allList);
+        assertThat(lsensor.classOf(100, false), equalTo("start"));
+        assertThat(lsensor.classOf(100, true), equalTo("other"));
+        assertThat(lsensor.classOf(700, true), equalTo("other"));
+        // The minus-strand list is required for minus-strand edges.
+        lsensor = LocationClass.scheme(LocationClass.Type.EDGE, true);
+        lsensor.setLocs(allList);
+        try {
+            lsensor.classOf(100, true);
+            fail("Minus-strand edge computed without a minus-strand list.");
+        } catch (IllegalStateException e) { }
     }
 
     /**
@@ -252,4 +350,1288 @@ public class AppTest
         assertFalse(filter.matches(7, sequence));
         assertTrue(filter.matches(12, sequence));
     }
+
+    /**
+     * test progress reporting from multiple threads
+     *
+     * @throws InterruptedException
+     */
+    public void testProgress() throws InterruptedException {
+        ProgressReporter progress = new ProgressReporter(0);
+        progress.setTotals(8, 0);
+        Thread[] workers = new Thread[4];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++)
+                    progress.addContig(100);
+                progress.addGenome();
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        assertThat(progress.getGenomes(), equalTo(4L));
+        assertThat(progress.getContigs(), equalTo(4000L));
+        assertThat(progress.getBases(), equalTo(400000L));
+        assertThat(progress.fractionDone(), equalTo(0.5));
+        progress.setTotals(8, 800000);
+        assertThat(progress.fractionDone(), equalTo(0.5));
+        assertThat(ProgressReporter.formatTime(3725), equalTo("1:02:05"));
+        progress.close();
+    }
+
+    /**
+     * test the memory-mapped FASTA reader
+     *
+     * @throws IOException
+     */
+    public void testMappedFasta() throws IOException {
+        File fastaFile = File.createTempFile("mapped", ".fa");
+        fastaFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(fastaFile)) {
+            writer.print(">seq1 first sequence\nACGTA\nCGTAC\nGT\n");
+            writer.print(">seq2\r\nAAAC\r\nCCGG\r\n\r\n");
+            writer.print(">seq3 irregular\nACG\nTTTTT\nGG\n");
+            writer.print(">seq4\n>seq5 no terminator\nACGTN");
+        }
+        List<String> expected = Arrays.asList("ACGTACGTACGT", "AAACCCGG", "ACGTTTTTGG", "", "ACGTN");
+        try (MappedFastaReader reader = new MappedFastaReader(fastaFile)) {
+            assertThat(reader.size(), equalTo(5));
+            List<MappedSequence> records = reader.getRecords();
+            for (int i = 0; i < records.size(); i++) {
+                MappedSequence record = records.get(i);
+                assertThat(record.getLabel(), equalTo("seq" + (i + 1)));
+                assertThat(record.toString(), equalTo(expected.get(i)));
+                assertThat(record.length(), equalTo(expected.get(i).length()));
+            }
+            MappedSequence seq1 = records.get(0);
+            assertThat(seq1.getComment(), equalTo("first sequence"));
+            assertThat(seq1.getLineBases(), equalTo(5));
+            assertThat(seq1.getLineWidth(), equalTo(6));
+            assertFalse(seq1.isPacked());
+            assertThat(seq1.charAt(10), equalTo('G'));
+            assertThat(seq1.subSequence(4, 7).toString(), equalTo("ACG"));
+            assertThat(CodonFilter.getCodon(11, seq1), equalTo("GT"));
+            assertThat(records.get(1).getLineWidth(), equalTo(6));
+            assertTrue(records.get(2).isPacked());
+        }
+    }
+
+    /**
+     * test FASTA indexes
+     *
+     * @throws IOException
+     */
+    public void testFastaIndex() throws IOException {
+        File fastaFile = File.createTempFile("indexed", ".fa");
+        fastaFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(fastaFile)) {
+            writer.print(">seq1 first sequence\nACGTA\nCGTAC\nGT\n");
+            writer.print(">seq2\nAAACCC\nGG\n");
+            writer.print(">seq3\nTTTTGGGG\n");
+        }
+        File faiFile = FastaIndex.indexFile(fastaFile);
+        faiFile.deleteOnExit();
+        assertFalse(FastaIndex.isCurrent(fastaFile));
+        try (MappedFastaReader reader = new MappedFastaReader(fastaFile)) {
+            assertTrue(reader.isRegular());
+            FastaIndex.build(reader).save(faiFile);
+        }
+        assertTrue(FastaIndex.isCurrent(fastaFile));
+        FastaIndex index = FastaIndex.load(faiFile);
+        assertThat(index.size(), equalTo(3));
+        FastaIndex.Entry entry = index.getEntries().get(1);
+        assertThat(entry.getName(), equalTo("seq2"));
+        assertThat(entry.getLength(), equalTo(8));
+        assertThat(entry.getOffset(), equalTo(42L));
+        assertThat(entry.getLineBases(), equalTo(6));
+        assertThat(entry.getLineWidth(), equalTo(7));
+        List<FastaIndex.Entry> selected = index.select(Arrays.asList("seq3", "seq1"));
+        try (MappedFastaReader reader = new MappedFastaReader(fastaFile, selected)) {
+            assertThat(reader.size(), equalTo(2));
+            assertThat(reader.getRecords().get(0).toString(), equalTo("ACGTACGTACGT"));
+            assertThat(reader.getRecords().get(1).getLabel(), equalTo("seq3"));
+            assertThat(reader.getRecords().get(1).toString(), equalTo("TTTTGGGG"));
+        }
+    }
+
+    /**
+     * test region indexes
+     *
+     * @throws IOException
+     */
+    public void testRegions() throws IOException {
+        File bedFile = File.createTempFile("regions", ".bed");
+        bedFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(bedFile)) {
+            writer.println("# comment line");
+            writer.println("c1\t100\t200\tname1");
+            writer.println("c1\t10\t20");
+            writer.println("c1\t150\t300");
+            writer.println("c1\t300\t310");
+            writer.println("c2\t0\t50");
+        }
+        RegionIndex regions = RegionIndex.load(bedFile);
+        assertThat(regions.getContigIds().size(), equalTo(2));
+        List<RegionIndex.Interval> intervals = regions.getIntervals("c1", 1000);
+        assertThat(intervals.size(), equalTo(2));
+        assertThat(intervals.get(0).getStart(), equalTo(11));
+        assertThat(intervals.get(0).getEnd(), equalTo(20));
+        assertThat(intervals.get(1).getStart(), equalTo(101));
+        assertThat(intervals.get(1).getEnd(), equalTo(310));
+        intervals = regions.getIntervals("c1", 200);
+        assertThat(intervals.get(1).getEnd(), equalTo(200));
+        assertThat(regions.getIntervals("c1", 5).size(), equalTo(0));
+        assertThat(regions.getIntervals("c3", 1000).size(), equalTo(0));
+        assertTrue(regions.contains("c1", 11));
+        assertTrue(regions.contains("c1", 250));
+        assertFalse(regions.contains("c1", 10));
+        assertFalse(regions.contains("c1", 21));
+        assertFalse(regions.contains("c1", 311));
+        assertTrue(regions.contains("c2", 1));
+        assertFalse(regions.contains("c3", 1));
+        assertThat(regions.totalLength(), equalTo(270L));
+    }
+
+    /**
+     * test minus-strand sensors
+     */
+    public void testMinusStrand() {
+        String sequence = "CCCATGAAATTTTAGCATTRCGc";
+        ReverseComplement minus = new ReverseComplement(sequence);
+        assertThat(minus.toString(), equalTo("gCGYAATGCTAAAATTTCATGGG"));
+        assertThat(minus.length(), equalTo(sequence.length()));
+        assertThat(minus.flip(1), equalTo(23));
+        assertThat(minus.flip(23), equalTo(1));
+        assertThat(ReverseComplement.complement('n'), equalTo('n'));
+        ContigSensorFactory.setLeftWidth(3);
+        ContigSensorFactory.setRightWidth(5);
+        ContigSensorFactory myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.CHANNEL);
+        ContigSensor sensor = myFactory.create("c1", 5, minus, '-');
+        assertThat(sensor.getPosition(), equalTo(5));
+        assertThat(sensor.getStrand(), equalTo('-'));
+        assertThat(sensor.getMeta(), equalTo("c1;5;-"));
+        assertThat(sensor.getCodon(), equalTo("ATG"));
+        assertThat(sensor.getSensorList(), contains("T", "T", "C", "A", "T", "G", "G", "G", "-"));
+        sensor = myFactory.create("c1", 4, sequence, '+');
+        assertThat(sensor.getMeta(), equalTo("c1;4;+"));
+        assertThat(sensor.getCodon(), equalTo("ATG"));
+        sensor = myFactory.create("c1", 4, sequence);
+        assertThat(sensor.getMeta(), equalTo("c1;4"));
+        assertThat(sensor.getStrand(), equalTo((char) 0));
+        CodonFilter filter = new CodonFilter("ATG");
+        assertTrue(filter.matches(minus.flip(5), minus));
+        assertFalse(filter.matches(minus.flip(4), minus));
+    }
+
+    /**
+     * test genetic codes
+     */
+    public void testGeneticCodes() {
+        GeneticCode gc11 = GeneticCode.get(11);
+        assertThat(gc11.getCode(), equalTo(11));
+        assertThat(GeneticCode.codonCode("AAA", 0), equalTo(0));
+        assertThat(GeneticCode.codonCode("ttt", 0), equalTo(63));
+        assertThat(GeneticCode.codonCode("GAUG", 1), equalTo(GeneticCode.codonCode("ATG", 0)));
+        assertThat(GeneticCode.codonCode("ANG", 0), equalTo(-1));
+        assertThat(gc11.translate(GeneticCode.codonCode("ATG", 0)), equalTo('M'));
+        assertThat(gc11.translate(GeneticCode.codonCode("TGA", 0)), equalTo('*'));
+        assertThat(gc11.translate(GeneticCode.codonCode("TTT", 0)), equalTo('F'));
+        assertThat(gc11.translate(GeneticCode.codonCode("GGG", 0)), equalTo('G'));
+        assertThat(gc11.translateString(GeneticCode.codonCode("CAT", 0)), equalTo("H"));
+        assertThat(GeneticCode.get(4).translate(GeneticCode.codonCode("TGA", 0)), equalTo('W'));
+        assertThat(GeneticCode.get(25).translate(GeneticCode.codonCode("TGA", 0)), equalTo('G'));
+        assertThat(GeneticCode.get(4), sameInstance(GeneticCode.get(4)));
+        try {
+            GeneticCode.get(7);
+            fail("Invalid genetic code accepted.");
+        } catch (IllegalArgumentException e) {
+            // Correct.
+        }
+        ContigSensorFactory.setLeftWidth(3);
+        ContigSensorFactory.setRightWidth(5);
+        ContigSensorFactory myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.AMINOACID);
+        AminoAcidContigSensorFactory.setGeneticCode(4);
+        ContigSensor sensor = myFactory.create("c1", 4, "AAATGAGGG");
+        assertThat(sensor.getSensorList(), contains("K", "W", "G"));
+        AminoAcidContigSensorFactory.setGeneticCode(11);
+        sensor = myFactory.create("c1", 4, "AAATGAGGG");
+        assertThat(sensor.getSensorList(), contains("K", "*", "G"));
+        // The amino-acid sensors only accept DNA, so a U makes its codon ambiguous.
+        sensor = myFactory.create("c1", 4, "AAAUGAGGG");
+        assertThat(sensor.getSensorList(), contains("K", "X", "G"));
+        assertTrue(sensor.isSuspicious());
+        assertTrue(myFactory.isSuspicious("AAAUGAGGG", 4));
+        assertFalse(myFactory.isSuspicious("AAATGAGGG", 4));
+        // The codon sensors still read U as T.
+        ContigSensorFactory codonFactory = ContigSensorFactory.create(ContigSensorFactory.Type.CODON);
+        assertThat(codonFactory.create("c1", 4, "AAAUGAGGG").getSensorList(), contains("aaa", "tga", "ggg"));
+    }
+
+    /**
+     * test the codon tracks
+     *
+     * @throws InterruptedException
+     */
+    public void testSequenceTrack() throws InterruptedException {
+        StringBuilder buffer = new StringBuilder(10000);
+        String letters = "acgtACGTUn";
+        for (int i = 0; i < 10000; i++)
+            buffer.append(letters.charAt((i * 7 + i / 13) % letters.length()));
+        String seq = buffer.toString();
+        SequenceTrack track = new SequenceTrack(seq, GeneticCode.CODON_TRACK);
+        for (int i = 0; i < seq.length(); i++) {
+            int code5 = track.get(i);
+            if (i + 3 > seq.length()) {
+                assertThat(code5, equalTo(-1));
+            } else {
+                assertThat("Codon at " + i, GeneticCode.toCodon(code5), equalTo(GeneticCode.codonCode(seq, i)));
+            }
+        }
+        // Verify the amino acid factory against direct translation on the minus strand.
+        ContigSensorFactory.setLeftWidth(12);
+        ContigSensorFactory.setRightWidth(12);
+        AminoAcidContigSensorFactory.setGeneticCode(11);
+        GeneticCode gc = GeneticCode.get(11);
+        ContigSensorFactory myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.AMINOACID);
+        ReverseComplement minus = new ReverseComplement(seq);
+        for (int pos = 4096; pos < 4200; pos++) {
+            ContigSensor sensor = myFactory.create("c1", pos, minus, '-');
+            List<String> aaList = sensor.getSensorList();
+            int offset = minus.flip(pos) - 13;
+            for (int i = 0; i < aaList.size(); i++) {
+                int codon = GeneticCode.codonCode(minus, offset + i * 3);
+                String expected = (codon < 0 ? "X" : gc.translateString(codon));
+                assertThat("Minus position " + pos, aaList.get(i), equalTo(expected));
+            }
+        }
+        myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.CODON);
+        ContigSensor sensor = myFactory.create("c1", 2, seq);
+        List<String> codons = sensor.getSensorList();
+        assertThat(codons.get(3), equalTo("--a"));
+        assertThat(codons.get(4), equalTo("tac"));
+        // Releasing the cached tracks must not change the sensors.
+        SequenceTrack cached = myFactory.getTrack(seq);
+        assertThat(myFactory.getTrack(seq), sameInstance(cached));
+        myFactory.releaseCaches();
+        assertThat(myFactory.getTrack(seq), not(sameInstance(cached)));
+        assertThat(myFactory.create("c1", 2, seq).getSensorList(), equalTo(codons));
+        // Only the calling thread's cache is released, unless all the caches are released.
+        cached = myFactory.getTrack(seq);
+        final ContigSensorFactory otherFactory = myFactory;
+        Thread other = new Thread(() -> otherFactory.releaseCaches());
+        other.start();
+        other.join();
+        assertThat(myFactory.getTrack(seq), sameInstance(cached));
+        other = new Thread(() -> otherFactory.releaseAllCaches());
+        other.start();
+        other.join();
+        assertThat(myFactory.getTrack(seq), not(sameInstance(cached)));
+        // A factory without tracks has no track builder.
+        assertNull(ContigSensorFactory.create(ContigSensorFactory.Type.CHANNEL).getTrackBuilder());
+    }
+
+    /**
+     * test the k-mer sensors
+     */
+    public void testKmerSensors() {
+        ContigSensorFactory.setLeftWidth(2);
+        ContigSensorFactory.setRightWidth(3);
+        KmerContigSensorFactory.setKmerParms(3, 64);
+        ContigSensorFactory myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.KMER);
+        assertThat(myFactory.sensor_headers(), equalTo("pos.-2\tpos.-1\tpos.0\tpos.1\tpos.2\tpos.3"));
+        // With a vocabulary of 64, the 3-mer tokens are the exact codon codes.
+        ContigSensor sensor = myFactory.create("c1", 2, "AACGTnACG");
+        assertThat(sensor.getSensorList(), contains("-", "1", "6", "27", "X", "X"));
+        assertTrue(sensor.isSuspicious());
+        sensor = myFactory.create("c1", 7, "AACGTnACG");
+        assertThat(sensor.getSensorList(), contains("X", "X", "6", "-", "-", "-"));
+        // Changing the settings must not reuse the old tokens.
+        KmerContigSensorFactory.setKmerParms(2, 16);
+        sensor = myFactory.create("c1", 2, "AACGTnACG");
+        assertThat(sensor.getSensorList(), contains("-", "0", "1", "6", "11", "X"));
+        // Verify the rolling hash against direct encoding across block boundaries.
+        KmerContigSensorFactory.setKmerParms(12, 1000);
+        StringBuilder buffer = new StringBuilder(10000);
+        for (int i = 0; i < 10000; i++)
+            buffer.append("ACGTTGCAAn".charAt((i * 7 + i / 13) % 10));
+        String seq = buffer.toString();
+        ContigSensorFactory.setLeftWidth(0);
+        ContigSensorFactory.setRightWidth(0);
+        for (int pos = 4000; pos < 4200; pos++) {
+            sensor = myFactory.create("c1", pos, seq);
+            String kmer = seq.substring(pos - 1, pos + 11);
+            String token = sensor.getSensorList().get(0);
+            if (kmer.indexOf('n') >= 0) {
+                assertThat(token, equalTo("X"));
+            } else {
+                int value = Integer.parseInt(token);
+                assertThat(value, greaterThanOrEqualTo(0));
+                assertThat(value, lessThan(1000));
+                int other = seq.indexOf(kmer, pos);
+                if (other >= 0) {
+                    sensor = myFactory.create("c1", other + 1, seq);
+                    assertThat(sensor.getSensorList().get(0), equalTo(token));
+                }
+            }
+        }
+        KmerContigSensorFactory.setKmerParms(6, 4096);
+        try {
+            KmerContigSensorFactory.setKmerParms(32, 4096);
+            fail("Invalid k-mer size accepted.");
+        } catch (IllegalArgumentException e) {
+            // Correct.
+        }
+    }
+
+    /**
+     * test the one-hot sensors and the binary output
+     *
+     * @throws IOException
+     */
+    public void testOneHot() throws IOException {
+        ContigSensorFactory.setLeftWidth(1);
+        ContigSensorFactory.setRightWidth(1);
+        OneHotContigSensorFactory.setAmbiguityChannel(false);
+        ContigSensorFactory myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.ONEHOT);
+        assertThat(myFactory.sensor_headers(), equalTo("pos.-1.A\tpos.-1.C\tpos.-1.G\tpos.-1.T\t" +
+                "pos.0.A\tpos.0.C\tpos.0.G\tpos.0.T\tpos.1.A\tpos.1.C\tpos.1.G\tpos.1.T"));
+        ContigSensor sensor = myFactory.create("c1", 1, "GuA");
+        assertThat(sensor.getSensorList(), contains("0", "0", "0", "0", "0", "0", "1", "0", "0", "0", "0", "1"));
+        assertFalse(sensor.isSuspicious());
+        sensor = myFactory.create("c1", 2, "GnA");
+        assertThat(sensor.getSensorList(), contains("0", "0", "1", "0", "0", "0", "0", "0", "1", "0", "0", "0"));
+        assertTrue(sensor.isSuspicious());
+        OneHotContigSensorFactory.setAmbiguityChannel(true);
+        sensor = myFactory.create("c1", 2, "GnA");
+        assertThat(sensor.getSensorList(), contains("0", "0", "1", "0", "0", "0", "0", "0", "0", "1",
+                "1", "0", "0", "0", "0"));
+        // Write the sensor in binary form with packed bits.
+        OneHotContigSensorFactory.setPacking(OneHotContigSensorFactory.Packing.BITS);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SensorWriter writer = SensorWriter.create(SensorWriter.Format.BINARY, bytes, myFactory)) {
+            writer.writeHeader("location", "codon");
+            SensorWriter fork = writer.fork();
+            fork.write(sensor, sensor.getMeta(), sensor.getCodon());
+            writer.writeBytes(fork.toBytes());
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        assertThat(new String(magic, "US-ASCII"), equalTo("CSNS"));
+        assertThat(in.readInt(), equalTo(BinarySensorWriter.VERSION));
+        assertThat(in.readUTF(), equalTo("bits"));
+        assertThat(in.readInt(), equalTo(2));
+        assertThat(in.readUTF(), equalTo("location"));
+        assertThat(in.readUTF(), equalTo("codon"));
+        assertThat(in.readInt(), equalTo(15));
+        for (int i = 0; i < 15; i++)
+            in.readUTF();
+        assertThat(in.readUTF(), equalTo("c1;2"));
+        in.readUTF();
+        // 001000000110000 packs to 00100000 01100000.
+        assertThat(in.read(), equalTo(0x20));
+        assertThat(in.read(), equalTo(0x60));
+        assertThat(in.read(), equalTo(-1));
+        // Now use one byte per channel.
+        OneHotContigSensorFactory.setPacking(OneHotContigSensorFactory.Packing.UINT8);
+        bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        myFactory.writeBinary(sensor, out);
+        assertThat(bytes.toByteArray(), equalTo(new byte[] { 0, 0, 1, 0, 0, 0, 0, 0, 0, 1, 1, 0, 0, 0, 0 }));
+        OneHotContigSensorFactory.setPacking(OneHotContigSensorFactory.Packing.BITS);
+        OneHotContigSensorFactory.setAmbiguityChannel(false);
+        // Verify that text output is unchanged by forking.
+        bytes = new ByteArrayOutputStream();
+        myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.CHANNEL);
+        sensor = myFactory.create("c1", 2, "GCA");
+        try (SensorWriter writer = SensorWriter.create(SensorWriter.Format.TEXT, bytes, myFactory)) {
+            writer.writeHeader("location", "codon");
+            writer.write(sensor, sensor.getMeta(), sensor.getCodon());
+            SensorWriter fork = writer.fork();
+            fork.write(sensor, "x", "y");
+            writer.writeBytes(fork.toBytes());
+        }
+        String nl = System.lineSeparator();
+        assertThat(bytes.toString(), equalTo("location\tcodon\tpos.-1\tpos.0\tpos.1" + nl +
+                "c1;2\tCA\tG\tC\tA" + nl + "x\ty\tG\tC\tA" + nl));
+    }
+
+    /**
+     * test the sparse output formats
+     *
+     * @throws IOException
+     */
+    public void testSparse() throws IOException {
+        ContigSensorFactory.setLeftWidth(3);
+        ContigSensorFactory.setRightWidth(5);
+        ContigSensorFactory myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.CODON);
+        assertThat(myFactory.getFeatureCount(), equalTo(3 * 64));
+        // The codons are "aac", "gnc", and "---".  Only the first one has a feature.
+        ContigSensor sensor = myFactory.create("c1", 4, "aacgnc");
+        int[] indices = new int[3];
+        float[] values = new float[3];
+        assertThat(myFactory.sparseFeatures(sensor, indices, values), equalTo(1));
+        assertThat(indices[0], equalTo(1));
+        assertThat(values[0], equalTo(1.0f));
+        assertThat(LibsvmSensorWriter.features(myFactory, sensor), equalTo("2:1"));
+        // Direct sensors are numeric.
+        ContigSensorFactory.setLeftWidth(1);
+        ContigSensorFactory.setRightWidth(1);
+        myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.DIRECT);
+        sensor = myFactory.create("c1", 1, "ac");
+        assertThat(LibsvmSensorWriter.features(myFactory, sensor), equalTo("2:-0.3 3:-0.6"));
+        // Test the LIBSVM writer with a class column.
+        myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.CHANNEL);
+        List<String> classes = LocationClass.scheme(LocationClass.Type.CODING, false).getClasses();
+        assertThat(classes, contains("space", "coding"));
+        sensor = myFactory.create("c1", 2, "GcA");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SensorWriter writer = SensorWriter.create(SensorWriter.Format.LIBSVM, bytes, myFactory)) {
+            writer.setClasses(classes);
+            writer.writeHeader("location", "codon", "expect");
+            writer.write(sensor, sensor.getMeta(), sensor.getCodon(), "coding");
+            SensorWriter fork = writer.fork();
+            fork.write(sensor, sensor.getMeta(), sensor.getCodon(), "?");
+            writer.writeBytes(fork.toBytes());
+        }
+        String nl = System.lineSeparator();
+        assertThat(bytes.toString(), equalTo("1 3:1 14:1 25:1 # c1;2 CA" + nl + "-1 3:1 14:1 25:1 # c1;2 CA" + nl));
+        // Test the CSR writer without a class column.
+        bytes = new ByteArrayOutputStream();
+        try (SensorWriter writer = SensorWriter.create(SensorWriter.Format.CSR, bytes, myFactory)) {
+            writer.writeHeader("location", "codon");
+            writer.write(sensor, sensor.getMeta(), sensor.getCodon());
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        assertThat(new String(magic, "US-ASCII"), equalTo("CSNS"));
+        assertThat(in.readInt(), equalTo(BinarySensorWriter.VERSION));
+        assertThat(in.readUTF(), equalTo("csr"));
+        assertThat(in.readInt(), equalTo(2));
+        assertThat(in.readUTF(), equalTo("location"));
+        assertThat(in.readUTF(), equalTo("codon"));
+        assertThat(in.readInt(), equalTo(0));
+        assertThat(in.readInt(), equalTo(36));
+        assertThat(in.readInt(), equalTo(0));
+        assertThat(in.readUTF(), equalTo("c1;2"));
+        assertThat(in.readUTF(), equalTo("CA"));
+        assertThat(in.readInt(), equalTo(3));
+        assertThat(in.readInt(), equalTo(2));
+        assertThat(in.readInt(), equalTo(13));
+        assertThat(in.readInt(), equalTo(24));
+        for (int i = 0; i < 3; i++)
+            assertThat(in.readFloat(), equalTo(1.0f));
+        assertThat(in.read(), equalTo(-1));
+    }
+
+    /**
+     * test the duplicate-row filter
+     */
+    public void testDedup() {
+        DedupFilter dedup = new DedupFilter(1 << 20);
+        assertTrue(dedup.add("start", "a\tc\tg"));
+        assertTrue(dedup.add("stop", "a\tc\tg"));
+        assertTrue(dedup.add("start", "a\tc\tt"));
+        assertFalse(dedup.add("start", "a\tc\tg"));
+        assertFalse(dedup.add("stop", "a\tc\tg"));
+        assertThat(dedup.getDuplicates(), equalTo(2L));
+        assertThat(dedup.size(), equalTo(3));
+        assertThat(DedupFilter.hash("ab", "c"), not(equalTo(DedupFilter.hash("a", "bc"))));
+        // Fill a tiny filter.  No new row may ever be rejected.
+        dedup = new DedupFilter(1024);
+        for (int i = 0; i < 1000; i++)
+            assertTrue("Row " + i, dedup.add("other", Integer.toString(i)));
+        assertThat(dedup.getDuplicates(), equalTo(0L));
+        assertThat(dedup.getUnchecked(), greaterThan(0L));
+        int found = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (! dedup.add("other", Integer.toString(i)))
+                found++;
+        }
+        assertThat(found, equalTo(dedup.size()));
+    }
+
+    /**
+     * test the class quota parser
+     */
+    public void testQuotas() {
+        List<String> classes = Arrays.asList("other", "start");
+        Map<String, Integer> quotas = ContigProcessor.parseQuotas("start:20, other:40", classes);
+        assertThat(quotas.get("start"), equalTo(20));
+        assertThat(quotas.get("other"), equalTo(40));
+        quotas = ContigProcessor.parseQuotas("15", classes);
+        assertThat(quotas.size(), equalTo(2));
+        assertThat(quotas.get("start"), equalTo(15));
+        for (String bad : new String[] { "stop:20", "start:x", "start:0", "start:" }) {
+            try {
+                ContigProcessor.parseQuotas(bad, classes);
+                fail("Invalid quota " + bad + " accepted.");
+            } catch (IllegalArgumentException e) {
+                // Correct.
+            }
+        }
+    }
+
+    /**
+     * test the batch input helpers for the test command
+     *
+     * @throws IOException
+     */
+    public void testBatchInputs() throws IOException {
+        File gtoDir = Files.createTempDirectory("batch").toFile();
+        gtoDir.deleteOnExit();
+        File other = File.createTempFile("single", ".gto");
+        other.deleteOnExit();
+        for (String name : new String[] { "b.gto", "a.gto", "notes.txt" }) {
+            File file = new File(gtoDir, name);
+            assertTrue(file.createNewFile());
+            file.deleteOnExit();
+        }
+        List<File> inputs = GenomeProcessor.expandInputs(Arrays.asList(gtoDir, other));
+        assertThat(inputs.size(), equalTo(3));
+        assertThat(inputs.get(0).getName(), equalTo("a.gto"));
+        assertThat(inputs.get(1).getName(), equalTo("b.gto"));
+        assertThat(inputs.get(2), equalTo(other));
+        try {
+            GenomeProcessor.expandInputs(Arrays.asList(new File(gtoDir, "missing.gto")));
+            fail("Missing input accepted.");
+        } catch (IOException e) {
+            // Correct.
+        }
+        // Two inputs with the same name would overwrite each other's output.
+        File dupDir = Files.createTempDirectory("dup").toFile();
+        dupDir.deleteOnExit();
+        File dup = new File(dupDir, "a.gto");
+        assertTrue(dup.createNewFile());
+        dup.deleteOnExit();
+        try {
+            new GenomeProcessor().parseCommand(new String[] { "-o", dupDir.getPath(), gtoDir.getPath(), dup.getPath() });
+            fail("Duplicate input names accepted.");
+        } catch (IllegalArgumentException e) {
+            // Correct.
+        }
+        // An input named "summary" would overwrite the summary file, unless the output has another extension.
+        File summaryGto = new File(dupDir, "summary.gto");
+        assertTrue(summaryGto.createNewFile());
+        summaryGto.deleteOnExit();
+        try {
+            new GenomeProcessor().parseCommand(new String[] { "-o", dupDir.getPath(), summaryGto.getPath() });
+            fail("Input overwriting the summary accepted.");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString(GenomeProcessor.SUMMARY_FILE));
+        }
+        assertTrue(new GenomeProcessor().parseCommand(new String[] { "--format", "CSR", "-o", dupDir.getPath(),
+                summaryGto.getPath() }));
+        assertThat(GenomeProcessor.baseName(new File(gtoDir, "83333.1.gto")), equalTo("83333.1"));
+        assertThat(GenomeProcessor.outputName(new File("x.gto"), SensorWriter.Format.TEXT), equalTo("x.tbl"));
+        assertThat(GenomeProcessor.outputName(new File("x.gto"), SensorWriter.Format.CSR), equalTo("x.csr"));
+        List<String> classes = Arrays.asList("other", "start", "?");
+        CountMap<String> counts = new CountMap<String>();
+        counts.count("start");
+        counts.count("other");
+        counts.count("other");
+        long[] totals = new long[] { 5, 1, 0 };
+        String line = GenomeProcessor.summaryLine("x", classes, counts, totals);
+        assertThat(line, equalTo("x\t2\t1\t0\t3"));
+        assertThat(totals[0], equalTo(7L));
+        assertThat(totals[1], equalTo(2L));
+        assertThat(totals[2], equalTo(0L));
+    }
+
+    /**
+     * test the count-only planning pass of the train and test commands
+     *
+     * @throws IOException
+     */
+    public void testCountOnly() throws IOException {
+        assertThat(GenomeProcessor.totalLine("TOTAL", new long[] { 7, 2, 0 }), equalTo("TOTAL\t7\t2\t0\t9"));
+        assertThat(GenomeProcessor.totalLine("TOTAL\tall", new long[] { 1, 2 }), equalTo("TOTAL\tall\t1\t2\t3"));
+        File workDir = Files.createTempDirectory("count").toFile();
+        try {
+            File gtoDir = new File(workDir, "genomes");
+            File fastaFile = new File(workDir, "contigs.fa");
+            new SyntheticGenomeGenerator(11).setContigs(2).setLengths(3000, 5000).setDensity(0.8).setAmbiguity(0.01)
+                    .generate(3, gtoDir, fastaFile);
+            // For test, the table must match the summary of a full run.
+            List<String> counts = runCommand(new GenomeProcessor(), "--count-only", gtoDir.getPath());
+            assertThat(counts.size(), equalTo(5));
+            assertThat(counts.get(0), equalTo("genome\tstart\tstop\tother\t?\ttotal"));
+            checkCountTable(counts, 1, "TOTAL");
+            File outDir = new File(workDir, "test");
+            List<String> empty = runCommand(new GenomeProcessor(), "-o", outDir.getPath(), gtoDir.getPath());
+            assertThat(empty.size(), equalTo(0));
+            assertThat(Files.readAllLines(new File(outDir, GenomeProcessor.SUMMARY_FILE).toPath()), equalTo(counts));
+            // For train, check the totals without and with splits.
+            counts = runCommand(new ContigProcessor(), "--count-only", gtoDir.getPath());
+            assertThat(counts.size(), equalTo(5));
+            assertThat(counts.get(0), equalTo("genome\tstart\tstop\tother\ttotal"));
+            long[] totals = checkCountTable(counts, 1, "TOTAL");
+            File splitDir = new File(workDir, "splits");
+            assertTrue(splitDir.mkdir());
+            List<String> splitCounts = runCommand(new ContigProcessor(), "--count-only", "--split", "train:1,test:1",
+                    "-o", splitDir.getPath(), gtoDir.getPath());
+            assertThat(splitDir.list().length, equalTo(0));
+            assertThat(splitCounts.size(), equalTo(7));
+            assertThat(splitCounts.get(0), equalTo("genome\tsplit\tstart\tstop\tother\ttotal"));
+            // Each split's total line must hold the sums of the split's genome lines.
+            List<String> names = Arrays.asList("train", "test");
+            for (int i = 0; i < names.size(); i++) {
+                String split = names.get(i);
+                List<String> splitLines = new ArrayList<String>();
+                splitLines.add(splitCounts.get(0));
+                for (String line : splitCounts.subList(1, 4)) {
+                    String[] fields = line.split("\t");
+                    assertTrue(line, names.contains(fields[1]));
+                    if (fields[1].equals(split)) splitLines.add(line);
+                }
+                splitLines.add(splitCounts.get(4 + i));
+                checkCountTable(splitLines, 2, "TOTAL\t" + split);
+            }
+            assertThat(splitCounts.get(6), equalTo(GenomeProcessor.totalLine("TOTAL\tall",
+                    Arrays.copyOf(totals, totals.length - 1))));
+        } finally {
+            BenchmarkProcessor.deleteTree(workDir);
+        }
+    }
+
+    /**
+     * Verify a class count table.  Each genome line's total must be the sum of its counts, and the last line must
+     * hold the column sums of the genome lines.
+     *
+     * @return the column sums, including the total column
+     *
+     * @param lines		lines of the table; the genome lines start at index 1, and the last line is the total line
+     * @param skip		number of label columns at the start of each line
+     * @param label		expected label of the total line
+     */
+    private static long[] checkCountTable(List<String> lines, int skip, String label) {
+        int last = lines.size() - 1;
+        String[] totalFields = lines.get(last).split("\t");
+        long[] retVal = new long[totalFields.length - skip];
+        for (String line : lines.subList(1, last)) {
+            String[] fields = line.split("\t");
+            assertThat(line, fields.length, equalTo(totalFields.length));
+            long sum = 0;
+            for (int i = skip; i < fields.length; i++) {
+                long count = Long.parseLong(fields[i]);
+                retVal[i - skip] += count;
+                if (i < fields.length - 1) sum += count;
+            }
+            assertThat(line, sum, equalTo(Long.parseLong(fields[fields.length - 1])));
+        }
+        assertThat(lines.get(last), startsWith(label + "\t"));
+        for (int i = skip; i < totalFields.length; i++)
+            assertThat(lines.get(last), Long.parseLong(totalFields[i]), equalTo(retVal[i - skip]));
+        return retVal;
+    }
+
+    /**
+     * test compact location output from the test and predict commands against the full output
+     *
+     * @throws IOException
+     */
+    public void testCompactOutput() throws IOException {
+        File workDir = Files.createTempDirectory("compact").toFile();
+        try {
+            File gtoDir = new File(workDir, "genomes");
+            File fastaFile = new File(workDir, "contigs.fa");
+            new SyntheticGenomeGenerator(13).setContigs(3).setLengths(2000, 4000).setDensity(0.8).setAmbiguity(0.01)
+                    .generate(2, gtoDir, fastaFile);
+            File[] gtoFiles = gtoDir.listFiles();
+            // Run test on both strands, once with full locations and once with compact locations in small parallel
+            // chunks.
+            File fullDir = new File(workDir, "full");
+            File compactDir = new File(workDir, "compact");
+            runCommand(new GenomeProcessor(), "--strands", "BOTH", "-o", fullDir.getPath(), gtoDir.getPath());
+            runCommand(new GenomeProcessor(), "--strands", "BOTH", "--compact", "--threads", "2", "--chunk", "500",
+                    "-o", compactDir.getPath(), gtoDir.getPath());
+            for (File gtoFile : gtoFiles) {
+                String outName = GenomeProcessor.outputName(gtoFile, SensorWriter.Format.TEXT);
+                List<String> full = Files.readAllLines(new File(fullDir, outName).toPath());
+                List<String> compact = Files.readAllLines(new File(compactDir, outName).toPath());
+                assertTrue(full.get(1), full.get(1).split("\t")[0].matches(".+;\\d+;[+-]"));
+                assertTrue(compact.stream().anyMatch(x -> x.startsWith(ContigDictionary.NEXT + "\t")));
+                File dictFile = new File(compactDir, GenomeProcessor.baseName(gtoFile) + ContigDictionary.SUFFIX);
+                assertThat(restoreLines(new LocationDecoder(dictFile), compact), equalTo(full));
+            }
+            // Run predict on both strands, once serially with full locations and once in parallel with compact
+            // locations.
+            File dictFile = new File(workDir, "contigs" + ContigDictionary.SUFFIX);
+            List<String> full = runCommand(new FastaProcessor(), "--strands", "BOTH", fastaFile.getPath());
+            List<String> compact = runCommand(new FastaProcessor(), "--strands", "BOTH", "--threads", "3",
+                    "--contigs", dictFile.getPath(), fastaFile.getPath());
+            assertThat(full.size(), greaterThan(1000));
+            assertThat(compact.size(), equalTo(full.size()));
+            assertThat(restoreLines(new LocationDecoder(dictFile), compact), equalTo(full));
+        } finally {
+            BenchmarkProcessor.deleteTree(workDir);
+        }
+    }
+
+    /**
+     * @return the lines of a compact TEXT output file with the full location metadata restored
+     *
+     * @param decoder	location decoder for the file
+     * @param compact	lines of the compact file
+     *
+     * @throws IOException
+     */
+    private static List<String> restoreLines(LocationDecoder decoder, List<String> compact) throws IOException {
+        StringWriter restored = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(restored)) {
+            decoder.restore(new BufferedReader(new StringReader(String.join("\n", compact))), writer);
+        }
+        return Arrays.asList(restored.toString().split("\\R"));
+    }
+
+    /**
+     * @return the standard output lines of a command
+     *
+     * @param command	command to run
+     * @param args		command-line parameters
+     */
+    private static List<String> runCommand(ICommand command, String... args) {
+        assertTrue(command.parseCommand(args));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream oldOut = System.out;
+        try (PrintStream newOut = new PrintStream(buffer, true)) {
+            System.setOut(newOut);
+            command.run();
+        } finally {
+            System.setOut(oldOut);
+        }
+        List<String> retVal = new ArrayList<String>();
+        for (String line : buffer.toString().split("\\R"))
+            if (! line.isEmpty()) retVal.add(line);
+        return retVal;
+    }
+
+    /**
+     * test the genome splitter
+     */
+    public void testSplitter() {
+        GenomeSplitter splitter = new GenomeSplitter("train:8, valid:1,test:1");
+        assertThat(splitter.size(), equalTo(3));
+        assertThat(splitter.getNames(), contains("train", "valid", "test"));
+        int[] counts = new int[3];
+        for (int i = 0; i < 10000; i++) {
+            String genomeId = "1000" + i + ".1";
+            int split = splitter.choose(genomeId);
+            assertThat(splitter.choose(genomeId), equalTo(split));
+            counts[split]++;
+        }
+        assertThat(counts[0], greaterThan(7700));
+        assertThat(counts[0], lessThan(8300));
+        assertThat(counts[1], greaterThan(850));
+        assertThat(counts[2], greaterThan(850));
+        GenomeSplitter copy = new GenomeSplitter("train:0.8,valid:0.1,test:0.1");
+        assertThat(copy.choose("83333.1"), equalTo(splitter.choose("83333.1")));
+        for (String bad : new String[] { "train", "train:0", "train:x", "train:1,train:2", ":1" }) {
+            try {
+                new GenomeSplitter(bad);
+                fail("Invalid split " + bad + " accepted.");
+            } catch (IllegalArgumentException e) {
+                // Correct.
+            }
+        }
+    }
+
+    /**
+     * test the columnar sensor format
+     *
+     * @throws IOException
+     */
+    public void testColumnar() throws IOException {
+        int[] codes = new int[] { 0, 0, 0, 0, 2, 2, 1, 0 };
+        assertThat(ColumnarSensorWriter.bitWidth(1), equalTo(0));
+        assertThat(ColumnarSensorWriter.bitWidth(3), equalTo(2));
+        assertThat(ColumnarSensorWriter.bitWidth(64), equalTo(6));
+        byte[] packed = ColumnarSensorWriter.bitPack(codes, 8, 3);
+        assertThat(packed.length, equalTo(2));
+        assertThat(packed[0], equalTo((byte) 0x00));
+        assertThat(packed[1], equalTo((byte) 0xA4));
+        byte[] runs = ColumnarSensorWriter.runLength(codes, 8, 100);
+        assertThat(runs.length, equalTo(8));
+        assertThat(ColumnarSensorWriter.runLength(codes, 8, 8), nullValue());
+        // Write a file with three-row groups, using a fork for some of the rows.
+        ContigSensorFactory.setLeftWidth(1);
+        ContigSensorFactory.setRightWidth(1);
+        ContigSensorFactory myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.CHANNEL);
+        String sequence = "AACGTTTTTTN";
+        File colFile = File.createTempFile("sensors", ".col");
+        colFile.deleteOnExit();
+        try (FileOutputStream outStream = new FileOutputStream(colFile);
+                SensorWriter writer = new ColumnarSensorWriter(outStream, myFactory, null, 3)) {
+            writer.writeHeader("location", "expect");
+            SensorWriter fork = writer.fork();
+            for (int pos = 1; pos <= sequence.length(); pos++) {
+                ContigSensor sensor = myFactory.create("c1", pos, sequence);
+                SensorWriter target = (pos > 4 && pos < 8 ? fork : writer);
+                target.write(sensor, sensor.getMeta(), (pos == 3 ? "start" : "other"));
+                if (pos == 7)
+                    writer.writeBytes(fork.toBytes());
+            }
+        }
+        try (ColumnarSensorReader reader = new ColumnarSensorReader(colFile)) {
+            assertThat(reader.getLabelNames(), contains("location", "expect"));
+            assertThat(reader.getSensorNames().size(), equalTo(3));
+            assertThat(reader.getWidth(), equalTo(5));
+            assertThat(reader.size(), equalTo((long) sequence.length()));
+            assertThat(reader.getGroupCount(), equalTo(4));
+            assertThat(reader.getGroupSize(3), equalTo(2));
+            int expectCol = reader.getColumnIndex("expect");
+            assertThat(expectCol, equalTo(1));
+            assertThat(reader.getColumnIndex("nothing"), equalTo(-1));
+            ColumnarSensorReader.ColumnChunk chunk = reader.readColumn(0, expectCol);
+            assertThat(chunk.getDictionary(), arrayContaining("other", "start"));
+            assertThat(chunk.getCodes()[2], equalTo(1));
+            assertThat(chunk.getValue(1), equalTo("other"));
+            String center = reader.getSensorNames().get(1);
+            int pos = 1;
+            for (String[] row : reader.scan(center, "location")) {
+                ContigSensor sensor = myFactory.create("c1", pos, sequence);
+                assertThat(row[0], equalTo(sensor.getSensors()[1]));
+                assertThat(row[1], equalTo(sensor.getMeta()));
+                pos++;
+            }
+            assertThat(pos, equalTo(sequence.length() + 1));
+        }
+    }
+
+    /**
+     * test the in-process scorers
+     *
+     * @throws IOException
+     */
+    public void testScorers() throws IOException {
+        ContigSensorFactory.setLeftWidth(1);
+        ContigSensorFactory.setRightWidth(1);
+        ContigSensorFactory myFactory = ContigSensorFactory.create(ContigSensorFactory.Type.CHANNEL);
+        File modelFile = File.createTempFile("model", ".tbl");
+        modelFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(modelFile)) {
+            writer.println("linear\tstart\tother");
+            writer.println("# weights for the center nucleotide");
+            writer.println("bias\t0.5\t-0.5");
+            writer.println("pos.0=A\t1\t2");
+            writer.println("pos.1=g\t-1\t0.25");
+        }
+        SensorScorer scorer = SensorScorer.load(modelFile, myFactory);
+        assertThat(scorer.getClasses(), contains("start", "other"));
+        ContigSensor[] batch = new ContigSensor[] { myFactory.create("c1", 2, "CAG"), myFactory.create("c1", 3, "CAG") };
+        double[][] scores = new double[2][2];
+        scorer.score(batch, 2, scores);
+        assertThat(scores[0][0], closeTo(0.5, 1e-9));
+        assertThat(scores[0][1], closeTo(1.75, 1e-9));
+        assertThat(scores[1][0], closeTo(0.5, 1e-9));
+        assertThat(scores[1][1], closeTo(-0.5, 1e-9));
+        // Test the logistic link.
+        try (PrintWriter writer = new PrintWriter(modelFile)) {
+            writer.println("logistic\tstart");
+            writer.println("pos.0=A\t2");
+        }
+        scorer = SensorScorer.load(modelFile, myFactory);
+        scorer.score(batch, 2, scores);
+        assertThat(scores[0][0], closeTo(1.0 / (1.0 + Math.exp(-2.0)), 1e-9));
+        assertThat(scores[1][0], closeTo(0.5, 1e-9));
+        // Test a position weight matrix.
+        try (PrintWriter writer = new PrintWriter(modelFile)) {
+            writer.println("pwm\tmotif");
+            writer.println("pos.-1\t0\t10\t0\t0");
+            writer.println("pos.0\t1\t1\t1\t1");
+        }
+        scorer = SensorScorer.load(modelFile, myFactory);
+        scorer.score(batch, 1, scores);
+        double expected = Math.log(10.25 / 11.0 * 4) / Math.log(2);
+        assertThat(scores[0][0], closeTo(expected, 1e-9));
+        // Test the scoring writer with a fork.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SensorWriter writer = new ScoreSensorWriter(bytes, myFactory, scorer)) {
+            writer.writeHeader("location", "codon");
+            writer.write(batch[0], batch[0].getMeta(), "x");
+            SensorWriter fork = writer.fork();
+            fork.write(batch[1], batch[1].getMeta(), "y");
+            writer.writeBytes(fork.toBytes());
+        }
+        String[] lines = bytes.toString().split(System.lineSeparator());
+        assertThat(lines.length, equalTo(3));
+        assertThat(lines[0], equalTo("location\tcodon\tmotif"));
+        String[] fields = lines[1].split("\t");
+        assertThat(fields[0], equalTo("c1;2"));
+        assertThat(fields[1], equalTo("x"));
+        assertThat(Double.valueOf(fields[2]), closeTo(expected, 1e-5));
+        fields = lines[2].split("\t");
+        assertThat(fields[1], equalTo("y"));
+        assertThat(Double.valueOf(fields[2]), closeTo(Math.log(0.25 / 11.0 * 4) / Math.log(2), 1e-5));
+        // Test an invalid model.
+        try (PrintWriter writer = new PrintWriter(modelFile)) {
+            writer.println("linear\tstart");
+            writer.println("pos.7=A\t1");
+        }
+        try {
+            SensorScorer.load(modelFile, myFactory);
+            fail("Invalid feature accepted.");
+        } catch (IllegalArgumentException e) {
+            // Correct.
+        }
+    }
+
+    /**
+     * test the candidate site prefilter
+     */
+    public void testPrefilter() {
+        String sequence = "ATGAAATAAGGGATGCCC";
+        GeneticCode gc = GeneticCode.get(11);
+        SitePrefilter prefilter = new SitePrefilter(9, null, 0.0, gc);
+        SitePrefilter.Prepared sites = prefilter.prepare(sequence);
+        assertTrue(sites.accept(1));
+        assertFalse(sites.accept(13));
+        assertTrue(sites.accept(7));
+        assertFalse(sites.accept(2));
+        assertThat(prefilter.getTested(), equalTo(4L));
+        assertThat(prefilter.getPruned(), equalTo(2L));
+        // A sequence prepared for a range must give the same answers in the range as the whole sequence.
+        Random rand = new Random(42);
+        StringBuilder buffer = new StringBuilder(2000);
+        for (int i = 0; i < 2000; i++)
+            buffer.append("acgt".charAt(rand.nextInt(4)));
+        String longSeq = buffer.toString();
+        ReverseComplement longMinus = new ReverseComplement(longSeq);
+        prefilter = new SitePrefilter(60, null, 0.0, gc);
+        SitePrefilter.Prepared whole = prefilter.prepare(longSeq);
+        SitePrefilter.Prepared minusWhole = prefilter.prepare(longMinus);
+        int[][] ranges = new int[][] { { 1, 50 }, { 700, 900 }, { 1950, 2000 }, { 1000, 1000 } };
+        for (int[] range : ranges) {
+            SitePrefilter.Prepared part = prefilter.prepare(longSeq, range[0], range[1]);
+            SitePrefilter.Prepared minusPart = prefilter.prepare(longMinus, longMinus.flip(range[1]),
+                    longMinus.flip(range[0]));
+            for (int pos = range[0]; pos <= range[1]; pos++) {
+                assertThat(Integer.toString(pos), part.accept(pos), equalTo(whole.accept(pos)));
+                int flipped = longMinus.flip(pos);
+                assertThat(Integer.toString(flipped), minusPart.accept(flipped), equalTo(minusWhole.accept(flipped)));
+            }
+        }
+        // Test the position weight matrix.
+        List<String[]> lines = Arrays.asList(new String[] { "pos.-3", "0", "0", "10", "0" },
+                new String[] { "1", "1", "1", "1", "1" });
+        PositionWeightMatrix matrix = new PositionWeightMatrix(lines);
+        assertThat(matrix.getMinOffset(), equalTo(-3));
+        assertThat(matrix.getMaxOffset(), equalTo(1));
+        double strong = Math.log(10.25 / 11.0 * 4) / Math.log(2);
+        assertThat(matrix.getWeight(-3, 2), closeTo(strong, 1e-9));
+        assertThat(matrix.getWeight(1, 0), closeTo(0.0, 1e-9));
+        assertThat(matrix.getWeight(5, 0), equalTo(0.0));
+        assertThat(matrix.score(sequence, 13), closeTo(strong, 1e-9));
+        assertThat(matrix.score(sequence, 1), closeTo(0.0, 1e-9));
+        prefilter = new SitePrefilter(0, matrix, 1.0, gc);
+        sites = prefilter.prepare(sequence);
+        assertTrue(sites.accept(13));
+        assertFalse(sites.accept(1));
+        assertTrue(sites.accept(7));
+        assertThat(prefilter.getPruned(), equalTo(1L));
+    }
+
+    /**
+     * test the synthetic genome generator and the benchmark helpers
+     */
+    public void testSynthetic() throws IOException {
+        File workDir = Files.createTempDirectory("synth").toFile();
+        try {
+            File gtoDir = new File(workDir, "genomes");
+            File fastaFile = new File(workDir, "contigs.fa");
+            new SyntheticGenomeGenerator(7).setContigs(2).setLengths(3000, 5000).setDensity(0.8).setAmbiguity(0.01)
+                    .generate(3, gtoDir, fastaFile);
+            File[] gtoFiles = gtoDir.listFiles();
+            assertThat(gtoFiles.length, equalTo(3));
+            assertTrue(new File(gtoDir, SyntheticGenomeGenerator.genomeId(2) + ".gto").exists());
+            List<String> lines = Files.readAllLines(fastaFile.toPath());
+            int records = 0;
+            for (String line : lines) {
+                if (line.startsWith(">")) {
+                    records++;
+                } else {
+                    assertThat(line.length(), lessThanOrEqualTo(60));
+                    assertTrue(line, line.matches("[acgtn]+"));
+                }
+            }
+            assertThat(records, equalTo(6));
+            // The same seed must produce the same genomes.
+            File fastaFile2 = new File(workDir, "contigs2.fa");
+            File gtoDir2 = new File(workDir, "genomes2");
+            new SyntheticGenomeGenerator(7).setContigs(2).setLengths(3000, 5000).setDensity(0.8).setAmbiguity(0.01)
+                    .generate(3, gtoDir2, fastaFile2);
+            assertThat(Files.readAllLines(fastaFile2.toPath()), equalTo(lines));
+        } finally {
+            BenchmarkProcessor.deleteTree(workDir);
+        }
+        assertFalse(workDir.exists());
+        // Test the benchmark helpers.
+        assertThat(BenchmarkProcessor.parseStages("predict,Train"), contains(BenchmarkProcessor.Stage.TRAIN,
+                BenchmarkProcessor.Stage.PREDICT));
+        try {
+            BenchmarkProcessor.parseStages("train,fly");
+            fail("Invalid stage accepted.");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("fly"));
+        }
+        String line = BenchmarkProcessor.reportLine("test", 2.0, 1000, 4 * 1024 * 1024, 1024 * 1024, 3 * 1024 * 1024);
+        assertThat(line, equalTo("test\t2.000\t1000\t500.0\t4.00\t2.00\t1.00\t3.0"));
+        assertThat(BenchmarkProcessor.failureOf("", 10), nullValue());
+        assertThat(BenchmarkProcessor.failureOf("Split train:\n", 10), nullValue());
+        assertThat(BenchmarkProcessor.failureOf("", 0), containsString("No output rows"));
+        assertThat(BenchmarkProcessor.failureOf("1 genome.\nError processing g.gto: bad\nError again\n", 10),
+                equalTo("Error processing g.gto: bad"));
+    }
+
+    /**
+     * test the nucleotide encoders
+     */
+    public void testEncoder() {
+        NucleotideEncoder scalar = new NucleotideEncoder();
+        int[] codes = new int[20];
+        int ambig = scalar.encode("xxACGTacgtUuNn-\u0161", 2, codes);
+        assertThat(ambig, equalTo(6));
+        assertThat(Arrays.copyOf(codes, 14), equalTo(new int[] { 0, 1, 2, 3, 0, 1, 2, 3, 4, 4, 4, 4, 4, 4 }));
+        // The best encoder must match the scalar one, whether or not it uses vectors.
+        NucleotideEncoder best = NucleotideEncoder.get();
+        Random rand = new Random(12);
+        String alphabet = "acgtACGTnNuUrY-\u0141\u0161";
+        for (int len = 0; len < 200; len += 7) {
+            char[] chars = new char[len];
+            for (int i = 0; i < len; i++)
+                chars[i] = alphabet.charAt(rand.nextInt(alphabet.length()));
+            int[] expected = new int[len];
+            int[] actual = new int[len];
+            int n = scalar.encode(chars, len, expected);
+            assertThat(best.encode(chars, len, actual), equalTo(n));
+            assertThat(actual, equalTo(expected));
+        }
+        // Test the direct sensors.
+        ContigSensorFactory.setLeftWidth(2);
+        ContigSensorFactory.setRightWidth(2);
+        ContigSensorFactory factory = ContigSensorFactory.create(ContigSensorFactory.Type.DIRECT);
+        ContigSensor sensor = factory.create("c1", 2, "AcgUt");
+        assertThat(sensor.getSensors(), arrayContaining("0.0", "-0.3", "-0.6", "0.6", "0.0"));
+        assertTrue(sensor.isSuspicious());
+        sensor = factory.create("c1", 3, "AcgTt");
+        assertThat(sensor.getSensors(), arrayContaining("-0.3", "-0.6", "0.6", "0.3", "0.3"));
+        assertFalse(sensor.isSuspicious());
+    }
+
+    /**
+     * test the ambiguity index
+     */
+    public void testAmbiguityIndex() {
+        StringBuilder buffer = new StringBuilder(300);
+        for (int i = 0; i < 300; i++)
+            buffer.append(i >= 100 && i < 180 || i == 64 || i == 250 ? 'n' : "acgt".charAt(i % 4));
+        String sequence = buffer.toString();
+        AmbiguityIndex index = new AmbiguityIndex(sequence, c -> c == 'n');
+        assertThat(index.total(), equalTo(82));
+        assertThat(index.count(0, 64), equalTo(0));
+        assertThat(index.count(-10, 65), equalTo(1));
+        assertThat(index.count(60, 110), equalTo(11));
+        assertThat(index.count(240, 400), equalTo(1));
+        assertTrue(index.isClean(180, 250));
+        assertFalse(index.isClean(179, 250));
+        assertThat(index.lastAmbiguous(0, 100), equalTo(64));
+        assertThat(index.lastAmbiguous(0, 240), equalTo(179));
+        assertThat(index.lastAmbiguous(65, 100), equalTo(-1));
+        // Verify the sensor checks against the sensors themselves.
+        ContigSensorFactory.setLeftWidth(6);
+        ContigSensorFactory.setRightWidth(8);
+        for (ContigSensorFactory.Type type : ContigSensorFactory.Type.values()) {
+            ContigSensorFactory factory = ContigSensorFactory.create(type);
+            int next = factory.nextClean(sequence, 1);
+            for (int pos = 1; pos <= sequence.length(); pos++) {
+                boolean suspicious = factory.isSuspicious(sequence, pos);
+                String label = type + " at " + pos;
+                assertThat(label, factory.create("c1", pos, sequence).isSuspicious(), equalTo(suspicious));
+                if (pos < next)
+                    assertTrue(label, suspicious);
+                else if (pos == next) {
+                    assertFalse(label, suspicious);
+                    next = factory.nextClean(sequence, pos + 1);
+                }
+            }
+        }
+        // An amino-acid sensor is only suspicious if a whole codon inside the contig is ambiguous.
+        ContigSensorFactory factory = ContigSensorFactory.create(ContigSensorFactory.Type.AMINOACID);
+        for (String edges : new String[] { "nAAACCCGGGTTTAAACCCGn", "AnAACCCGGGTTTAAACCnGA", "ACnGGGTTnAA" }) {
+            int next = factory.nextClean(edges, 1);
+            for (int pos = 1; pos <= edges.length(); pos++) {
+                String label = edges + " at " + pos;
+                boolean suspicious = factory.create("c1", pos, edges).getSensorList().contains("X");
+                assertThat(label, factory.isSuspicious(edges, pos), equalTo(suspicious));
+                if (pos < next)
+                    assertTrue(label, suspicious);
+                else if (pos == next) {
+                    assertFalse(label, suspicious);
+                    next = factory.nextClean(edges, pos + 1);
+                }
+            }
+            assertThat(edges, next, greaterThan(edges.length()));
+        }
+    }
+
+    /**
+     * test the work scheduler
+     *
+     * @throws IOException
+     * @throws ExecutionException
+     */
+    public void testScheduler() throws IOException, ExecutionException {
+        List<RegionIndex.Interval> chunks = WorkScheduler.split(1, 250, 100);
+        assertThat(chunks.size(), equalTo(3));
+        assertThat(chunks.get(0).getStart(), equalTo(1));
+        assertThat(chunks.get(0).getEnd(), equalTo(100));
+        assertThat(chunks.get(2).getStart(), equalTo(201));
+        assertThat(chunks.get(2).getEnd(), equalTo(250));
+        chunks = WorkScheduler.split(150, 310, 100);
+        assertThat(chunks.size(), equalTo(3));
+        assertThat(chunks.get(0).getStart(), equalTo(150));
+        assertThat(chunks.get(0).getEnd(), equalTo(200));
+        assertThat(chunks.get(1).getStart(), equalTo(201));
+        assertThat(chunks.get(2).getEnd(), equalTo(310));
+        assertThat(WorkScheduler.split(5, 4, 100).size(), equalTo(0));
+        try (WorkScheduler scheduler = new WorkScheduler(1)) {
+            // With one thread, the tasks are run largest first.
+            List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+            List<Callable<Integer>> work = new ArrayList<Callable<Integer>>();
+            long[] sizes = new long[] { 10, 50, 20, 50, 5 };
+            for (int i = 0; i < sizes.length; i++) {
+                final int idx = i;
+                work.add(() -> {
+                    order.add(idx);
+                    if (idx == 4) throw new IOException("task 4 failed");
+                    return idx * 10;
+                });
+            }
+            List<WorkScheduler.Task<Integer>> tasks = scheduler.submitAll(work, sizes);
+            for (int i = 0; i < 4; i++)
+                assertThat(tasks.get(i).result(), equalTo(i * 10));
+            try {
+                tasks.get(4).result();
+                fail("Failed task returned a result.");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause().getMessage(), equalTo("task 4 failed"));
+            }
+            assertThat(order, contains(1, 3, 2, 0, 4));
+            // A sequence writes its results in order, even when there are more tasks than permits.
+            List<Integer> results = new ArrayList<Integer>();
+            try (WorkScheduler.Sequence<Integer> sequence = scheduler.sequence(results::add)) {
+                for (int i = 0; i < 20; i++) {
+                    final int idx = i;
+                    sequence.submit(() -> idx, 20 - i);
+                }
+                sequence.finish();
+            }
+            assertThat(results.size(), equalTo(20));
+            for (int i = 0; i < 20; i++)
+                assertThat(results.get(i), equalTo(i));
+        }
+    }
+
+    /**
+     * test the shuffle buffer and the batch output stream
+     *
+     * @throws IOException
+     */
+    public void testShuffle() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BalancedOutputStream stream = new BalancedOutputStream(0, bytes);
+        List<String> expected = new ArrayList<String>();
+        try (ShuffleBuffer buffer = new ShuffleBuffer(20, new Random(11), stream)) {
+            for (int i = 0; i < 100; i++) {
+                buffer.write("c" + (i % 3), "row" + i);
+                expected.add("c" + (i % 3) + "\trow" + i);
+                assertThat(buffer.size(), equalTo(Math.min(i + 1, 20)));
+            }
+        }
+        stream.close();
+        List<String> lines = Arrays.asList(bytes.toString("UTF-8").split("\n"));
+        assertThat(lines.size(), equalTo(100));
+        assertThat(lines, not(equalTo(expected)));
+        List<String> sorted = new ArrayList<String>(lines);
+        Collections.sort(sorted);
+        Collections.sort(expected);
+        assertThat(sorted, equalTo(expected));
+        // Now divide some lines into batch files.
+        File outDir = Files.createTempDirectory("batch").toFile();
+        outDir.deleteOnExit();
+        try (BatchOutputStream batchStream = new BatchOutputStream(outDir, "train", ".tbl", 10,
+                "frame\tdata\n".getBytes("UTF-8"));
+                PrintWriter writer = new PrintWriter(batchStream)) {
+            for (int i = 0; i < 25; i++)
+                writer.println("c\t" + i);
+            writer.flush();
+            assertThat(batchStream.getFiles(), equalTo(3));
+        }
+        for (int i = 1; i <= 3; i++) {
+            File batchFile = new File(outDir, BatchOutputStream.fileName("train", i, ".tbl"));
+            batchFile.deleteOnExit();
+            List<String> batch = Files.readAllLines(batchFile.toPath());
+            assertThat(batchFile.getName(), batch.size(), equalTo(i < 3 ? 11 : 6));
+            assertThat(batch.get(0), equalTo("frame\tdata"));
+            assertThat(batch.get(1), equalTo("c\t" + (i - 1) * 10));
+        }
+        assertThat(BatchOutputStream.fileName("train", 12, ".svm"), equalTo("train.00012.svm"));
+        assertFalse(new File(outDir, BatchOutputStream.fileName("train", 4, ".tbl")).exists());
+    }
+
+    /**
+     * test the compact location metadata
+     *
+     * @throws IOException
+     */
+    public void testCompactLocations() throws IOException {
+        ContigDictionary contigs = new ContigDictionary();
+        assertThat(contigs.add("long.contig.B"), equalTo(0));
+        assertThat(contigs.add("long.contig.A"), equalTo(1));
+        assertThat(contigs.add("long.contig.B"), equalTo(0));
+        ContigSensor[] sensors = new ContigSensor[] {
+                new ContigSensor("long.contig.A", 10, "ATG", '+'), new ContigSensor("long.contig.A", 10, "CAT", '-'),
+                new ContigSensor("long.contig.A", 11, "TGA", '+'), new ContigSensor("long.contig.A", 12, "GAA", '-'),
+                new ContigSensor("long.contig.A", 13, "AAC", '+'), new ContigSensor("long.contig.B", 13, "AAC", '-'),
+                new ContigSensor("long.contig.B", 14, "ACG", '+'), new ContigSensor("long.contig.C", 1, "TTG", '+') };
+        String[] expected = new String[] { "1;10;+", ".", ".", "1;12;-", ".", "0;13;-", ".", "2;1;+" };
+        ContigDictionary.Encoder encoder = contigs.encoder();
+        StringBuilder compact = new StringBuilder("location\tcodon\n");
+        StringBuilder full = new StringBuilder("location\tcodon\n");
+        for (int i = 0; i < sensors.length; i++) {
+            String location = encoder.encode(sensors[i]);
+            assertThat(sensors[i].getMeta(), location, equalTo(expected[i]));
+            compact.append(location).append('\t').append(sensors[i].getCodon()).append('\n');
+            full.append(sensors[i].getMeta()).append('\t').append(sensors[i].getCodon()).append('\n');
+        }
+        assertThat(contigs.size(), equalTo(3));
+        // A new encoder starts with a full location.
+        encoder = contigs.encoder();
+        assertThat(encoder.encode(new ContigSensor("long.contig.A", 5, "AAA")), equalTo("1;5"));
+        assertThat(encoder.encode(new ContigSensor("long.contig.A", 6, "AAA")), equalTo("."));
+        assertThat(encoder.encode(new ContigSensor("long.contig.A", 8, "AAA")), equalTo("1;8"));
+        // Save the dictionary and restore the full metadata.
+        File dictFile = File.createTempFile("test", ContigDictionary.SUFFIX);
+        dictFile.deleteOnExit();
+        contigs.save(dictFile);
+        LocationDecoder decoder = new LocationDecoder(dictFile);
+        StringWriter restored = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(restored)) {
+            decoder.restore(new BufferedReader(new StringReader(compact.toString())), writer);
+        }
+        assertThat(restored.toString(), equalTo(full.toString().replace("\n", System.lineSeparator())));
+        decoder = new LocationDecoder(contigs);
+        assertThat(decoder.decode("0;100"), equalTo("long.contig.B;100"));
+        assertThat(decoder.decode("."), equalTo("long.contig.B;101"));
+        try {
+            new LocationDecoder(contigs).decode(".");
+            fail("Abbreviated first location accepted.");
+        } catch (IllegalArgumentException e) { }
+        try {
+            decoder.decode("3;10");
+            fail("Invalid contig index accepted.");
+        } catch (IllegalArgumentException e) { }
+    }
 }